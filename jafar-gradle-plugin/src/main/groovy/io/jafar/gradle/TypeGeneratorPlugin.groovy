@@ -42,6 +42,7 @@ class TypeGeneratorPlugin implements Plugin<Project> {
                 def output = extension.outputDir.orElse(project.layout.buildDirectory.dir("generated/sources/jafar/src/main")).get().asFile
                 def overwrite = extension.overwrite.getOrElse(false)
                 def targetPackage = extension.targetPackage.getOrElse("io.jafar.parser.api.types")
+                def generateDeserializers = extension.generateDeserializers.getOrElse(false)
 
 
                 // Ensure output directory exists
@@ -54,7 +55,7 @@ class TypeGeneratorPlugin implements Plugin<Project> {
                 }
 
                 // Instantiate and execute TypeGenerator
-                def generator = new TypeGenerator(input?.toPath(), output.toPath(), targetPackage, overwrite, predicate)
+                def generator = new TypeGenerator(input?.toPath(), output.toPath(), targetPackage, overwrite, predicate, generateDeserializers)
                 generator.generate()
             }
         }
@@ -75,6 +76,7 @@ class TypeGeneratorPlugin implements Plugin<Project> {
         final Property<String> targetPackage
         final Property<Boolean> overwrite
         final Property<Closure<Boolean>> eventTypeFilter
+        final Property<Boolean> generateDeserializers
 
         GenerateJafarTypesExtension(Project project) {
             inputFile = project.objects.property(File)
@@ -82,6 +84,7 @@ class TypeGeneratorPlugin implements Plugin<Project> {
             targetPackage = project.objects.property(String)
             overwrite = project.objects.property(Boolean)
             eventTypeFilter = project.objects.property(Closure)
+            generateDeserializers = project.objects.property(Boolean)
         }
 
         void eventTypeFilter(Closure<Boolean> eventTypeFilterClosure) {
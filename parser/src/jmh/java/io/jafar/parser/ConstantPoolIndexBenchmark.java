@@ -0,0 +1,78 @@
+package io.jafar.parser;
+
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the constant pool offset lookups using the adaptive {@linkplain ConstantPoolIndex}
+ * and the plain hash map it replaces.
+ * <pre>{@code
+ * ./gradlew :parser:jmh
+ * }</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConstantPoolIndexBenchmark {
+    private static final int LOOKUPS = 4096;
+
+    @Param({"1000", "100000"})
+    int size;
+
+    // 1 = dense ids; larger strides make the index fall back to hashing
+    @Param({"1", "7"})
+    int stride;
+
+    private ConstantPoolIndex index;
+    private Long2LongOpenHashMap map;
+    private long[] ids;
+
+    @Setup
+    public void setup() {
+        index = new ConstantPoolIndex(size);
+        map = new Long2LongOpenHashMap(size);
+        for (int i = 0; i < size; i++) {
+            long id = 1 + (long) i * stride;
+            index.putOffset(id, 100 + i);
+            map.put(id, 100 + i);
+        }
+        index.compact();
+
+        Random rnd = new Random(42);
+        ids = new long[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            ids[i] = 1 + (long) rnd.nextInt(size) * stride;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public long index() {
+        long sum = 0;
+        for (long id : ids) {
+            sum += index.getOffset(id);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public long hashMap() {
+        long sum = 0;
+        for (long id : ids) {
+            sum += map.get(id);
+        }
+        return sum;
+    }
+}
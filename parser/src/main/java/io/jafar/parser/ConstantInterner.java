@@ -0,0 +1,298 @@
+package io.jafar.parser;
+
+import io.jafar.parser.internal_api.Detachable;
+import io.jafar.parser.internal_api.RecordingStream;
+import io.jafar.parser.internal_api.metadata.MetadataClass;
+import io.jafar.parser.internal_api.metadata.MetadataField;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Recording-wide interning of the resolved constant pool entries.<br>
+ * Each chunk has its own constant pools, but most of the entries (stack traces, methods, classes, threads) are the same
+ * in all chunks. The entries are keyed by a 128-bit hash of their content, where the constant pool references are
+ * replaced by the content hash of the referenced entry, so the chunk specific constant pool ids do not matter.
+ * The hash is computed from the raw entry data, without decoding the values.
+ * The entries with the same content then resolve to one canonical instance across all the chunks.
+ * The canonical instance is {@linkplain Detachable#detach() detached} from its chunk before it is published,
+ * so it does not keep the chunk parser context alive.
+ * The canonical instances are only weakly referenced, so the entries evicted from the constant pools
+ * and no longer used anywhere else can be collected.<br>
+ * Detaching resolves the whole graph of the entries reachable from the canonical instance, which is wasted work
+ * when the values are not retained past their chunk, so the interning is opt-in - it is turned on by
+ * {@code -Dio.jafar.parser.intern_constants=true}.
+ * The property is not cached, so the interning can be turned on and off at runtime for the newly opened parsers.
+ */
+public final class ConstantInterner {
+
+    private static final long MISSING = 0x5bd1e9955bd1e995L;
+
+    record ContentHash(long h1, long h2) {}
+
+    private record Key(String type, long h1, long h2) {}
+
+    private static final class Hasher {
+        private long h1 = 0x9E3779B97F4A7C15L;
+        private long h2 = 0xC2B2AE3D27D4EB4FL;
+
+        void mix(long value) {
+            h1 = Long.rotateLeft((h1 ^ value) * 0x87C37B91114253D5L, 31);
+            h2 = Long.rotateLeft((h2 + value) * 0x4CF5AD432745937FL, 33) ^ h1;
+        }
+
+        ContentHash finish() {
+            return new ContentHash(fmix(h1), fmix(h2 + h1));
+        }
+
+        private static long fmix(long k) {
+            k ^= k >>> 33;
+            k *= 0xFF51AFD7ED558CCDL;
+            k ^= k >>> 33;
+            k *= 0xC4CEB9FE1A85EC53L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+
+    /**
+     * Tracks the entries being hashed to detect reference cycles.
+     * The entries taking part in a cycle have no stable content hash and are not interned.
+     */
+    private static final class Visit {
+        // the entries on the current hashing path; the reference chains are short, so a linear scan is enough
+        private MutableConstantPool[] pools = new MutableConstantPool[8];
+        private long[] ids = new long[8];
+        private int depth;
+        private boolean cyclic;
+
+        Visit reset() {
+            depth = 0;
+            cyclic = false;
+            return this;
+        }
+
+        boolean enter(MutableConstantPool pool, long id) {
+            for (int i = 0; i < depth; i++) {
+                if (ids[i] == id && pools[i] == pool) {
+                    return false;
+                }
+            }
+            if (depth == ids.length) {
+                pools = Arrays.copyOf(pools, depth * 2);
+                ids = Arrays.copyOf(ids, depth * 2);
+            }
+            pools[depth] = pool;
+            ids[depth++] = id;
+            return true;
+        }
+
+        void exit() {
+            pools[--depth] = null;
+        }
+    }
+
+    // the hashing does not resolve any entries, so it is never re-entered on the same thread
+    private static final ThreadLocal<Visit> VISIT = ThreadLocal.withInitial(Visit::new);
+
+    private static final class CanonicalRef extends WeakReference<Object> {
+        private final Key key;
+
+        CanonicalRef(Key key, Object value, ReferenceQueue<Object> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+    }
+
+    private final ConcurrentMap<Key, CanonicalRef> entries = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Object> cleared = new ReferenceQueue<>();
+
+    /**
+     * @return a new interner or {@literal null} if the interning is disabled
+     */
+    public static ConstantInterner create() {
+        return Boolean.getBoolean("io.jafar.parser.intern_constants") ? new ConstantInterner() : null;
+    }
+
+    /**
+     * @param pool the constant pool
+     * @param id the entry id
+     * @param value the value resolved for the entry
+     * @return the canonical instance for the entry content
+     */
+    Object intern(MutableConstantPool pool, long id, Object value) {
+        if (value == null || Proxy.isProxyClass(value.getClass())) {
+            // the interpreted values are bound to their chunk for good
+            return value;
+        }
+        ContentHash hash = pool.getContentHash(id);
+        if (hash == null) {
+            Visit visit = VISIT.get().reset();
+            hash = hash(pool, id, visit);
+            if (hash == null || visit.cyclic) {
+                return value;
+            }
+        }
+        expunge();
+        Key key = new Key(pool.getType().getName(), hash.h1(), hash.h2());
+        CanonicalRef prev = entries.get(key);
+        Object canonical = prev != null ? prev.get() : null;
+        if (canonical != null) {
+            return canonical;
+        }
+        if (value instanceof Detachable detachable) {
+            // resolves the nested entries, interning them as well
+            detachable.detach();
+        }
+        CanonicalRef ref = new CanonicalRef(key, value, cleared);
+        while (true) {
+            prev = entries.putIfAbsent(key, ref);
+            if (prev == null) {
+                return value;
+            }
+            canonical = prev.get();
+            if (canonical != null) {
+                return canonical;
+            }
+            // the previous canonical instance has been collected
+            if (entries.replace(key, prev, ref)) {
+                return value;
+            }
+        }
+    }
+
+    private void expunge() {
+        CanonicalRef ref;
+        while ((ref = (CanonicalRef) cleared.poll()) != null) {
+            entries.remove(ref.key, ref);
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private static ContentHash hash(MutableConstantPool pool, long id, Visit visit) {
+        ContentHash hash = pool.getContentHash(id);
+        if (hash != null) {
+            return hash;
+        }
+        long offset = pool.getOffset(id);
+        if (offset < 0) {
+            return null;
+        }
+        if (!visit.enter(pool, id)) {
+            visit.cyclic = true;
+            return null;
+        }
+        RecordingStream stream = pool.acquireView(offset);
+        try {
+            Hasher hasher = new Hasher();
+            hashType(pool.getType(), stream, hasher, visit);
+            hash = hasher.finish();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            pool.releaseView(stream);
+            visit.exit();
+        }
+        if (!visit.cyclic) {
+            // a hash computed while a cycle was detected depends on the entry the hashing started from
+            pool.putContentHash(id, hash);
+        }
+        return hash;
+    }
+
+    private static void hashFields(MetadataClass type, RecordingStream stream, Hasher hasher, Visit visit) throws IOException {
+        for (MetadataField fld : type.getFields()) {
+            if (fld.getDimension() > 0) {
+                int count = (int) stream.readVarint();
+                hasher.mix(count);
+                for (int i = 0; i < count; i++) {
+                    hashValue(fld, stream, hasher, visit);
+                }
+            } else {
+                hashValue(fld, stream, hasher, visit);
+            }
+        }
+    }
+
+    private static void hashValue(MetadataField fld, RecordingStream stream, Hasher hasher, Visit visit) throws IOException {
+        MetadataClass type = fld.getType();
+        if (fld.hasConstantPool()) {
+            long ref = stream.readVarint();
+            MutableConstantPool pool = (MutableConstantPool) stream.getContext().getConstantPools().getConstantPool(type.getId());
+            ContentHash hash = pool != null ? hash(pool, ref, visit) : null;
+            if (hash != null) {
+                hasher.mix(hash.h1());
+                hasher.mix(hash.h2());
+            } else {
+                hasher.mix(MISSING);
+            }
+            return;
+        }
+        hashType(type, stream, hasher, visit);
+    }
+
+    private static void hashType(MetadataClass type, RecordingStream stream, Hasher hasher, Visit visit) throws IOException {
+        switch (type.getName()) {
+            case "byte", "boolean" -> hasher.mix(stream.read());
+            case "char", "short", "int", "long" -> hasher.mix(stream.readVarint());
+            case "float" -> hasher.mix(Float.floatToRawIntBits(stream.readFloat()));
+            case "double" -> hasher.mix(Double.doubleToRawLongBits(stream.readDouble()));
+            case "java.lang.String" -> hashString(type, stream, hasher, visit);
+            default -> hashFields(type, stream, hasher, visit);
+        }
+    }
+
+    /**
+     * Mixes in the encoded string data, as in {@linkplain ParsingUtils#skipUTF8(RecordingStream)}.
+     * The same string written with a different encoding gets a different hash, which only means it is not interned.
+     */
+    private static void hashString(MetadataClass type, RecordingStream stream, Hasher hasher, Visit visit) throws IOException {
+        byte encoding = stream.read();
+        hasher.mix(encoding);
+        switch (encoding) {
+            case 2 -> {
+                long ref = stream.readVarint();
+                MutableConstantPool pool = (MutableConstantPool) stream.getContext().getConstantPools().getConstantPool(type.getId());
+                ContentHash hash = pool != null ? hash(pool, ref, visit) : null;
+                if (hash != null) {
+                    hasher.mix(hash.h1());
+                    hasher.mix(hash.h2());
+                } else {
+                    hasher.mix(MISSING);
+                }
+            }
+            case 3, 5 -> {
+                int size = (int) stream.readVarint();
+                hasher.mix(size);
+                int i = 0;
+                for (; i + 8 <= size; i += 8) {
+                    hasher.mix(stream.readLong());
+                }
+                long packed = 0;
+                for (; i < size; i++) {
+                    packed = (packed << 8) | (stream.read() & 0xff);
+                }
+                hasher.mix(packed);
+            }
+            case 4 -> {
+                int size = (int) stream.readVarint();
+                hasher.mix(size);
+                for (int i = 0; i < size; i++) {
+                    hasher.mix(stream.readVarint());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package io.jafar.parser;
+
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Constant pool index, mapping the entry ids to the entry offsets and to the resolved entries.<br>
+ * The constant pool ids are usually small and dense per type. When at least half of the id range is used
+ * the index is turned into flat arrays, indexed by the id, so the lookups do not need any hashing and probing.
+ * Otherwise the index falls back to hash maps.<br>
+ * The offsets are written only while the chunk checkpoints are being read; the resolved entries are
+ * safe for concurrent access.<br>
+ * The number of the resolved entries kept in the index can be limited by a budget. When the budget is exceeded
+ * an entry is evicted using the CLOCK policy - the recently accessed entries get a second chance - and the evicted
+ * entries are decoded again from their offsets when needed.
+ */
+final class ConstantPoolIndex {
+    private static final int MAX_DENSE_RANGE = 1 << 26;
+
+    // sparse layout; also used while the offsets are being indexed
+    private Long2LongOpenHashMap offsetMap;
+    private ConcurrentMap<Long, Object> entryMap;
+
+    // dense layout
+    private long base;
+    private long[] offsets;
+    private AtomicReferenceArray<Object> entries;
+
+    private long minId = Long.MAX_VALUE;
+    private long maxId = Long.MIN_VALUE;
+    private boolean modified;
+    private final AtomicInteger entryCount = new AtomicInteger();
+
+    // the maximum number of the resolved entries; 0 means unlimited
+    private final int budget;
+    // the CLOCK ring of the resolved entry ids, guarded by 'this'
+    private long[] clock;
+    private int clockSize;
+    private int clockHand;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * The resolved entry wrapper used when the index is bounded, carrying the CLOCK reference bit.
+     */
+    private static final class Cached {
+        private final Object value;
+        private volatile boolean referenced;
+
+        Cached(Object value) {
+            this.value = value;
+        }
+    }
+
+    ConstantPoolIndex(int expectedSize) {
+        this(expectedSize, 0);
+    }
+
+    ConstantPoolIndex(int expectedSize, int budget) {
+        this.offsetMap = new Long2LongOpenHashMap(expectedSize);
+        this.entryMap = new ConcurrentHashMap<>(budget > 0 ? Math.min(expectedSize, budget) : expectedSize);
+        this.budget = Math.max(budget, 0);
+    }
+
+    void putOffset(long id, long offset) {
+        if (offsets != null) {
+            long idx = id - base;
+            if (idx >= 0 && idx < offsets.length && offsets[(int) idx] == 0) {
+                offsets[(int) idx] = offset;
+                return;
+            }
+            // the id does not fit the dense layout, switch back to the map until the next compaction
+            inflate();
+        }
+        offsetMap.put(id, offset);
+        minId = Math.min(minId, id);
+        maxId = Math.max(maxId, id);
+        modified = true;
+    }
+
+    /**
+     * Picks the index layout after a batch of offsets has been indexed.
+     */
+    void compact() {
+        if (!modified || offsetMap == null || offsetMap.isEmpty()) {
+            return;
+        }
+        modified = false;
+        // overflows for the ranges spanning more than half of the id space
+        long range = maxId - minId + 1;
+        if (range <= 0 || range > MAX_DENSE_RANGE || range > 2L * offsetMap.size()) {
+            return;
+        }
+        long[] denseOffsets = new long[(int) range];
+        for (Long2LongMap.Entry e : offsetMap.long2LongEntrySet()) {
+            denseOffsets[(int) (e.getLongKey() - minId)] = e.getLongValue();
+        }
+        AtomicReferenceArray<Object> denseEntries = new AtomicReferenceArray<>((int) range);
+        entryMap.forEach((id, value) -> denseEntries.set((int) (id - minId), value));
+
+        base = minId;
+        offsets = denseOffsets;
+        entries = denseEntries;
+        offsetMap = null;
+        entryMap = null;
+    }
+
+    /**
+     * @return {@literal true} if the index uses the flat arrays
+     */
+    boolean isDense() {
+        return offsets != null;
+    }
+
+    private void inflate() {
+        offsetMap = new Long2LongOpenHashMap(offsets.length);
+        entryMap = new ConcurrentHashMap<>();
+        for (int i = 0; i < offsets.length; i++) {
+            if (offsets[i] != 0) {
+                offsetMap.put(base + i, offsets[i]);
+            }
+            Object value = entries.get(i);
+            if (value != null) {
+                entryMap.put(base + i, value);
+            }
+        }
+        offsets = null;
+        entries = null;
+    }
+
+    /**
+     * @param id the entry id
+     * @return the entry offset or {@literal 0} if the entry is not known
+     */
+    long getOffset(long id) {
+        long[] dense = offsets;
+        if (dense != null) {
+            long idx = id - base;
+            return idx >= 0 && idx < dense.length ? dense[(int) idx] : 0;
+        }
+        return offsetMap.get(id);
+    }
+
+    /**
+     * @return the known ids and their offsets, as two parallel arrays
+     */
+    long[][] offsetTable() {
+        long[] dense = offsets;
+        if (dense != null) {
+            int count = 0;
+            for (long offset : dense) {
+                if (offset != 0) {
+                    count++;
+                }
+            }
+            long[][] table = new long[2][count];
+            int j = 0;
+            for (int i = 0; i < dense.length; i++) {
+                if (dense[i] != 0) {
+                    table[0][j] = base + i;
+                    table[1][j++] = dense[i];
+                }
+            }
+            return table;
+        }
+        long[][] table = new long[2][offsetMap.size()];
+        int j = 0;
+        for (Long2LongMap.Entry e : offsetMap.long2LongEntrySet()) {
+            table[0][j] = e.getLongKey();
+            table[1][j++] = e.getLongValue();
+        }
+        return table;
+    }
+
+    boolean containsOffset(long id) {
+        return getOffset(id) != 0;
+    }
+
+    Object getEntry(long id) {
+        Object value = rawEntry(id);
+        if (value == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        if (value instanceof Cached cached) {
+            cached.referenced = true;
+            return cached.value;
+        }
+        return value;
+    }
+
+    /**
+     * @return the previous entry or {@literal null} if the entry was stored
+     */
+    Object putEntryIfAbsent(long id, Object value) {
+        if (budget == 0) {
+            Object prev = storeEntry(id, value);
+            if (prev == null) {
+                entryCount.incrementAndGet();
+            }
+            return prev;
+        }
+        synchronized (this) {
+            Object prev = storeEntry(id, new Cached(value));
+            if (prev != null) {
+                return prev instanceof Cached cached ? cached.value : prev;
+            }
+            entryCount.incrementAndGet();
+            admit(id);
+            return null;
+        }
+    }
+
+    private void admit(long id) {
+        if (clock == null) {
+            clock = new long[budget];
+        }
+        if (clockSize < budget) {
+            clock[clockSize++] = id;
+            return;
+        }
+        while (true) {
+            long victim = clock[clockHand];
+            Object value = rawEntry(victim);
+            if (value instanceof Cached cached && cached.referenced) {
+                // second chance
+                cached.referenced = false;
+                clockHand = (clockHand + 1) % budget;
+                continue;
+            }
+            if (value != null && removeEntry(victim, value)) {
+                entryCount.decrementAndGet();
+                evictions.increment();
+            }
+            clock[clockHand] = id;
+            clockHand = (clockHand + 1) % budget;
+            return;
+        }
+    }
+
+    private Object rawEntry(long id) {
+        AtomicReferenceArray<Object> dense = entries;
+        if (dense != null) {
+            // only the ids with known offsets are ever resolved
+            return dense.get((int) (id - base));
+        }
+        return entryMap.get(id);
+    }
+
+    private Object storeEntry(long id, Object value) {
+        AtomicReferenceArray<Object> dense = entries;
+        return dense != null ? dense.compareAndExchange((int) (id - base), null, value) : entryMap.putIfAbsent(id, value);
+    }
+
+    private boolean removeEntry(long id, Object value) {
+        AtomicReferenceArray<Object> dense = entries;
+        return dense != null ? dense.compareAndSet((int) (id - base), value, null) : entryMap.remove(id, value);
+    }
+
+    int entryCount() {
+        return entryCount.get();
+    }
+
+    long hitCount() {
+        return hits.sum();
+    }
+
+    long missCount() {
+        return misses.sum();
+    }
+
+    long evictionCount() {
+        return evictions.sum();
+    }
+}
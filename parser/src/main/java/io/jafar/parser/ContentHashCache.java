@@ -0,0 +1,82 @@
+package io.jafar.parser;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+/**
+ * The content hashes of the constant pool entries, used for the recording-wide interning.<br>
+ * The number of the cached hashes can be limited by a budget. When the budget is exceeded a hash is evicted
+ * using the CLOCK policy, like the resolved entries in {@linkplain ConstantPoolIndex}, so the hashes of the entries
+ * referred to by many others - eg. the frequent methods and classes - stay cached. The evicted hashes are computed
+ * again when needed.<br>
+ * The cache is safe for concurrent access.
+ */
+final class ContentHashCache {
+    private static final class Slot {
+        private final ConstantInterner.ContentHash hash;
+        private boolean referenced;
+
+        Slot(ConstantInterner.ContentHash hash) {
+            this.hash = hash;
+        }
+    }
+
+    // all the state is guarded by 'this'
+    private final Long2ObjectOpenHashMap<Slot> hashes = new Long2ObjectOpenHashMap<>();
+    // the maximum number of the cached hashes; 0 means unlimited
+    private final int budget;
+    // the CLOCK ring of the cached ids
+    private long[] clock;
+    private int clockSize;
+    private int clockHand;
+
+    ContentHashCache(int budget) {
+        this.budget = Math.max(budget, 0);
+    }
+
+    synchronized ConstantInterner.ContentHash get(long id) {
+        Slot slot = hashes.get(id);
+        if (slot == null) {
+            return null;
+        }
+        slot.referenced = true;
+        return slot.hash;
+    }
+
+    synchronized void putIfAbsent(long id, ConstantInterner.ContentHash hash) {
+        if (hashes.containsKey(id)) {
+            return;
+        }
+        if (budget > 0) {
+            admit(id);
+        }
+        hashes.put(id, new Slot(hash));
+    }
+
+    synchronized int size() {
+        return hashes.size();
+    }
+
+    private void admit(long id) {
+        if (clock == null) {
+            clock = new long[budget];
+        }
+        if (clockSize < budget) {
+            clock[clockSize++] = id;
+            return;
+        }
+        while (true) {
+            long victim = clock[clockHand];
+            Slot slot = hashes.get(victim);
+            if (slot != null && slot.referenced) {
+                // second chance
+                slot.referenced = false;
+                clockHand = (clockHand + 1) % budget;
+                continue;
+            }
+            hashes.remove(victim);
+            clock[clockHand] = id;
+            clockHand = (clockHand + 1) % budget;
+            return;
+        }
+    }
+}
@@ -1,13 +1,22 @@
 package io.jafar.parser;
 
+import io.jafar.parser.api.BatchHandler;
+import io.jafar.parser.api.ConstantPoolStats;
+import io.jafar.parser.api.EventCursor;
+import io.jafar.parser.api.Filter;
 import io.jafar.parser.api.HandlerRegistration;
 import io.jafar.parser.api.JafarParser;
 import io.jafar.parser.api.JfrIgnore;
 import io.jafar.parser.api.JfrType;
 import io.jafar.parser.api.JFRHandler;
-import io.jafar.parser.internal_api.CheckpointEvent;
+import io.jafar.parser.api.Utf8View;
 import io.jafar.parser.internal_api.ChunkHeader;
 import io.jafar.parser.internal_api.ChunkParserListener;
+import io.jafar.parser.internal_api.ColumnBatch;
+import io.jafar.parser.internal_api.ColumnWriter;
+import io.jafar.parser.internal_api.ConstantPools;
+import io.jafar.parser.internal_api.EventCursorImpl;
+import io.jafar.parser.internal_api.EventFilter;
 import io.jafar.parser.internal_api.ParserContext;
 import io.jafar.parser.internal_api.RecordingStream;
 import io.jafar.parser.internal_api.StreamingChunkParser;
@@ -23,11 +32,16 @@ import jdk.jfr.FlightRecorder;
 import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
+import java.lang.reflect.RecordComponent;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class JafarParserImpl implements JafarParser {
 //    private record Handlers(MethodHandle ctr, MethodHandle skip) {}
@@ -46,12 +60,29 @@ public final class JafarParserImpl implements JafarParser {
                 Class<?> clz = clzRef.get();
                 if (clz != null) {
                     handlerMap.remove(clz);
+                    batchHandlers.removeIf(r -> r.type() == clz);
 
                     handlerMap.keySet().forEach(JafarParserImpl.this::addDeserializer);
                 }
             }
         }
     }
+
+    private final class CursorRegistrationImpl implements HandlerRegistration<EventCursor> {
+        private final CursorRegistration registration;
+        private final WeakReference<JafarParser> cookieRef;
+        CursorRegistrationImpl(CursorRegistration registration, JafarParser cookie) {
+            this.registration = registration;
+            this.cookieRef = new WeakReference<>(cookie);
+        }
+
+        @Override
+        public void destroy(JafarParser cookie) {
+            if (cookie != null && cookie.equals(cookieRef.get())) {
+                cursorHandlers.remove(registration);
+            }
+        }
+    }
     private final StreamingChunkParser parser;
     private final Path recording;
 
@@ -59,6 +90,42 @@ public final class JafarParserImpl implements JafarParser {
     private final Int2ObjectMap<Long2ObjectMap<Class<?>>> chunkTypeClassMap = new Int2ObjectOpenHashMap<>();
 
     private final Map<String, Class<?>> globalDeserializerMap = new HashMap<>();
+    // the handlers to call for a deserialized type, including the handlers registered for its super types
+    private final Map<Class<?>, List<JFRHandler.Impl<?>>> dispatchMap = new ConcurrentHashMap<>();
+    // the handler filters compiled for the particular metadata classes
+    private final Map<FilterKey, EventFilter> filterMap = new ConcurrentHashMap<>();
+
+    private final List<BatchRegistration> batchHandlers = new ArrayList<>();
+    private final List<CursorRegistration> cursorHandlers = new ArrayList<>();
+    // the batch and cursor state is kept per chunk, the chunks are processed concurrently
+    private final Map<Integer, ChunkState> chunkStates = new ConcurrentHashMap<>();
+    // the constant pools of the chunks processed by the last run, for the cache statistics
+    private final Map<Integer, ConstantPools> chunkConstantPools = new ConcurrentHashMap<>();
+
+    private record BatchRegistration(Class<?> type, int batchSize, BatchHandler handler, List<ColumnBatch.Column> columns) {}
+
+    private record BatchSink(BatchRegistration registration, ColumnWriter writer, ColumnBatch batch) {}
+
+    private record CursorRegistration(String typeName, JFRHandler<EventCursor> handler) {}
+
+    private static final class ChunkState {
+        private final Map<BatchRegistration, ColumnBatch> batches = new IdentityHashMap<>();
+        private final Long2ObjectMap<BatchSink[]> sinks = new Long2ObjectOpenHashMap<>();
+        private final Long2ObjectMap<CursorRegistration[]> cursorHandlers = new Long2ObjectOpenHashMap<>();
+        private EventCursorImpl cursor;
+    }
+
+    private record FilterKey(MetadataClass clz, JFRHandler.Impl<?> handler) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof FilterKey that && clz == that.clz && handler == that.handler;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(clz) * 31 + System.identityHashCode(handler);
+        }
+    }
 
     private boolean closed = false;
 
@@ -69,8 +136,32 @@ public final class JafarParserImpl implements JafarParser {
 
     @Override
     public <T> HandlerRegistration<T> handle(Class<T> clz, JFRHandler<T> handler) {
+        return handle(clz, null, handler);
+    }
+
+    @Override
+    public <T> HandlerRegistration<T> handleBatch(Class<T> clz, int batchSize, BatchHandler handler) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        addDeserializer(clz);
+        batchHandlers.add(new BatchRegistration(clz, batchSize, handler, ColumnBatch.columnsOf(clz)));
+
+        return new HandlerRegistrationImpl<>(clz, this);
+    }
+
+    @Override
+    public HandlerRegistration<EventCursor> handleCursor(String typeName, JFRHandler<EventCursor> handler) {
+        CursorRegistration registration = new CursorRegistration(typeName, handler);
+        cursorHandlers.add(registration);
+
+        return new CursorRegistrationImpl(registration, this);
+    }
+
+    @Override
+    public <T> HandlerRegistration<T> handle(Class<T> clz, Filter filter, JFRHandler<T> handler) {
         addDeserializer(clz);
-        handlerMap.computeIfAbsent(clz, k -> new ArrayList<>()).add(new JFRHandler.Impl<>(clz, handler));
+        handlerMap.computeIfAbsent(clz, k -> new ArrayList<>()).add(new JFRHandler.Impl<>(clz, filter, handler));
 
         return new HandlerRegistrationImpl<>(clz, this);
     }
@@ -79,10 +170,14 @@ public final class JafarParserImpl implements JafarParser {
         if (clz.isArray()) {
             clz = clz.getComponentType();
         }
+        if (clz == Utf8View.class) {
+            // the views are just a different representation of the string values
+            clz = String.class;
+        }
         boolean isPrimitive = clz.isPrimitive() || clz.isAssignableFrom(String.class);
 
-        if (!isPrimitive && !clz.isInterface()) {
-            throw new RuntimeException("JFR type handler must be an interface: " + clz.getName());
+        if (!isPrimitive && !clz.isInterface() && !clz.isRecord()) {
+            throw new RuntimeException("JFR type handler must be an interface or a record: " + clz.getName());
         }
         String typeName = clz.getName();
         if (!isPrimitive) {
@@ -97,10 +192,18 @@ public final class JafarParserImpl implements JafarParser {
             return;
         }
         globalDeserializerMap.put(typeName, clz);
-        if (!isPrimitive) {
-            Class<?> superClass = clz.getSuperclass();
-            if (superClass != null && superClass.isInterface()) {
-                addDeserializer(superClass);
+        if (clz.isRecord()) {
+            for (RecordComponent rc : clz.getRecordComponents()) {
+                if (rc.getAccessor().getAnnotation(JfrIgnore.class) == null) {
+                    addDeserializer(rc.getType());
+                }
+            }
+        } else if (!isPrimitive) {
+            // handler interfaces may extend other handler interfaces, eg. one for the common event fields
+            for (Class<?> superIface : clz.getInterfaces()) {
+                if (superIface.getAnnotation(JfrType.class) != null) {
+                    addDeserializer(superIface);
+                }
             }
             for (Method m : clz.getMethods()) {
                 if (m.getAnnotation(JfrIgnore.class) == null) {
@@ -112,21 +215,36 @@ public final class JafarParserImpl implements JafarParser {
 
     @Override
     public void run() throws IOException {
+        run(false, 0, 0);
+    }
+
+    @Override
+    public void run(long fromNanos, long toNanos) throws IOException {
+        run(true, fromNanos, toNanos);
+    }
+
+    private void run(boolean windowed, long fromNanos, long toNanos) throws IOException {
         if (closed) {
             throw new IOException("Parser is closed");
         }
+        dispatchMap.clear();
+        filterMap.clear();
+        chunkStates.clear();
+        chunkConstantPools.clear();
         // parse JFR and run handlers
-        parser.parse(recording, new ChunkParserListener() {
+        ChunkParserListener listener = new ChunkParserListener() {
             @Override
             public void onRecordingStart(ParserContext context) {
-                if (!globalDeserializerMap.isEmpty()) {
-                    context.setTypeFilter(t -> globalDeserializerMap.containsKey(t.getName()));
+                // the cursors may follow any constant pool reference, all the constant pools must be indexed then
+                if (!globalDeserializerMap.isEmpty() && cursorHandlers.isEmpty()) {
+                    context.setTypeFilter(t -> !t.getContext().getClassTargetTypes(t).isEmpty());
                 }
             }
 
             @Override
             public boolean onChunkStart(int chunkIndex, ChunkHeader header, ParserContext context) {
-                if (!globalDeserializerMap.isEmpty()) {
+                chunkConstantPools.put(chunkIndex, context.getConstantPools());
+                if (!globalDeserializerMap.isEmpty() || !cursorHandlers.isEmpty()) {
                     synchronized (this) {
                         context.setClassTypeMap(chunkTypeClassMap.computeIfAbsent(chunkIndex, k -> new Long2ObjectOpenHashMap<>()));
 
@@ -139,6 +257,16 @@ public final class JafarParserImpl implements JafarParser {
 
             @Override
             public boolean onChunkEnd(int chunkIndex, boolean skipped) {
+                ChunkState state = chunkStates.remove(chunkIndex);
+                if (state != null) {
+                    // the batches hold the chunk constant pool references, flush the remainders before moving on
+                    state.batches.forEach((registration, batch) -> {
+                        if (batch.size() > 0) {
+                            registration.handler().handle(batch, null);
+                            batch.clear();
+                        }
+                    });
+                }
                 return true;
             }
 
@@ -149,9 +277,11 @@ public final class JafarParserImpl implements JafarParser {
                 ParserContext context = metadata.getContext();
                 // typeClassMap must be fully initialized before trying to resolve/generate the handlers
                 for (MetadataClass clz : metadata.getClasses()) {
-                    Class<?> targetClass = context.getClassTargetType(clz.getName());
-                    if (targetClass != null) {
+                    List<Class<?>> targets = context.getClassTargetTypes(clz);
+                    if (!targets.isEmpty()) {
+                        Class<?> targetClass = targets.getFirst();
                         typeClassMap.putIfAbsent(clz.getId(), targetClass);
+                        dispatchMap.computeIfAbsent(targetClass, k -> collectHandlers(targets));
                     }
                 }
 
@@ -160,26 +290,86 @@ public final class JafarParserImpl implements JafarParser {
             }
 
             @Override
-            public boolean onCheckpoint(CheckpointEvent checkpoint) {
-                return ChunkParserListener.super.onCheckpoint(checkpoint);
+            public boolean isEventTypeNeeded(long typeId, ParserContext context) {
+                if (context.getClassTypeMap().containsKey(typeId)) {
+                    return true;
+                }
+                return !cursorHandlers.isEmpty() && getCursorHandlers(typeId, getChunkState(context), context).length > 0;
             }
 
             @Override
             public boolean onEvent(long typeId, RecordingStream stream, long payloadSize) {
+                // the typed and batch handlers move the stream, all the handlers must start from the event payload
+                long eventPos = stream.position();
                 Long2ObjectMap<Class<?>> typeClassMap = stream.getContext().getClassTypeMap();
                 Class<?> typeClz = typeClassMap.get(typeId);
                 if (typeClz != null) {
-                    if (handlerMap.containsKey(typeClz)) {
-                        MetadataClass clz = stream.getContext().getMetadataLookup().getClass(typeId);
-                        Object deserialized = clz.read(stream);
-                        for (JFRHandler.Impl<?> handler : handlerMap.get(typeClz)) {
+                    MetadataClass clz = null;
+                    List<JFRHandler.Impl<?>> handlers = dispatchMap.get(typeClz);
+                    if (handlers != null && !handlers.isEmpty()) {
+                        clz = stream.getContext().getMetadataLookup().getClass(typeId);
+                        Object deserialized = null;
+                        for (JFRHandler.Impl<?> handler : handlers) {
+                            if (handler.getFilter() != null) {
+                                MetadataClass filteredClz = clz;
+                                EventFilter filter = filterMap.computeIfAbsent(new FilterKey(clz, handler), k -> EventFilter.forType(filteredClz, handler.getFilter()));
+                                stream.position(eventPos);
+                                if (!filter.test(stream)) {
+                                    continue;
+                                }
+                            }
+                            if (deserialized == null) {
+                                // the event is deserialized only if there is at least one handler interested in it
+                                stream.position(eventPos);
+                                deserialized = clz.read(stream);
+                            }
                             handler.handle(deserialized, null);
                         }
                     }
+                    if (!batchHandlers.isEmpty()) {
+                        if (clz == null) {
+                            clz = stream.getContext().getMetadataLookup().getClass(typeId);
+                        }
+                        for (BatchSink sink : getBatchSinks(typeId, clz, stream.getContext())) {
+                            stream.position(eventPos);
+                            sink.writer().write(stream, sink.batch());
+                            if (sink.batch().isFull()) {
+                                sink.registration().handler().handle(sink.batch(), null);
+                                sink.batch().clear();
+                            }
+                        }
+                    }
+                }
+                if (!cursorHandlers.isEmpty()) {
+                    ChunkState state = getChunkState(stream.getContext());
+                    CursorRegistration[] registrations = getCursorHandlers(typeId, state, stream.getContext());
+                    if (registrations.length > 0) {
+                        if (state.cursor == null) {
+                            state.cursor = new EventCursorImpl(stream);
+                        }
+                        MetadataClass clz = stream.getContext().getMetadataLookup().getClass(typeId);
+                        for (CursorRegistration registration : registrations) {
+                            // the cursor moves the stream around, start each handler from a clean state
+                            registration.handler().handle(state.cursor.reset(clz, eventPos), null);
+                        }
+                    }
                 }
                 return true;
             };
-        });
+        };
+        if (windowed) {
+            parser.parse(recording, listener, fromNanos, toNanos);
+        } else {
+            parser.parse(recording, listener);
+        }
+    }
+
+    @Override
+    public Map<String, ConstantPoolStats> getConstantPoolStats() {
+        return ConstantPoolStats.aggregate(chunkConstantPools.values().stream()
+                .flatMap(ConstantPools::pools)
+                .filter(p -> p.getType() != null)
+                .map(p -> new ConstantPoolStats(p.getType().getName(), p.size(), p.getHitCount(), p.getMissCount(), p.getEvictionCount())));
     }
 
     @Override
@@ -190,10 +380,71 @@ public final class JafarParserImpl implements JafarParser {
             parser.close();
             chunkTypeClassMap.clear();
             handlerMap.clear();
+            dispatchMap.clear();
+            filterMap.clear();
+            batchHandlers.clear();
+            cursorHandlers.clear();
+            chunkStates.clear();
+            chunkConstantPools.clear();
             globalDeserializerMap.clear();
         }
     }
 
+    private BatchSink[] getBatchSinks(long typeId, MetadataClass clz, ParserContext context) {
+        ChunkState batches = getChunkState(context);
+        BatchSink[] sinks = batches.sinks.get(typeId);
+        if (sinks == null) {
+            List<Class<?>> targets = context.getClassTargetTypes(clz);
+            List<BatchSink> collected = new ArrayList<>();
+            for (BatchRegistration registration : batchHandlers) {
+                if (targets.stream().anyMatch(registration.type()::isAssignableFrom)) {
+                    ColumnBatch batch = batches.batches.computeIfAbsent(registration, r -> new ColumnBatch(r.columns(), r.batchSize(), context));
+                    ColumnWriter writer = ColumnWriter.forType(clz, registration.columns());
+                    writer.bind(batch);
+                    collected.add(new BatchSink(registration, writer, batch));
+                }
+            }
+            sinks = collected.toArray(BatchSink[]::new);
+            batches.sinks.put(typeId, sinks);
+        }
+        return sinks;
+    }
+
+    private ChunkState getChunkState(ParserContext context) {
+        // only the chunk processing thread is accessing the chunk state
+        return chunkStates.computeIfAbsent(context.getChunkIndex(), k -> new ChunkState());
+    }
+
+    private CursorRegistration[] getCursorHandlers(long typeId, ChunkState state, ParserContext context) {
+        CursorRegistration[] registrations = state.cursorHandlers.get(typeId);
+        if (registrations == null) {
+            // collect the names of the type and all its super types
+            Set<String> names = new HashSet<>();
+            MetadataClass clz = context.getMetadataLookup().getClass(typeId);
+            String name = clz != null ? clz.getName() : null;
+            while (name != null && names.add(name)) {
+                MetadataClass superClz = context.getMetadataLookup().getClass(name);
+                name = superClz != null ? superClz.getSuperType() : null;
+            }
+            registrations = cursorHandlers.stream().filter(r -> names.contains(r.typeName())).toArray(CursorRegistration[]::new);
+            state.cursorHandlers.put(typeId, registrations);
+        }
+        return registrations;
+    }
+
+    private List<JFRHandler.Impl<?>> collectHandlers(List<Class<?>> targets) {
+        List<JFRHandler.Impl<?>> handlers = new ArrayList<>();
+        for (Map.Entry<Class<?>, List<JFRHandler.Impl<?>>> entry : handlerMap.entrySet()) {
+            for (Class<?> target : targets) {
+                if (entry.getKey().isAssignableFrom(target)) {
+                    handlers.addAll(entry.getValue());
+                    break;
+                }
+            }
+        }
+        return handlers;
+    }
+
     private static CustomByteBuffer openJfrStream(Path jfrFile) {
         try {
             return CustomByteBuffer.map(jfrFile, Integer.MAX_VALUE);
@@ -3,38 +3,69 @@ package io.jafar.parser;
 import io.jafar.parser.internal_api.ConstantPool;
 import io.jafar.parser.internal_api.RecordingStream;
 import io.jafar.parser.internal_api.metadata.MetadataClass;
-import it.unimi.dsi.fastutil.longs.Long2LongMap;
-import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
-import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Constant pool entries are indexed by their offsets in the chunk while the checkpoints are read
+ * and deserialized on demand.<br>
+ * The resolution does not touch the position of the shared chunk stream and the resolved entries cache
+ * is safe for concurrent readers, so the events can be retained and resolved from any thread even after
+ * the chunk has been processed.<br>
+ * The number of the cached resolved entries can be limited per type by {@code -Dio.jafar.parser.cp_budget=<entries>}
+ * or {@code -Dio.jafar.parser.cp_budget.<type name>=<entries>}; the evicted entries are decoded again on demand.
+ * The same budget limits the number of the cached content hashes used for the interning.
+ */
 public final class MutableConstantPool implements ConstantPool {
-    private final Long2LongMap offsets;
-    private final Long2ObjectMap<Object> entries;
+    // the offsets are written only while indexing the chunk checkpoints, before any event is dispatched
+    private final ConstantPoolIndex index;
+    // the content hashes used for the recording-wide interning, bounded by the same budget as the resolved entries
+    private final ContentHashCache contentHashes;
 
     private final RecordingStream stream;
+    // a spare private view of the chunk data, reused by the lookups instead of duplicating the chunk stream each time
+    private final AtomicReference<RecordingStream> spareView = new AtomicReference<>();
+    private final long typeId;
     private final MetadataClass clazz;
 
     public MutableConstantPool(RecordingStream chunkStream, long typeId, int count) {
-        this.offsets = new Long2LongOpenHashMap(count);
-        this.entries = new Long2ObjectOpenHashMap<>(count);
         this.stream = chunkStream;
+        this.typeId = typeId;
         var context = chunkStream.getContext();
         clazz = context.getMetadataLookup().getClass(typeId);
+        int budget = budget(clazz);
+        this.index = new ConstantPoolIndex(count, budget);
+        this.contentHashes = new ContentHashCache(budget);
+    }
+
+    private static int budget(MetadataClass clazz) {
+        String value = clazz != null ? System.getProperty("io.jafar.parser.cp_budget." + clazz.getName()) : null;
+        if (value == null) {
+            value = System.getProperty("io.jafar.parser.cp_budget");
+        }
+        return value != null ? Integer.parseInt(value) : 0;
     }
 
     public Object get(long id) {
-        long offset = offsets.get(id);
+        long offset = index.getOffset(id);
         if (offset > 0) {
-            Object o = entries.get(id);
+            Object o = index.getEntry(id);
             if (o == null) {
-                long pos = stream.position();
+                // read through a private view of the chunk data; the chunk stream may be in use by the parser thread
+                RecordingStream view = acquireView(offset);
                 try {
-                    stream.position(offsets.get(id));
-                    o = clazz.read(stream);
-                    entries.put(id, o);
+                    o = clazz.read(view);
                 } finally {
-                    stream.position(pos);
+                    releaseView(view);
+                }
+                ConstantInterner interner = stream.getContext().getConstantInterner();
+                if (interner != null) {
+                    o = interner.intern(this, id, o);
+                }
+                // not using computeIfAbsent - the entry may recursively refer to other entries from the same pool
+                Object prev = index.putEntryIfAbsent(id, o);
+                if (prev != null) {
+                    o = prev;
                 }
             }
             return o;
@@ -42,22 +73,86 @@ public final class MutableConstantPool implements ConstantPool {
         return null;
     }
 
+    /**
+     * @param id the constant pool entry id
+     * @return the stream offset of the entry data or {@literal -1} if the entry is not known
+     */
+    public long getOffset(long id) {
+        long offset = index.getOffset(id);
+        return offset > 0 ? offset : -1;
+    }
+
+    RecordingStream acquireView(long offset) {
+        RecordingStream view = spareView.getAndSet(null);
+        if (view == null) {
+            // the spare view is in use by a concurrent or a nested lookup
+            view = stream.duplicate();
+        }
+        view.position(offset);
+        return view;
+    }
+
+    void releaseView(RecordingStream view) {
+        spareView.set(view);
+    }
+
+    ConstantInterner.ContentHash getContentHash(long id) {
+        return contentHashes.get(id);
+    }
+
+    void putContentHash(long id, ConstantInterner.ContentHash hash) {
+        contentHashes.putIfAbsent(id, hash);
+    }
+
     public boolean containsKey(long key) {
-        return offsets.containsKey(key);
+        return index.containsOffset(key);
     }
 
     public void addOffset(long id, long offset) {
-        offsets.put(id, offset);
+        index.putOffset(id, offset);
+    }
+
+    /**
+     * @return the indexed entry ids and their offsets, as two parallel arrays
+     */
+    public long[][] offsetTable() {
+        return index.offsetTable();
+    }
+
+    public long getTypeId() {
+        return typeId;
+    }
+
+    /**
+     * Called after a batch of the entries has been indexed to pick the best index layout.
+     */
+    public void compact() {
+        index.compact();
+    }
+
+    @Override
+    public long getHitCount() {
+        return index.hitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return index.missCount();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return index.evictionCount();
     }
 
     @Override
     public int size() {
-        return entries.size();
+        return index.entryCount();
     }
 
     @Override
     public boolean isEmpty() {
-        return entries.isEmpty();
+        return index.entryCount() == 0;
     }
 
     @Override
@@ -6,10 +6,13 @@ import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 public final class MutableMetadataLookup implements MetadataLookup {
     private String[] strings;
     private final Long2ObjectMap<MetadataClass> classes = new Long2ObjectOpenHashMap<>();
+    private final Map<String, MetadataClass> classesByName = new HashMap<>();
 
     @Override
     public String getString(int idx) {
@@ -21,11 +24,17 @@ public final class MutableMetadataLookup implements MetadataLookup {
         return classes.get(id);
     }
 
+    @Override
+    public MetadataClass getClass(String name) {
+        return classesByName.get(name);
+    }
+
     public MetadataClass addClass(long id, MetadataClass clazz) {
         MetadataClass rslt = classes.get(id);
         if (rslt == null) {
             rslt = clazz;
             classes.put(id, clazz);
+            classesByName.put(clazz.getName(), clazz);
         }
         return rslt;
     }
@@ -43,5 +52,6 @@ public final class MutableMetadataLookup implements MetadataLookup {
     public void clear() {
         strings = null;
         classes.clear();
+        classesByName.clear();
     }
 }
@@ -1,5 +1,6 @@
 package io.jafar.parser;
 
+import io.jafar.parser.api.Utf8View;
 import io.jafar.parser.internal_api.RecordingStream;
 
 import java.io.IOException;
@@ -37,33 +38,50 @@ public final class ParsingUtils {
         if (size == 0) {
           return "";
         }
-        byte[] content = size <= stream.getContext().byteBuffer.length ? stream.getContext().byteBuffer : new byte[size];
+        byte[] content = stream.byteBuffer(size);
         stream.read(content, 0, size);
-        return stream.getContext().utf8Parser.parse(content, size, StandardCharsets.UTF_8);
+        return stream.utf8Parser().parse(content, size, StandardCharsets.UTF_8);
       } else if (id == 4) {
         int size = (int) stream.readVarint();
         if (size == 0) {
           return "";
         }
-        char[] chars = size <= stream.getContext().charBuffer.length ? stream.getContext().charBuffer : new char[size];
+        char[] chars = stream.charBuffer(size);
         for (int i = 0; i < size; i++) {
           chars[i] = (char) stream.readVarint();
         }
-        return stream.getContext().charParser.parse(chars, size);
+        return stream.charParser().parse(chars, size);
       } else if (id == 5) {
         // LATIN1
         int size = (int) stream.readVarint();
         if (size == 0) {
           return "";
         }
-        byte[] content = size <= stream.getContext().byteBuffer.length ? stream.getContext().byteBuffer : new byte[size];
+        byte[] content = stream.byteBuffer(size);
         stream.read(content, 0, size);
-        return stream.getContext().utf8Parser.parse(content, size, StandardCharsets.ISO_8859_1);
+        return stream.utf8Parser().parse(content, size, StandardCharsets.ISO_8859_1);
       } else {
         throw new IOException("Unexpected string constant id: " + id);
       }
     }
 
+    /**
+     * Reads the string value as a view over the recording data.<br>
+     * The UTF-8 and LATIN1 encoded data is not copied, only skipped over; the other encodings are decoded eagerly.
+     */
+    public static Utf8View readUTF8View(RecordingStream stream) throws IOException {
+      byte id = stream.read();
+      if (id == 3 || id == 5) {
+        int size = (int) stream.readVarint();
+        Utf8View view = Utf8View.of(stream, stream.position(), size, id == 5);
+        stream.skip(size);
+        return view;
+      }
+      // put the id back and let the regular decoding deal with the rest
+      stream.position(stream.position() - 1);
+      return Utf8View.of(readUTF8(stream));
+    }
+
   public static void skipUTF8(RecordingStream stream) throws IOException {
     byte id = stream.read();
     switch (id) {
@@ -0,0 +1,15 @@
+package io.jafar.parser.api;
+
+/**
+ * Receives the events in batches of columns instead of one object per event.
+ */
+@FunctionalInterface
+public interface BatchHandler {
+    /**
+     * Called for each full batch and for the remaining events at the end of each chunk.<br>
+     * The batch buffers are reused and their content must not be retained after the call returns.
+     * @param batch the event batch
+     * @param ctl the control object
+     */
+    void handle(EventBatch batch, Control ctl);
+}
@@ -0,0 +1,48 @@
+package io.jafar.parser.api;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The chunk header layout and the raw copying shared by {@linkplain JfrChunks} and {@linkplain JfrRewriter}.
+ */
+final class ChunkFiles {
+    static final int HEADER_SIZE = 68;
+    static final int SIZE_OFFSET = 8;
+    static final int CP_OFFSET_OFFSET = 16;
+    static final int META_OFFSET_OFFSET = 24;
+    static final int START_NANOS_OFFSET = 32;
+    static final int DURATION_OFFSET = 40;
+
+    private ChunkFiles() {}
+
+    /**
+     * Copies the given range of the input to the output, without passing the data through the heap.
+     */
+    static void transfer(FileChannel in, long position, long length, FileChannel out) throws IOException {
+        while (length > 0) {
+            long transferred = in.transferTo(position, length, out);
+            if (transferred <= 0) {
+                throw new IOException("Unexpected end of the recording at " + position);
+            }
+            position += transferred;
+            length -= transferred;
+        }
+    }
+
+    /**
+     * Reads from the given position until the buffer is full or the end of the input is reached.
+     */
+    static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining() && in.read(buffer, position + buffer.position()) > 0) {
+            // keep reading
+        }
+    }
+
+    static void writeFully(ByteBuffer buffer, FileChannel out) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+}
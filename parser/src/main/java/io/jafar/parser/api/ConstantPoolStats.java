@@ -0,0 +1,28 @@
+package io.jafar.parser.api;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Constant pool cache statistics for one constant pool type, aggregated over all the chunks.
+ * @param type the constant pool type name
+ * @param cached the number of currently cached resolved entries
+ * @param hits the number of lookups served from the cache
+ * @param misses the number of lookups which had to decode the entry
+ * @param evictions the number of entries evicted because of the cache budget
+ */
+public record ConstantPoolStats(String type, long cached, long hits, long misses, long evictions) {
+    /**
+     * @param stats the per-chunk statistics
+     * @return the statistics aggregated by the type name
+     */
+    public static Map<String, ConstantPoolStats> aggregate(Stream<ConstantPoolStats> stats) {
+        return stats.collect(Collectors.toMap(ConstantPoolStats::type, s -> s, ConstantPoolStats::merge, TreeMap::new));
+    }
+
+    private ConstantPoolStats merge(ConstantPoolStats other) {
+        return new ConstantPoolStats(type, cached + other.cached, hits + other.hits, misses + other.misses, evictions + other.evictions);
+    }
+}
@@ -0,0 +1,29 @@
+package io.jafar.parser.api;
+
+import java.util.List;
+
+/**
+ * A batch of events stored in columns.<br>
+ * The columns correspond to the methods of the batch handler type - numeric and boolean values are stored
+ * in {@code long[]} columns, floating point values in {@code double[]} columns and the fields stored in the
+ * constant pool are represented by their constant pool references. The values of fields which are not present
+ * in the particular event type are zeroed.
+ * The column arrays may be longer than the batch; only the first {@linkplain #size()} elements are valid.
+ */
+public interface EventBatch {
+    int size();
+
+    List<String> columns();
+
+    long[] longs(String column);
+
+    double[] doubles(String column);
+
+    /**
+     * Resolves the constant pool reference stored in the given column.
+     * @param column the column name
+     * @param row the row index
+     * @return the resolved value or {@literal null}
+     */
+    Object resolve(String column, int row);
+}
@@ -0,0 +1,54 @@
+package io.jafar.parser.api;
+
+import java.util.List;
+
+/**
+ * Untyped view of an event or a nested value, not requiring any handler interface.<br>
+ * The values are read lazily, straight from the recording data, when they are accessed.
+ * The constant pool references are resolved transparently.
+ * A cursor is valid only during the handler invocation and must not be retained.
+ */
+public interface EventCursor {
+    /**
+     * @return the JFR type name
+     */
+    String getType();
+
+    /**
+     * @return the field names, in the order of the serialized form
+     */
+    List<String> getFields();
+
+    boolean hasField(String field);
+
+    long getLong(String field);
+
+    double getDouble(String field);
+
+    boolean getBoolean(String field);
+
+    String getString(String field);
+
+    /**
+     * @param field the field name
+     * @return the cursor over the nested value or {@literal null} if the value is not available
+     */
+    EventCursor cursor(String field);
+
+    /**
+     * @param field the array field name
+     * @return the number of array elements
+     */
+    int getLength(String field);
+
+    long getLong(String field, int index);
+
+    String getString(String field, int index);
+
+    /**
+     * @param field the array field name
+     * @param index the element index
+     * @return the cursor over the array element or {@literal null} if the value is not available
+     */
+    EventCursor cursor(String field, int index);
+}
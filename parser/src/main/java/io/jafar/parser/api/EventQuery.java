@@ -0,0 +1,705 @@
+package io.jafar.parser.api;
+
+import io.jafar.parser.MutableConstantPool;
+import io.jafar.parser.internal_api.ChunkHeader;
+import io.jafar.parser.internal_api.ChunkParserListener;
+import io.jafar.parser.internal_api.ConstantPools;
+import io.jafar.parser.internal_api.EventCursorImpl;
+import io.jafar.parser.internal_api.EventFilter;
+import io.jafar.parser.internal_api.ParserContext;
+import io.jafar.parser.internal_api.RecordingStream;
+import io.jafar.parser.internal_api.StreamingChunkParser;
+import io.jafar.parser.internal_api.metadata.MetadataClass;
+import io.jafar.parser.internal_api.metadata.MetadataEvent;
+import io.jafar.parser.internal_api.metadata.MetadataField;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Declarative filter/group-by/aggregate query over the events of one type.<br>
+ * The events are not deserialized - the {@linkplain Filter filter} is compiled for each event type and only the fields
+ * used by the grouping keys and the aggregates are read, straight from the event data. The keys resolved through
+ * the constant pools, like the thread name or the top frame, are grouped by the raw constant pool references first
+ * and resolved only once per distinct reference and chunk.<br>
+ * The chunks are aggregated in parallel, each into its own partial result, and the partial results are merged
+ * when the recording is done.
+ * <pre>{@code
+ * List<EventQuery.Group> groups = EventQuery.from("jdk.ObjectAllocationSample")
+ *         .where(Filter.field("weight").gt(1024))
+ *         .groupBy(EventQuery.Key.field("eventThread.javaName"), EventQuery.Key.topFrame())
+ *         .aggregate(EventQuery.Aggregate.sum("weight"), EventQuery.Aggregate.histogram("weight"))
+ *         .run(Paths.get("recording.jfr"));
+ * }</pre>
+ */
+public final class EventQuery {
+    /**
+     * Grouping key.
+     */
+    public sealed interface Key permits Key.Field, Key.TopFrame, Key.StackTrace {
+        /**
+         * @param path the dot separated path of a primitive or {@linkplain String} value, eg. {@code eventThread.javaName}
+         */
+        record Field(String path) implements Key {}
+
+        /**
+         * The top frame of the event stack trace, {@code package.Class.method}.
+         */
+        record TopFrame() implements Key {}
+
+        /**
+         * The event stack trace in the collapsed form - the frames, the root frame first, separated by {@code ;}.
+         */
+        record StackTrace() implements Key {}
+
+        /**
+         * @param path the dot separated path of a primitive or {@linkplain String} value; the nested values may be
+         *             referenced through the constant pools
+         * @return the key
+         */
+        static Key field(String path) {
+            return new Field(path);
+        }
+
+        static Key topFrame() {
+            return new TopFrame();
+        }
+
+        static Key stackTrace() {
+            return new StackTrace();
+        }
+    }
+
+    /**
+     * Aggregate of a numeric event field. The raw values are aggregated - ticks for the timespans.<br>
+     * The number of the events in a group is always available as {@linkplain Group#count()}.
+     */
+    public record Aggregate(Kind kind, String field) {
+        public enum Kind { SUM, MIN, MAX, HISTOGRAM }
+
+        public static Aggregate sum(String field) {
+            return new Aggregate(Kind.SUM, field);
+        }
+
+        public static Aggregate min(String field) {
+            return new Aggregate(Kind.MIN, field);
+        }
+
+        public static Aggregate max(String field) {
+            return new Aggregate(Kind.MAX, field);
+        }
+
+        /**
+         * @param field the field name; the floating point values are truncated
+         * @return the {@linkplain LogLinearHistogram} aggregate
+         */
+        public static Aggregate histogram(String field) {
+            return new Aggregate(Kind.HISTOGRAM, field);
+        }
+    }
+
+    /**
+     * One query result row.
+     * @param key the key values, in the order of the query keys; {@literal null} for a missing value
+     * @param count the number of the events in the group
+     * @param values the aggregate values, in the order of the query aggregates - a {@linkplain Long} or a {@linkplain Double}
+     *               depending on the field type, or a {@linkplain LogLinearHistogram}; {@literal null} if no event
+     *               in the group has the field
+     */
+    public record Group(List<Object> key, long count, List<Object> values) {}
+
+    private static final int LONG_VALUE = 0;
+    private static final int DOUBLE_VALUE = 1;
+
+    private final String eventType;
+    private final Filter filter;
+    private final List<Key> keys;
+    private final List<Aggregate> aggregates;
+
+    private EventQuery(String eventType, Filter filter, List<Key> keys, List<Aggregate> aggregates) {
+        this.eventType = eventType;
+        this.filter = filter;
+        this.keys = keys;
+        this.aggregates = aggregates;
+    }
+
+    /**
+     * @param eventType the event type name
+     * @return the query counting all the events of the given type
+     */
+    public static EventQuery from(String eventType) {
+        return new EventQuery(eventType, null, List.of(), List.of());
+    }
+
+    /**
+     * @param filter the event filter; combined with the already specified filter, if any
+     * @return the new query
+     */
+    public EventQuery where(Filter filter) {
+        return new EventQuery(eventType, this.filter != null ? this.filter.and(filter) : filter, keys, aggregates);
+    }
+
+    /**
+     * @param keys the grouping keys, replacing the already specified ones
+     * @return the new query
+     */
+    public EventQuery groupBy(Key... keys) {
+        return new EventQuery(eventType, filter, List.of(keys), aggregates);
+    }
+
+    /**
+     * @param aggregates the aggregates, replacing the already specified ones
+     * @return the new query
+     */
+    public EventQuery aggregate(Aggregate... aggregates) {
+        return new EventQuery(eventType, filter, keys, List.of(aggregates));
+    }
+
+    List<Aggregate> getAggregates() {
+        return aggregates;
+    }
+
+    /**
+     * Runs the query.
+     * @param recording the recording path
+     * @return the groups, the largest first
+     * @throws IOException if the recording can not be read
+     */
+    public List<Group> run(Path recording) throws IOException {
+        try (StreamingChunkParser parser = new StreamingChunkParser()) {
+            return run(recording, parser);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Runs the query with the given parser, eg. one using a shared executor.
+     */
+    List<Group> run(Path recording, StreamingChunkParser parser) throws IOException {
+        Map<Integer, ChunkQuery> chunks = new ConcurrentHashMap<>();
+        Queue<Map<List<Object>, Partial>> partials = new ConcurrentLinkedQueue<>();
+        // the filters are generated once per distinct event type metadata
+        Map<MetadataClass, EventFilter> filters = new ConcurrentHashMap<>();
+        Map<List<Object>, Partial> merged = new HashMap<>();
+        parser.parse(recording, new ChunkParserListener() {
+            @Override
+            public void onRecordingStart(ParserContext context) {
+                if (keys.isEmpty()) {
+                    context.setTypeFilter(t -> false);
+                }
+            }
+
+            @Override
+            public boolean onChunkStart(int chunkIndex, ChunkHeader header, ParserContext context) {
+                chunks.put(chunkIndex, new ChunkQuery(context));
+                return true;
+            }
+
+            @Override
+            public boolean onMetadata(MetadataEvent metadata) {
+                // the constant pools can be indexed only with the deserializers (skippers) bound
+                metadata.getContext().bindDeserializers();
+                return chunks.get(metadata.getContext().getChunkIndex()).onMetadata(metadata, filters);
+            }
+
+            @Override
+            public boolean needsConstantPools() {
+                return !keys.isEmpty();
+            }
+
+            @Override
+            public boolean isEventTypeNeeded(long typeId, ParserContext context) {
+                return chunks.get(context.getChunkIndex()).eventTypeId == typeId;
+            }
+
+            @Override
+            public boolean onEvent(long typeId, RecordingStream stream, long payloadSize) {
+                chunks.get(stream.getContext().getChunkIndex()).onEvent(typeId, stream);
+                return true;
+            }
+
+            @Override
+            public boolean onChunkEnd(int chunkIndex, boolean skipped) {
+                // the keys must be resolved while the chunk data is still available
+                ChunkQuery chunk = chunks.remove(chunkIndex);
+                if (!skipped) {
+                    partials.add(chunk.resolve());
+                }
+                return true;
+            }
+
+            @Override
+            public void onRecordingEnd(ParserContext context) {
+                for (Map<List<Object>, Partial> partial : partials) {
+                    partial.forEach((key, p) -> merged.merge(key, p, Partial::merge));
+                }
+            }
+        });
+        List<Group> groups = new ArrayList<>(merged.size());
+        merged.forEach((key, p) -> groups.add(p.toGroup(key)));
+        groups.sort((g1, g2) -> Long.compare(g2.count(), g1.count()));
+        return Collections.unmodifiableList(groups);
+    }
+
+    /**
+     * The partial aggregates of one group.
+     */
+    private static final class Partial {
+        final Aggregate.Kind[] kinds;
+        long count;
+        final long[] seen;
+        final boolean[] floating;
+        final long[] longs;
+        final double[] doubles;
+        final LogLinearHistogram[] histograms;
+
+        Partial(Aggregate.Kind[] kinds) {
+            int size = kinds.length;
+            this.kinds = kinds;
+            seen = new long[size];
+            floating = new boolean[size];
+            longs = new long[size];
+            doubles = new double[size];
+            histograms = new LogLinearHistogram[size];
+            for (int i = 0; i < size; i++) {
+                switch (kinds[i]) {
+                    case MIN -> {
+                        longs[i] = Long.MAX_VALUE;
+                        doubles[i] = Double.POSITIVE_INFINITY;
+                    }
+                    case MAX -> {
+                        longs[i] = Long.MIN_VALUE;
+                        doubles[i] = Double.NEGATIVE_INFINITY;
+                    }
+                    case HISTOGRAM -> histograms[i] = new LogLinearHistogram();
+                    default -> {}
+                }
+            }
+        }
+
+        void add(int idx, long value) {
+            seen[idx]++;
+            switch (kinds[idx]) {
+                case SUM -> longs[idx] += value;
+                case MIN -> longs[idx] = Math.min(longs[idx], value);
+                case MAX -> longs[idx] = Math.max(longs[idx], value);
+                case HISTOGRAM -> histograms[idx].record(value);
+            }
+        }
+
+        void add(int idx, double value) {
+            seen[idx]++;
+            floating[idx] = true;
+            switch (kinds[idx]) {
+                case SUM -> doubles[idx] += value;
+                case MIN -> doubles[idx] = Math.min(doubles[idx], value);
+                case MAX -> doubles[idx] = Math.max(doubles[idx], value);
+                case HISTOGRAM -> histograms[idx].record((long) value);
+            }
+        }
+
+        Partial merge(Partial other) {
+            count += other.count;
+            for (int i = 0; i < seen.length; i++) {
+                seen[i] += other.seen[i];
+                floating[i] |= other.floating[i];
+                switch (kinds[i]) {
+                    case SUM -> {
+                        longs[i] += other.longs[i];
+                        doubles[i] += other.doubles[i];
+                    }
+                    case MIN -> {
+                        longs[i] = Math.min(longs[i], other.longs[i]);
+                        doubles[i] = Math.min(doubles[i], other.doubles[i]);
+                    }
+                    case MAX -> {
+                        longs[i] = Math.max(longs[i], other.longs[i]);
+                        doubles[i] = Math.max(doubles[i], other.doubles[i]);
+                    }
+                    case HISTOGRAM -> histograms[i].merge(other.histograms[i]);
+                }
+            }
+            return this;
+        }
+
+        Group toGroup(List<Object> key) {
+            List<Object> values = new ArrayList<>(seen.length);
+            for (int i = 0; i < seen.length; i++) {
+                if (seen[i] == 0) {
+                    values.add(null);
+                } else if (histograms[i] != null) {
+                    values.add(histograms[i]);
+                } else if (floating[i]) {
+                    // the values of a field changing its type between the chunks are combined as doubles
+                    values.add(switch (kinds[i]) {
+                        case MIN -> Math.min(doubles[i], longs[i]);
+                        case MAX -> Math.max(doubles[i], longs[i]);
+                        default -> doubles[i] + longs[i];
+                    });
+                } else {
+                    values.add(longs[i]);
+                }
+            }
+            return new Group(Collections.unmodifiableList(key), count, Collections.unmodifiableList(values));
+        }
+    }
+
+    /**
+     * How a key value is read from the event data, for one event type.
+     */
+    private enum KeyKind {
+        /** the key is not present in the event type */
+        MISSING,
+        /** an integral or boolean event field */
+        LONG,
+        /** a floating point event field */
+        DOUBLE,
+        /** a value nested in a constant pool entry, grouped by the raw reference */
+        REFERENCE,
+        /** the top frame of the stack trace, grouped by the raw stack trace reference */
+        TOP_FRAME,
+        /** the whole stack trace, grouped by the raw stack trace reference */
+        STACK_TRACE,
+        /** any other value, read and interned per event */
+        VALUE
+    }
+
+    /**
+     * @param path the value path; for {@linkplain KeyKind#REFERENCE} the path within the referenced value
+     * @param type the referenced constant pool type, if any
+     * @param leaf the leaf value type name
+     */
+    private record KeyReader(KeyKind kind, String field, String[] path, MetadataClass type, String leaf) {
+        static KeyReader of(MetadataClass eventClass, Key key) {
+            if (key instanceof Key.TopFrame || key instanceof Key.StackTrace) {
+                MetadataField fld = findField(eventClass, "stackTrace");
+                KeyKind kind = key instanceof Key.TopFrame ? KeyKind.TOP_FRAME : KeyKind.STACK_TRACE;
+                return fld != null && fld.hasConstantPool() && fld.getDimension() <= 0
+                        ? new KeyReader(kind, fld.getName(), null, fld.getType(), null)
+                        : new KeyReader(KeyKind.MISSING, null, null, null, null);
+            }
+            String[] path = ((Key.Field) key).path().split("\\.");
+            MetadataClass type = eventClass;
+            MetadataField first = null;
+            String leaf = null;
+            for (int i = 0; i < path.length; i++) {
+                MetadataField fld = findField(type, path[i]);
+                if (fld == null) {
+                    return new KeyReader(KeyKind.MISSING, null, null, null, null);
+                }
+                if (fld.getDimension() > 0) {
+                    throw new IllegalArgumentException("Array field in the key: " + type.getName() + "." + path[i]);
+                }
+                first = first == null ? fld : first;
+                MetadataClass unwrapped = fld.getType();
+                while (unwrapped.isSimpleType()) {
+                    unwrapped = unwrapped.getFields().getFirst().getType();
+                }
+                if (i < path.length - 1) {
+                    if (fld.getType().isPrimitive()) {
+                        throw new IllegalArgumentException("Not a nested value: " + type.getName() + "." + path[i]);
+                    }
+                    type = fld.getType();
+                } else {
+                    if (!unwrapped.isPrimitive()) {
+                        throw new IllegalArgumentException("Not a primitive or String value: " + type.getName() + "." + path[i]);
+                    }
+                    leaf = unwrapped.getName();
+                }
+            }
+            if (path.length > 1 && first.hasConstantPool()) {
+                return new KeyReader(KeyKind.REFERENCE, path[0], Arrays.copyOfRange(path, 1, path.length), first.getType(), leaf);
+            }
+            if (path.length == 1 && first.hasConstantPool() && first.getType().isSimpleType()) {
+                // eg. jdk.types.ThreadState, the value is the only field of the referenced type
+                return new KeyReader(KeyKind.REFERENCE, path[0], new String[]{first.getType().getFields().getFirst().getName()}, first.getType(), leaf);
+            }
+            if (path.length == 1 && !first.hasConstantPool()) {
+                switch (leaf) {
+                    case "float", "double" -> {
+                        return new KeyReader(KeyKind.DOUBLE, path[0], path, null, leaf);
+                    }
+                    case "java.lang.String" -> {}
+                    default -> {
+                        return new KeyReader(KeyKind.LONG, path[0], path, null, leaf);
+                    }
+                }
+            }
+            return new KeyReader(KeyKind.VALUE, path[0], path, null, leaf);
+        }
+
+        private static MetadataField findField(MetadataClass type, String name) {
+            for (MetadataField fld : type.getFields()) {
+                if (fld.getName().equals(name)) {
+                    return fld;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Reads the value at the path.
+         * @param cursor the cursor over the value the path starts at
+         */
+        Object read(EventCursor cursor) {
+            for (int i = 0; i < path.length - 1 && cursor != null; i++) {
+                cursor = cursor.cursor(path[i]);
+            }
+            if (cursor == null) {
+                return null;
+            }
+            String name = path[path.length - 1];
+            return switch (leaf) {
+                case "java.lang.String" -> cursor.getString(name);
+                case "float", "double" -> cursor.getDouble(name);
+                case "boolean" -> cursor.getBoolean(name);
+                default -> cursor.getLong(name);
+            };
+        }
+    }
+
+    // the raw key values of a group within one chunk
+    private record RawKey(long[] values) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof RawKey that && Arrays.equals(values, that.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(values);
+        }
+    }
+
+    // accessed only by the thread parsing the chunk
+    private final class ChunkQuery {
+        private final ParserContext context;
+        private long eventTypeId = -1;
+        private MetadataClass eventClass;
+        private EventFilter eventFilter;
+        private KeyReader[] keyReaders;
+        private Aggregate.Kind[] kinds;
+        // -1 if the aggregated field is not present in the event type
+        private int[] valueKinds;
+
+        // with a single key the groups are kept by the raw value directly
+        private final Long2ObjectMap<Partial> singleKeyGroups = new Long2ObjectOpenHashMap<>();
+        private final Map<RawKey, Partial> groups = new HashMap<>();
+        // the values of the VALUE keys, the raw key value is the index
+        private final Object2IntOpenHashMap<Object> valueIds = new Object2IntOpenHashMap<>();
+        private final List<Object> values = new ArrayList<>();
+        // method id -> frame name
+        private final Long2ObjectMap<String> methods = new Long2ObjectOpenHashMap<>();
+        private final long[] rawKey;
+        private EventCursorImpl cursor;
+
+        ChunkQuery(ParserContext context) {
+            this.context = context;
+            this.rawKey = new long[keys.size()];
+            valueIds.defaultReturnValue(-1);
+        }
+
+        boolean onMetadata(MetadataEvent metadata, Map<MetadataClass, EventFilter> filters) {
+            for (MetadataClass clz : metadata.getClasses()) {
+                if (clz.getName().equals(eventType)) {
+                    eventTypeId = clz.getId();
+                    eventClass = clz;
+                }
+            }
+            if (eventClass == null) {
+                // nothing to query in this chunk
+                return false;
+            }
+            if (filter != null) {
+                eventFilter = filters.computeIfAbsent(eventClass, clz -> EventFilter.forType(clz, filter));
+            }
+            keyReaders = new KeyReader[keys.size()];
+            for (int i = 0; i < keyReaders.length; i++) {
+                keyReaders[i] = KeyReader.of(eventClass, keys.get(i));
+            }
+            kinds = new Aggregate.Kind[aggregates.size()];
+            valueKinds = new int[aggregates.size()];
+            for (int i = 0; i < kinds.length; i++) {
+                Aggregate aggregate = aggregates.get(i);
+                kinds[i] = aggregate.kind();
+                MetadataField fld = KeyReader.findField(eventClass, aggregate.field());
+                MetadataClass type = fld != null ? fld.getType() : null;
+                while (type != null && type.isSimpleType()) {
+                    type = type.getFields().getFirst().getType();
+                }
+                if (type == null || fld.getDimension() > 0) {
+                    valueKinds[i] = -1;
+                    continue;
+                }
+                valueKinds[i] = switch (type.getName()) {
+                    case "float", "double" -> DOUBLE_VALUE;
+                    case "byte", "boolean", "char", "short", "int", "long" -> LONG_VALUE;
+                    default -> throw new IllegalArgumentException("Not a numeric field: " + eventType + "." + aggregate.field());
+                };
+            }
+            return true;
+        }
+
+        void onEvent(long typeId, RecordingStream stream) {
+            if (typeId != eventTypeId) {
+                return;
+            }
+            long eventPos = stream.position();
+            if (eventFilter != null && !eventFilter.test(stream)) {
+                return;
+            }
+            if (cursor == null) {
+                cursor = new EventCursorImpl(stream);
+            }
+            cursor.reset(eventClass, eventPos);
+            for (int i = 0; i < keyReaders.length; i++) {
+                KeyReader reader = keyReaders[i];
+                rawKey[i] = switch (reader.kind()) {
+                    case MISSING -> 0;
+                    case LONG -> cursor.getLong(reader.field());
+                    case DOUBLE -> Double.doubleToRawLongBits(cursor.getDouble(reader.field()));
+                    case REFERENCE, TOP_FRAME, STACK_TRACE -> cursor.getReference(reader.field());
+                    case VALUE -> valueId(reader.read(cursor));
+                };
+            }
+            Partial group = group();
+            group.count++;
+            for (int i = 0; i < kinds.length; i++) {
+                switch (valueKinds[i]) {
+                    case LONG_VALUE -> group.add(i, cursor.getLong(aggregates.get(i).field()));
+                    case DOUBLE_VALUE -> group.add(i, cursor.getDouble(aggregates.get(i).field()));
+                    default -> {}
+                }
+            }
+        }
+
+        private long valueId(Object value) {
+            int id = valueIds.getInt(value);
+            if (id == -1) {
+                id = values.size();
+                values.add(value);
+                valueIds.put(value, id);
+            }
+            return id;
+        }
+
+        private Partial group() {
+            Partial group;
+            if (rawKey.length <= 1) {
+                long key = rawKey.length == 1 ? rawKey[0] : 0;
+                group = singleKeyGroups.get(key);
+                if (group == null) {
+                    group = new Partial(kinds);
+                    singleKeyGroups.put(key, group);
+                }
+            } else {
+                RawKey key = new RawKey(rawKey);
+                group = groups.get(key);
+                if (group == null) {
+                    group = new Partial(kinds);
+                    groups.put(new RawKey(rawKey.clone()), group);
+                }
+            }
+            return group;
+        }
+
+        /**
+         * @return the groups of this chunk, keyed by the resolved key values
+         */
+        Map<List<Object>, Partial> resolve() {
+            Map<List<Object>, Partial> result = new HashMap<>();
+            List<Long2ObjectMap<Object>> resolved = new ArrayList<>(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                resolved.add(new Long2ObjectOpenHashMap<>());
+            }
+            if (rawKey.length <= 1) {
+                for (Long2ObjectMap.Entry<Partial> entry : singleKeyGroups.long2ObjectEntrySet()) {
+                    if (rawKey.length == 1) {
+                        rawKey[0] = entry.getLongKey();
+                    }
+                    addResolved(result, resolved, rawKey, entry.getValue());
+                }
+            } else {
+                groups.forEach((key, group) -> addResolved(result, resolved, key.values(), group));
+            }
+            return result;
+        }
+
+        private void addResolved(Map<List<Object>, Partial> result, List<Long2ObjectMap<Object>> resolved, long[] raw, Partial group) {
+            List<Object> key = new ArrayList<>(keyReaders.length);
+            for (int i = 0; i < keyReaders.length; i++) {
+                // the distinct raw values are resolved only once
+                Long2ObjectMap<Object> cache = resolved.get(i);
+                if (!cache.containsKey(raw[i])) {
+                    cache.put(raw[i], resolveKey(keyReaders[i], raw[i]));
+                }
+                key.add(cache.get(raw[i]));
+            }
+            // the distinct raw values may resolve to the same key, eg. the threads of the same name
+            result.merge(key, group, Partial::merge);
+        }
+
+        private Object resolveKey(KeyReader reader, long raw) {
+            return switch (reader.kind()) {
+                case MISSING -> null;
+                case LONG -> reader.leaf().equals("boolean") ? (Object) (raw != 0) : (Object) raw;
+                case DOUBLE -> Double.longBitsToDouble(raw);
+                case VALUE -> values.get((int) raw);
+                case REFERENCE -> {
+                    long offset = constantOffset(reader.type(), raw);
+                    yield offset >= 0 ? reader.read(cursor.reset(reader.type(), offset)) : null;
+                }
+                case TOP_FRAME, STACK_TRACE -> {
+                    long offset = constantOffset(reader.type(), raw);
+                    if (offset < 0) {
+                        yield null;
+                    }
+                    cursor.reset(reader.type(), offset);
+                    if (cursor.getLength("frames") == 0) {
+                        yield null;
+                    }
+                    if (reader.kind() == KeyKind.TOP_FRAME) {
+                        yield frame(cursor.cursor("frames", 0));
+                    }
+                    // the frames are stored the top frame first
+                    List<String> frames = new ArrayList<>(cursor.getLength("frames"));
+                    cursor.forEach("frames", frame -> frames.add(frame(frame)));
+                    Collections.reverse(frames);
+                    yield String.join(";", frames);
+                }
+            };
+        }
+
+        private String frame(EventCursor frame) {
+            long methodId = frame != null && frame.hasField("method") ? ((EventCursorImpl) frame).getReference("method") : -1;
+            String name = methods.get(methodId);
+            if (name == null) {
+                name = StackTraceAggregator.methodName(methodId != -1 ? frame.cursor("method") : null);
+                methods.put(methodId, name);
+            }
+            return name;
+        }
+
+        private long constantOffset(MetadataClass type, long ref) {
+            ConstantPools constantPools = context.getConstantPools();
+            MutableConstantPool pool = constantPools.hasConstantPool(type.getId())
+                    ? (MutableConstantPool) constantPools.getConstantPool(type.getId()) : null;
+            return pool != null ? pool.getOffset(ref) : -1;
+        }
+    }
+}
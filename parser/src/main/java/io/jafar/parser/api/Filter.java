@@ -0,0 +1,108 @@
+package io.jafar.parser.api;
+
+/**
+ * Declarative event filter.<br>
+ * The filter is compiled for each event type and evaluated on the raw event data - only the fields used by the filter
+ * are decoded and the events not matching the filter are skipped without being deserialized at all.
+ * Only the fields of primitive and {@linkplain String} types, not using the constant pool, can be used in a filter.
+ * A comparison on a field which is not present in the event type never matches.
+ * <pre>{@code
+ * parser.handle(MyEvent.class, Filter.field("duration").gt(10_000_000), (event, ctl) -> {...});
+ * }</pre>
+ */
+public sealed interface Filter permits Filter.Comparison, Filter.And, Filter.Or, Filter.Not {
+    enum Op { EQ, NE, LT, LE, GT, GE }
+
+    record Comparison(String field, Op op, Object value) implements Filter {}
+    record And(Filter left, Filter right) implements Filter {}
+    record Or(Filter left, Filter right) implements Filter {}
+    record Not(Filter filter) implements Filter {}
+
+    final class Field {
+        private final String name;
+
+        private Field(String name) {
+            this.name = name;
+        }
+
+        public Filter eq(long value) {
+            return new Comparison(name, Op.EQ, value);
+        }
+
+        public Filter ne(long value) {
+            return new Comparison(name, Op.NE, value);
+        }
+
+        public Filter lt(long value) {
+            return new Comparison(name, Op.LT, value);
+        }
+
+        public Filter le(long value) {
+            return new Comparison(name, Op.LE, value);
+        }
+
+        public Filter gt(long value) {
+            return new Comparison(name, Op.GT, value);
+        }
+
+        public Filter ge(long value) {
+            return new Comparison(name, Op.GE, value);
+        }
+
+        public Filter eq(double value) {
+            return new Comparison(name, Op.EQ, value);
+        }
+
+        public Filter ne(double value) {
+            return new Comparison(name, Op.NE, value);
+        }
+
+        public Filter lt(double value) {
+            return new Comparison(name, Op.LT, value);
+        }
+
+        public Filter le(double value) {
+            return new Comparison(name, Op.LE, value);
+        }
+
+        public Filter gt(double value) {
+            return new Comparison(name, Op.GT, value);
+        }
+
+        public Filter ge(double value) {
+            return new Comparison(name, Op.GE, value);
+        }
+
+        public Filter eq(boolean value) {
+            return new Comparison(name, Op.EQ, value ? 1L : 0L);
+        }
+
+        public Filter ne(boolean value) {
+            return new Comparison(name, Op.NE, value ? 1L : 0L);
+        }
+
+        public Filter eq(String value) {
+            return new Comparison(name, Op.EQ, value);
+        }
+
+        public Filter ne(String value) {
+            return new Comparison(name, Op.NE, value);
+        }
+    }
+
+    static Field field(String name) {
+        return new Field(name);
+    }
+
+    static Filter not(Filter filter) {
+        return new Not(filter);
+    }
+
+    default Filter and(Filter other) {
+        return new And(this, other);
+    }
+
+    default Filter or(Filter other) {
+        return new Or(this, other);
+    }
+}
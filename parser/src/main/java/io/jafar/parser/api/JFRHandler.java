@@ -5,12 +5,22 @@ public interface JFRHandler<T> {
     class Impl<T> {
         private final Class<T> clazz;
         private final JFRHandler<T> handler;
+        private final Filter filter;
 
         public Impl(Class<T> clazz, JFRHandler<T> handler) {
+            this(clazz, null, handler);
+        }
+
+        public Impl(Class<T> clazz, Filter filter, JFRHandler<T> handler) {
             this.clazz = clazz;
+            this.filter = filter;
             this.handler = handler;
         }
 
+        public Filter getFilter() {
+            return filter;
+        }
+
         public void handle(Object event, Control ctl) {
             handler.handle(clazz.cast(event), ctl);
         }
@@ -2,6 +2,7 @@ package io.jafar.parser.api;
 import io.jafar.parser.JafarParserImpl;
 
 import java.io.IOException;
+import java.util.Map;
 import java.nio.file.Paths;
 
 public interface JafarParser extends AutoCloseable{
@@ -12,5 +13,47 @@ public interface JafarParser extends AutoCloseable{
 
     <T> HandlerRegistration<T> handle(Class<T> clz, JFRHandler<T> handler);
 
+    /**
+     * Registers a handler receiving only the events matching the given filter.<br>
+     * The filter is evaluated before the event is deserialized.
+     */
+    <T> HandlerRegistration<T> handle(Class<T> clz, Filter filter, JFRHandler<T> handler);
+
+    /**
+     * Registers a handler receiving the events in column batches.<br>
+     * The columns are derived from the type methods and filled directly from the event data, without creating
+     * the event objects. See {@linkplain EventBatch} for the column representation.
+     * @param clz the handler type
+     * @param batchSize the maximum number of events in a batch
+     * @param handler the batch handler
+     */
+    <T> HandlerRegistration<T> handleBatch(Class<T> clz, int batchSize, BatchHandler handler);
+
+    /**
+     * Registers a handler receiving an untyped cursor for each event of the given JFR type.<br>
+     * The events of all the JFR types extending the given type are handled as well, eg. {@code jdk.jfr.Event}
+     * will match all events. No handler interface needs to be defined.
+     * @param typeName the JFR type name
+     * @param handler the cursor handler
+     */
+    HandlerRegistration<EventCursor> handleCursor(String typeName, JFRHandler<EventCursor> handler);
+
     void run() throws IOException;
+
+    /**
+     * Runs the handlers only for the events starting within the given time window.<br>
+     * The chunks outside of the window are skipped and, once the recording has been fully parsed at least once
+     * by this parser (or the sidecar index is enabled), the parts of a chunk outside of the window are skipped as well.
+     * The events without the start time are not handled.
+     * @param fromNanos the window start in epoch nanoseconds, inclusive
+     * @param toNanos the window end in epoch nanoseconds, inclusive
+     */
+    void run(long fromNanos, long toNanos) throws IOException;
+
+    /**
+     * Collects the constant pool cache statistics, useful for sizing the cache budget
+     * ({@code io.jafar.parser.cp_budget}).
+     * @return the statistics of the constant pools used by the last run, by the constant pool type name
+     */
+    Map<String, ConstantPoolStats> getConstantPoolStats();
 }
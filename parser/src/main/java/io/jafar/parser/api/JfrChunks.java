@@ -0,0 +1,215 @@
+package io.jafar.parser.api;
+
+import io.jafar.parser.internal_api.ChunkHeader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Splits and concatenates recordings at the chunk boundaries.<br>
+ * The chunks are self-contained, so they are copied as they are with {@linkplain FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+ * without being parsed or re-encoded. Only the chunk headers are read.
+ * <pre>{@code
+ * List<Path> slices = JfrChunks.splitByTime(Paths.get("recording.jfr"), Paths.get("slices"), Duration.ofMinutes(10));
+ * JfrChunks.concat(slices, Paths.get("merged.jfr"));
+ * }</pre>
+ */
+public final class JfrChunks {
+    /**
+     * @param index the chunk index (1-based)
+     * @param offset the chunk offset in the recording
+     * @param size the chunk size in bytes
+     * @param startNanos the chunk start time in epoch nanoseconds
+     * @param durationNanos the chunk duration in nanoseconds
+     */
+    public record Chunk(int index, long offset, long size, long startNanos, long durationNanos) {}
+
+    private JfrChunks() {}
+
+    /**
+     * Lists the chunks of the given recording.
+     * @param recording the recording path
+     * @return the chunks, in the recording order
+     * @throws IOException if the recording can not be read or is not complete
+     */
+    public static List<Chunk> list(Path recording) throws IOException {
+        try (FileChannel channel = FileChannel.open(recording, StandardOpenOption.READ)) {
+            return list(channel);
+        }
+    }
+
+    /**
+     * Splits the recording into files holding the given number of chunks each, the last file may hold less.
+     * @param recording the recording path
+     * @param targetDir the directory to write the parts to
+     * @param chunksPerFile the number of chunks per file
+     * @return the written files, in the recording order
+     * @throws IOException if the recording can not be read or the parts written
+     */
+    public static List<Path> splitByCount(Path recording, Path targetDir, int chunksPerFile) throws IOException {
+        if (chunksPerFile <= 0) {
+            throw new IllegalArgumentException("chunksPerFile must be positive: " + chunksPerFile);
+        }
+        return split(recording, targetDir, chunks -> {
+            List<List<Chunk>> groups = new ArrayList<>();
+            for (int i = 0; i < chunks.size(); i += chunksPerFile) {
+                groups.add(chunks.subList(i, Math.min(i + chunksPerFile, chunks.size())));
+            }
+            return groups;
+        });
+    }
+
+    /**
+     * Splits the recording into files of at most the given size.<br>
+     * A chunk larger than the budget is written to a file of its own.
+     * @param recording the recording path
+     * @param targetDir the directory to write the parts to
+     * @param maxBytes the size budget of a file
+     * @return the written files, in the recording order
+     * @throws IOException if the recording can not be read or the parts written
+     */
+    public static List<Path> splitBySize(Path recording, Path targetDir, long maxBytes) throws IOException {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+        }
+        return split(recording, targetDir, chunks -> {
+            List<List<Chunk>> groups = new ArrayList<>();
+            List<Chunk> group = new ArrayList<>();
+            long size = 0;
+            for (Chunk chunk : chunks) {
+                if (!group.isEmpty() && size + chunk.size() > maxBytes) {
+                    groups.add(group);
+                    group = new ArrayList<>();
+                    size = 0;
+                }
+                group.add(chunk);
+                size += chunk.size();
+            }
+            if (!group.isEmpty()) {
+                groups.add(group);
+            }
+            return groups;
+        });
+    }
+
+    /**
+     * Splits the recording into time slices of the given length, starting at the start of the first chunk.<br>
+     * A chunk belongs to the slice its start time falls into, the slices without any chunk are not written.
+     * @param recording the recording path
+     * @param targetDir the directory to write the parts to
+     * @param slice the slice length
+     * @return the written files, in the recording order
+     * @throws IOException if the recording can not be read or the parts written
+     */
+    public static List<Path> splitByTime(Path recording, Path targetDir, Duration slice) throws IOException {
+        long sliceNanos = slice.toNanos();
+        if (sliceNanos <= 0) {
+            throw new IllegalArgumentException("slice must be positive: " + slice);
+        }
+        return split(recording, targetDir, chunks -> {
+            List<List<Chunk>> groups = new ArrayList<>();
+            if (chunks.isEmpty()) {
+                return groups;
+            }
+            long start = chunks.stream().mapToLong(Chunk::startNanos).min().getAsLong();
+            long current = -1;
+            List<Chunk> group = null;
+            for (Chunk chunk : chunks) {
+                long sliceIndex = (chunk.startNanos() - start) / sliceNanos;
+                if (group == null || sliceIndex != current) {
+                    group = new ArrayList<>();
+                    groups.add(group);
+                    current = sliceIndex;
+                }
+                group.add(chunk);
+            }
+            return groups;
+        });
+    }
+
+    /**
+     * Concatenates the chunks of the given recordings into one recording.
+     * @param recordings the recordings, in the target order
+     * @param target the target recording; replaced if it exists
+     * @throws IOException if the recordings can not be read or the target written
+     */
+    public static void concat(List<Path> recordings, Path target) throws IOException {
+        Path tmp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Path recording : recordings) {
+                try (FileChannel in = FileChannel.open(recording, StandardOpenOption.READ)) {
+                    // validates the input, trailing garbage or an incomplete chunk are not copied over
+                    for (Chunk chunk : list(in)) {
+                        ChunkFiles.transfer(in, chunk.offset(), chunk.size(), out);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static List<Path> split(Path recording, Path targetDir, Function<List<Chunk>, List<List<Chunk>>> grouping) throws IOException {
+        Files.createDirectories(targetDir);
+        String name = recording.getFileName().toString();
+        String baseName = name.endsWith(".jfr") ? name.substring(0, name.length() - 4) : name;
+        List<Path> parts = new ArrayList<>();
+        try (FileChannel in = FileChannel.open(recording, StandardOpenOption.READ)) {
+            List<List<Chunk>> groups = grouping.apply(list(in));
+            for (List<Chunk> group : groups) {
+                Path part = targetDir.resolve(baseName + "-" + (parts.size() + 1) + ".jfr");
+                try (FileChannel out = FileChannel.open(part, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    // the adjacent chunks are transferred at once
+                    long start = group.getFirst().offset();
+                    long end = start;
+                    for (Chunk chunk : group) {
+                        if (chunk.offset() != end) {
+                            ChunkFiles.transfer(in, start, end - start, out);
+                            start = chunk.offset();
+                        }
+                        end = chunk.offset() + chunk.size();
+                    }
+                    ChunkFiles.transfer(in, start, end - start, out);
+                }
+                parts.add(part);
+            }
+        }
+        return Collections.unmodifiableList(parts);
+    }
+
+    private static List<Chunk> list(FileChannel channel) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        long fileSize = channel.size();
+        long offset = 0;
+        ByteBuffer header = ByteBuffer.allocate(ChunkFiles.HEADER_SIZE);
+        while (offset < fileSize) {
+            header.clear();
+            ChunkFiles.readFully(channel, header, offset);
+            if (header.hasRemaining()) {
+                throw new IOException("Truncated chunk header at " + offset);
+            }
+            if (header.getInt(0) != ChunkHeader.MAGIC_BE) {
+                throw new IOException("Invalid JFR Magic Number: " + Integer.toHexString(header.getInt(0)) + " at " + offset);
+            }
+            long size = header.getLong(ChunkFiles.SIZE_OFFSET);
+            if (size < ChunkFiles.HEADER_SIZE || offset + size > fileSize) {
+                throw new IOException("Incomplete chunk at " + offset + ", size " + size);
+            }
+            chunks.add(new Chunk(chunks.size() + 1, offset, size, header.getLong(ChunkFiles.START_NANOS_OFFSET), header.getLong(ChunkFiles.DURATION_OFFSET)));
+            offset += size;
+        }
+        return chunks;
+    }
+}
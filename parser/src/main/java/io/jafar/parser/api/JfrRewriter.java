@@ -0,0 +1,391 @@
+package io.jafar.parser.api;
+
+import io.jafar.parser.MutableConstantPool;
+import io.jafar.parser.ParsingUtils;
+import io.jafar.parser.internal_api.CheckpointEvent;
+import io.jafar.parser.internal_api.ChunkHeader;
+import io.jafar.parser.internal_api.ChunkParserListener;
+import io.jafar.parser.internal_api.ConstantPools;
+import io.jafar.parser.internal_api.ParserContext;
+import io.jafar.parser.internal_api.RecordingStream;
+import io.jafar.parser.internal_api.StreamingChunkParser;
+import io.jafar.parser.internal_api.metadata.MetadataClass;
+import io.jafar.parser.internal_api.metadata.MetadataEvent;
+import io.jafar.parser.internal_api.metadata.MetadataField;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+
+/**
+ * Writes a smaller copy of a recording, holding only the events of the selected types.<br>
+ * The kept events are not decoded - their raw bytes are copied over with {@linkplain FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+ * Each chunk gets a single checkpoint event with only the constant pool entries reachable from the kept events
+ * and the chunk metadata is copied unchanged. The chunks without any kept event are dropped.<br>
+ * The rewriter reads all the checkpoint events, so it does not use the {@code io.jafar.parser.index} recording index -
+ * the headers of all the events are read, but only the kept events are walked for their constant pool references.
+ * <pre>{@code
+ * JfrRewriter.rewrite(Paths.get("recording.jfr"), Paths.get("samples.jfr"), Set.of("jdk.ExecutionSample")::contains);
+ * }</pre>
+ */
+public final class JfrRewriter {
+    /**
+     * @param chunks the number of written chunks
+     * @param events the number of kept events
+     * @param size the size of the written recording in bytes
+     */
+    public record Result(int chunks, long events, long size) {}
+
+    private JfrRewriter() {}
+
+    /**
+     * Rewrites the given recording.
+     * @param input the source recording
+     * @param output the target recording; replaced if it exists
+     * @param eventTypes selects the event types to keep, by the type name
+     * @return the rewrite result
+     * @throws IOException if the recording can not be read or written
+     */
+    public static Result rewrite(Path input, Path output, Predicate<String> eventTypes) throws IOException {
+        Map<Integer, ChunkRewrite> rewrites = new ConcurrentHashMap<>();
+        Map<Integer, ChunkRewrite> chunks = new ConcurrentSkipListMap<>();
+        try (StreamingChunkParser parser = new StreamingChunkParser()) {
+            parser.parse(input, new ChunkParserListener() {
+                @Override
+                public boolean onChunkStart(int chunkIndex, ChunkHeader header, ParserContext context) {
+                    rewrites.put(chunkIndex, new ChunkRewrite(header, context, eventTypes));
+                    return true;
+                }
+
+                @Override
+                public boolean onMetadata(MetadataEvent metadata) {
+                    // the constant pools can be indexed only with the deserializers (skippers) bound
+                    metadata.getContext().bindDeserializers();
+                    rewrites.get(metadata.getContext().getChunkIndex()).onMetadata(metadata);
+                    return true;
+                }
+
+                @Override
+                public boolean onCheckpoint(CheckpointEvent checkpoint) {
+                    rewrites.get(checkpoint.getContext().getChunkIndex()).onCheckpoint(checkpoint);
+                    return true;
+                }
+
+                @Override
+                public boolean isEventTypeNeeded(long typeId, ParserContext context) {
+                    return rewrites.get(context.getChunkIndex()).isKept(typeId);
+                }
+
+                @Override
+                public boolean onEvent(long typeId, long eventStart, RecordingStream stream, long payloadSize) {
+                    rewrites.get(stream.getContext().getChunkIndex()).onEvent(typeId, eventStart, stream, payloadSize);
+                    return true;
+                }
+
+                @Override
+                public boolean onChunkEnd(int chunkIndex, boolean skipped) {
+                    // the constant pool entries must be copied while the chunk data is still available
+                    ChunkRewrite rewrite = rewrites.remove(chunkIndex);
+                    rewrite.finish();
+                    chunks.put(chunkIndex, rewrite);
+                    return true;
+                }
+            });
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        List<ChunkRewrite> written = new ArrayList<>();
+        for (ChunkRewrite rewrite : chunks.values()) {
+            if (!rewrite.ranges.isEmpty()) {
+                written.add(rewrite);
+            }
+        }
+        if (written.isEmpty() && !chunks.isEmpty()) {
+            // keep the recording valid
+            written.add(chunks.values().iterator().next());
+        }
+        Path tmp = Files.createTempFile(output.toAbsolutePath().getParent(), output.getFileName().toString(), ".tmp");
+        long events = 0;
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (ChunkRewrite rewrite : written) {
+                events += rewrite.events;
+                rewrite.write(in, out);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new Result(written.size(), events, Files.size(output));
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    // accessed only by the thread parsing the chunk, until the chunk is finished
+    private static final class ChunkRewrite {
+        private final ChunkHeader header;
+        private final ParserContext context;
+        private final Predicate<String> eventTypes;
+        private final Long2ObjectMap<Boolean> keptTypes = new Long2ObjectOpenHashMap<>();
+
+        // chunk-relative {start, length} pairs of the kept events, the adjacent events are merged
+        private final LongArrayList ranges = new LongArrayList();
+        private long events;
+
+        // typeId -> reachable entry ids; typeId -> {id, start, end} triplets
+        private final Long2ObjectMap<LongOpenHashSet> reachable = new Long2ObjectOpenHashMap<>();
+        private final Long2ObjectMap<LongArrayList> entries = new Long2ObjectOpenHashMap<>();
+        private final LongArrayList pending = new LongArrayList();
+        private RecordingStream entryStream;
+        private long stringTypeId = -1;
+
+        private long checkpointStartTime;
+        private long checkpointDuration;
+        // the union of the type bits of all the checkpoint events, all their entries may end up in the rewritten one
+        private int checkpointType;
+        private boolean checkpointSeen;
+        private byte[] checkpoint;
+
+        ChunkRewrite(ChunkHeader header, ParserContext context, Predicate<String> eventTypes) {
+            this.header = header;
+            this.context = context;
+            this.eventTypes = eventTypes;
+            this.checkpointStartTime = header.startTicks;
+        }
+
+        void onMetadata(MetadataEvent metadata) {
+            for (MetadataClass clz : metadata.getClasses()) {
+                if (clz.getName().equals("java.lang.String")) {
+                    stringTypeId = clz.getId();
+                }
+            }
+        }
+
+        void onCheckpoint(CheckpointEvent event) {
+            // the first checkpoint event is the head of the chain, the rewritten one takes its place
+            if (!checkpointSeen) {
+                checkpointSeen = true;
+                checkpointStartTime = event.startTime;
+                checkpointDuration = event.duration;
+            }
+            checkpointType |= event.type;
+        }
+
+        boolean isKept(long typeId) {
+            Boolean kept = keptTypes.get(typeId);
+            if (kept == null) {
+                MetadataClass clz = context.getMetadataLookup().getClass(typeId);
+                kept = clz != null && eventTypes.test(clz.getName());
+                keptTypes.put(typeId, kept);
+            }
+            return kept;
+        }
+
+        void onEvent(long typeId, long eventStart, RecordingStream stream, long payloadSize) {
+            if (!isKept(typeId)) {
+                return;
+            }
+            long payloadPos = stream.position();
+            long length = payloadPos + payloadSize - eventStart;
+            int last = ranges.size() - 2;
+            if (last >= 0 && ranges.getLong(last) + ranges.getLong(last + 1) == eventStart) {
+                ranges.set(last + 1, ranges.getLong(last + 1) + length);
+            } else {
+                ranges.add(eventStart);
+                ranges.add(length);
+            }
+            events++;
+            if (entryStream == null) {
+                entryStream = stream.duplicate();
+            }
+            try {
+                walk(context.getMetadataLookup().getClass(typeId), stream);
+                while (!pending.isEmpty()) {
+                    long id = pending.removeLong(pending.size() - 1);
+                    long entryTypeId = pending.removeLong(pending.size() - 1);
+                    copyEntry(entryTypeId, id);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            stream.position(payloadPos);
+        }
+
+        private void walk(MetadataClass type, RecordingStream stream) throws IOException {
+            for (MetadataField field : type.getFields()) {
+                int count = field.getDimension() > 0 ? (int) stream.readVarint() : 1;
+                for (int i = 0; i < count; i++) {
+                    if (field.hasConstantPool()) {
+                        reference(field.getTypeId(), stream.readVarint());
+                    } else {
+                        walkValue(field.getType(), stream);
+                    }
+                }
+            }
+        }
+
+        private void walkValue(MetadataClass type, RecordingStream stream) throws IOException {
+            switch (type.getName()) {
+                case "boolean", "byte" -> stream.skip(1);
+                case "char", "short", "int", "long" -> stream.readVarint();
+                case "float" -> stream.skip(4);
+                case "double" -> stream.skip(8);
+                case "java.lang.String" -> {
+                    if (stream.get(stream.position()) == 2) {
+                        // a reference to the string constant pool
+                        stream.skip(1);
+                        reference(stringTypeId, stream.readVarint());
+                    } else {
+                        ParsingUtils.skipUTF8(stream);
+                    }
+                }
+                default -> walk(type, stream);
+            }
+        }
+
+        private void reference(long typeId, long id) {
+            LongOpenHashSet ids = reachable.get(typeId);
+            if (ids == null) {
+                ids = new LongOpenHashSet();
+                reachable.put(typeId, ids);
+            }
+            if (ids.add(id)) {
+                pending.add(typeId);
+                pending.add(id);
+            }
+        }
+
+        private void copyEntry(long typeId, long id) throws IOException {
+            ConstantPools constantPools = context.getConstantPools();
+            MutableConstantPool pool = constantPools.hasConstantPool(typeId) ? (MutableConstantPool) constantPools.getConstantPool(typeId) : null;
+            long offset = pool != null ? pool.getOffset(id) : -1;
+            if (offset < 0) {
+                // eg. the null references
+                return;
+            }
+            entryStream.position(offset);
+            // the string and primitive pools hold the bare values, not the fields
+            walkValue(pool.getType(), entryStream);
+            LongArrayList list = entries.get(typeId);
+            if (list == null) {
+                list = new LongArrayList();
+                entries.put(typeId, list);
+            }
+            list.add(id);
+            list.add(offset);
+            list.add(entryStream.position());
+        }
+
+        /**
+         * Assembles the checkpoint event holding the reachable constant pool entries.
+         */
+        void finish() {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            writeVarint(body, 1); // the checkpoint event type
+            writeVarint(body, checkpointStartTime);
+            writeVarint(body, checkpointDuration);
+            writeVarint(body, 0); // no previous checkpoint
+            // no checkpoint event in the chunk, written as a flush checkpoint
+            body.write(checkpointSeen ? checkpointType : 1);
+            writeVarint(body, entries.size());
+            byte[] data = new byte[256];
+            for (Long2ObjectMap.Entry<LongArrayList> entry : entries.long2ObjectEntrySet()) {
+                LongArrayList list = entry.getValue();
+                writeVarint(body, entry.getLongKey());
+                writeVarint(body, list.size() / 3);
+                for (int i = 0; i < list.size(); i += 3) {
+                    writeVarint(body, list.getLong(i));
+                    long start = list.getLong(i + 1);
+                    int length = (int) (list.getLong(i + 2) - start);
+                    if (data.length < length) {
+                        data = new byte[length];
+                    }
+                    entryStream.position(start);
+                    entryStream.read(data, 0, length);
+                    body.write(data, 0, length);
+                }
+            }
+            int size = body.size() + 1;
+            while (varintSize(size) != size - body.size()) {
+                size = body.size() + varintSize(size);
+            }
+            ByteArrayOutputStream event = new ByteArrayOutputStream(size);
+            writeVarint(event, size);
+            event.writeBytes(body.toByteArray());
+            checkpoint = event.toByteArray();
+            entryStream = null;
+        }
+
+        void write(FileChannel in, FileChannel out) throws IOException {
+            ByteBuffer headerData = ByteBuffer.allocate(ChunkFiles.HEADER_SIZE);
+            ChunkFiles.readFully(in, headerData, header.offset);
+            if (headerData.hasRemaining()) {
+                throw new IOException("Truncated chunk header in chunk " + header.order);
+            }
+            long eventsSize = 0;
+            for (int i = 1; i < ranges.size(); i += 2) {
+                eventsSize += ranges.getLong(i);
+            }
+            int metadataSize = metadataSize(in);
+            long metaOffset = ChunkFiles.HEADER_SIZE + eventsSize;
+            long cpOffset = metaOffset + metadataSize;
+            headerData.putLong(ChunkFiles.SIZE_OFFSET, cpOffset + checkpoint.length);
+            headerData.putLong(ChunkFiles.CP_OFFSET_OFFSET, cpOffset);
+            headerData.putLong(ChunkFiles.META_OFFSET_OFFSET, metaOffset);
+            ChunkFiles.writeFully(headerData.flip(), out);
+            for (int i = 0; i < ranges.size(); i += 2) {
+                ChunkFiles.transfer(in, header.offset + ranges.getLong(i), ranges.getLong(i + 1), out);
+            }
+            ChunkFiles.transfer(in, header.offset + header.metaOffset, metadataSize, out);
+            ChunkFiles.writeFully(ByteBuffer.wrap(checkpoint), out);
+        }
+
+        private int metadataSize(FileChannel in) throws IOException {
+            // the longest varint; the metadata event may be shorter than that only at the very end of the input
+            ByteBuffer data = ByteBuffer.allocate(10);
+            ChunkFiles.readFully(in, data, header.offset + header.metaOffset);
+            long size = 0;
+            for (int i = 0; i < data.position(); i++) {
+                byte b = data.get(i);
+                size |= (long) (b & 0x7F) << (7 * i);
+                if (b >= 0) {
+                    return (int) size;
+                }
+            }
+            throw new IOException("Invalid metadata event size in chunk " + header.order);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package io.jafar.parser.api;
+
+import io.jafar.parser.MutableConstantPool;
+import io.jafar.parser.internal_api.ChunkHeader;
+import io.jafar.parser.internal_api.ChunkParserListener;
+import io.jafar.parser.internal_api.ConstantPools;
+import io.jafar.parser.internal_api.EventCursorImpl;
+import io.jafar.parser.internal_api.ParserContext;
+import io.jafar.parser.internal_api.RecordingStream;
+import io.jafar.parser.internal_api.StreamingChunkParser;
+import io.jafar.parser.internal_api.metadata.MetadataClass;
+import io.jafar.parser.internal_api.metadata.MetadataEvent;
+import io.jafar.parser.internal_api.metadata.MetadataField;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects the {@linkplain LogLinearHistogram histograms} of the event durations, in nanoseconds, by the event type
+ * and optionally by the event thread.<br>
+ * The events are not deserialized. For the usual event layout, starting with {@code startTime}, {@code duration}
+ * and {@code eventThread}, the values are read straight from the event data; otherwise the fields are located
+ * by an event cursor. The histograms are kept per chunk and merged when the chunk is done.
+ * <pre>{@code
+ * Map<LatencyAggregator.Key, LogLinearHistogram> latencies = LatencyAggregator.aggregate(Paths.get("recording.jfr"), Set.of("jdk.JavaMonitorEnter", "jdk.FileRead"), false);
+ * latencies.forEach((key, histogram) -> System.out.println(key.eventType() + " p99=" + histogram.getValueAtPercentile(99) + "ns"));
+ * }</pre>
+ */
+public final class LatencyAggregator {
+    private static final String DURATION = "duration";
+    private static final String EVENT_THREAD = "eventThread";
+
+    /**
+     * @param eventType the event type name
+     * @param thread the event thread name (Java name, or OS name for the native threads) or {@literal null} if not grouped by thread
+     */
+    public record Key(String eventType, String thread) implements Comparable<Key> {
+        @Override
+        public int compareTo(Key o) {
+            int cmp = eventType.compareTo(o.eventType);
+            if (cmp != 0) {
+                return cmp;
+            }
+            if (thread == null || o.thread == null) {
+                return thread == null ? (o.thread == null ? 0 : -1) : 1;
+            }
+            return thread.compareTo(o.thread);
+        }
+    }
+
+    private LatencyAggregator() {}
+
+    /**
+     * Collects the duration histograms.
+     * @param recording the recording path
+     * @param eventTypes the event type names; the types without the {@code duration} field are ignored
+     * @param byThread {@literal true} to group by the event thread as well
+     * @return the histograms, sorted by the key
+     * @throws IOException if the recording can not be read
+     */
+    public static Map<Key, LogLinearHistogram> aggregate(Path recording, Set<String> eventTypes, boolean byThread) throws IOException {
+        Map<Key, LogLinearHistogram> histograms = new TreeMap<>();
+        Map<Integer, ChunkAggregation> chunks = new ConcurrentHashMap<>();
+        try (StreamingChunkParser parser = new StreamingChunkParser()) {
+            parser.parse(recording, new ChunkParserListener() {
+                @Override
+                public void onRecordingStart(ParserContext context) {
+                    // only the thread names are resolved
+                    context.setTypeFilter(t -> byThread && t.getName().equals("java.lang.Thread"));
+                }
+
+                @Override
+                public boolean onChunkStart(int chunkIndex, ChunkHeader header, ParserContext context) {
+                    chunks.put(chunkIndex, new ChunkAggregation(header, context, byThread));
+                    return true;
+                }
+
+                @Override
+                public boolean onMetadata(MetadataEvent metadata) {
+                    // the constant pools can be indexed only with the deserializers (skippers) bound
+                    metadata.getContext().bindDeserializers();
+                    return chunks.get(metadata.getContext().getChunkIndex()).onMetadata(metadata, eventTypes);
+                }
+
+                @Override
+                public boolean needsConstantPools() {
+                    return byThread;
+                }
+
+                @Override
+                public boolean isEventTypeNeeded(long typeId, ParserContext context) {
+                    return chunks.get(context.getChunkIndex()).layouts.containsKey(typeId);
+                }
+
+                @Override
+                public boolean onEvent(long typeId, RecordingStream stream, long payloadSize) {
+                    chunks.get(stream.getContext().getChunkIndex()).onEvent(typeId, stream);
+                    return true;
+                }
+
+                @Override
+                public boolean onChunkEnd(int chunkIndex, boolean skipped) {
+                    // the thread names must be resolved while the chunk data is still available
+                    Map<Key, LogLinearHistogram> chunkHistograms = chunks.remove(chunkIndex).histograms();
+                    synchronized (histograms) {
+                        chunkHistograms.forEach((key, histogram) -> histograms.merge(key, histogram, (h1, h2) -> {
+                            h1.merge(h2);
+                            return h1;
+                        }));
+                    }
+                    return true;
+                }
+            });
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        return Collections.unmodifiableMap(histograms);
+    }
+
+    /**
+     * Where to find the duration and the thread in the events of one type.
+     * @param directFields the number of the leading varint fields to read directly, or {@literal -1} if the cursor must be used
+     */
+    private record EventLayout(MetadataClass type, int durationField, int threadField, int directFields) {
+        static EventLayout of(MetadataClass type, boolean byThread) {
+            List<MetadataField> fields = type.getFields();
+            int durationField = -1;
+            int threadField = -1;
+            for (int i = 0; i < fields.size(); i++) {
+                MetadataField field = fields.get(i);
+                if (field.getDimension() > 0) {
+                    continue;
+                }
+                if (field.getName().equals(DURATION) && !field.hasConstantPool() && field.getType().getName().equals("long")) {
+                    durationField = i;
+                } else if (byThread && field.getName().equals(EVENT_THREAD) && field.hasConstantPool()) {
+                    threadField = i;
+                }
+            }
+            if (durationField == -1) {
+                return null;
+            }
+            int last = Math.max(durationField, threadField);
+            int directFields = last + 1;
+            for (int i = 0; i <= last; i++) {
+                if (!isVarint(fields.get(i))) {
+                    directFields = -1;
+                    break;
+                }
+            }
+            return new EventLayout(type, durationField, threadField, directFields);
+        }
+
+        private static boolean isVarint(MetadataField field) {
+            if (field.getDimension() > 0) {
+                return false;
+            }
+            if (field.hasConstantPool()) {
+                return true;
+            }
+            return switch (field.getType().getName()) {
+                case "char", "short", "int", "long" -> true;
+                default -> false;
+            };
+        }
+    }
+
+    // accessed only by the thread parsing the chunk
+    private static final class ChunkAggregation {
+        private final ParserContext context;
+        private final boolean byThread;
+        private final double nanosPerTick;
+        private final Long2ObjectMap<EventLayout> layouts = new Long2ObjectOpenHashMap<>();
+        // typeId -> thread id (0 if not grouped) -> histogram
+        private final Long2ObjectMap<Long2ObjectMap<LogLinearHistogram>> histograms = new Long2ObjectOpenHashMap<>();
+        private MetadataClass threadType;
+        private EventCursorImpl cursor;
+
+        ChunkAggregation(ChunkHeader header, ParserContext context, boolean byThread) {
+            this.context = context;
+            this.byThread = byThread;
+            // the chunks may differ in the tick frequency, the histograms are kept in nanoseconds to be mergeable
+            this.nanosPerTick = 1_000_000_000d / header.frequency;
+        }
+
+        boolean onMetadata(MetadataEvent metadata, Set<String> eventTypes) {
+            for (MetadataClass clz : metadata.getClasses()) {
+                if (eventTypes.contains(clz.getName())) {
+                    EventLayout layout = EventLayout.of(clz, byThread);
+                    if (layout != null) {
+                        layouts.put(clz.getId(), layout);
+                        if (layout.threadField() >= 0) {
+                            threadType = clz.getFields().get(layout.threadField()).getType();
+                        }
+                    }
+                }
+            }
+            // nothing to aggregate in this chunk
+            return !layouts.isEmpty();
+        }
+
+        void onEvent(long typeId, RecordingStream stream) {
+            EventLayout layout = layouts.get(typeId);
+            if (layout == null) {
+                return;
+            }
+            if (cursor == null) {
+                cursor = new EventCursorImpl(stream);
+            }
+            long duration = 0;
+            long thread = 0;
+            if (layout.directFields() > 0) {
+                for (int i = 0; i < layout.directFields(); i++) {
+                    long value = stream.readVarint();
+                    if (i == layout.durationField()) {
+                        duration = value;
+                    } else if (i == layout.threadField()) {
+                        thread = value;
+                    }
+                }
+            } else {
+                cursor.reset(layout.type(), stream.position());
+                duration = cursor.getLong(DURATION);
+                if (layout.threadField() >= 0) {
+                    thread = cursor.getReference(EVENT_THREAD);
+                }
+            }
+            Long2ObjectMap<LogLinearHistogram> byThreadId = histograms.get(typeId);
+            if (byThreadId == null) {
+                byThreadId = new Long2ObjectOpenHashMap<>();
+                histograms.put(typeId, byThreadId);
+            }
+            LogLinearHistogram histogram = byThreadId.get(thread);
+            if (histogram == null) {
+                histogram = new LogLinearHistogram();
+                byThreadId.put(thread, histogram);
+            }
+            histogram.record((long) (duration * nanosPerTick));
+        }
+
+        /**
+         * @return the histograms of this chunk, keyed by the names
+         */
+        Map<Key, LogLinearHistogram> histograms() {
+            Map<Key, LogLinearHistogram> result = new TreeMap<>();
+            Long2ObjectMap<String> threadNames = new Long2ObjectOpenHashMap<>();
+            for (Long2ObjectMap.Entry<Long2ObjectMap<LogLinearHistogram>> typeEntry : histograms.long2ObjectEntrySet()) {
+                String eventType = layouts.get(typeEntry.getLongKey()).type().getName();
+                for (Long2ObjectMap.Entry<LogLinearHistogram> entry : typeEntry.getValue().long2ObjectEntrySet()) {
+                    String thread = byThread ? threadNames.computeIfAbsent(entry.getLongKey(), this::threadName) : null;
+                    // the same thread name may stand for multiple thread ids
+                    result.merge(new Key(eventType, thread), entry.getValue(), (h1, h2) -> {
+                        h1.merge(h2);
+                        return h1;
+                    });
+                }
+            }
+            return result;
+        }
+
+        private String threadName(long threadId) {
+            ConstantPools constantPools = context.getConstantPools();
+            MutableConstantPool pool = threadType != null && constantPools.hasConstantPool(threadType.getId())
+                    ? (MutableConstantPool) constantPools.getConstantPool(threadType.getId()) : null;
+            long offset = pool != null ? pool.getOffset(threadId) : -1;
+            if (offset < 0) {
+                return "<unknown>";
+            }
+            cursor.reset(threadType, offset);
+            String name = cursor.hasField("javaName") ? cursor.getString("javaName") : null;
+            if (name == null && cursor.hasField("osName")) {
+                name = cursor.getString("osName");
+            }
+            return name != null ? name : "<unknown>";
+        }
+    }
+}
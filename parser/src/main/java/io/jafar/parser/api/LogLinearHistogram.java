@@ -0,0 +1,155 @@
+package io.jafar.parser.api;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of non-negative long values with a bounded relative error.<br>
+ * The values below {@code 2^precision} are counted exactly, above that each power-of-two range is split
+ * into {@code 2^(precision - 1)} linear buckets, so a value is reported with the relative error of at most
+ * {@code 1 / 2^(precision - 1)} - eg. 1.6% for the default precision of 7 bits. The buckets are allocated
+ * up to the largest recorded value only and never exceed {@code 64 * 2^(precision - 1)} longs.<br>
+ * The histogram is not thread-safe.
+ */
+public final class LogLinearHistogram {
+    public static final int DEFAULT_PRECISION = 7;
+
+    private final int precision;
+    private final int subBuckets;
+    private long[] counts = new long[0];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    public LogLinearHistogram() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * @param precision the number of significant bits kept, between 2 and 16
+     */
+    public LogLinearHistogram(int precision) {
+        if (precision < 2 || precision > 16) {
+            throw new IllegalArgumentException("precision must be between 2 and 16: " + precision);
+        }
+        this.precision = precision;
+        this.subBuckets = 1 << (precision - 1);
+    }
+
+    /**
+     * @param value the value to record; the negative values are recorded as {@literal 0}
+     */
+    public void record(long value) {
+        record(value, 1);
+    }
+
+    /**
+     * @param value the value to record; the negative values are recorded as {@literal 0}
+     * @param times the number of occurrences
+     */
+    public void record(long value, long times) {
+        value = Math.max(value, 0);
+        int index = index(value);
+        if (index >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(index + 1, Math.min(counts.length * 2, maxIndex() + 1)));
+        }
+        counts[index] += times;
+        count += times;
+        sum += value * times;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds all the values recorded by the other histogram.
+     * @param other the histogram of the same precision
+     */
+    public void merge(LogLinearHistogram other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Precision mismatch: " + other.precision + " != " + precision);
+        }
+        if (other.counts.length > counts.length) {
+            counts = Arrays.copyOf(counts, other.counts.length);
+        }
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the exact minimum or {@literal 0} if empty
+     */
+    public long getMin() {
+        return count > 0 ? min : 0;
+    }
+
+    /**
+     * @return the exact maximum or {@literal 0} if empty
+     */
+    public long getMax() {
+        return count > 0 ? max : 0;
+    }
+
+    /**
+     * @return the exact mean or {@literal 0} if empty
+     */
+    public double getMean() {
+        return count > 0 ? (double) sum / count : 0;
+    }
+
+    /**
+     * @param percentile the percentile, between {@literal 0} and {@literal 100}
+     * @return the highest value equivalent to the value at the given percentile, capped by the maximum,
+     *         or {@literal 0} if empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    private int index(long value) {
+        int msb = 63 - Long.numberOfLeadingZeros(value | 1);
+        if (msb < precision) {
+            return (int) value;
+        }
+        int shift = msb - precision + 1;
+        // the mantissa is in [subBuckets, 2 * subBuckets)
+        return (shift + 1) * subBuckets + (int) (value >>> shift) - subBuckets;
+    }
+
+    private long highestValue(int index) {
+        if (index < 2 * subBuckets) {
+            return index;
+        }
+        int shift = index / subBuckets - 1;
+        long mantissa = index % subBuckets + subBuckets;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    private int maxIndex() {
+        return index(Long.MAX_VALUE);
+    }
+
+    @Override
+    public String toString() {
+        return "LogLinearHistogram{count=" + count + ", min=" + getMin() + ", p50=" + getValueAtPercentile(50) + ", p99=" + getValueAtPercentile(99) + ", max=" + getMax() + "}";
+    }
+}
@@ -0,0 +1,176 @@
+package io.jafar.parser.api;
+
+import io.jafar.parser.internal_api.StreamingChunkParser;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Compares the same {@linkplain EventQuery query} run over a baseline and a candidate recording, eg. for regression triage.<br>
+ * Both recordings are parsed at the same time, their chunks sharing one executor, so the comparison takes about
+ * as long as parsing the larger of the recordings. The groups are matched by the key and ranked by the absolute change
+ * of their share of the total weight, so recordings of different lengths can be compared.
+ * <pre>{@code
+ * List<RecordingDiff.Delta> deltas = RecordingDiff.compare(Paths.get("baseline.jfr"), Paths.get("candidate.jfr"), RecordingDiff.cpuFrames());
+ * deltas.stream().limit(10).forEach(d -> System.out.printf("%+.2f%% %s%n", d.shareDelta() * 100, d.key()));
+ * }</pre>
+ */
+public final class RecordingDiff {
+    /**
+     * The weights are the raw aggregate values, so the timespans are in ticks. The tick frequency is recording specific,
+     * so the weights of such aggregates, and their {@linkplain #delta()}, are comparable only between recordings with
+     * the same tick frequency; the shares, and {@linkplain #shareDelta()}, are always comparable.
+     * @param key the group key
+     * @param baseline the group weight in the baseline recording, {@literal 0} if the group is not present there
+     * @param candidate the group weight in the candidate recording, {@literal 0} if the group is not present there
+     * @param baselineShare the share of the group in the total baseline weight, between {@literal 0} and {@literal 1}
+     * @param candidateShare the share of the group in the total candidate weight, between {@literal 0} and {@literal 1}
+     */
+    public record Delta(List<Object> key, double baseline, double candidate, double baselineShare, double candidateShare) {
+        /**
+         * @return the absolute weight change; in ticks for the timespan aggregates, see {@linkplain Delta}
+         */
+        public double delta() {
+            return candidate - baseline;
+        }
+
+        /**
+         * @return the change of the share of the total weight
+         */
+        public double shareDelta() {
+            return candidateShare - baselineShare;
+        }
+    }
+
+    private RecordingDiff() {}
+
+    /**
+     * @return the CPU samples by the top frame
+     */
+    public static EventQuery cpuFrames() {
+        return EventQuery.from("jdk.ExecutionSample").groupBy(EventQuery.Key.topFrame());
+    }
+
+    /**
+     * @return the CPU samples by the stack trace
+     */
+    public static EventQuery cpuStacks() {
+        return EventQuery.from("jdk.ExecutionSample").groupBy(EventQuery.Key.stackTrace());
+    }
+
+    /**
+     * @return the sampled allocation weight by the allocation site (the top frame)
+     */
+    public static EventQuery allocationSites() {
+        return EventQuery.from("jdk.ObjectAllocationSample")
+                .groupBy(EventQuery.Key.topFrame())
+                .aggregate(EventQuery.Aggregate.sum("weight"));
+    }
+
+    /**
+     * @return the monitor contention time, in ticks, by the monitor class
+     */
+    public static EventQuery lockContention() {
+        return EventQuery.from("jdk.JavaMonitorEnter")
+                .groupBy(EventQuery.Key.field("monitorClass.name"))
+                .aggregate(EventQuery.Aggregate.sum("duration"));
+    }
+
+    /**
+     * Compares the recordings.
+     * @param baseline the baseline recording path
+     * @param candidate the candidate recording path
+     * @param query the query to run on both recordings; the weight of a group is the value of the first aggregate,
+     *              or the event count if the query has no aggregates
+     * @return the deltas of all the groups present in either recording, the largest absolute share change first
+     * @throws IOException if any of the recordings can not be read
+     * @throws IllegalArgumentException if the first aggregate is a histogram
+     */
+    public static List<Delta> compare(Path baseline, Path candidate, EventQuery query) throws IOException {
+        List<EventQuery.Aggregate> aggregates = query.getAggregates();
+        if (!aggregates.isEmpty() && aggregates.getFirst().kind() == EventQuery.Aggregate.Kind.HISTOGRAM) {
+            // fail fast, before both recordings are parsed
+            throw new IllegalArgumentException("A histogram can not be used as the weight");
+        }
+        List<EventQuery.Group> baselineGroups;
+        List<EventQuery.Group> candidateGroups;
+        ExecutorService executor = StreamingChunkParser.newChunkExecutor();
+        try (StreamingChunkParser baselineParser = new StreamingChunkParser(executor);
+             StreamingChunkParser candidateParser = new StreamingChunkParser(executor)) {
+            // the candidate is driven from its own thread - the chunk tasks of both recordings interleave on the executor
+            FutureTask<List<EventQuery.Group>> candidateTask = new FutureTask<>(() -> query.run(candidate, candidateParser));
+            Thread candidateThread = new Thread(candidateTask, "jafar-diff-candidate");
+            candidateThread.setDaemon(true);
+            candidateThread.start();
+            try {
+                baselineGroups = query.run(baseline, baselineParser);
+            } catch (Throwable t) {
+                // the candidate parse must not outlive the executor; its failure is reported along with the baseline one
+                try {
+                    candidateTask.get();
+                } catch (ExecutionException e) {
+                    t.addSuppressed(e.getCause());
+                }
+                throw t;
+            }
+            try {
+                candidateGroups = candidateTask.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException ioe) {
+                    throw ioe;
+                }
+                throw new IOException(e.getCause());
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        } finally {
+            executor.shutdown();
+        }
+        return diff(baselineGroups, candidateGroups);
+    }
+
+    private static List<Delta> diff(List<EventQuery.Group> baselineGroups, List<EventQuery.Group> candidateGroups) {
+        Map<List<Object>, double[]> weights = new HashMap<>();
+        double baselineTotal = 0;
+        double candidateTotal = 0;
+        for (EventQuery.Group group : baselineGroups) {
+            double weight = weight(group);
+            weights.computeIfAbsent(group.key(), k -> new double[2])[0] = weight;
+            baselineTotal += weight;
+        }
+        for (EventQuery.Group group : candidateGroups) {
+            double weight = weight(group);
+            weights.computeIfAbsent(group.key(), k -> new double[2])[1] = weight;
+            candidateTotal += weight;
+        }
+        List<Delta> deltas = new ArrayList<>(weights.size());
+        for (Map.Entry<List<Object>, double[]> entry : weights.entrySet()) {
+            double[] w = entry.getValue();
+            deltas.add(new Delta(entry.getKey(), w[0], w[1],
+                    baselineTotal != 0 ? w[0] / baselineTotal : 0, candidateTotal != 0 ? w[1] / candidateTotal : 0));
+        }
+        deltas.sort((d1, d2) -> {
+            int cmp = Double.compare(Math.abs(d2.shareDelta()), Math.abs(d1.shareDelta()));
+            return cmp != 0 ? cmp : Double.compare(Math.abs(d2.delta()), Math.abs(d1.delta()));
+        });
+        return Collections.unmodifiableList(deltas);
+    }
+
+    private static double weight(EventQuery.Group group) {
+        if (group.values().isEmpty()) {
+            return group.count();
+        }
+        Object value = group.values().getFirst();
+        return value != null ? ((Number) value).doubleValue() : 0;
+    }
+}
@@ -0,0 +1,193 @@
+package io.jafar.parser.api;
+
+import io.jafar.parser.internal_api.ChunkHeader;
+import io.jafar.parser.internal_api.ChunkParserListener;
+import io.jafar.parser.internal_api.ParserContext;
+import io.jafar.parser.internal_api.RecordingStream;
+import io.jafar.parser.internal_api.StreamingChunkParser;
+import io.jafar.parser.internal_api.metadata.MetadataClass;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Quick overview of a recording - the event types, their counts and sizes and the recorded time span.<br>
+ * The summary is collected without deserializing any event and without reading the constant pools. Only the chunk
+ * headers and the metadata are parsed and the event data is walked over using just the event size and type id.
+ * The chunks are scanned in parallel.
+ * <pre>{@code
+ * RecordingSummary summary = RecordingSummary.scan(Paths.get("recording.jfr"));
+ * summary.getTypes().values().forEach(t -> System.out.println(t.name() + ": " + t.count()));
+ * }</pre>
+ */
+public final class RecordingSummary {
+    /**
+     * @param name the event type name
+     * @param count the number of events
+     * @param bytes the total size of the event payloads, excluding the event size and type id
+     */
+    public record TypeSummary(String name, long count, long bytes) {
+        private TypeSummary merge(TypeSummary other) {
+            return new TypeSummary(name, count + other.count, bytes + other.bytes);
+        }
+    }
+
+    /**
+     * @param index the chunk index (1-based)
+     * @param offset the chunk offset in the recording
+     * @param size the chunk size in bytes
+     * @param startNanos the chunk start time in epoch nanoseconds
+     * @param durationNanos the chunk duration in nanoseconds
+     * @param types the event type summaries, by the type name
+     */
+    public record ChunkSummary(int index, long offset, long size, long startNanos, long durationNanos, Map<String, TypeSummary> types) {}
+
+    private final List<ChunkSummary> chunks;
+    private final Map<String, TypeSummary> types;
+
+    private RecordingSummary(List<ChunkSummary> chunks) {
+        this.chunks = Collections.unmodifiableList(chunks);
+        Map<String, TypeSummary> aggregated = new TreeMap<>();
+        for (ChunkSummary chunk : chunks) {
+            chunk.types().values().forEach(t -> aggregated.merge(t.name(), t, TypeSummary::merge));
+        }
+        this.types = Collections.unmodifiableMap(aggregated);
+    }
+
+    /**
+     * Scans the given recording.
+     * @param path the recording path
+     * @return the recording summary
+     * @throws IOException if the recording can not be read
+     */
+    public static RecordingSummary scan(Path path) throws IOException {
+        // a chunk is parsed by a single thread, from 'onChunkStart' to 'onChunkEnd'
+        ThreadLocal<ChunkScan> scans = new ThreadLocal<>();
+        Map<Integer, ChunkSummary> chunks = new ConcurrentSkipListMap<>();
+        try (StreamingChunkParser parser = new StreamingChunkParser()) {
+            parser.parse(path, new ChunkParserListener() {
+                @Override
+                public boolean onChunkStart(int chunkIndex, ChunkHeader header, ParserContext context) {
+                    scans.set(new ChunkScan(header, context));
+                    return true;
+                }
+
+                @Override
+                public boolean needsConstantPools() {
+                    return false;
+                }
+
+                @Override
+                public boolean onEvent(long typeId, RecordingStream stream, long payloadSize) {
+                    scans.get().count(typeId, payloadSize);
+                    return true;
+                }
+
+                @Override
+                public boolean onChunkEnd(int chunkIndex, boolean skipped) {
+                    ChunkScan scan = scans.get();
+                    if (scan != null) {
+                        // the type names must be resolved while the chunk metadata is still available
+                        chunks.put(chunkIndex, scan.summary());
+                        scans.remove();
+                    }
+                    return true;
+                }
+            });
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        return new RecordingSummary(new ArrayList<>(chunks.values()));
+    }
+
+    /**
+     * @return the per-chunk summaries, in the chunk order
+     */
+    public List<ChunkSummary> getChunks() {
+        return chunks;
+    }
+
+    /**
+     * @return the event type summaries aggregated over all chunks, by the type name
+     */
+    public Map<String, TypeSummary> getTypes() {
+        return types;
+    }
+
+    public long getEventCount() {
+        return types.values().stream().mapToLong(TypeSummary::count).sum();
+    }
+
+    public long getEventBytes() {
+        return types.values().stream().mapToLong(TypeSummary::bytes).sum();
+    }
+
+    /**
+     * @return the start of the earliest chunk in epoch nanoseconds or {@literal -1} for an empty recording
+     */
+    public long getStartNanos() {
+        return chunks.stream().mapToLong(ChunkSummary::startNanos).min().orElse(-1);
+    }
+
+    /**
+     * @return the end of the latest chunk in epoch nanoseconds or {@literal -1} for an empty recording
+     */
+    public long getEndNanos() {
+        return chunks.stream().mapToLong(c -> c.startNanos() + c.durationNanos()).max().orElse(-1);
+    }
+
+    @Override
+    public String toString() {
+        return "RecordingSummary{chunks=" + chunks.size() + ", events=" + getEventCount() + ", bytes=" + getEventBytes() + ", types=" + types.size() + "}";
+    }
+
+    // accessed only by the thread parsing the chunk
+    private static final class ChunkScan {
+        private final ChunkHeader header;
+        private final ParserContext context;
+        private final Long2ObjectMap<long[]> counters = new Long2ObjectOpenHashMap<>();
+        // the events of the same type tend to come in runs
+        private long lastTypeId = -1;
+        private long[] lastCounters;
+
+        ChunkScan(ChunkHeader header, ParserContext context) {
+            this.header = header;
+            this.context = context;
+        }
+
+        void count(long typeId, long payloadSize) {
+            long[] value = lastCounters;
+            if (typeId != lastTypeId || value == null) {
+                value = counters.get(typeId);
+                if (value == null) {
+                    value = new long[2];
+                    counters.put(typeId, value);
+                }
+                lastTypeId = typeId;
+                lastCounters = value;
+            }
+            value[0]++;
+            value[1] += payloadSize;
+        }
+
+        ChunkSummary summary() {
+            Map<String, TypeSummary> types = new TreeMap<>();
+            for (Long2ObjectMap.Entry<long[]> entry : counters.long2ObjectEntrySet()) {
+                MetadataClass clz = context.getMetadataLookup().getClass(entry.getLongKey());
+                String name = clz != null ? clz.getName() : "<unknown:" + entry.getLongKey() + ">";
+                types.merge(name, new TypeSummary(name, entry.getValue()[0], entry.getValue()[1]), TypeSummary::merge);
+            }
+            return new ChunkSummary(header.order, header.offset, header.size, header.startNanos, header.duration, Collections.unmodifiableMap(types));
+        }
+    }
+}
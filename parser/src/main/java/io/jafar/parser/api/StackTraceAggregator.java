@@ -0,0 +1,333 @@
+package io.jafar.parser.api;
+
+import io.jafar.parser.MutableConstantPool;
+import io.jafar.parser.internal_api.ChunkHeader;
+import io.jafar.parser.internal_api.ChunkParserListener;
+import io.jafar.parser.internal_api.ConstantPools;
+import io.jafar.parser.internal_api.EventCursorImpl;
+import io.jafar.parser.internal_api.ParserContext;
+import io.jafar.parser.internal_api.RecordingStream;
+import io.jafar.parser.internal_api.StreamingChunkParser;
+import io.jafar.parser.internal_api.metadata.MetadataClass;
+import io.jafar.parser.internal_api.metadata.MetadataEvent;
+import io.jafar.parser.internal_api.metadata.MetadataField;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Aggregates the stack traces of the events of one type into collapsed stacks, eg. for flame graphs.<br>
+ * The events are not deserialized - per chunk, only the stack trace constant pool ids and the optional weights
+ * are read and summed up in a primitive map. Each distinct stack trace is then resolved once and merged into
+ * a recording-wide trie of the frames, so the stacks recorded in multiple chunks are aggregated together.
+ * <pre>{@code
+ * StackTraceAggregator stacks = StackTraceAggregator.aggregate(Paths.get("recording.jfr"), "jdk.ObjectAllocationSample", "weight");
+ * stacks.writeCollapsed(System.out);
+ * }</pre>
+ */
+public final class StackTraceAggregator {
+    private static final String STACK_TRACE = "stackTrace";
+    // only these constant pools are needed to resolve the stack traces
+    private static final Set<String> STACK_TRACE_TYPES = Set.of("jdk.types.StackTrace", "jdk.types.Method", "java.lang.Class", "jdk.types.Symbol");
+
+    private final Object2IntOpenHashMap<String> frameIds = new Object2IntOpenHashMap<>();
+    private final List<String> frames = new ArrayList<>();
+    // the trie nodes; node 0 is the root
+    private final IntArrayList parents = new IntArrayList();
+    private final IntArrayList nodeFrames = new IntArrayList();
+    private final LongArrayList weights = new LongArrayList();
+    // (parent << 32 | frame) -> child node
+    private final Long2LongOpenHashMap children = new Long2LongOpenHashMap();
+    private long totalWeight;
+
+    private StackTraceAggregator() {
+        frameIds.defaultReturnValue(-1);
+        children.defaultReturnValue(-1);
+        parents.add(-1);
+        nodeFrames.add(-1);
+        weights.add(0);
+    }
+
+    /**
+     * Aggregates the stack traces, counting the events.
+     * @param recording the recording path
+     * @param eventType the event type name
+     * @return the aggregated stacks
+     * @throws IOException if the recording can not be read
+     */
+    public static StackTraceAggregator aggregate(Path recording, String eventType) throws IOException {
+        return aggregate(recording, eventType, null);
+    }
+
+    /**
+     * Aggregates the stack traces, summing up the given event field.
+     * @param recording the recording path
+     * @param eventType the event type name
+     * @param weightField the numeric event field to use as the weight, eg. {@code weight} or {@code duration}
+     *                    (the raw value - ticks for the durations); {@literal null} to count the events
+     * @return the aggregated stacks
+     * @throws IOException if the recording can not be read
+     */
+    public static StackTraceAggregator aggregate(Path recording, String eventType, String weightField) throws IOException {
+        StackTraceAggregator aggregator = new StackTraceAggregator();
+        Map<Integer, ChunkAggregation> chunks = new ConcurrentHashMap<>();
+        try (StreamingChunkParser parser = new StreamingChunkParser()) {
+            parser.parse(recording, new ChunkParserListener() {
+                @Override
+                public void onRecordingStart(ParserContext context) {
+                    context.setTypeFilter(t -> STACK_TRACE_TYPES.contains(t.getName()));
+                }
+
+                @Override
+                public boolean onChunkStart(int chunkIndex, ChunkHeader header, ParserContext context) {
+                    chunks.put(chunkIndex, new ChunkAggregation(context, eventType, weightField));
+                    return true;
+                }
+
+                @Override
+                public boolean onMetadata(MetadataEvent metadata) {
+                    // the constant pools can be indexed only with the deserializers (skippers) bound
+                    metadata.getContext().bindDeserializers();
+                    return chunks.get(metadata.getContext().getChunkIndex()).onMetadata(metadata);
+                }
+
+                @Override
+                public boolean isEventTypeNeeded(long typeId, ParserContext context) {
+                    return chunks.get(context.getChunkIndex()).eventTypeId == typeId;
+                }
+
+                @Override
+                public boolean onEvent(long typeId, RecordingStream stream, long payloadSize) {
+                    chunks.get(stream.getContext().getChunkIndex()).onEvent(typeId, stream);
+                    return true;
+                }
+
+                @Override
+                public boolean onChunkEnd(int chunkIndex, boolean skipped) {
+                    // the stack traces must be resolved while the chunk data is still available
+                    ChunkAggregation chunk = chunks.remove(chunkIndex);
+                    if (!skipped) {
+                        List<String[]> stacks = new ArrayList<>(chunk.counts.size());
+                        long[] stackWeights = chunk.resolve(stacks);
+                        synchronized (aggregator) {
+                            for (int i = 0; i < stacks.size(); i++) {
+                                aggregator.add(stacks.get(i), stackWeights[i]);
+                            }
+                        }
+                    }
+                    return true;
+                }
+            });
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        return aggregator;
+    }
+
+    /**
+     * @param stack the frames, the top frame first
+     * @param weight the stack weight
+     */
+    private void add(String[] stack, long weight) {
+        int node = 0;
+        for (int i = stack.length - 1; i >= 0; i--) {
+            int frame = frameIds.getInt(stack[i]);
+            if (frame == -1) {
+                frame = frames.size();
+                frames.add(stack[i]);
+                frameIds.put(stack[i], frame);
+            }
+            long key = ((long) node << 32) | frame;
+            int child = (int) children.get(key);
+            if (child == -1) {
+                child = parents.size();
+                parents.add(node);
+                nodeFrames.add(frame);
+                weights.add(0);
+                children.put(key, child);
+            }
+            node = child;
+        }
+        weights.set(node, weights.getLong(node) + weight);
+        totalWeight += weight;
+    }
+
+    /**
+     * @return the sum of the weights of all the aggregated events, the events without a stack trace are not included
+     */
+    public long getTotalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * @return the number of distinct stacks
+     */
+    public int getStackCount() {
+        int count = 0;
+        for (int i = 0; i < weights.size(); i++) {
+            if (weights.getLong(i) != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the collapsed stacks - the frames, the root frame first, separated by {@code ;} - and their weights
+     */
+    public Map<String, Long> toCollapsed() {
+        Map<String, Long> collapsed = new LinkedHashMap<>();
+        StringBuilder sb = new StringBuilder();
+        IntArrayList path = new IntArrayList();
+        for (int node = 0; node < weights.size(); node++) {
+            long weight = weights.getLong(node);
+            if (weight != 0) {
+                collapsed.put(path(node, path, sb), weight);
+            }
+        }
+        return collapsed;
+    }
+
+    /**
+     * Writes the stacks in the collapsed format, one {@code frame;frame;frame weight} line per distinct stack.
+     * @param out the output
+     * @throws IOException if the output can not be written
+     */
+    public void writeCollapsed(Appendable out) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        IntArrayList path = new IntArrayList();
+        for (int node = 0; node < weights.size(); node++) {
+            long weight = weights.getLong(node);
+            if (weight != 0) {
+                out.append(path(node, path, sb)).append(' ').append(Long.toString(weight)).append('\n');
+            }
+        }
+    }
+
+    private String path(int node, IntArrayList path, StringBuilder sb) {
+        // the nodes are collected leaf first and appended root first
+        path.clear();
+        for (int n = node; n > 0; n = parents.getInt(n)) {
+            path.add(n);
+        }
+        sb.setLength(0);
+        for (int i = path.size() - 1; i >= 0; i--) {
+            sb.append(frames.get(nodeFrames.getInt(path.getInt(i))));
+            if (i > 0) {
+                sb.append(';');
+            }
+        }
+        return sb.toString();
+    }
+
+    // accessed only by the thread parsing the chunk
+    private static final class ChunkAggregation {
+        private final ParserContext context;
+        private final String eventType;
+        private final String weightField;
+        private long eventTypeId = -1;
+        private MetadataClass eventClass;
+        private MetadataClass stackTraceClass;
+
+        // stack trace id -> weight
+        private final Long2LongOpenHashMap counts = new Long2LongOpenHashMap();
+        // method id -> frame name
+        private final Long2ObjectMap<String> methods = new Long2ObjectOpenHashMap<>();
+        private EventCursorImpl cursor;
+
+        ChunkAggregation(ParserContext context, String eventType, String weightField) {
+            this.context = context;
+            this.eventType = eventType;
+            this.weightField = weightField;
+        }
+
+        boolean onMetadata(MetadataEvent metadata) {
+            for (MetadataClass clz : metadata.getClasses()) {
+                if (clz.getName().equals(eventType)) {
+                    for (MetadataField field : clz.getFields()) {
+                        if (field.getName().equals(STACK_TRACE) && field.hasConstantPool()) {
+                            eventTypeId = clz.getId();
+                            eventClass = clz;
+                            stackTraceClass = field.getType();
+                        }
+                    }
+                }
+            }
+            // nothing to aggregate in this chunk
+            return eventClass != null;
+        }
+
+        void onEvent(long typeId, RecordingStream stream) {
+            if (typeId != eventTypeId) {
+                return;
+            }
+            if (cursor == null) {
+                cursor = new EventCursorImpl(stream);
+            }
+            cursor.reset(eventClass, stream.position());
+            long stackTraceId = cursor.getReference(STACK_TRACE);
+            counts.addTo(stackTraceId, weightField != null ? cursor.getLong(weightField) : 1);
+        }
+
+        /**
+         * Resolves the distinct stack traces.
+         * @param stacks receives the frames of each stack trace, the top frame first
+         * @return the weights of the resolved stacks
+         */
+        long[] resolve(List<String[]> stacks) {
+            ConstantPools constantPools = context.getConstantPools();
+            MutableConstantPool pool = stackTraceClass != null && constantPools.hasConstantPool(stackTraceClass.getId())
+                    ? (MutableConstantPool) constantPools.getConstantPool(stackTraceClass.getId()) : null;
+            LongArrayList stackWeights = new LongArrayList(counts.size());
+            for (Long2LongMap.Entry entry : counts.long2LongEntrySet()) {
+                long offset = pool != null ? pool.getOffset(entry.getLongKey()) : -1;
+                if (offset < 0) {
+                    // the events without a stack trace are not aggregated
+                    continue;
+                }
+                cursor.reset(stackTraceClass, offset);
+                List<String> frames = new ArrayList<>(cursor.getLength("frames"));
+                cursor.forEach("frames", frame -> frames.add(frame(frame)));
+                stacks.add(frames.toArray(new String[0]));
+                stackWeights.add(entry.getLongValue());
+            }
+            return stackWeights.toLongArray();
+        }
+
+        private String frame(EventCursor frame) {
+            long methodId = frame.hasField("method") ? ((EventCursorImpl) frame).getReference("method") : -1;
+            String name = methods.get(methodId);
+            if (name == null) {
+                name = methodName(methodId != -1 ? frame.cursor("method") : null);
+                methods.put(methodId, name);
+            }
+            return name;
+        }
+    }
+
+    /**
+     * @param method the cursor over a {@code jdk.types.Method} value or {@literal null}
+     * @return the frame name - {@code package.Class.method}
+     */
+    static String methodName(EventCursor method) {
+        EventCursor type = method != null ? method.cursor("type") : null;
+        String typeName = type != null ? type.getString("name") : null;
+        String methodName = method != null ? method.getString("name") : null;
+        return (typeName != null ? typeName.replace('/', '.') : "<unknown>") + "." + (methodName != null ? methodName : "<unknown>");
+    }
+}
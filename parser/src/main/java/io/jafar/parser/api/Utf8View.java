@@ -0,0 +1,219 @@
+package io.jafar.parser.api;
+
+import io.jafar.parser.internal_api.RecordingStream;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * String value pointing straight at the recording data, without copying or decoding it.<br>
+ * The comparisons, {@linkplain #startsWith(CharSequence)} and {@linkplain #hashCode()} work on the raw bytes
+ * whenever possible, so filtering by eg. a class name prefix does not allocate. The {@linkplain String} is decoded
+ * only when {@linkplain #toString()} is called (or the content is not representable byte-per-char) and then it is cached.<br>
+ * The view is backed by the parsed recording and must not be used after the parser has been closed.
+ * A handler interface method can return {@code Utf8View} instead of {@code String} for the {@code String} fields.
+ */
+public final class Utf8View implements CharSequence {
+    private static final byte UNKNOWN = 0;
+    private static final byte ASCII = 1;
+    private static final byte NON_ASCII = 2;
+
+    private final RecordingStream stream;
+    private final long offset;
+    private final int byteLength;
+    private final boolean latin1;
+
+    private String value;
+    private byte ascii;
+    // 0 means not computed yet; as in String, a racy recomputation yields the same value
+    private int hash;
+
+    private Utf8View(RecordingStream stream, long offset, int byteLength, boolean latin1, String value) {
+        this.stream = stream;
+        this.offset = offset;
+        this.byteLength = byteLength;
+        this.latin1 = latin1;
+        this.value = value;
+    }
+
+    /**
+     * @param value the string value
+     * @return a view over an already decoded string, or {@literal null} for a {@literal null} value
+     */
+    public static Utf8View of(String value) {
+        return value != null ? new Utf8View(null, 0, 0, false, value) : null;
+    }
+
+    /**
+     * Creates a view over the encoded string data.
+     * @param stream the stream holding the data
+     * @param offset the position of the first byte of the string data
+     * @param byteLength the encoded length in bytes
+     * @param latin1 {@literal true} for the LATIN1 encoded data, {@literal false} for UTF-8
+     * @return the view
+     */
+    public static Utf8View of(RecordingStream stream, long offset, int byteLength, boolean latin1) {
+        return new Utf8View(stream, offset, byteLength, latin1, null);
+    }
+
+    @Override
+    public int length() {
+        return isSingleByte() ? byteLength : toString().length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (isSingleByte()) {
+            if (index < 0 || index >= byteLength) {
+                throw new StringIndexOutOfBoundsException(index);
+            }
+            return byteAt(index);
+        }
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (isSingleByte()) {
+            if (start < 0 || end > byteLength || start > end) {
+                throw new StringIndexOutOfBoundsException("begin " + start + ", end " + end + ", length " + byteLength);
+            }
+            return new Utf8View(stream, offset + start, end - start, latin1, null);
+        }
+        return toString().subSequence(start, end);
+    }
+
+    /**
+     * @param prefix the prefix
+     * @return {@literal true} if the value starts with the given prefix
+     */
+    public boolean startsWith(CharSequence prefix) {
+        int len = prefix.length();
+        if (stream == null) {
+            if (len > value.length()) {
+                return false;
+            }
+            for (int i = 0; i < len; i++) {
+                if (value.charAt(i) != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (len > byteLength) {
+            // a char is encoded in at least one byte
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            char c = prefix.charAt(i);
+            if (!latin1 && c >= 0x80) {
+                // the multi-byte sequences are not compared on the raw data
+                return toString().startsWith(prefix.toString());
+            }
+            // for UTF-8 the preceding bytes matched ASCII chars, so the i-th byte is the start of the i-th char
+            if (byteAt(i) != c) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param other the char sequence to compare to
+     * @return {@literal true} if this value represents the same sequence of chars
+     */
+    public boolean contentEquals(CharSequence other) {
+        if (stream != null && other instanceof Utf8View view && view.stream != null && latin1 == view.latin1) {
+            // same encoding, compare the raw data
+            if (byteLength != view.byteLength) {
+                return false;
+            }
+            for (int i = 0; i < byteLength; i++) {
+                if (stream.get(offset + i) != view.stream.get(view.offset + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (isSingleByte()) {
+            if (other.length() != byteLength) {
+                return false;
+            }
+            for (int i = 0; i < byteLength; i++) {
+                if (byteAt(i) != other.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return toString().contentEquals(other);
+    }
+
+    /**
+     * Views are equal to other views with the same content. A view is never equal to a {@linkplain String},
+     * use {@linkplain #contentEquals(CharSequence)} instead.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        return this == obj || obj instanceof Utf8View view && contentEquals(view);
+    }
+
+    /**
+     * @return the same hash code as {@linkplain String#hashCode()} of the decoded value
+     */
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            if (isSingleByte()) {
+                for (int i = 0; i < byteLength; i++) {
+                    h = 31 * h + byteAt(i);
+                }
+            } else {
+                h = toString().hashCode();
+            }
+            hash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        if (value == null) {
+            byte[] data = new byte[byteLength];
+            for (int i = 0; i < byteLength; i++) {
+                data[i] = stream.get(offset + i);
+            }
+            value = new String(data, latin1 ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    private char byteAt(int index) {
+        return (char) (stream.get(offset + index) & 0xff);
+    }
+
+    /**
+     * @return {@literal true} if the view is backed by the raw data where each byte represents one char
+     */
+    private boolean isSingleByte() {
+        if (stream == null) {
+            return false;
+        }
+        if (latin1) {
+            return true;
+        }
+        byte state = ascii;
+        if (state == UNKNOWN) {
+            // scanned into a local, a concurrent reader must never see the result before the scan is done
+            state = ASCII;
+            for (int i = 0; i < byteLength; i++) {
+                if (stream.get(offset + i) < 0) {
+                    state = NON_ASCII;
+                    break;
+                }
+            }
+            ascii = state;
+        }
+        return state == ASCII;
+    }
+}
@@ -8,12 +8,20 @@ import io.jafar.parser.ValueLoader;
 import io.jafar.parser.internal_api.metadata.MetadataClass;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public final class CheckpointEvent extends AbstractEvent {
+    public final int size;
     public final long startTime;
     public final long duration;
     public final int nextOffsetDelta;
 
+    /**
+     * The raw checkpoint type bits; {@literal 1} marks a flush checkpoint.
+     */
+    public final int type;
     public final boolean isFlush;
 
     private final RecordingStream stream;
@@ -21,7 +29,7 @@ public final class CheckpointEvent extends AbstractEvent {
     CheckpointEvent(RecordingStream stream) throws IOException {
         super(stream);
         this.stream = stream;
-        int size = (int) stream.readVarint();
+        this.size = (int) stream.readVarint();
         if (size == 0) {
             throw new IOException("Unexpected event size. Should be > 0");
         }
@@ -32,34 +40,92 @@ public final class CheckpointEvent extends AbstractEvent {
         this.startTime = stream.readVarint();
         this.duration = stream.readVarint();
         this.nextOffsetDelta = (int)stream.readVarint();
-        this.isFlush = stream.read() != 0;
+        this.type = stream.read() & 0xff;
+        this.isFlush = type != 0;
+    }
+
+    /**
+     * The entry offsets of one constant pool in a checkpoint event.
+     */
+    static final class PoolSection {
+        final long typeId;
+        final int count;
+        private long[] ids;
+        private long[] offsets;
+        private int size;
+
+        PoolSection(long typeId, int count) {
+            this.typeId = typeId;
+            this.count = count;
+            this.ids = new long[Math.min(count, 1024)];
+            this.offsets = new long[ids.length];
+        }
+
+        void add(long id, long offset) {
+            if (size == ids.length) {
+                int newLength = Math.min(Math.max(ids.length * 2, 16), Math.max(count, size + 1));
+                ids = Arrays.copyOf(ids, newLength);
+                offsets = Arrays.copyOf(offsets, newLength);
+            }
+            ids[size] = id;
+            offsets[size++] = offset;
+        }
     }
 
     void readConstantPools() throws IOException {
+        applyConstantPools(indexConstantPools());
+    }
+
+    /**
+     * Collects the constant pool entry offsets of this checkpoint event without touching the shared constant pools,
+     * so multiple checkpoint events can be indexed concurrently.
+     * @return the indexed constant pools
+     */
+    List<PoolSection> indexConstantPools() throws IOException {
         ParserContext context = stream.getContext();
         TypeFilter typeFilter = context.getTypeFilter();
 
         boolean skipAll = context.getConstantPools().isReady();
 
+        List<PoolSection> sections = new ArrayList<>();
         long cpCount = stream.readVarint();
         for (long i = 0; i < cpCount; i++) {
             long typeId = 0;
             while ((typeId = stream.readVarint()) == 0) ; // workaround for a bug in JMC JFR writer
-            try {
-                int count = (int) stream.readVarint();
-                MetadataClass clz = context.getMetadataLookup().getClass(typeId);
-                boolean skip = skipAll || (typeFilter != null && !typeFilter.test(clz));
-                MutableConstantPool constantPool = skip ? null : ((MutableConstantPools) context.getConstantPools()).addOrGetConstantPool(stream, typeId, count);
-                for (int j = 0; j < count; j++) {
-                    long id = stream.readVarint();
-                    if (!skip && !constantPool.containsKey(id)) {
-                        constantPool.addOffset(id, stream.position());
-                    }
-                    clz.skip(stream);
+            int count = (int) stream.readVarint();
+            MetadataClass clz = context.getMetadataLookup().getClass(typeId);
+            boolean skip = skipAll || (typeFilter != null && !typeFilter.test(clz));
+            PoolSection section = skip ? null : new PoolSection(typeId, count);
+            for (int j = 0; j < count; j++) {
+                long id = stream.readVarint();
+                if (!skip) {
+                    section.add(id, stream.position());
+                }
+                clz.skip(stream);
+            }
+            if (!skip) {
+                sections.add(section);
+            }
+        }
+        return sections;
+    }
+
+    /**
+     * Merges the indexed offsets into the shared constant pools.<br>
+     * The first offset recorded for an id wins, so the checkpoint events must be applied in the chain order.
+     * @param sections the constant pools indexed by {@linkplain #indexConstantPools()}
+     */
+    void applyConstantPools(List<PoolSection> sections) {
+        MutableConstantPools constantPools = (MutableConstantPools) stream.getContext().getConstantPools();
+        for (PoolSection section : sections) {
+            MutableConstantPool constantPool = constantPools.addOrGetConstantPool(stream, section.typeId, section.count);
+            for (int j = 0; j < section.size; j++) {
+                long id = section.ids[j];
+                if (!constantPool.containsKey(id)) {
+                    constantPool.addOffset(id, section.offsets[j]);
                 }
-            } catch (IOException e) {
-                throw e;
             }
+            constantPool.compact();
         }
     }
 }
@@ -32,6 +32,27 @@ public interface ChunkParserListener {
 
   default boolean onCheckpoint(CheckpointEvent checkpoint) { return true; }
 
+  /**
+   * Allows skipping the checkpoint events, and the constant pool indexing, altogether
+   *
+   * @return {@literal false} if the constant pools are not needed; {@linkplain #onCheckpoint(CheckpointEvent)} is not called then
+   */
+  default boolean needsConstantPools() {
+    return true;
+  }
+
+  /**
+   * Called when the event offsets are known upfront, eg. from the {@linkplain RecordingIndex recording index},
+   * so the events of the types nobody is interested in do not need to be visited at all
+   *
+   * @param typeId event type id
+   * @param context the chunk parser context
+   * @return {@literal false} if {@linkplain #onEvent(long, RecordingStream, long)} would ignore the events of this type
+   */
+  default boolean isEventTypeNeeded(long typeId, ParserContext context) {
+    return true;
+  }
+
   /**
    * Called for each parsed event
    *
@@ -44,6 +65,20 @@ public interface ChunkParserListener {
     return true;
   }
 
+  /**
+   * Called for each parsed event, together with the position of the event start.<br>
+   * Delegates to {@linkplain #onEvent(long, RecordingStream, long)} by default.
+   *
+   * @param typeId event type id
+   * @param eventStart the chunk relative position of the event start, ie. of the event size
+   * @param stream {@linkplain RecordingStream} positioned at the event payload start
+   * @param payloadSize the size of the payload in bytes
+   * @return {@literal false} if the remainder of the chunk should be skipped
+   */
+  default boolean onEvent(long typeId, long eventStart, RecordingStream stream, long payloadSize) {
+    return onEvent(typeId, stream, payloadSize);
+  }
+
   /**
    * Called when a chunk is fully processed or skipped
    *
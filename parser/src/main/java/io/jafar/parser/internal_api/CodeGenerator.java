@@ -1,8 +1,11 @@
 package io.jafar.parser.internal_api;
 
 import io.jafar.parser.ParsingUtils;
+import io.jafar.parser.api.Filter;
 import io.jafar.parser.api.JfrField;
 import io.jafar.parser.api.JfrIgnore;
+import io.jafar.parser.api.JfrType;
+import io.jafar.parser.api.Utf8View;
 import io.jafar.parser.internal_api.metadata.MetadataClass;
 import io.jafar.parser.internal_api.metadata.MetadataField;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
@@ -21,18 +24,21 @@ import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
 final class CodeGenerator {
@@ -69,14 +75,19 @@ final class CodeGenerator {
         clzName = clzName.replace('.', '/');
         String fldRefName = fldName + "_ref";
         String fldCpName = fldName + "_cp";
+        String fldValName = fldName + "_val";
         String mthdCpName = fldCpName + "$get";
+        String fldValDescriptor = (isArray ? "[" : "") + Type.getDescriptor(fldType);
 
         cv.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, fldRefName, (isArray ? "[" : "") + "J", null, null).visitEnd();
         cv.visitField(Opcodes.ACC_PRIVATE, fldCpName, Type.getDescriptor(ConstantPool.class), null, null).visitEnd();
+        // the resolved value, set only when the instance is detached from the chunk context
+        cv.visitField(Opcodes.ACC_PRIVATE, fldValName, fldValDescriptor, null, null).visitEnd();
 
         MethodVisitor mv = cv.visitMethod(Opcodes.ACC_PRIVATE, mthdCpName, Type.getMethodDescriptor(Type.getType(ConstantPool.class)), null, null);
         mv.visitCode();
         Label l = new Label();
+        Label detached = new Label();
         mv.visitVarInsn(Opcodes.ALOAD, 0); // stack: [this]
         mv.visitFieldInsn(Opcodes.GETFIELD, clzName, fldCpName, Type.getDescriptor(ConstantPool.class)); // stack: [pool]
         mv.visitInsn(Opcodes.DUP); // stack: [pool, pool]
@@ -85,6 +96,8 @@ final class CodeGenerator {
         mv.visitVarInsn(Opcodes.ALOAD, 0); // stack: [this]
         mv.visitInsn(Opcodes.DUP); // stack: [this, this]
         mv.visitFieldInsn(Opcodes.GETFIELD, clzName, "context", Type.getDescriptor(ParserContext.class)); // stack: [this, context]
+        mv.visitInsn(Opcodes.DUP); // stack: [this, context, context]
+        mv.visitJumpInsn(Opcodes.IFNULL, detached); // stack: [this, context]
         mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(ParserContext.class), "getConstantPools", Type.getMethodDescriptor(Type.getType(ConstantPools.class)), false); // stack: [this, pools]
         mv.visitLdcInsn(typeId); // stack: [this, pools, type]
         mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, Type.getInternalName(ConstantPools.class), "getConstantPool", Type.getMethodDescriptor(Type.getType(ConstantPool.class), Type.LONG_TYPE), true); // stack: [this, pool]
@@ -93,16 +106,35 @@ final class CodeGenerator {
         mv.visitInsn(Opcodes.ARETURN);
         mv.visitLabel(l); // stack: [pool]
         mv.visitInsn(Opcodes.ARETURN);
+        mv.visitLabel(detached); // stack: [this, null]
+        mv.visitInsn(Opcodes.POP2); // stack: []
+        mv.visitInsn(Opcodes.ACONST_NULL); // stack: [null]
+        mv.visitInsn(Opcodes.ARETURN);
         mv.visitMaxs(3, 2);
         mv.visitEnd();
 
-        mv = cv.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, methodName, "()" + (isArray ? "[" : "") + Type.getDescriptor(fldType), null, null);
+        mv = cv.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, methodName, "()" + fldValDescriptor, null, null);
         mv.visitCode();
-        mv.visitVarInsn(Opcodes.ALOAD, 0);
-        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, clzName, mthdCpName, Type.getMethodDescriptor(Type.getType(ConstantPool.class)), false);
-        mv.visitInsn(Opcodes.DUP);
-        mv.visitVarInsn(Opcodes.ASTORE, 1);
-        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        Label resolve = new Label();
+        Label resolvable = new Label();
+        mv.visitVarInsn(Opcodes.ALOAD, 0); // [this]
+        mv.visitFieldInsn(Opcodes.GETFIELD, clzName, fldValName, fldValDescriptor); // [val]
+        mv.visitInsn(Opcodes.DUP); // [val, val]
+        mv.visitJumpInsn(Opcodes.IFNULL, resolve); // [val]
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitLabel(resolve); // [val]
+        mv.visitInsn(Opcodes.POP); // []
+        mv.visitVarInsn(Opcodes.ALOAD, 0); // [this]
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, clzName, mthdCpName, Type.getMethodDescriptor(Type.getType(ConstantPool.class)), false); // [cp]
+        mv.visitInsn(Opcodes.DUP); // [cp, cp]
+        mv.visitVarInsn(Opcodes.ASTORE, 1); // [cp]
+        mv.visitJumpInsn(Opcodes.IFNONNULL, resolvable); // []
+        // the constant pool is not available in the chunk
+        mv.visitInsn(Opcodes.ACONST_NULL); // [null]
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitLabel(resolvable); // []
+        mv.visitVarInsn(Opcodes.ALOAD, 1); // [cp]
+        mv.visitVarInsn(Opcodes.ALOAD, 0); // [cp, this]
         if (isArray) {
             mv.visitFieldInsn(Opcodes.GETFIELD, clzName, fldRefName, "[" + Type.LONG_TYPE.getDescriptor()); // [fld]
             mv.visitInsn(Opcodes.DUP); // [fld, fld]
@@ -136,7 +168,13 @@ final class CodeGenerator {
         } else {
             mv.visitFieldInsn(Opcodes.GETFIELD, clzName, fldRefName, Type.LONG_TYPE.getDescriptor());
             mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, Type.getInternalName(ConstantPool.class), "get", Type.getMethodDescriptor(Type.getType(Object.class), Type.LONG_TYPE), true);
-            mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(fldType));
+            if (fldType == Utf8View.class) {
+                // the pooled strings are already decoded, just wrap them
+                mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(String.class));
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(Utf8View.class), "of", Type.getMethodDescriptor(Type.getType(Utf8View.class), Type.getType(String.class)), false);
+            } else {
+                mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(fldType));
+            }
         }
         mv.visitInsn(Opcodes.ARETURN);
         mv.visitMaxs(0, 0);
@@ -150,7 +188,9 @@ final class CodeGenerator {
         }
 
         String fldDescriptor = (isArray ? "[" : "") + Type.getDescriptor(fldType);
-        cv.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, fieldName, fldDescriptor, null, null).visitEnd();
+        // the views point to the recording data and are replaced by the decoded values when detaching
+        int access = fldType == Utf8View.class ? Opcodes.ACC_PRIVATE : Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL;
+        cv.visitField(access, fieldName, fldDescriptor, null, null).visitEnd();
         MethodVisitor mv = cv.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, methodName, "()" + (isArray ? "[" : "") + Type.getDescriptor(fldType), null, null);
         mv.visitCode();
         mv.visitVarInsn(Opcodes.ALOAD, 0); // [this]
@@ -181,19 +221,24 @@ final class CodeGenerator {
         }
     }
 
-    static void addFieldLoader(MethodVisitor mv, MetadataField fld, String className, int streamIdx, int metadataIdx, int lastVarIdx, ParserContext context) {
-        // stack: [this, stream]
+    /**
+     * Emits the code reading the field value.<br>
+     * For constant pool fields the value is the constant pool reference (or an array of references).
+     * @return the descriptor of the value left on the stack
+     */
+    static String addFieldLoader(MethodVisitor mv, MetadataField fld, int streamIdx, int metadataIdx, int lastVarIdx, ParserContext context) {
+        // stack: [stream]
         if (fld.hasConstantPool()) {
             if (fld.getDimension() > 0) {
-                handleArrayRef(fld, className,metadataIdx, mv); // []
+                return handleArrayRef(streamIdx, lastVarIdx, mv); // [value]
             } else {
-                handleSimpleRef(fld, className, mv); // []
+                return handleSimpleRef(mv); // [value]
             }
         } else {
             if (fld.getDimension() > 0) {
-                handleArrayField(fld, className, streamIdx, metadataIdx, lastVarIdx, context, mv); // []
+                return handleArrayField(fld, streamIdx, metadataIdx, lastVarIdx, context, mv); // [value]
             } else {
-                handleSimpleField(fld, className, metadataIdx, lastVarIdx, context, mv); // []
+                return handleSimpleField(fld, metadataIdx, context, mv); // [value]
             }
         }
     }
@@ -218,8 +263,8 @@ final class CodeGenerator {
         mv.visitInsn(Opcodes.POP); // []
     }
 
-    private static void handleArrayRef(MetadataField fld, String className, int lastVarIdx, MethodVisitor mv) {
-        // stack: [this, stream]
+    private static String handleArrayRef(int streamIdx, int lastVarIdx, MethodVisitor mv) {
+        // stack: [stream]
         int arrayCounterIdx = lastVarIdx + 1;
         int arraySizeIdx = arrayCounterIdx + 1;
         Label l1 = new Label();
@@ -237,13 +282,13 @@ final class CodeGenerator {
         mv.visitJumpInsn(Opcodes.IF_ICMPEQ, l2); // [this, array]
         mv.visitInsn(Opcodes.DUP); // [this, array, array]
         mv.visitVarInsn(Opcodes.ILOAD, arrayCounterIdx); // [this, array, array, int]
-        mv.visitVarInsn(Opcodes.ALOAD, 1); // [this, array, array, int, stream]
+        mv.visitVarInsn(Opcodes.ALOAD, streamIdx); // [this, array, array, int, stream]
         mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(RecordingStream.class), "readVarint", Type.getMethodDescriptor(Type.LONG_TYPE), false); // [this, array, array, int, long]
         mv.visitInsn(Opcodes.LASTORE); // [this, array]
         mv.visitIincInsn(arrayCounterIdx, 1); // [this, array]
         mv.visitJumpInsn(Opcodes.GOTO, l1); // [this, array]
         mv.visitLabel(l2);
-        mv.visitFieldInsn(Opcodes.PUTFIELD, className, fld.getName() + "_ref", "[" + Type.LONG_TYPE.getDescriptor()); // []
+        return "[" + Type.LONG_TYPE.getDescriptor(); // [array]
     }
 
     private static void skipSimpleRef(MethodVisitor mv) {
@@ -251,10 +296,10 @@ final class CodeGenerator {
         mv.visitInsn(Opcodes.POP2); // []
     }
 
-    private static void handleSimpleRef(MetadataField fld, String className, MethodVisitor mv) {
-        // stack: [this, stream]
-        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(RecordingStream.class), "readVarint", Type.getMethodDescriptor(Type.LONG_TYPE), false); // [this, long]
-        mv.visitFieldInsn(Opcodes.PUTFIELD, className, fld.getName() + "_ref", Type.LONG_TYPE.getDescriptor()); // []
+    private static String handleSimpleRef(MethodVisitor mv) {
+        // stack: [stream]
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(RecordingStream.class), "readVarint", Type.getMethodDescriptor(Type.LONG_TYPE), false); // [long]
+        return Type.LONG_TYPE.getDescriptor();
     }
 
     private static void skipArrayField(MetadataField fld, int streamIdx, int lastVarIdx, MethodVisitor mv) {
@@ -449,13 +494,17 @@ final class CodeGenerator {
         }
     }
 
-    private static void handleArrayField(MetadataField fld, String className, int streamIdx, int metadataIdx, int lastVarIdx, ParserContext context, MethodVisitor mv) {
-        // stack: [this, stream]
+    private static String handleArrayField(MetadataField fld, int streamIdx, int metadataIdx, int lastVarIdx, ParserContext context, MethodVisitor mv) {
+        // stack: [stream]
         int arrayCounterIdx = lastVarIdx + 1;
         int arraySizeIdx = arrayCounterIdx + 1;
         lastVarIdx = arraySizeIdx;
 
-        String fldTypeName = fld.getType().getName();
+        MetadataClass fldClassType = fld.getType();
+        while (fldClassType.isSimpleType()) {
+            fldClassType = fldClassType.getFields().getFirst().getType();
+        }
+        String fldTypeName = fldClassType.getName();
         Type fldType = null;
         Type dataType = null;
         int arrayOpcode = 0;
@@ -507,20 +556,23 @@ final class CodeGenerator {
             }
         }
         if (fldType != null) {
-            readIntoPrimitiveArray(mv, className, fld.getName(), fldType, arrayOpcode, dataType, streamIdx, arraySizeIdx, arrayCounterIdx);
+            readIntoPrimitiveArray(mv, fldType, arrayOpcode, dataType, streamIdx, arraySizeIdx, arrayCounterIdx);
+            return "[" + fldType.getDescriptor();
         } else if (fldTypeName.equals("java.lang.String")) {
-            readIntoStringArray(className, fld.getName(), streamIdx, arraySizeIdx, arrayCounterIdx, mv);
+            readIntoStringArray(streamIdx, arraySizeIdx, arrayCounterIdx, mv);
+            return "[" + Type.getDescriptor(String.class);
         } else {
             // fall-back to the registered deserializer
-            Class<?> fldClz = context.getClassTargetType(fld.getType().getName());
+            Class<?> fldClz = context.getClassTargetType(fldTypeName);
             if (fldClz == null) {
-                throw new RuntimeException("No class found for type: " + fld.getType().getName());
+                throw new RuntimeException("No class found for type: " + fldTypeName);
             }
-            readIntoObjectArray(className, fld.getName(), fld.getType(), Type.getType(fldClz), fldClz, streamIdx, arraySizeIdx, arrayCounterIdx, metadataIdx, lastVarIdx, mv);
+            readIntoObjectArray(fldClassType, Type.getType(fldClz), streamIdx, arraySizeIdx, arrayCounterIdx, metadataIdx, lastVarIdx, mv);
+            return "[" + Type.getDescriptor(fldClz);
         }
     }
 
-    private static void readIntoPrimitiveArray(MethodVisitor mv, String className, String fldName, Type fldType, int arrayType, Type dataType, int streamIdx, int arraySizeIdx, int arrayCounterIdx) {
+    private static void readIntoPrimitiveArray(MethodVisitor mv, Type fldType, int arrayType, Type dataType, int streamIdx, int arraySizeIdx, int arrayCounterIdx) {
         String operation = getPrimitiveReadOperation(fldType);
         // stack: [this, stream]
         Label l1 = new Label();
@@ -547,11 +599,10 @@ final class CodeGenerator {
         mv.visitInsn(fldType.getOpcode(Opcodes.IASTORE)); // [this, array]
         mv.visitIincInsn(arrayCounterIdx, 1); // [this, array]
         mv.visitJumpInsn(Opcodes.GOTO, l1); // [this, array]
-        mv.visitLabel(l2);
-        mv.visitFieldInsn(Opcodes.PUTFIELD, className, fldName, "[" + fldType.getDescriptor()); // []
+        mv.visitLabel(l2); // [this, array]
     }
 
-    private static void readIntoStringArray(String className, String fldName, int streamIdx, int arraySizeIdx, int arrayCounterIdx, MethodVisitor mv) {
+    private static void readIntoStringArray(int streamIdx, int arraySizeIdx, int arrayCounterIdx, MethodVisitor mv) {
         // stack: [this, stream]
         Label l1 = new Label();
         Label l2 = new Label();
@@ -573,11 +624,10 @@ final class CodeGenerator {
         mv.visitInsn(Opcodes.AASTORE); // [this, array]
         mv.visitIincInsn(arrayCounterIdx, 1); // [this, array]
         mv.visitJumpInsn(Opcodes.GOTO, l1); // [this, array]
-        mv.visitLabel(l2);
-        mv.visitFieldInsn(Opcodes.PUTFIELD, className, fldName, "[" + Type.getType(String.class).getDescriptor()); // []
+        mv.visitLabel(l2); // [this, array]
     }
 
-    private static void readIntoObjectArray(String className, String fldName, MetadataClass fldClassType, Type fldType, Class<?> fldClz, int streamIdx, int arraySizeIdx, int arrayCounterIdx, int metadataIdx, int lastVarIdx, MethodVisitor mv) {
+    private static void readIntoObjectArray(MetadataClass fldClassType, Type fldType, int streamIdx, int arraySizeIdx, int arrayCounterIdx, int metadataIdx, int lastVarIdx, MethodVisitor mv) {
         // stack: [this, stream]
         int deserializerIdx = lastVarIdx + 1;
         mv.visitVarInsn(Opcodes.ALOAD, metadataIdx); // [this, stream, metadata]
@@ -608,8 +658,7 @@ final class CodeGenerator {
         mv.visitIincInsn(arrayCounterIdx, 1); // [this, array]
         mv.visitIincInsn(arraySizeIdx, -1); // [this, array]
         mv.visitJumpInsn(Opcodes.GOTO, l1); // [this, array]
-        mv.visitLabel(l2);
-        mv.visitFieldInsn(Opcodes.PUTFIELD, className, fldName, "[" + fldType.getDescriptor()); // []
+        mv.visitLabel(l2); // [this, array]
     }
 
     private static String getPrimitiveReadOperation(Type type) {
@@ -626,88 +675,92 @@ final class CodeGenerator {
         };
     }
 
-    private static void handleSimpleField(MetadataField fld, String className, int metadataIdx, int lastVarIdx, ParserContext context, MethodVisitor mv) {
-        // stack: [this, stream]);
-        String fldTypeName = fld.getType().getName();
+    private static String handleSimpleField(MetadataField fld, int metadataIdx, ParserContext context, MethodVisitor mv) {
+        // stack: [stream]
+        MetadataClass fldClassType = fld.getType();
+        while (fldClassType.isSimpleType()) {
+            fldClassType = fldClassType.getFields().getFirst().getType();
+        }
+        String fldTypeName = fldClassType.getName();
         switch (fldTypeName) {
             case "byte", "boolean": {
-                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(RecordingStream.class), "read", Type.getMethodDescriptor(Type.BYTE_TYPE), false); // [this, int]
-                mv.visitFieldInsn(Opcodes.PUTFIELD, className, fld.getName(), fld.getType().getName().equals("byte") ? Type.BYTE_TYPE.getDescriptor() : Type.BOOLEAN_TYPE.getDescriptor()); // []
-                break;
+                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(RecordingStream.class), "read", Type.getMethodDescriptor(Type.BYTE_TYPE), false); // [int]
+                return fldTypeName.equals("byte") ? Type.BYTE_TYPE.getDescriptor() : Type.BOOLEAN_TYPE.getDescriptor();
             }
             case "short", "char", "int", "long": {
-                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(RecordingStream.class), "readVarint", Type.getMethodDescriptor(Type.LONG_TYPE), false); // [this, long]
+                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(RecordingStream.class), "readVarint", Type.getMethodDescriptor(Type.LONG_TYPE), false); // [long]
                 switch (fldTypeName) {
                     case "short": {
-                        mv.visitInsn(Opcodes.L2I); // [this, int]
-                        mv.visitFieldInsn(Opcodes.PUTFIELD, className, fld.getName(), Type.SHORT_TYPE.getDescriptor()); // []
-                        break;
+                        mv.visitInsn(Opcodes.L2I); // [int]
+                        return Type.SHORT_TYPE.getDescriptor();
                     }
                     case "char": {
-                        mv.visitInsn(Opcodes.L2I); // [this, int]
-                        mv.visitFieldInsn(Opcodes.PUTFIELD, className, fld.getName(), Type.CHAR_TYPE.getDescriptor()); // []
-                        break;
+                        mv.visitInsn(Opcodes.L2I); // [int]
+                        return Type.CHAR_TYPE.getDescriptor();
                     }
                     case "int": {
-                        mv.visitInsn(Opcodes.L2I); // [this, int]
-                        mv.visitFieldInsn(Opcodes.PUTFIELD, className, fld.getName(), Type.INT_TYPE.getDescriptor()); // []
-                        break;
+                        mv.visitInsn(Opcodes.L2I); // [int]
+                        return Type.INT_TYPE.getDescriptor();
                     }
-                    case "long": {
-                        mv.visitFieldInsn(Opcodes.PUTFIELD, className, fld.getName(), Type.LONG_TYPE.getDescriptor()); // []
-                        break;
+                    default: {
+                        return Type.LONG_TYPE.getDescriptor();
                     }
                 }
-                break;
             }
             case "float": {
-                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(RecordingStream.class), "readFloat", Type.getMethodDescriptor(Type.FLOAT_TYPE), false); // [this, float]
-                mv.visitFieldInsn(Opcodes.PUTFIELD, className, fld.getName(), Type.FLOAT_TYPE.getDescriptor()); // []
-                break;
+                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(RecordingStream.class), "readFloat", Type.getMethodDescriptor(Type.FLOAT_TYPE), false); // [float]
+                return Type.FLOAT_TYPE.getDescriptor();
             }
             case "double": {
-                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(RecordingStream.class), "readDouble", Type.getMethodDescriptor(Type.DOUBLE_TYPE), false); // [this, double]
-                mv.visitFieldInsn(Opcodes.PUTFIELD, className, fld.getName(), Type.DOUBLE_TYPE.getDescriptor()); // []
-                break;
+                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(RecordingStream.class), "readDouble", Type.getMethodDescriptor(Type.DOUBLE_TYPE), false); // [double]
+                return Type.DOUBLE_TYPE.getDescriptor();
             }
             case "java.lang.String":
-                mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(ParsingUtils.class), "readUTF8", Type.getMethodDescriptor(Type.getType(String.class), Type.getType(RecordingStream.class)), false); // [this, string]
-                mv.visitFieldInsn(Opcodes.PUTFIELD, className, fld.getName(), Type.getType(String.class).getDescriptor()); // []
-                break;
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(ParsingUtils.class), "readUTF8", Type.getMethodDescriptor(Type.getType(String.class), Type.getType(RecordingStream.class)), false); // [string]
+                return Type.getDescriptor(String.class);
             default: {
                 // fall-back to the metadata deserializer
                 Class<?> fldClz = context.getClassTargetType(fldTypeName);
-                mv.visitVarInsn(Opcodes.ALOAD, metadataIdx); // [this, stream, metadata]
-                mv.visitLdcInsn(fld.getType().getId()); // [this, stream, metadata, long]
-                mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, Type.getInternalName(MetadataLookup.class), "getClass", Type.getMethodDescriptor(Type.getType(MetadataClass.class), Type.LONG_TYPE), true); // [this, stream, mclass]
-                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(MetadataClass.class), "getDeserializer", Type.getMethodDescriptor(Type.getType(Deserializer.class)), false); // [this, stream, deserializer]
-                mv.visitInsn(Opcodes.SWAP); // [this, deserializer, stream]
-                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(Deserializer.class), "deserialize", Type.getMethodDescriptor(Type.getType(Object.class), Type.getType(RecordingStream.class)), false); // [this, value]
-                mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(fldClz)); // [this, fldval]
-                mv.visitFieldInsn(Opcodes.PUTFIELD, className, fld.getName(), Type.getDescriptor(fldClz)); // []
+                mv.visitVarInsn(Opcodes.ALOAD, metadataIdx); // [stream, metadata]
+                mv.visitLdcInsn(fldClassType.getId()); // [stream, metadata, long]
+                mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, Type.getInternalName(MetadataLookup.class), "getClass", Type.getMethodDescriptor(Type.getType(MetadataClass.class), Type.LONG_TYPE), true); // [stream, mclass]
+                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(MetadataClass.class), "getDeserializer", Type.getMethodDescriptor(Type.getType(Deserializer.class)), false); // [stream, deserializer]
+                mv.visitInsn(Opcodes.SWAP); // [deserializer, stream]
+                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(Deserializer.class), "deserialize", Type.getMethodDescriptor(Type.getType(Object.class), Type.getType(RecordingStream.class)), false); // [value]
+                mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(fldClz)); // [fldval]
+                return Type.getDescriptor(fldClz);
             }
         }
     }
 
-    static void prepareConstructor(ClassVisitor cv, String clzName, MetadataClass clz, List<MetadataField> allFields, Set<MetadataField> appliedFields, ParserContext context) {
+    static void prepareConstructor(ClassVisitor cv, String clzName, String superName, List<MetadataField> allFields, Set<MetadataField> appliedFields, Set<String> viewAttributes, ParserContext context) {
         MethodVisitor mv = cv.visitMethod(Opcodes.ACC_PUBLIC, "<init>", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(RecordingStream.class)), null, null);
         mv.visitCode();
         int contextIdx = 2;
         int meteadataIdx = 3;
         int lastVarIdx = meteadataIdx; // guard
+        boolean hasLayout = !superName.equals(Type.getInternalName(Object.class));
 
         mv.visitVarInsn(Opcodes.ALOAD, 0);
-        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, Type.getInternalName(Object.class), "<init>", Type.getMethodDescriptor(Type.VOID_TYPE), false);
-        // store context field
-        mv.visitVarInsn(Opcodes.ALOAD,0); // [this]
-        mv.visitVarInsn(Opcodes.ALOAD,1); // [this, stream]
-        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(RecordingStream.class), "getContext", Type.getMethodDescriptor(Type.getType(ParserContext.class)), false); // [this, ctx]
-        mv.visitInsn(Opcodes.DUP); // [this, ctx, ctx]
-        mv.visitVarInsn(Opcodes.ASTORE, contextIdx); // [this, ctx]
-        mv.visitInsn(Opcodes.DUP); // [this, ctx, ctx]
-        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(ParserContext.class), "getMetadataLookup", Type.getMethodDescriptor(Type.getType(MetadataLookup.class)), false); // [this, ctx, metadata]
-        mv.visitVarInsn(Opcodes.ASTORE, meteadataIdx); // [this, ctx]
-        mv.visitFieldInsn(Opcodes.PUTFIELD, clzName.replace('.', '/'), "context", Type.getDescriptor(ParserContext.class)); // []
+        if (hasLayout) {
+            // the base layout reads the leading fields and stores the context
+            mv.visitVarInsn(Opcodes.ALOAD, 1);
+            mv.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(RecordingStream.class)), false);
+        } else {
+            mv.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", Type.getMethodDescriptor(Type.VOID_TYPE), false);
+        }
+        mv.visitVarInsn(Opcodes.ALOAD,1); // [stream]
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(RecordingStream.class), "getContext", Type.getMethodDescriptor(Type.getType(ParserContext.class)), false); // [ctx]
+        mv.visitInsn(Opcodes.DUP); // [ctx, ctx]
+        mv.visitVarInsn(Opcodes.ASTORE, contextIdx); // [ctx]
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(ParserContext.class), "getMetadataLookup", Type.getMethodDescriptor(Type.getType(MetadataLookup.class)), false); // [metadata]
+        mv.visitVarInsn(Opcodes.ASTORE, meteadataIdx); // []
+        if (!hasLayout) {
+            // store context field
+            mv.visitVarInsn(Opcodes.ALOAD, 0); // [this]
+            mv.visitVarInsn(Opcodes.ALOAD, contextIdx); // [this, ctx]
+            mv.visitFieldInsn(Opcodes.PUTFIELD, clzName.replace('.', '/'), "context", Type.getDescriptor(ParserContext.class)); // []
+        }
 
         for (MetadataField fld : allFields) {;
             if (!appliedFields.contains(fld)) {
@@ -718,13 +771,106 @@ final class CodeGenerator {
             }
             mv.visitVarInsn(Opcodes.ALOAD, 0); // [this]
             mv.visitVarInsn(Opcodes.ALOAD, 1); // [this, stream]
-            addFieldLoader(mv, fld, clzName.replace('.', '/'),  1, meteadataIdx, lastVarIdx, context); // []
+            String fldDescriptor;
+            if (!fld.hasConstantPool() && isViewField(fld, viewAttributes)) {
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(ParsingUtils.class), "readUTF8View", Type.getMethodDescriptor(Type.getType(Utf8View.class), Type.getType(RecordingStream.class)), false); // [this, view]
+                fldDescriptor = Type.getDescriptor(Utf8View.class);
+            } else {
+                fldDescriptor = addFieldLoader(mv, fld, 1, meteadataIdx, lastVarIdx, context); // [this, value]
+            }
+            mv.visitFieldInsn(Opcodes.PUTFIELD, clzName.replace('.', '/'), fld.hasConstantPool() ? fld.getName() + "_ref" : fld.getName(), fldDescriptor); // []
         }
         mv.visitInsn(Opcodes.RETURN);
         mv.visitMaxs(0, 0);
         mv.visitEnd();
     }
 
+    /**
+     * Generates {@linkplain Detachable#detach()}.<br>
+     * The constant pool references are resolved into the {@code <field>_val} fields, the nested values are detached as well
+     * and the context is dropped. The context is cleared first, so the cyclic references terminate at the instance being detached.
+     */
+    static void prepareDetach(ClassVisitor cv, String clzName, String superName, List<MetadataField> allFields, Set<MetadataField> appliedFields, Set<String> viewAttributes, ParserContext context) {
+        String owner = clzName.replace('.', '/');
+        String contextDescriptor = Type.getDescriptor(ParserContext.class);
+        boolean hasLayout = !superName.equals(Type.getInternalName(Object.class));
+        int contextIdx = 1;
+
+        MethodVisitor mv = cv.visitMethod(Opcodes.ACC_PUBLIC, "detach", Type.getMethodDescriptor(Type.VOID_TYPE), null, null);
+        mv.visitCode();
+        Label proceed = new Label();
+        mv.visitVarInsn(Opcodes.ALOAD, 0); // [this]
+        mv.visitFieldInsn(Opcodes.GETFIELD, owner, "context", contextDescriptor); // [ctx]
+        mv.visitInsn(Opcodes.DUP); // [ctx, ctx]
+        mv.visitVarInsn(Opcodes.ASTORE, contextIdx); // [ctx]
+        mv.visitJumpInsn(Opcodes.IFNONNULL, proceed); // []
+        // already detached
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitLabel(proceed);
+        mv.visitVarInsn(Opcodes.ALOAD, 0); // [this]
+        if (hasLayout) {
+            // the base layout detaches the leading fields and drops the context
+            mv.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "detach", Type.getMethodDescriptor(Type.VOID_TYPE), false); // []
+        } else {
+            mv.visitInsn(Opcodes.ACONST_NULL); // [this, null]
+            mv.visitFieldInsn(Opcodes.PUTFIELD, owner, "context", contextDescriptor); // []
+        }
+        for (MetadataField fld : allFields) {
+            Class<?> fldClz = fieldTargetType(fld, viewAttributes, context);
+            if (fldClz == null || !appliedFields.contains(fld)) {
+                continue;
+            }
+            boolean isArray = fld.getDimension() > 0;
+            String fldDescriptor = (isArray ? "[" : "") + Type.getDescriptor(fldClz);
+            if (fld.hasConstantPool()) {
+                mv.visitVarInsn(Opcodes.ALOAD, 0); // [this]
+                mv.visitVarInsn(Opcodes.ALOAD, 0); // [this, this]
+                if (isArray) {
+                    mv.visitFieldInsn(Opcodes.GETFIELD, owner, fld.getName() + "_ref", "[J"); // [this, refs]
+                    mv.visitVarInsn(Opcodes.ALOAD, contextIdx); // [this, refs, ctx]
+                    mv.visitLdcInsn(fld.getType().getId()); // [this, refs, ctx, typeId]
+                    mv.visitLdcInsn(Type.getType(fldClz)); // [this, refs, ctx, typeId, componentType]
+                    mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(GeneratedCodeSupport.class), "resolveConstants", Type.getMethodDescriptor(Type.getType(Object.class), Type.getType(long[].class), Type.getType(ParserContext.class), Type.LONG_TYPE, Type.getType(Class.class)), false); // [this, values]
+                } else {
+                    mv.visitFieldInsn(Opcodes.GETFIELD, owner, fld.getName() + "_ref", "J"); // [this, ref]
+                    mv.visitVarInsn(Opcodes.ALOAD, contextIdx); // [this, ref, ctx]
+                    mv.visitLdcInsn(fld.getType().getId()); // [this, ref, ctx, typeId]
+                    mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(GeneratedCodeSupport.class), "resolveConstant", Type.getMethodDescriptor(Type.getType(Object.class), Type.LONG_TYPE, Type.getType(ParserContext.class), Type.LONG_TYPE), false); // [this, value]
+                }
+                addDetachValue(mv, fldClz); // [this, value]
+                mv.visitTypeInsn(Opcodes.CHECKCAST, isArray ? fldDescriptor : Type.getInternalName(fldClz)); // [this, value]
+                mv.visitFieldInsn(Opcodes.PUTFIELD, owner, fld.getName() + "_val", fldDescriptor); // []
+                mv.visitVarInsn(Opcodes.ALOAD, 0); // [this]
+                mv.visitInsn(Opcodes.ACONST_NULL); // [this, null]
+                mv.visitFieldInsn(Opcodes.PUTFIELD, owner, fld.getName() + "_cp", Type.getDescriptor(ConstantPool.class)); // []
+            } else if (fldClz == Utf8View.class) {
+                mv.visitVarInsn(Opcodes.ALOAD, 0); // [this]
+                mv.visitVarInsn(Opcodes.ALOAD, 0); // [this, this]
+                mv.visitFieldInsn(Opcodes.GETFIELD, owner, fld.getName(), fldDescriptor); // [this, view]
+                addDetachValue(mv, fldClz); // [this, view]
+                mv.visitFieldInsn(Opcodes.PUTFIELD, owner, fld.getName(), fldDescriptor); // []
+            } else if (!fldClz.isPrimitive() && fldClz != String.class) {
+                mv.visitVarInsn(Opcodes.ALOAD, 0); // [this]
+                mv.visitFieldInsn(Opcodes.GETFIELD, owner, fld.getName(), fldDescriptor); // [value]
+                addDetachValue(mv, fldClz); // [value]
+                mv.visitInsn(Opcodes.POP); // []
+            }
+        }
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void addDetachValue(MethodVisitor mv, Class<?> fldClz) {
+        // [value] -> [detached value]
+        if (fldClz == Utf8View.class) {
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(GeneratedCodeSupport.class), "detachView", Type.getMethodDescriptor(Type.getType(Utf8View.class), Type.getType(Object.class)), false);
+        } else if (!fldClz.isPrimitive() && fldClz != String.class) {
+            mv.visitInsn(Opcodes.DUP);
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(Detachable.class), "detachValue", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(Object.class)), true);
+        }
+    }
+
     static void prepareSkipHandler(ClassVisitor cv, MetadataClass clz) {
         MethodVisitor mv = cv.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "skip", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(RecordingStream.class)), null, null);
         mv.visitCode();
@@ -791,108 +937,734 @@ final class CodeGenerator {
 
     @SuppressWarnings("unchecked")
     public static <T> Deserializer<T> generateDeserializer(MetadataClass clz) throws Exception {
-        Class<T> target = (Class<T>)clz.getContext().getClassTargetType(clz.getName());
-        if (target != null && !target.isInterface()) {
+        List<Class<?>> targets = clz.getContext().getClassTargetTypes(clz);
+        if (targets.isEmpty()) {
+            return new Deserializer.Generated<>(null, null, createSkipper(clz));
+        }
+        Class<T> target = (Class<T>) targets.getFirst();
+        if (!target.isInterface() && !target.isRecord()) {
             throw new RuntimeException("Unsupported type: " + clz.getName());
         }
-        if (target == null) {
-            return new Deserializer.Generated<>(null, null, createSkipper(clz));
+        if (targets.size() == 1) {
+            // the precompiled classes implement a single interface and do not extend the shared base layouts
+            Deserializer<T> precompiled = findPrecompiledDeserializer(clz, target);
+            if (precompiled != null) {
+                return precompiled;
+            }
+        }
+        if (target.isRecord() && !isPublic(target)) {
+            // the generated code would not be able to link against the record constructor
+            return new TypeInterpreter<>(clz, targets, createSkipper(clz));
         }
-        String origClzName = target != null ? target.getName() : clz.getName();
-        String origSimpleName = target != null ? target.getSimpleName() : clz.getSimpleName();
-        String clzName = CodeGenerator.class.getPackage().getName() + "." + (target != null ? target.getSimpleName() : clz.getSimpleName()) + "$" + clz.getContext().getChunkIndex();
+        int tierThreshold = tierThreshold();
+        if (tierThreshold > 0) {
+            TypeSkipper skipper = createSkipper(clz);
+            return new Deserializer.Tiered<>(new TypeInterpreter<>(clz, targets, skipper), () -> compileDeserializer(clz, targets), tierThreshold);
+        }
+        return compileDeserializer(clz, targets);
+    }
+
+
+    /**
+     * The property is not cached, so the tiering can be turned on and off at runtime; it applies to the deserializers created afterwards.
+     * @return the number of values decoded by the interpreter before the deserializer is promoted to the generated bytecode;
+     *         0 (default) disables the interpreter
+     */
+    static int tierThreshold() {
+        return Integer.getInteger("io.jafar.parser.tier_threshold", 0);
+    }
+
+    private static boolean isPublic(Class<?> clz) {
+        for (Class<?> c = clz; c != null; c = c.getDeclaringClass()) {
+            if (!Modifier.isPublic(c.getModifiers())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Deserializer<T> compileDeserializer(MetadataClass clz, List<Class<?>> targets) throws Exception {
+        Class<T> target = (Class<T>) targets.getFirst();
+        String origSimpleName = target.getSimpleName();
+        String clzName = CodeGenerator.class.getPackage().getName() + "." + target.getSimpleName() + "$" + clz.getContext().getChunkIndex();
+
+        // the base layout must be defined before the class extending it, even if that one is loaded from the cache
+        BaseLayout layout = target.isRecord() ? null : resolveBaseLayout(clz, targets);
+
+        Path cacheDir = DeserializerClassCache.cacheDir();
+        String cacheKey = cacheDir != null ? DeserializerClassCache.key(clz, targets, layout != null ? layout.type() : null) : null;
+        byte[] classData = cacheKey != null ? DeserializerClassCache.load(cacheDir, cacheKey) : null;
+        if (classData == null) {
+            classData = target.isRecord() ? generateRecordClass(clz, target, clzName) : generateClass(clz, targets, layout, clzName);
+            if (cacheKey != null) {
+                DeserializerClassCache.store(cacheDir, cacheKey, classData);
+            }
+        }
+
+        Path debugPath = null;
+        if (log.isDebugEnabled()) {
+            debugPath = Paths.get("/tmp/" + origSimpleName + ".class");
+            Files.write(debugPath, classData);
+        }
+
+        try {
+            // a class extending a base layout is defined next to it, in the layout loader
+            MethodHandles.Lookup host = layout != null ? layoutLookup(layout.type()) : MethodHandles.lookup();
+            MethodHandles.Lookup lkp = host.defineHiddenClass(classData, true, MethodHandles.Lookup.ClassOption.NESTMATE);
+            MethodHandle ctrHandle = target.isRecord()
+                    ? lkp.findStatic(lkp.lookupClass(), "read", MethodType.methodType(target, RecordingStream.class))
+                    : lkp.findConstructor(lkp.lookupClass(), MethodType.methodType(void.class, RecordingStream.class));
+            MethodHandle skipHandle = lkp.findStatic(lkp.lookupClass(), "skip", MethodType.methodType(void.class, RecordingStream.class));
+            return new Deserializer.Generated<>(ctrHandle, skipHandle, createSkipper(clz));
+        } catch (Exception e) {
+            log.error("Failed to load generated handler class for {}, bytecode can be found at {}", clz, debugPath, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Looks up the {@code <target>Impl} deserializer emitted by {@linkplain io.jafar.utils.TypeGenerator} at build time.
+     * It is used only if it was generated for exactly the same type layout as the one in the chunk metadata.
+     */
+    private static <T> Deserializer<T> findPrecompiledDeserializer(MetadataClass clz, Class<T> target) {
+        Class<?> implClass;
+        try {
+            implClass = Class.forName(target.getName() + "Impl", false, target.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+        try {
+            if (!target.isAssignableFrom(implClass)) {
+                return null;
+            }
+            Object fingerprint = implClass.getField("JAFAR_FINGERPRINT").get(null);
+            if (!clz.getFingerprint().equals(fingerprint)) {
+                log.debug("Precompiled deserializer {} does not match the metadata of {}", implClass.getName(), clz.getName());
+                return null;
+            }
+            MethodHandle ctrHandle = MethodHandles.publicLookup().findConstructor(implClass, MethodType.methodType(void.class, RecordingStream.class));
+            return new Deserializer.Generated<>(ctrHandle, null, createSkipper(clz));
+        } catch (ReflectiveOperationException e) {
+            log.debug("Unable to use precompiled deserializer {}", implClass.getName(), e);
+            return null;
+        }
+    }
+
+    private static byte[] generateClass(MetadataClass clz, List<Class<?>> targets, BaseLayout layout, String clzName) {
+        String superName = layout != null ? Type.getInternalName(layout.type()) : Type.getInternalName(Object.class);
+        String[] interfaces = targets.stream().map(Type::getInternalName).toArray(String[]::new);
         // generate handler class
         ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
-        cw.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, clzName.replace('.', '/'), null, "java/lang/Object", target != null ? new String[]{origClzName.replace('.', '/')} : null);
-        cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "context", Type.getDescriptor(ParserContext.class), null, null).visitEnd();
+        if (layout == null) {
+            // the base layout is already detachable
+            interfaces = Arrays.copyOf(interfaces, interfaces.length + 1);
+            interfaces[interfaces.length - 1] = Type.getInternalName(Detachable.class);
+        }
+        cw.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, clzName.replace('.', '/'), null, superName, interfaces);
+        if (layout == null) {
+            // not final, it is dropped when the instance is detached
+            cw.visitField(Opcodes.ACC_PRIVATE, "context", Type.getDescriptor(ParserContext.class), null, null).visitEnd();
+        }
 
         Map<String, String> fieldToMethodMap = new HashMap<>();
-        Set<String> usedAttributes = collectUsedAttributes(target, fieldToMethodMap);
-
-        Deque<MetadataClass> stack = new ArrayDeque<>();
-        stack.push(clz);
-        // TODO ignore inheritence for now
-//                        while (true) {
-//                            MetadataClass superMd = context.getMetadataLookup().;
-//                            String superName = mdClass.getSuperType();
-//                            if (superName != null) {
-//                                stack.push(context.getMetadataLookup().getClass(mdClass.getId()));
-//                            } else {
-//                                break;
-//                            }
-//                        }
-
-        List<MetadataField> allFields = new ArrayList<>();
+        Set<String> usedAttributes = new HashSet<>();
+        Set<String> viewAttributes = new HashSet<>();
+        for (Class<?> target : targets) {
+            usedAttributes.addAll(collectUsedAttributes(target, fieldToMethodMap));
+            viewAttributes.addAll(collectViewAttributes(target));
+        }
+
+        // the fields covered by the base layout are already read and exposed by the superclass
+        List<MetadataField> fields = layout != null ? clz.getFields().subList(layout.fieldCount(), clz.getFields().size()) : clz.getFields();
         Set<MetadataField> appliedFields = new HashSet<>();
         Set<String> generatedMethods = new HashSet<>();
+        if (layout != null) {
+            generatedMethods.addAll(layout.methods());
+        }
 
-        while (!stack.isEmpty()) {
-            MetadataClass current = stack.pop();
-            if (target != null) {
-                for (MetadataField field : current.getFields()) {
-                    String fieldName = field.getName();
-                    allFields.add(field);
-                    if (usedAttributes.contains(fieldName)) {
-                        appliedFields.add(field);
-                    }
+        for (MetadataField field : fields) {
+            if (usedAttributes.contains(field.getName())) {
+                appliedFields.add(field);
+            }
+            generatedMethods.add(addFieldAccessor(cw, clzName, field, fieldToMethodMap, viewAttributes, clz.getContext()));
+        }
 
-                    MetadataClass fldType = field.getType();
-                    while (fldType.isSimpleType()) {
-                        fldType = fldType.getFields().getFirst().getType();
-                    }
+        prepareConstructor(cw, clzName, superName, fields, appliedFields, viewAttributes, clz.getContext());
+        prepareDetach(cw, clzName, superName, fields, appliedFields, viewAttributes, clz.getContext());
+        prepareSkipHandler(cw, clz);
 
-                    Class<?> fldClz = clz.getContext().getClassTargetType(fldType.getName());
-                    boolean withConstantPool = field.hasConstantPool();
-                    String methodName = fieldToMethodMap.get(fieldName);
-                    if (methodName == null) {
-                        methodName = fieldName;
-                    }
-                    if (withConstantPool) {
-                        handleFieldRef(cw, clzName, field.getType().getId(), field.getDimension() > 0, fldClz, fieldName, methodName);
-                    } else {
-                        handleField(cw, clzName, field.getDimension() > 0, fldClz, fieldName, methodName);
-                    }
-                    generatedMethods.add(methodName);
+        // interfaces extending other interfaces would report the same method multiple times
+        Set<String> stubbedMethods = new HashSet<>();
+        for (Class<?> target : targets) {
+            for (Method m : target.getMethods()) {
+                if (Modifier.isStatic(m.getModifiers()) || generatedMethods.contains(m.getName())) {
+                    continue;
                 }
+                if (stubbedMethods.add(m.getName() + Type.getMethodDescriptor(m))) {
+                    prepareEmptyMethod(m, cw);
+                }
+            }
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static String addFieldAccessor(ClassVisitor cv, String clzName, MetadataField field, Map<String, String> fieldToMethodMap, Set<String> viewAttributes, ParserContext context) {
+        String fieldName = field.getName();
+        Class<?> fldClz = fieldTargetType(field, viewAttributes, context);
+        String methodName = fieldToMethodMap.getOrDefault(fieldName, fieldName);
+        if (field.hasConstantPool()) {
+            handleFieldRef(cv, clzName, field.getType().getId(), field.getDimension() > 0, fldClz, fieldName, methodName);
+        } else {
+            handleField(cv, clzName, field.getDimension() > 0, fldClz, fieldName, methodName);
+        }
+        return methodName;
+    }
+
+    /**
+     * A non-hidden abstract class implementing the most generic inherited handler interface.<br>
+     * It holds the leading fields used by that interface, so all the event types sharing them
+     * (eg. 'startTime', 'duration', 'eventThread' and 'stackTrace' of the JDK events) share the
+     * same field layout and accessor implementations. The generated handler classes extend it
+     * and add only their own fields.
+     */
+    private record BaseLayout(Class<?> type, int fieldCount, Set<String> methods) {}
+
+    /**
+     * Defines the base layouts of one base handler type.<br>
+     * The layouts must be regular named classes, so the generated classes can extend them, and those are never unloaded
+     * while their class loader is alive. Giving each base type a loader of its own, held only by the base type itself,
+     * lets the layouts be collected together with the handler types.
+     * The handler types are resolved through the loader of the base type, the parser types through the parser loader.
+     */
+    private static final class LayoutLoader extends ClassLoader {
+        private final ClassLoader handlerLoader;
+        // keyed by the layout description
+        private final ConcurrentMap<String, Class<?>> layouts = new ConcurrentHashMap<>();
+
+        LayoutLoader(ClassLoader handlerLoader) {
+            super(CodeGenerator.class.getClassLoader());
+            this.handlerLoader = handlerLoader;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            if (handlerLoader == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return handlerLoader.loadClass(name);
+        }
+
+        Class<?> define(String name, byte[] classData) {
+            return defineClass(name, classData, 0, classData.length);
+        }
+    }
+
+    private static final ClassValue<LayoutLoader> LAYOUT_LOADERS = new ClassValue<>() {
+        @Override
+        protected LayoutLoader computeValue(Class<?> base) {
+            return new LayoutLoader(base.getClassLoader());
+        }
+    };
+
+    private static BaseLayout resolveBaseLayout(MetadataClass clz, List<Class<?>> targets) {
+        Class<?> base = null;
+        for (Class<?> target : targets) {
+            JfrType typeAnnotation = target.getAnnotation(JfrType.class);
+            if (typeAnnotation != null && !typeAnnotation.value().equals(clz.getName())) {
+                base = target;
+            }
+        }
+        if (base == null) {
+            return null;
+        }
+        Map<String, String> fieldToMethodMap = new HashMap<>();
+        Set<String> baseAttributes = collectUsedAttributes(base, fieldToMethodMap);
+        Set<String> viewAttributes = collectViewAttributes(base);
+        Set<String> usedAttributes = new HashSet<>();
+        for (Class<?> target : targets) {
+            usedAttributes.addAll(collectUsedAttributes(target, new HashMap<>()));
+        }
+        // the layout covers the leading fields used by the base type; the fields nobody uses are just skipped over
+        int prefixLength = 0;
+        List<MetadataField> fields = clz.getFields();
+        for (int i = 0; i < fields.size(); i++) {
+            String fieldName = fields.get(i).getName();
+            if (baseAttributes.contains(fieldName)) {
+                prefixLength = i + 1;
+            } else if (usedAttributes.contains(fieldName)) {
+                break;
+            }
+        }
+        if (prefixLength == 0) {
+            return null;
+        }
+        List<MetadataField> prefix = fields.subList(0, prefixLength);
+
+        StringBuilder sb = new StringBuilder(base.getName()).append('\n');
+        Set<String> methods = new HashSet<>();
+        for (MetadataField fld : prefix) {
+            Class<?> fldClz = fieldTargetType(fld, viewAttributes, clz.getContext());
+            sb.append(fld.getName()).append(':').append(fld.getType().getName()).append(':').append(fld.getType().getId())
+                    .append(fld.hasConstantPool() ? "@cp" : "").append('[').append(fld.getDimension()).append("]->")
+                    .append(fldClz != null ? fldClz.getName() : "-").append('\n');
+            methods.add(fieldToMethodMap.getOrDefault(fld.getName(), fld.getName()));
+        }
+        Class<?> baseClass = base;
+        LayoutLoader loader = LAYOUT_LOADERS.get(base);
+        Class<?> layoutClass = loader.layouts.computeIfAbsent(sb.toString(), k -> {
+            // the name is derived from the description so the cached deserializer classes link to the same layout in any process
+            String layoutName = CodeGenerator.class.getPackage().getName() + "." + baseClass.getSimpleName() + "$Layout$" + DeserializerClassCache.digest(k).substring(0, 16);
+            return loader.define(layoutName, generateBaseLayout(clz, baseClass, prefix, baseAttributes, viewAttributes, fieldToMethodMap, layoutName));
+        });
+        return new BaseLayout(layoutClass, prefix.size(), methods);
+    }
+
+    private static MethodHandles.Lookup layoutLookup(Class<?> layout) throws IllegalAccessException, NoSuchMethodException {
+        MethodHandle lookup = MethodHandles.privateLookupIn(layout, MethodHandles.lookup())
+                .findStatic(layout, "lookup", MethodType.methodType(MethodHandles.Lookup.class));
+        try {
+            return (MethodHandles.Lookup) lookup.invokeExact();
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    private static byte[] generateBaseLayout(MetadataClass clz, Class<?> base, List<MetadataField> fields, Set<String> baseAttributes, Set<String> viewAttributes, Map<String, String> fieldToMethodMap, String layoutName) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, layoutName.replace('.', '/'), null, Type.getInternalName(Object.class), new String[]{Type.getInternalName(base), Type.getInternalName(Detachable.class)});
+        // package-private, used by the subclasses; not final, it is dropped when the instance is detached
+        cw.visitField(0, "context", Type.getDescriptor(ParserContext.class), null, null).visitEnd();
+        for (MetadataField field : fields) {
+            addFieldAccessor(cw, layoutName, field, fieldToMethodMap, viewAttributes, clz.getContext());
+        }
+        Set<MetadataField> appliedFields = new HashSet<>();
+        for (MetadataField field : fields) {
+            if (baseAttributes.contains(field.getName())) {
+                appliedFields.add(field);
+            }
+        }
+        prepareConstructor(cw, layoutName, Type.getInternalName(Object.class), fields, appliedFields, viewAttributes, clz.getContext());
+        prepareDetach(cw, layoutName, Type.getInternalName(Object.class), fields, appliedFields, viewAttributes, clz.getContext());
+        // the full privilege lookup needed to define the hidden subclasses next to the layout
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC, "lookup", Type.getMethodDescriptor(Type.getType(MethodHandles.Lookup.class)), null, null);
+        mv.visitCode();
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(MethodHandles.class), "lookup", Type.getMethodDescriptor(Type.getType(MethodHandles.Lookup.class)), false);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private record FilterSlot(int index, Type type) {}
 
-                prepareConstructor(cw, clzName, current, allFields, appliedFields, clz.getContext());
+    /**
+     * Compiles the filter for the given type.<br>
+     * The generated {@code test(RecordingStream)} method decodes the fields used by the filter into locals,
+     * skipping the other fields, and stops right after the last field the filter is interested in.
+     * @param clz the event type
+     * @param filter the filter
+     * @return the compiled filter
+     */
+    static EventFilter generateFilter(MetadataClass clz, Filter filter) {
+        Set<String> filterFields = new HashSet<>();
+        collectFilterFields(filter, filterFields);
+
+        List<MetadataField> fields = clz.getFields();
+        int lastFieldIdx = -1;
+        for (int i = 0; i < fields.size(); i++) {
+            if (filterFields.contains(fields.get(i).getName())) {
+                lastFieldIdx = i;
+            }
+        }
+
+        // the first local is the stream, the field values follow
+        Map<String, FilterSlot> slots = new HashMap<>();
+        int nextSlot = 1;
+        for (int i = 0; i <= lastFieldIdx; i++) {
+            MetadataField fld = fields.get(i);
+            if (!filterFields.contains(fld.getName())) {
+                continue;
+            }
+            MetadataClass fldType = fld.getType();
+            while (fldType.isSimpleType()) {
+                fldType = fldType.getFields().getFirst().getType();
+            }
+            if (fld.hasConstantPool() || fld.getDimension() > 0 || !fldType.isPrimitive()) {
+                throw new RuntimeException("Unsupported filter field: " + clz.getName() + "." + fld.getName());
+            }
+            Type slotType = switch (fldType.getName()) {
+                case "java.lang.String" -> Type.getType(String.class);
+                case "float", "double" -> Type.DOUBLE_TYPE;
+                default -> Type.LONG_TYPE;
+            };
+            slots.put(fld.getName(), new FilterSlot(nextSlot, slotType));
+            nextSlot += slotType.getSize();
+        }
+        int lastVarIdx = nextSlot - 1;
+
+        String clzName = CodeGenerator.class.getPackage().getName() + "." + clz.getSimpleName() + "$Filter$" + clz.getContext().getChunkIndex();
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, clzName.replace('.', '/'), null, Type.getInternalName(Object.class), null);
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "test", Type.getMethodDescriptor(Type.BOOLEAN_TYPE, Type.getType(RecordingStream.class)), null, null);
+        mv.visitCode();
+        for (int i = 0; i <= lastFieldIdx; i++) {
+            MetadataField fld = fields.get(i);
+            FilterSlot slot = slots.get(fld.getName());
+            mv.visitVarInsn(Opcodes.ALOAD, 0); // [stream]
+            if (slot == null) {
+                addFieldSkipper(mv, fld, 0, lastVarIdx); // []
+                continue;
+            }
+            String descriptor = addFieldLoader(mv, fld, 0, -1, lastVarIdx, clz.getContext()); // [value]
+            switch (descriptor) {
+                case "B", "Z", "S", "C", "I" -> mv.visitInsn(Opcodes.I2L);
+                case "F" -> mv.visitInsn(Opcodes.F2D);
+                default -> {}
             }
-            prepareSkipHandler(cw, current);;
+            mv.visitVarInsn(slot.type().getOpcode(Opcodes.ISTORE), slot.index()); // []
         }
-        if (target != null) {
-            Deque<Class<?>> checkClasses = new ArrayDeque<>();
-            checkClasses.push(target);
-            Class<?> checkClass = null;
-            while ((checkClass = checkClasses.poll()) != null) {
-                for (Method m : checkClass.getMethods()) {
-                    if (!generatedMethods.contains(m.getName())) {
-                        prepareEmptyMethod(m, cw);
+        Label rejected = new Label();
+        addFilterCondition(mv, filter, slots, rejected);
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitLabel(rejected);
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+
+        try {
+            MethodHandles.Lookup lkp = MethodHandles.lookup().defineHiddenClass(cw.toByteArray(), true, MethodHandles.Lookup.ClassOption.NESTMATE);
+            return new EventFilter(lkp.findStatic(lkp.lookupClass(), "test", MethodType.methodType(boolean.class, RecordingStream.class)));
+        } catch (Exception e) {
+            log.error("Failed to load generated filter class for {}", clz, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void collectFilterFields(Filter filter, Set<String> fields) {
+        switch (filter) {
+            case Filter.Comparison c -> fields.add(c.field());
+            case Filter.And a -> {
+                collectFilterFields(a.left(), fields);
+                collectFilterFields(a.right(), fields);
+            }
+            case Filter.Or o -> {
+                collectFilterFields(o.left(), fields);
+                collectFilterFields(o.right(), fields);
+            }
+            case Filter.Not n -> collectFilterFields(n.filter(), fields);
+        }
+    }
+
+    /**
+     * Emits the code jumping to {@code rejected} if the filter does not match, falling through otherwise.
+     */
+    private static void addFilterCondition(MethodVisitor mv, Filter filter, Map<String, FilterSlot> slots, Label rejected) {
+        switch (filter) {
+            case Filter.Comparison c -> addFilterComparison(mv, c, slots.get(c.field()), rejected);
+            case Filter.And a -> {
+                addFilterCondition(mv, a.left(), slots, rejected);
+                addFilterCondition(mv, a.right(), slots, rejected);
+            }
+            case Filter.Or o -> {
+                Label matched = new Label();
+                Label right = new Label();
+                addFilterCondition(mv, o.left(), slots, right);
+                mv.visitJumpInsn(Opcodes.GOTO, matched);
+                mv.visitLabel(right);
+                addFilterCondition(mv, o.right(), slots, rejected);
+                mv.visitLabel(matched);
+            }
+            case Filter.Not n -> {
+                Label negated = new Label();
+                addFilterCondition(mv, n.filter(), slots, negated);
+                mv.visitJumpInsn(Opcodes.GOTO, rejected);
+                mv.visitLabel(negated);
+            }
+        }
+    }
+
+    private static void addFilterComparison(MethodVisitor mv, Filter.Comparison c, FilterSlot slot, Label rejected) {
+        if (slot == null) {
+            // the field is not present in this type
+            mv.visitJumpInsn(Opcodes.GOTO, rejected);
+            return;
+        }
+        boolean isString = slot.type().getSort() == Type.OBJECT;
+        if (isString != (c.value() instanceof String)) {
+            throw new RuntimeException("Incompatible filter value for field " + c.field() + ": " + c.value());
+        }
+        if (isString) {
+            mv.visitVarInsn(Opcodes.ALOAD, slot.index()); // [value]
+            mv.visitLdcInsn(c.value()); // [value, const]
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(Objects.class), "equals", Type.getMethodDescriptor(Type.BOOLEAN_TYPE, Type.getType(Object.class), Type.getType(Object.class)), false); // [int]
+            switch (c.op()) {
+                case EQ -> mv.visitJumpInsn(Opcodes.IFEQ, rejected);
+                case NE -> mv.visitJumpInsn(Opcodes.IFNE, rejected);
+                default -> throw new RuntimeException("Unsupported string filter operation: " + c.op());
+            }
+            return;
+        }
+        Number value = (Number) c.value();
+        boolean floating = slot.type() == Type.DOUBLE_TYPE || value instanceof Double || value instanceof Float;
+        mv.visitVarInsn(slot.type().getOpcode(Opcodes.ILOAD), slot.index()); // [value]
+        if (floating) {
+            if (slot.type() == Type.LONG_TYPE) {
+                mv.visitInsn(Opcodes.L2D);
+            }
+            mv.visitLdcInsn(value.doubleValue()); // [value, const]
+            // NaN must never match
+            mv.visitInsn(c.op() == Filter.Op.LT || c.op() == Filter.Op.LE ? Opcodes.DCMPG : Opcodes.DCMPL); // [int]
+        } else {
+            mv.visitLdcInsn(value.longValue()); // [value, const]
+            mv.visitInsn(Opcodes.LCMP); // [int]
+        }
+        int jump = switch (c.op()) {
+            case EQ -> Opcodes.IFNE;
+            case NE -> Opcodes.IFEQ;
+            case LT -> Opcodes.IFGE;
+            case LE -> Opcodes.IFGT;
+            case GT -> Opcodes.IFLE;
+            case GE -> Opcodes.IFLT;
+        };
+        mv.visitJumpInsn(jump, rejected);
+    }
+
+    /**
+     * Generates the code decoding the fields of the given type into the batch columns.<br>
+     * The generated {@code write(RecordingStream, long[][], double[][], int)} method stores the values directly
+     * into the column arrays at the given row, skips the fields without a column and zeroes the columns
+     * which can not be filled from this type.
+     * @param clz the event type
+     * @param columns the batch columns
+     * @return the column writer
+     */
+    static ColumnWriter generateColumnWriter(MetadataClass clz, List<ColumnBatch.Column> columns) {
+        Map<String, Integer> columnIndex = new HashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+            columnIndex.put(columns.get(i).field(), i);
+        }
+        long[] cpTypeIds = new long[columns.size()];
+        boolean[] written = new boolean[columns.size()];
+
+        int streamIdx = 0;
+        int longsIdx = 1;
+        int doublesIdx = 2;
+        int rowIdx = 3;
+        int lastVarIdx = rowIdx;
+
+        String clzName = CodeGenerator.class.getPackage().getName() + "." + clz.getSimpleName() + "$Columns$" + clz.getContext().getChunkIndex();
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, clzName.replace('.', '/'), null, Type.getInternalName(Object.class), null);
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "write", Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(RecordingStream.class), Type.getType(long[][].class), Type.getType(double[][].class), Type.INT_TYPE), null, null);
+        mv.visitCode();
+        for (MetadataField fld : clz.getFields()) {
+            Integer col = columnIndex.get(fld.getName());
+            MetadataClass fldType = fld.getType();
+            while (fldType.isSimpleType()) {
+                fldType = fldType.getFields().getFirst().getType();
+            }
+            boolean storable = col != null && fld.getDimension() <= 0 && (fld.hasConstantPool() ? !columns.get(col).floating() : fldType.isPrimitive() && !fldType.getName().equals("java.lang.String"));
+            if (!storable) {
+                mv.visitVarInsn(Opcodes.ALOAD, streamIdx); // [stream]
+                addFieldSkipper(mv, fld, streamIdx, lastVarIdx); // []
+                continue;
+            }
+            boolean floating = columns.get(col).floating();
+            mv.visitVarInsn(Opcodes.ALOAD, floating ? doublesIdx : longsIdx); // [columns]
+            mv.visitLdcInsn(col); // [columns, int]
+            mv.visitInsn(Opcodes.AALOAD); // [column]
+            mv.visitVarInsn(Opcodes.ILOAD, rowIdx); // [column, row]
+            mv.visitVarInsn(Opcodes.ALOAD, streamIdx); // [column, row, stream]
+            String descriptor = addFieldLoader(mv, fld, streamIdx, -1, lastVarIdx, clz.getContext()); // [column, row, value]
+            switch (descriptor) {
+                case "B", "Z", "S", "C", "I" -> mv.visitInsn(floating ? Opcodes.I2D : Opcodes.I2L);
+                case "J" -> {
+                    if (floating) {
+                        mv.visitInsn(Opcodes.L2D);
                     }
                 }
-                checkClasses.addAll(Arrays.stream(checkClass.getInterfaces()).toList());
+                case "F" -> mv.visitInsn(floating ? Opcodes.F2D : Opcodes.F2L);
+                case "D" -> {
+                    if (!floating) {
+                        mv.visitInsn(Opcodes.D2L);
+                    }
+                }
+                default -> throw new RuntimeException("Unexpected column value: " + descriptor);
+            }
+            mv.visitInsn(floating ? Opcodes.DASTORE : Opcodes.LASTORE); // []
+            written[col] = true;
+            if (fld.hasConstantPool()) {
+                cpTypeIds[col] = fld.getType().getId();
             }
-            cw.visitEnd();
         }
-        byte[] classData = cw.toByteArray();
-
-        Path debugPath = null;
-        if (log.isDebugEnabled()) {
-            debugPath = Paths.get("/tmp/" + origSimpleName + ".class");
-            Files.write(debugPath, classData);
+        // the buffers are reused, the columns not present in this type must be reset
+        for (int col = 0; col < columns.size(); col++) {
+            if (written[col]) {
+                continue;
+            }
+            boolean floating = columns.get(col).floating();
+            mv.visitVarInsn(Opcodes.ALOAD, floating ? doublesIdx : longsIdx); // [columns]
+            mv.visitLdcInsn(col); // [columns, int]
+            mv.visitInsn(Opcodes.AALOAD); // [column]
+            mv.visitVarInsn(Opcodes.ILOAD, rowIdx); // [column, row]
+            mv.visitInsn(floating ? Opcodes.DCONST_0 : Opcodes.LCONST_0); // [column, row, 0]
+            mv.visitInsn(floating ? Opcodes.DASTORE : Opcodes.LASTORE); // []
         }
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
 
         try {
-            MethodHandles.Lookup lkp = MethodHandles.lookup().defineHiddenClass(classData, true, MethodHandles.Lookup.ClassOption.NESTMATE);
-            MethodHandle ctrHandle = target != null ? lkp.findConstructor(lkp.lookupClass(), MethodType.methodType(void.class, RecordingStream.class)) : null;
-            MethodHandle skipHandle = lkp.findStatic(lkp.lookupClass(), "skip", MethodType.methodType(void.class, RecordingStream.class));
-            return new Deserializer.Generated<>(ctrHandle, skipHandle, createSkipper(clz));
+            MethodHandles.Lookup lkp = MethodHandles.lookup().defineHiddenClass(cw.toByteArray(), true, MethodHandles.Lookup.ClassOption.NESTMATE);
+            MethodHandle writeHandle = lkp.findStatic(lkp.lookupClass(), "write", MethodType.methodType(void.class, RecordingStream.class, long[][].class, double[][].class, int.class));
+            return new ColumnWriter(writeHandle, cpTypeIds);
         } catch (Exception e) {
-            log.error("Failed to load generated handler class for {}, bytecode can be found at {}", clz, debugPath, e);
+            log.error("Failed to load generated column writer class for {}", clz, e);
             throw new RuntimeException(e);
         }
     }
 
-    private static TypeSkipper createSkipper(MetadataClass clz) {
+    /**
+     * Generates a class with a static {@code read(RecordingStream)} factory decoding the fields into locals
+     * and passing them to the record canonical constructor.<br>
+     * Constant pool references are resolved eagerly so the record instances do not retain the parser context.
+     */
+    private static byte[] generateRecordClass(MetadataClass clz, Class<?> target, String clzName) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, clzName.replace('.', '/'), null, "java/lang/Object", null);
+
+        RecordComponent[] components = target.getRecordComponents();
+        Map<String, Integer> componentIndex = recordComponentIndex(target);
+        Type[] componentTypes = new Type[components.length];
+        int[] componentVars = new int[components.length];
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "read", Type.getMethodDescriptor(Type.getType(target), Type.getType(RecordingStream.class)), null, null);
+        mv.visitCode();
+        int streamIdx = 0;
+        int contextIdx = 1;
+        int metadataIdx = 2;
+        mv.visitVarInsn(Opcodes.ALOAD, streamIdx); // [stream]
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(RecordingStream.class), "getContext", Type.getMethodDescriptor(Type.getType(ParserContext.class)), false); // [ctx]
+        mv.visitInsn(Opcodes.DUP); // [ctx, ctx]
+        mv.visitVarInsn(Opcodes.ASTORE, contextIdx); // [ctx]
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(ParserContext.class), "getMetadataLookup", Type.getMethodDescriptor(Type.getType(MetadataLookup.class)), false); // [metadata]
+        mv.visitVarInsn(Opcodes.ASTORE, metadataIdx); // []
+
+        int nextVar = metadataIdx + 1;
+        for (int i = 0; i < components.length; i++) {
+            componentTypes[i] = Type.getType(components[i].getType());
+            componentVars[i] = nextVar;
+            nextVar += componentTypes[i].getSize();
+            // components without a matching field will get the default value
+            pushDefaultValue(mv, componentTypes[i]); // [value]
+            mv.visitVarInsn(componentTypes[i].getOpcode(Opcodes.ISTORE), componentVars[i]); // []
+        }
+        int lastVarIdx = nextVar - 1;
+
+        for (MetadataField fld : clz.getFields()) {
+            Integer idx = componentIndex.get(fld.getName());
+            mv.visitVarInsn(Opcodes.ALOAD, streamIdx); // [stream]
+            if (idx == null) {
+                addFieldSkipper(mv, fld, streamIdx, lastVarIdx); // []
+                continue;
+            }
+            Type componentType = componentTypes[idx];
+            String fldDescriptor = addFieldLoader(mv, fld, streamIdx, metadataIdx, lastVarIdx, clz.getContext()); // [value]
+            if (fld.hasConstantPool()) {
+                mv.visitVarInsn(Opcodes.ALOAD, contextIdx); // [ref, ctx]
+                mv.visitLdcInsn(fld.getType().getId()); // [ref, ctx, long]
+                if (fld.getDimension() > 0) {
+                    mv.visitLdcInsn(Type.getType(components[idx].getType().getComponentType())); // [refs, ctx, long, class]
+                    mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(GeneratedCodeSupport.class), "resolveConstants", Type.getMethodDescriptor(Type.getType(Object.class), Type.getType(long[].class), Type.getType(ParserContext.class), Type.LONG_TYPE, Type.getType(Class.class)), false); // [array]
+                } else {
+                    mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(GeneratedCodeSupport.class), "resolveConstant", Type.getMethodDescriptor(Type.getType(Object.class), Type.LONG_TYPE, Type.getType(ParserContext.class), Type.LONG_TYPE), false); // [value]
+                }
+                if (componentType.getSort() <= Type.DOUBLE) {
+                    addUnboxing(mv, componentType); // [value]
+                } else {
+                    mv.visitTypeInsn(Opcodes.CHECKCAST, componentType.getInternalName()); // [value]
+                }
+            } else if (!componentType.getDescriptor().equals(fldDescriptor)) {
+                throw new RuntimeException("Record component " + target.getName() + "." + components[idx].getName() + " is not compatible with " + clz.getName() + "." + fld.getName());
+            }
+            mv.visitVarInsn(componentType.getOpcode(Opcodes.ISTORE), componentVars[idx]); // []
+        }
+
+        mv.visitTypeInsn(Opcodes.NEW, Type.getInternalName(target)); // [rec]
+        mv.visitInsn(Opcodes.DUP); // [rec, rec]
+        for (int i = 0; i < components.length; i++) {
+            mv.visitVarInsn(componentTypes[i].getOpcode(Opcodes.ILOAD), componentVars[i]); // [rec, rec, ...values]
+        }
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, Type.getInternalName(target), "<init>", Type.getMethodDescriptor(Type.VOID_TYPE, componentTypes), false); // [rec]
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        prepareSkipHandler(cw, clz);
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Unboxes the resolved constant pool value to the given primitive type.<br>
+     * An unresolved ({@literal null}) value is replaced by the default value of the type.
+     */
+    private static void addUnboxing(MethodVisitor mv, Type type) {
+        Label resolved = new Label();
+        Label done = new Label();
+        mv.visitInsn(Opcodes.DUP); // [value, value]
+        mv.visitJumpInsn(Opcodes.IFNONNULL, resolved); // [value]
+        mv.visitInsn(Opcodes.POP); // []
+        pushDefaultValue(mv, type); // [default]
+        mv.visitJumpInsn(Opcodes.GOTO, done);
+        mv.visitLabel(resolved); // [value]
+        String owner = switch (type.getSort()) {
+            case Type.BOOLEAN -> Type.getInternalName(Boolean.class);
+            case Type.CHAR -> Type.getInternalName(Character.class);
+            default -> Type.getInternalName(Number.class);
+        };
+        mv.visitTypeInsn(Opcodes.CHECKCAST, owner); // [boxed]
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, owner, type.getClassName() + "Value", Type.getMethodDescriptor(type), false); // [primitive]
+        mv.visitLabel(done); // [primitive]
+    }
+
+    private static void pushDefaultValue(MethodVisitor mv, Type type) {
+        switch (type.getSort()) {
+            case Type.BOOLEAN, Type.BYTE, Type.CHAR, Type.SHORT, Type.INT -> mv.visitInsn(Opcodes.ICONST_0);
+            case Type.LONG -> mv.visitInsn(Opcodes.LCONST_0);
+            case Type.FLOAT -> mv.visitInsn(Opcodes.FCONST_0);
+            case Type.DOUBLE -> mv.visitInsn(Opcodes.DCONST_0);
+            default -> mv.visitInsn(Opcodes.ACONST_NULL);
+        }
+    }
+
+    /**
+     * Maps the JFR field names to the record component indices.<br>
+     * The field name is either the component name or the one specified via {@linkplain JfrField}.
+     * Components annotated by {@linkplain JfrIgnore} are not mapped.
+     */
+    static Map<String, Integer> recordComponentIndex(Class<?> target) {
+        Map<String, Integer> index = new HashMap<>();
+        RecordComponent[] components = target.getRecordComponents();
+        for (int i = 0; i < components.length; i++) {
+            Method accessor = components[i].getAccessor();
+            if (accessor.getAnnotation(JfrIgnore.class) != null) {
+                continue;
+            }
+            JfrField fieldAnnotation = accessor.getAnnotation(JfrField.class);
+            index.put(fieldAnnotation != null ? fieldAnnotation.value() : components[i].getName(), i);
+        }
+        return index;
+    }
+
+    static TypeSkipper createSkipper(MetadataClass clz) {
         IntList instructions = new IntArrayList(20);
         for (MetadataField fld : clz.getFields()) {
             fillSkipper(fld, instructions);
@@ -900,6 +1672,12 @@ final class CodeGenerator {
         return new TypeSkipper(instructions.toIntArray());
     }
 
+    static TypeSkipper createSkipper(MetadataField fld) {
+        IntList instructions = new IntArrayList(4);
+        fillSkipper(fld, instructions);
+        return new TypeSkipper(instructions.toIntArray());
+    }
+
     private static void fillSkipper(MetadataField fld, IntList instructions) {
         int startingSize = instructions.size();
         int arraySizeIdx = -1;
@@ -969,4 +1747,40 @@ final class CodeGenerator {
         }
         return usedAttributes;
     }
+
+    /**
+     * Collects the names of the fields exposed as {@linkplain Utf8View} by the given handler type.
+     */
+    private static Set<String> collectViewAttributes(Class<?> clz) {
+        Set<String> viewAttributes = new HashSet<>();
+        for (Method m : clz.getMethods()) {
+            if (m.getReturnType() == Utf8View.class && m.getParameterCount() == 0 && m.getAnnotation(JfrIgnore.class) == null) {
+                JfrField fieldAnnotation = m.getAnnotation(JfrField.class);
+                viewAttributes.add(fieldAnnotation != null ? fieldAnnotation.value() : m.getName());
+            }
+        }
+        return viewAttributes;
+    }
+
+    private static Class<?> fieldTargetType(MetadataField fld, Set<String> viewAttributes, ParserContext context) {
+        MetadataClass fldType = fld.getType();
+        while (fldType.isSimpleType()) {
+            fldType = fldType.getFields().getFirst().getType();
+        }
+        return isViewField(fld, viewAttributes) ? Utf8View.class : context.getClassTargetType(fldType.getName());
+    }
+
+    /**
+     * Only the non-array {@code String} fields can be exposed as {@linkplain Utf8View}.
+     */
+    private static boolean isViewField(MetadataField fld, Set<String> viewAttributes) {
+        if (fld.getDimension() > 0 || !viewAttributes.contains(fld.getName())) {
+            return false;
+        }
+        MetadataClass fldType = fld.getType();
+        while (fldType.isSimpleType()) {
+            fldType = fldType.getFields().getFirst().getType();
+        }
+        return fldType.getName().equals("java.lang.String");
+    }
 }
@@ -0,0 +1,145 @@
+package io.jafar.parser.internal_api;
+
+import io.jafar.parser.api.EventBatch;
+import io.jafar.parser.api.JfrField;
+import io.jafar.parser.api.JfrIgnore;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reusable column buffers for the batched event handlers.<br>
+ * One instance is used per handler and chunk so the constant pool references can be resolved in the chunk context.
+ */
+public final class ColumnBatch implements EventBatch {
+    /**
+     * A batch column.
+     * @param name the column name - the handler type method name
+     * @param field the JFR field name
+     * @param floating {@literal true} for {@code double[]} columns, {@literal false} for {@code long[]} columns
+     */
+    public record Column(String name, String field, boolean floating) {}
+
+    private final List<Column> columns;
+    private final List<String> columnNames;
+    private final Map<String, Integer> columnIndex = new HashMap<>();
+    private final ParserContext context;
+    private final int capacity;
+
+    // indexed by the column; only one of the arrays is set for each column
+    final long[][] longs;
+    final double[][] doubles;
+    private final long[] cpTypeIds;
+    int size;
+
+    public ColumnBatch(List<Column> columns, int capacity, ParserContext context) {
+        this.columns = columns;
+        this.columnNames = columns.stream().map(Column::name).toList();
+        this.capacity = capacity;
+        this.context = context;
+        this.longs = new long[columns.size()][];
+        this.doubles = new double[columns.size()][];
+        this.cpTypeIds = new long[columns.size()];
+        for (int i = 0; i < columns.size(); i++) {
+            Column column = columns.get(i);
+            columnIndex.put(column.name(), i);
+            if (column.floating()) {
+                doubles[i] = new double[capacity];
+            } else {
+                longs[i] = new long[capacity];
+            }
+        }
+    }
+
+    /**
+     * Derives the columns from the handler type methods.
+     * @param type the handler type
+     * @return the columns
+     */
+    public static List<Column> columnsOf(Class<?> type) {
+        List<Column> columns = new ArrayList<>();
+        for (Method m : type.getMethods()) {
+            if (Modifier.isStatic(m.getModifiers()) || m.getParameterCount() != 0 || m.getAnnotation(JfrIgnore.class) != null) {
+                continue;
+            }
+            Class<?> returnType = m.getReturnType();
+            if (returnType.isArray() || returnType == String.class || returnType == void.class) {
+                // no primitive column representation
+                continue;
+            }
+            JfrField fieldAnnotation = m.getAnnotation(JfrField.class);
+            String field = fieldAnnotation != null ? fieldAnnotation.value() : m.getName();
+            columns.add(new Column(m.getName(), field, returnType == double.class || returnType == float.class));
+        }
+        return columns;
+    }
+
+    List<Column> getColumns() {
+        return columns;
+    }
+
+    void bindConstantPoolTypes(long[] typeIds) {
+        for (int i = 0; i < typeIds.length; i++) {
+            if (typeIds[i] != 0) {
+                cpTypeIds[i] = typeIds[i];
+            }
+        }
+    }
+
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public List<String> columns() {
+        return columnNames;
+    }
+
+    @Override
+    public long[] longs(String column) {
+        long[] data = longs[index(column)];
+        if (data == null) {
+            throw new IllegalArgumentException("Not a long column: " + column);
+        }
+        return data;
+    }
+
+    @Override
+    public double[] doubles(String column) {
+        double[] data = doubles[index(column)];
+        if (data == null) {
+            throw new IllegalArgumentException("Not a double column: " + column);
+        }
+        return data;
+    }
+
+    @Override
+    public Object resolve(String column, int row) {
+        int idx = index(column);
+        if (longs[idx] == null || cpTypeIds[idx] == 0) {
+            throw new IllegalArgumentException("Not a constant pool column: " + column);
+        }
+        return GeneratedCodeSupport.resolveConstant(longs[idx][row], context, cpTypeIds[idx]);
+    }
+
+    private int index(String column) {
+        Integer idx = columnIndex.get(column);
+        if (idx == null) {
+            throw new IllegalArgumentException("Unknown column: " + column);
+        }
+        return idx;
+    }
+}
@@ -0,0 +1,46 @@
+package io.jafar.parser.internal_api;
+
+import io.jafar.parser.internal_api.metadata.MetadataClass;
+
+import java.lang.invoke.MethodHandle;
+import java.util.List;
+
+/**
+ * Generated code decoding the event fields straight into the {@linkplain ColumnBatch} columns.
+ */
+public final class ColumnWriter {
+    private final MethodHandle writeHandle;
+    // the constant pool type per column, '0' for the non-constant pool columns
+    private final long[] cpTypeIds;
+
+    ColumnWriter(MethodHandle writeHandle, long[] cpTypeIds) {
+        this.writeHandle = writeHandle;
+        this.cpTypeIds = cpTypeIds;
+    }
+
+    public static ColumnWriter forType(MetadataClass clz, List<ColumnBatch.Column> columns) {
+        return CodeGenerator.generateColumnWriter(clz, columns);
+    }
+
+    /**
+     * Prepares the batch for receiving the rows written by this writer.
+     * @param batch the batch
+     */
+    public void bind(ColumnBatch batch) {
+        batch.bindConstantPoolTypes(cpTypeIds);
+    }
+
+    /**
+     * Appends the event the stream is positioned at to the batch.
+     * @param stream the stream positioned at the event payload
+     * @param batch the batch; must not be full
+     */
+    public void write(RecordingStream stream, ColumnBatch batch) {
+        try {
+            writeHandle.invokeExact(stream, batch.longs, batch.doubles, batch.size);
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+        batch.size++;
+    }
+}
@@ -6,6 +6,21 @@ public interface ConstantPool {
     Object get(long id);
     int size();
 
+    /**
+     * @return the number of lookups served from the resolved entries cache
+     */
+    long getHitCount();
+
+    /**
+     * @return the number of lookups which had to decode the entry
+     */
+    long getMissCount();
+
+    /**
+     * @return the number of resolved entries evicted from the cache
+     */
+    long getEvictionCount();
+
     boolean isEmpty();
     MetadataClass getType();
 }
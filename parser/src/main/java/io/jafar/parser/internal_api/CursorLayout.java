@@ -0,0 +1,83 @@
+package io.jafar.parser.internal_api;
+
+import io.jafar.parser.internal_api.metadata.MetadataClass;
+import io.jafar.parser.internal_api.metadata.MetadataField;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The field layout of a type as used by {@linkplain EventCursorImpl}.<br>
+ * The field names are resolved to field indices once and the skippers are created lazily, only for the fields
+ * which need to be skipped over.
+ */
+final class CursorLayout {
+    final MetadataClass type;
+    final List<MetadataField> fields;
+    final List<String> fieldNames;
+    private final Map<String, Integer> fieldIndex = new HashMap<>();
+    private final TypeSkipper[] fieldSkippers;
+    private final TypeSkipper[] elementSkippers;
+
+    CursorLayout(MetadataClass type) {
+        this.type = type;
+        this.fields = type.getFields();
+        this.fieldNames = fields.stream().map(MetadataField::getName).toList();
+        for (int i = 0; i < fields.size(); i++) {
+            fieldIndex.put(fields.get(i).getName(), i);
+        }
+        this.fieldSkippers = new TypeSkipper[fields.size()];
+        this.elementSkippers = new TypeSkipper[fields.size()];
+    }
+
+    int index(String field) {
+        Integer idx = fieldIndex.get(field);
+        if (idx == null) {
+            throw new IllegalArgumentException("Unknown field: " + type.getName() + "." + field);
+        }
+        return idx;
+    }
+
+    boolean hasField(String field) {
+        return fieldIndex.containsKey(field);
+    }
+
+    TypeSkipper fieldSkipper(int idx) {
+        TypeSkipper skipper = fieldSkippers[idx];
+        if (skipper == null) {
+            skipper = CodeGenerator.createSkipper(fields.get(idx));
+            fieldSkippers[idx] = skipper;
+        }
+        return skipper;
+    }
+
+    /**
+     * @param idx the array field index
+     * @return the skipper for a single array element
+     */
+    TypeSkipper elementSkipper(int idx) {
+        TypeSkipper skipper = elementSkippers[idx];
+        if (skipper == null) {
+            MetadataField fld = fields.get(idx);
+            MetadataClass elementType = fld.getType();
+            while (elementType.isSimpleType()) {
+                elementType = elementType.getFields().getFirst().getType();
+            }
+            if (fld.hasConstantPool()) {
+                skipper = new TypeSkipper(new int[]{TypeSkipper.Instructions.CP_ENTRY});
+            } else {
+                skipper = switch (elementType.getName()) {
+                    case "byte", "boolean" -> new TypeSkipper(new int[]{TypeSkipper.Instructions.BYTE});
+                    case "char", "short", "int", "long" -> new TypeSkipper(new int[]{TypeSkipper.Instructions.VARINT});
+                    case "float" -> new TypeSkipper(new int[]{TypeSkipper.Instructions.FLOAT});
+                    case "double" -> new TypeSkipper(new int[]{TypeSkipper.Instructions.DOUBLE});
+                    case "java.lang.String" -> new TypeSkipper(new int[]{TypeSkipper.Instructions.STRING});
+                    default -> CodeGenerator.createSkipper(elementType);
+                };
+            }
+            elementSkippers[idx] = skipper;
+        }
+        return skipper;
+    }
+}
@@ -5,6 +5,8 @@ import io.jafar.parser.internal_api.metadata.MetadataClass;
 
 import java.lang.invoke.MethodHandle;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class Deserializer<T> {
     private static final Deserializer<String> UTF8_STRING = new Deserializer<>() {
@@ -117,6 +119,50 @@ public abstract class Deserializer<T> {
         }
     }
 
+    /**
+     * Starts with an interpreted deserializer and switches to the compiled one once the number of
+     * deserialized values exceeds the threshold - similar to the JIT tiers.
+     * The compilation cost is paid only for the types which are frequent enough.
+     */
+    public static final class Tiered<T> extends Deserializer<T> {
+        private final Deserializer<T> interpreted;
+        private final Callable<Deserializer<T>> compiler;
+        private final int threshold;
+        private final AtomicInteger counter = new AtomicInteger();
+        private volatile Deserializer<T> compiled;
+
+        public Tiered(Deserializer<T> interpreted, Callable<Deserializer<T>> compiler, int threshold) {
+            this.interpreted = interpreted;
+            this.compiler = compiler;
+            this.threshold = threshold;
+        }
+
+        @Override
+        public void skip(RecordingStream stream) throws Exception {
+            // skipping does not depend on the tier
+            interpreted.skip(stream);
+        }
+
+        @Override
+        public T deserialize(RecordingStream stream) throws Exception {
+            Deserializer<T> d = compiled;
+            if (d == null) {
+                if (counter.incrementAndGet() <= threshold) {
+                    return interpreted.deserialize(stream);
+                }
+                d = promote();
+            }
+            return d.deserialize(stream);
+        }
+
+        private synchronized Deserializer<T> promote() throws Exception {
+            if (compiled == null) {
+                compiled = compiler.call();
+            }
+            return compiled;
+        }
+    }
+
     public static Deserializer<?> forType(MetadataClass clazz) {
         if (clazz.isPrimitive()) {
             return DESERIALIZERS.get(clazz.getName());
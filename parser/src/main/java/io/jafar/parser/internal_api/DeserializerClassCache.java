@@ -0,0 +1,141 @@
+package io.jafar.parser.internal_api;
+
+import io.jafar.parser.api.JfrField;
+import io.jafar.parser.api.JfrIgnore;
+import io.jafar.parser.internal_api.metadata.MetadataClass;
+import io.jafar.parser.internal_api.metadata.MetadataField;
+import org.objectweb.asm.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Opt-in on-disk cache of the generated deserializer class bytes.<br>
+ * Enabled by pointing the {@code io.jafar.parser.deserializer_cache} system property to a writable directory.
+ * The entries are keyed by a stable hash of the {@linkplain ParserContext.DeserializerKey}, the type
+ * {@linkplain MetadataClass#getFingerprint() fingerprint}, the target interface signature and the name of the extended base layout,
+ * so a hit can be loaded as a hidden class right away, without running the ASM generation.
+ */
+final class DeserializerClassCache {
+    private static final Logger log = LoggerFactory.getLogger(DeserializerClassCache.class);
+
+    // bump whenever the generated bytecode shape changes
+    private static final int FORMAT_VERSION = 5;
+
+    private DeserializerClassCache() {}
+
+    /**
+     * The property is not cached, so the cache can be turned on and off at runtime.
+     * @return the cache directory or {@literal null} if the cache is disabled
+     */
+    static Path cacheDir() {
+        String dir = System.getProperty("io.jafar.parser.deserializer_cache");
+        if (dir == null || dir.isBlank()) {
+            return null;
+        }
+        try {
+            return Files.createDirectories(Paths.get(dir));
+        } catch (IOException e) {
+            log.warn("Unable to use {} as the deserializer cache directory", dir, e);
+            return null;
+        }
+    }
+
+    /**
+     * Computes the cache key for the deserializer generated for the given metadata class and target types.
+     * @param clz the metadata class
+     * @param targets the handler types, the most specific one first
+     * @param layout the base layout class extended by the deserializer or {@literal null}
+     * @return the cache key
+     */
+    static String key(MetadataClass clz, List<Class<?>> targets, Class<?> layout) {
+        return key(FORMAT_VERSION, clz, targets, layout);
+    }
+
+    // the format version is a parameter only for the tests
+    static String key(int formatVersion, MetadataClass clz, List<Class<?>> targets, Class<?> layout) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("v").append(formatVersion).append('\n');
+        sb.append(new ParserContext.DeserializerKey(clz)).append('\n');
+        sb.append(clz.getFingerprint()).append('\n');
+        // the layout names are derived from the layout content, so they are the same in every process
+        sb.append(layout != null ? layout.getName() : "-").append('\n');
+        for (Class<?> target : targets) {
+            describeTarget(target, sb);
+        }
+        for (MetadataField fld : clz.getFields()) {
+            Class<?> fldClz = clz.getContext().getClassTargetType(fld.getType().getName());
+            sb.append(fld.getName()).append("->").append(fldClz != null ? fldClz.getName() : "-").append('\n');
+        }
+        return digest(sb.toString());
+    }
+
+    /**
+     * @param text the text to hash
+     * @return the hex encoded SHA-256 hash of the text
+     */
+    static String digest(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static byte[] load(Path cacheDir, String key) {
+        Path file = cacheDir.resolve(key + ".class");
+        try {
+            return Files.exists(file) ? Files.readAllBytes(file) : null;
+        } catch (IOException e) {
+            log.debug("Unable to read cached deserializer {}", file, e);
+            return null;
+        }
+    }
+
+    static void store(Path cacheDir, String key, byte[] classData) {
+        Path file = cacheDir.resolve(key + ".class");
+        try {
+            // write to a temp file first so concurrent processes never observe a partially written entry
+            Path tmp = Files.createTempFile(cacheDir, key, ".tmp");
+            try {
+                Files.write(tmp, classData);
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException e) {
+            log.debug("Unable to store cached deserializer {}", file, e);
+        }
+    }
+
+    private static void describeTarget(Class<?> target, StringBuilder sb) {
+        sb.append(target.getName()).append('\n');
+        Arrays.stream(target.getMethods())
+                .sorted(Comparator.comparing(Method::getName).thenComparing(Method::toGenericString))
+                .forEach(m -> {
+                    sb.append(m.getName()).append(Type.getMethodDescriptor(m));
+                    JfrField fieldAnnotation = m.getAnnotation(JfrField.class);
+                    if (fieldAnnotation != null) {
+                        sb.append("@").append(fieldAnnotation.value());
+                    }
+                    if (m.getAnnotation(JfrIgnore.class) != null) {
+                        sb.append("@ignore");
+                    }
+                    sb.append('\n');
+                });
+    }
+}
@@ -0,0 +1,28 @@
+package io.jafar.parser.internal_api;
+
+/**
+ * Implemented by the generated handler classes and the precompiled deserializers.<br>
+ * The constant pool references of a deserialized value are resolved lazily through the chunk {@linkplain ParserContext},
+ * so the value keeps the whole chunk context alive. A detached value has all its references resolved and does not
+ * refer to the context anymore, so it can be shared across the chunks, eg. as the canonical interned constant.
+ */
+public interface Detachable {
+    /**
+     * Resolves all the constant pool references, including the ones of the nested values, and drops the chunk context.
+     */
+    void detach();
+
+    /**
+     * Detaches a resolved or nested value, including the elements of an array.
+     * @param value the value, may be {@literal null}
+     */
+    static void detachValue(Object value) {
+        if (value instanceof Detachable detachable) {
+            detachable.detach();
+        } else if (value instanceof Object[] values) {
+            for (Object v : values) {
+                detachValue(v);
+            }
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package io.jafar.parser.internal_api;
+
+import io.jafar.parser.MutableConstantPool;
+import io.jafar.parser.ParsingUtils;
+import io.jafar.parser.api.EventCursor;
+import io.jafar.parser.internal_api.metadata.MetadataClass;
+import io.jafar.parser.internal_api.metadata.MetadataField;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * {@linkplain EventCursor} implementation reading the values lazily from the chunk stream.<br>
+ * The field start offsets are discovered on demand - accessing a field skips over all the preceding fields
+ * which have not been visited yet and the discovered offsets are remembered, so each field is skipped at most once.
+ * The cursor instance is reset and reused for each event.
+ */
+public final class EventCursorImpl implements EventCursor {
+    private final RecordingStream stream;
+    private final Map<MetadataClass, CursorLayout> layouts;
+
+    private CursorLayout layout;
+    private long[] offsets = new long[16];
+    // number of the fields with known start offsets
+    private int known;
+
+    /**
+     * @param stream the chunk stream
+     */
+    public EventCursorImpl(RecordingStream stream) {
+        this(stream, new IdentityHashMap<>());
+    }
+
+    private EventCursorImpl(RecordingStream stream, Map<MetadataClass, CursorLayout> layouts) {
+        this.stream = stream;
+        this.layouts = layouts;
+    }
+
+    /**
+     * Points the cursor to a new value.
+     * @param type the value type
+     * @param position the value start position
+     * @return this cursor
+     */
+    public EventCursorImpl reset(MetadataClass type, long position) {
+        layout = layouts.computeIfAbsent(type, CursorLayout::new);
+        if (offsets.length < layout.fields.size() + 1) {
+            offsets = new long[layout.fields.size() + 1];
+        }
+        offsets[0] = position;
+        known = 1;
+        return this;
+    }
+
+    @Override
+    public String getType() {
+        return layout.type.getName();
+    }
+
+    @Override
+    public List<String> getFields() {
+        return layout.fieldNames;
+    }
+
+    @Override
+    public boolean hasField(String field) {
+        return layout.hasField(field);
+    }
+
+    @Override
+    public long getLong(String field) {
+        MetadataClass type = seekValue(scalarField(field));
+        return type != null ? readLong(type) : 0;
+    }
+
+    @Override
+    public double getDouble(String field) {
+        MetadataClass type = seekValue(scalarField(field));
+        if (type == null) {
+            return 0;
+        }
+        return switch (type.getName()) {
+            case "float" -> stream.readFloat();
+            case "double" -> stream.readDouble();
+            default -> readLong(type);
+        };
+    }
+
+    @Override
+    public boolean getBoolean(String field) {
+        return getLong(field) != 0;
+    }
+
+    @Override
+    public String getString(String field) {
+        MetadataClass type = seekValue(scalarField(field));
+        return type != null ? readString(type) : null;
+    }
+
+    @Override
+    public EventCursor cursor(String field) {
+        int idx = scalarField(field);
+        MetadataField fld = layout.fields.get(idx);
+        stream.position(fieldOffset(idx));
+        long pos = fld.hasConstantPool() ? constantOffset(fld.getType(), stream.readVarint()) : stream.position();
+        return pos > 0 ? new EventCursorImpl(stream, layouts).reset(fld.getType(), pos) : null;
+    }
+
+    @Override
+    public int getLength(String field) {
+        stream.position(fieldOffset(arrayField(field)));
+        return (int) stream.readVarint();
+    }
+
+    @Override
+    public long getLong(String field, int index) {
+        MetadataClass type = seekElement(arrayField(field), index);
+        return type != null ? readLong(type) : 0;
+    }
+
+    @Override
+    public String getString(String field, int index) {
+        MetadataClass type = seekElement(arrayField(field), index);
+        return type != null ? readString(type) : null;
+    }
+
+    @Override
+    public EventCursor cursor(String field, int index) {
+        int idx = arrayField(field);
+        MetadataField fld = layout.fields.get(idx);
+        long pos = elementOffset(idx, index);
+        return pos > 0 ? new EventCursorImpl(stream, layouts).reset(fld.getType(), pos) : null;
+    }
+
+    /**
+     * Visits all the array elements in order, walking the array only once - unlike {@linkplain #cursor(String, int)},
+     * which skips over all the preceding elements on each access.<br>
+     * The element cursor is reused and is valid only during the action invocation.
+     * @param field the array field name
+     * @param action receives the cursor over each element or {@literal null} if the element value is not available
+     */
+    public void forEach(String field, Consumer<? super EventCursor> action) {
+        int idx = arrayField(field);
+        MetadataField fld = layout.fields.get(idx);
+        stream.position(fieldOffset(idx));
+        int length = (int) stream.readVarint();
+        TypeSkipper skipper = layout.elementSkipper(idx);
+        EventCursorImpl element = new EventCursorImpl(stream, layouts);
+        try {
+            for (int i = 0; i < length; i++) {
+                long pos = stream.position();
+                skipper.skip(stream);
+                long next = stream.position();
+                if (fld.hasConstantPool()) {
+                    stream.position(pos);
+                    pos = constantOffset(fld.getType(), stream.readVarint());
+                }
+                action.accept(pos > 0 ? element.reset(fld.getType(), pos) : null);
+                // the action may have moved the stream anywhere
+                stream.position(next);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param field the constant pool reference field name
+     * @return the raw constant pool reference, useful as a chunk-local identity of the referenced value
+     */
+    public long getReference(String field) {
+        int idx = scalarField(field);
+        if (!layout.fields.get(idx).hasConstantPool()) {
+            throw new IllegalArgumentException("Not a constant pool reference: " + layout.type.getName() + "." + field);
+        }
+        stream.position(fieldOffset(idx));
+        return stream.readVarint();
+    }
+
+    private int scalarField(String field) {
+        int idx = layout.index(field);
+        if (layout.fields.get(idx).getDimension() > 0) {
+            throw new IllegalArgumentException("Array field: " + layout.type.getName() + "." + field);
+        }
+        return idx;
+    }
+
+    private int arrayField(String field) {
+        int idx = layout.index(field);
+        if (layout.fields.get(idx).getDimension() <= 0) {
+            throw new IllegalArgumentException("Not an array field: " + layout.type.getName() + "." + field);
+        }
+        return idx;
+    }
+
+    private long fieldOffset(int idx) {
+        try {
+            while (known <= idx) {
+                stream.position(offsets[known - 1]);
+                layout.fieldSkipper(known - 1).skip(stream);
+                offsets[known++] = stream.position();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return offsets[idx];
+    }
+
+    private long elementOffset(int idx, int index) {
+        MetadataField fld = layout.fields.get(idx);
+        stream.position(fieldOffset(idx));
+        int length = (int) stream.readVarint();
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+        }
+        try {
+            TypeSkipper skipper = layout.elementSkipper(idx);
+            for (int i = 0; i < index; i++) {
+                skipper.skip(stream);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return fld.hasConstantPool() ? constantOffset(fld.getType(), stream.readVarint()) : stream.position();
+    }
+
+    /**
+     * Positions the stream at the field value, resolving the constant pool reference if necessary.
+     * @return the value type, unwrapped if it is a simple type, or {@literal null} if the value is not available
+     */
+    private MetadataClass seekValue(int idx) {
+        MetadataField fld = layout.fields.get(idx);
+        stream.position(fieldOffset(idx));
+        return seek(fld);
+    }
+
+    private MetadataClass seekElement(int idx, int index) {
+        MetadataField fld = layout.fields.get(idx);
+        long pos = elementOffset(idx, index);
+        if (pos <= 0) {
+            return null;
+        }
+        stream.position(pos);
+        return unwrap(fld.getType());
+    }
+
+    private MetadataClass seek(MetadataField fld) {
+        if (fld.hasConstantPool()) {
+            long pos = constantOffset(fld.getType(), stream.readVarint());
+            if (pos <= 0) {
+                return null;
+            }
+            stream.position(pos);
+        }
+        return unwrap(fld.getType());
+    }
+
+    private MetadataClass unwrap(MetadataClass type) {
+        // the simple types are serialized as their only field
+        while (type != null && type.isSimpleType()) {
+            type = seek(type.getFields().getFirst());
+        }
+        return type;
+    }
+
+    private long constantOffset(MetadataClass type, long ref) {
+        MutableConstantPool pool = (MutableConstantPool) stream.getContext().getConstantPools().getConstantPool(type.getId());
+        return pool != null ? pool.getOffset(ref) : -1;
+    }
+
+    private long readLong(MetadataClass type) {
+        return switch (type.getName()) {
+            case "byte", "boolean" -> stream.read();
+            case "char", "short", "int", "long" -> stream.readVarint();
+            case "float" -> (long) stream.readFloat();
+            case "double" -> (long) stream.readDouble();
+            default -> throw new IllegalArgumentException("Not a numeric type: " + type.getName());
+        };
+    }
+
+    private String readString(MetadataClass type) {
+        if (!type.getName().equals("java.lang.String")) {
+            throw new IllegalArgumentException("Not a string type: " + type.getName());
+        }
+        try {
+            return ParsingUtils.readUTF8(stream);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EventCursor{" + getType() + Arrays.toString(layout.fieldNames.toArray()) + "}";
+    }
+}
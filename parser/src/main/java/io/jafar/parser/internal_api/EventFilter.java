@@ -0,0 +1,31 @@
+package io.jafar.parser.internal_api;
+
+import io.jafar.parser.api.Filter;
+import io.jafar.parser.internal_api.metadata.MetadataClass;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * A {@linkplain io.jafar.parser.api.Filter} compiled for a particular event type.<br>
+ * It decodes only the fields the filter is using, straight from the event data.
+ * The stream position is advanced and it is up to the caller to restore it.
+ */
+public final class EventFilter {
+    private final MethodHandle testHandle;
+
+    EventFilter(MethodHandle testHandle) {
+        this.testHandle = testHandle;
+    }
+
+    public static EventFilter forType(MetadataClass clz, Filter filter) {
+        return CodeGenerator.generateFilter(clz, filter);
+    }
+
+    public boolean test(RecordingStream stream) {
+        try {
+            return (boolean) testHandle.invokeExact(stream);
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package io.jafar.parser.internal_api;
+
+import io.jafar.parser.api.Utf8View;
+
+import java.lang.reflect.Array;
+
+/**
+ * The helpers called by the generated deserializer classes, shared with the interpreter and the column batches.<br>
+ * They are public because the base layouts and the classes extending them are defined in a class loader
+ * of their own, outside of the parser runtime package.
+ */
+public final class GeneratedCodeSupport {
+    private GeneratedCodeSupport() {}
+
+    /**
+     * Resolves a constant pool reference.
+     * @return the resolved value or {@literal null} if the constant pool is not available in the chunk
+     */
+    public static Object resolveConstant(long ref, ParserContext context, long typeId) {
+        ConstantPool cp = context.getConstantPools().getConstantPool(typeId);
+        return cp != null ? cp.get(ref) : null;
+    }
+
+    /**
+     * Resolves an array of constant pool references.
+     * @return the array of the resolved values, all {@literal null} if the constant pool is not available in the chunk
+     */
+    public static Object resolveConstants(long[] refs, ParserContext context, long typeId, Class<?> componentType) {
+        Object array = Array.newInstance(componentType, refs.length);
+        ConstantPool cp = context.getConstantPools().getConstantPool(typeId);
+        if (cp != null) {
+            for (int i = 0; i < refs.length; i++) {
+                Array.set(array, i, cp.get(refs[i]));
+            }
+        }
+        return array;
+    }
+
+    /**
+     * Replaces a view pointing to the recording data by a decoded one.
+     */
+    public static Utf8View detachView(Object value) {
+        return value != null ? Utf8View.of(value.toString()) : null;
+    }
+}
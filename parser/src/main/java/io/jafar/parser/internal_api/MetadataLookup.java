@@ -7,4 +7,6 @@ public interface MetadataLookup {
     String getString(int idx);
 
     MetadataClass getClass(long id);
+
+    MetadataClass getClass(String name);
 }
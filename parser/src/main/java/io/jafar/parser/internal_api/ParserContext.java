@@ -1,5 +1,6 @@
 package io.jafar.parser.internal_api;
 
+import io.jafar.parser.ConstantInterner;
 import io.jafar.parser.MutableConstantPools;
 import io.jafar.parser.MutableMetadataLookup;
 import io.jafar.parser.TypeFilter;
@@ -8,9 +9,12 @@ import io.jafar.utils.CachedStringParser;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -64,25 +68,26 @@ public final class ParserContext {
     }
 
     private final ConcurrentMap<DeserializerKey, Deserializer<?>> globalDeserializerCache;
-
-    public final CachedStringParser.ByteArrayParser utf8Parser = CachedStringParser.byteParser();
-    public final CachedStringParser.CharArrayParser charParser = CachedStringParser.charParser();
-    public final byte[] byteBuffer = new byte[4096];
-    public final char[] charBuffer = new char[4096];
+    private final ConstantInterner constantInterner;
+    // shared by all the streams of the chunk, including the private views used by the constant pool lookups
+    private final CachedStringParser.ByteArrayParser utf8Parser = CachedStringParser.byteParser();
+    private final CachedStringParser.CharArrayParser charParser = CachedStringParser.charParser();
 
     public ParserContext() {
         this.metadataLookup = new MutableMetadataLookup();
         this.constantPools = new MutableConstantPools(metadataLookup);
         this.globalDeserializerCache = new ConcurrentHashMap<>();
+        this.constantInterner = ConstantInterner.create();
 
         this.typeFilter = null;
         this.chunkIndex = 0;
     }
 
-    public ParserContext(TypeFilter typeFilter, int chunkIndex, MutableMetadataLookup metadataLookup, MutableConstantPools constantPools, ConcurrentMap<DeserializerKey, Deserializer<?>> deserializerCache) {
+    public ParserContext(TypeFilter typeFilter, int chunkIndex, MutableMetadataLookup metadataLookup, MutableConstantPools constantPools, ConcurrentMap<DeserializerKey, Deserializer<?>> deserializerCache, ConstantInterner constantInterner) {
         this.metadataLookup = metadataLookup;
         this.constantPools = constantPools;
         this.globalDeserializerCache = deserializerCache;
+        this.constantInterner = constantInterner;
 
         this.typeFilter = typeFilter;
         this.chunkIndex = chunkIndex;
@@ -113,6 +118,14 @@ public final class ParserContext {
         return chunkIndex;
     }
 
+    public CachedStringParser.ByteArrayParser getUtf8Parser() {
+        return utf8Parser;
+    }
+
+    public CachedStringParser.CharArrayParser getCharParser() {
+        return charParser;
+    }
+
     public <T> void put(String key, Class<T> clz, T value) {
         bag.put(key, new WeakReference<>(value));
     }
@@ -129,6 +142,33 @@ public final class ParserContext {
         return classTargetTypeMap.get(name);
     }
 
+    /**
+     * Collects the registered target types for the given class and all its super types.<br>
+     * The deserialized value implements all of them so it can be dispatched to all the relevant handlers at once.
+     * Records can not be combined and are used only for their exact type.
+     * @param clz the metadata class
+     * @return the target types, starting with the most specific one
+     */
+    public List<Class<?>> getClassTargetTypes(MetadataClass clz) {
+        List<Class<?>> targets = new ArrayList<>(2);
+        Set<String> visited = new HashSet<>();
+        String name = clz.getName();
+        while (name != null && visited.add(name)) {
+            Class<?> target = classTargetTypeMap.get(name);
+            if (target != null && target.isRecord()) {
+                if (name.equals(clz.getName())) {
+                    return List.of(target);
+                }
+            } else if (target != null && !targets.contains(target)) {
+                targets.add(target);
+            }
+            // the super type does not need to be described in the metadata, eg. 'jdk.jfr.Event'
+            MetadataClass superClz = metadataLookup.getClass(name);
+            name = superClz != null ? superClz.getSuperType() : null;
+        }
+        return targets;
+    }
+
     public void bindDeserializers() {
         metadataLookup.bindDeserializers();
     }
@@ -144,4 +184,11 @@ public final class ParserContext {
     public ConcurrentMap<DeserializerKey, Deserializer<?>> getDeserializerCache() {
         return globalDeserializerCache;
     }
+
+    /**
+     * @return the recording-wide constant interner or {@literal null} if the interning is disabled
+     */
+    public ConstantInterner getConstantInterner() {
+        return constantInterner;
+    }
 }
@@ -0,0 +1,367 @@
+package io.jafar.parser.internal_api;
+
+import io.jafar.parser.MutableConstantPool;
+import io.jafar.parser.MutableConstantPools;
+import io.jafar.parser.TypeFilter;
+import io.jafar.parser.internal_api.metadata.MetadataClass;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Opt-in sidecar index of a recording, stored next to it as {@code <recording>.jafaridx}.<br>
+ * Enabled by {@code -Dio.jafar.parser.index=true}. The index is written after the first complete parse of the recording
+ * and holds, per chunk, the chunk header data, a checksum of the chunk metadata, the constant pool offset tables, the event
+ * offsets by the event type and the {@linkplain TimeIndex time index}. The subsequent parses memory-map the index,
+ * populate the constant pools straight from it, without reading the checkpoint events, and visit only the events
+ * of the types the listener is interested in. The listeners implementing {@linkplain ChunkParserListener#onCheckpoint(CheckpointEvent)}
+ * do not use the index, since they need to see the checkpoint events.<br>
+ * The index is invalidated when the recording size or modification time changes; an indexed chunk is used only
+ * if its header data and metadata checksum match the chunk being parsed.
+ */
+public final class RecordingIndex {
+    private static final Logger log = LoggerFactory.getLogger(RecordingIndex.class);
+
+    static final String SUFFIX = ".jafaridx";
+
+    private static final int MAGIC = 0x4A465849; // 'JFXI'
+    private static final int VERSION = 3;
+    private static final int CHECKSUM_BLOCK = 4096;
+
+    /**
+     * The indexed data of one chunk.<br>
+     * The offset tables are views of the mapped index file.
+     */
+    static final class Chunk {
+        final long offset;
+        final int size;
+        final long startNanos;
+        final long duration;
+        final long metadataFingerprint;
+        // typeId -> {ids, offsets}
+        final Long2ObjectMap<LongBuffer[]> pools;
+        // typeId -> event offsets, in the chunk order
+        final Long2ObjectMap<IntBuffer> events;
+        final TimeIndex timeIndex;
+
+        Chunk(long offset, int size, long startNanos, long duration, long metadataFingerprint, Long2ObjectMap<LongBuffer[]> pools, Long2ObjectMap<IntBuffer> events, TimeIndex timeIndex) {
+            this.offset = offset;
+            this.size = size;
+            this.startNanos = startNanos;
+            this.duration = duration;
+            this.metadataFingerprint = metadataFingerprint;
+            this.pools = pools;
+            this.events = events;
+            this.timeIndex = timeIndex;
+        }
+
+        boolean matches(ChunkHeader header, long metadataFingerprint) {
+            return header.offset == offset && header.size == size && header.startNanos == startNanos && header.duration == duration
+                    && this.metadataFingerprint == metadataFingerprint;
+        }
+
+        /**
+         * Populates the chunk constant pools from the index.
+         * @param stream the chunk stream
+         */
+        void applyConstantPools(RecordingStream stream) {
+            ParserContext context = stream.getContext();
+            TypeFilter typeFilter = context.getTypeFilter();
+            MutableConstantPools constantPools = (MutableConstantPools) context.getConstantPools();
+            for (Long2ObjectMap.Entry<LongBuffer[]> entry : pools.long2ObjectEntrySet()) {
+                long typeId = entry.getLongKey();
+                MetadataClass clz = context.getMetadataLookup().getClass(typeId);
+                if (typeFilter != null && !typeFilter.test(clz)) {
+                    continue;
+                }
+                LongBuffer ids = entry.getValue()[0];
+                LongBuffer offsets = entry.getValue()[1];
+                int count = ids.remaining();
+                MutableConstantPool constantPool = constantPools.addOrGetConstantPool(stream, typeId, count);
+                for (int i = 0; i < count; i++) {
+                    constantPool.addOffset(ids.get(i), offsets.get(i));
+                }
+                constantPool.compact();
+            }
+            constantPools.setReady();
+        }
+
+        /**
+         * @param listener the listener deciding which event types are needed
+         * @param context the chunk parser context
+         * @return the offsets of the needed events, in the chunk order
+         */
+        int[] eventOffsets(ChunkParserListener listener, ParserContext context) {
+            IntArrayList offsets = new IntArrayList();
+            for (Long2ObjectMap.Entry<IntBuffer> entry : events.long2ObjectEntrySet()) {
+                if (listener.isEventTypeNeeded(entry.getLongKey(), context)) {
+                    IntBuffer buffer = entry.getValue();
+                    for (int i = 0; i < buffer.remaining(); i++) {
+                        offsets.add(buffer.get(i));
+                    }
+                }
+            }
+            int[] sorted = offsets.toIntArray();
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+    /**
+     * Collects the data of one chunk while it is being parsed.<br>
+     * Accessed only by the thread parsing the chunk.
+     */
+    static final class ChunkBuilder {
+        private final ChunkHeader header;
+        private long metadataFingerprint;
+        private final Long2ObjectMap<IntArrayList> events = new Long2ObjectOpenHashMap<>();
+        private TimeIndex timeIndex;
+
+        ChunkBuilder(ChunkHeader header) {
+            this.header = header;
+        }
+
+        void onMetadata(long metadataFingerprint) {
+            this.metadataFingerprint = metadataFingerprint;
+        }
+
+        void onEvent(long typeId, long position) {
+            IntArrayList offsets = events.get(typeId);
+            if (offsets == null) {
+                offsets = new IntArrayList();
+                events.put(typeId, offsets);
+            }
+            offsets.add((int) position);
+        }
+
+        void onTimeIndex(TimeIndex timeIndex) {
+            this.timeIndex = timeIndex;
+        }
+
+        private void write(DataOutputStream out, ConstantPools constantPools) throws IOException {
+            out.writeLong(header.offset);
+            out.writeInt(header.size);
+            out.writeLong(header.startNanos);
+            out.writeLong(header.duration);
+            out.writeLong(metadataFingerprint);
+            MutableConstantPool[] pools = constantPools.pools().map(MutableConstantPool.class::cast).toArray(MutableConstantPool[]::new);
+            out.writeInt(pools.length);
+            for (MutableConstantPool pool : pools) {
+                long[][] table = pool.offsetTable();
+                out.writeLong(pool.getTypeId());
+                out.writeInt(table[0].length);
+                for (long id : table[0]) {
+                    out.writeLong(id);
+                }
+                for (long offset : table[1]) {
+                    out.writeLong(offset);
+                }
+            }
+            out.writeInt(events.size());
+            for (Long2ObjectMap.Entry<IntArrayList> entry : events.long2ObjectEntrySet()) {
+                out.writeLong(entry.getLongKey());
+                IntArrayList offsets = entry.getValue();
+                out.writeInt(offsets.size());
+                for (int i = 0; i < offsets.size(); i++) {
+                    out.writeInt(offsets.getInt(i));
+                }
+            }
+            int[] samples = timeIndex != null ? timeIndex.offsets() : new int[0];
+            out.writeInt(samples.length);
+            for (int i = 0; i < samples.length; i++) {
+                out.writeInt(samples[i]);
+                out.writeLong(timeIndex.prefixMax()[i]);
+                out.writeLong(timeIndex.suffixMin()[i]);
+            }
+            out.writeInt(timeIndex != null ? timeIndex.endOffset() : header.size);
+        }
+    }
+
+    /**
+     * Collects the index data during a parse and writes the index file when the parse completes.
+     */
+    static final class Builder {
+        private final Path recording;
+        private final ConcurrentMap<Integer, ChunkBuilder> chunks = new ConcurrentHashMap<>();
+        private final ConcurrentMap<Integer, ConstantPools> constantPools = new ConcurrentHashMap<>();
+        private volatile boolean complete = true;
+
+        private Builder(Path recording) {
+            this.recording = recording;
+        }
+
+        ChunkBuilder chunk(ChunkHeader header, ParserContext context) {
+            ChunkBuilder chunk = new ChunkBuilder(header);
+            chunks.put(header.order, chunk);
+            constantPools.put(header.order, context.getConstantPools());
+            return chunk;
+        }
+
+        /**
+         * Marks the index as incomplete, eg. because a chunk or some of its data was skipped.
+         */
+        void incomplete() {
+            complete = false;
+        }
+
+        void write() {
+            if (!complete) {
+                log.debug("Not writing the index for {}, the recording was not fully parsed", recording);
+                return;
+            }
+            Path indexPath = indexPath(recording);
+            try {
+                Path tmp = Files.createTempFile(indexPath.toAbsolutePath().getParent(), indexPath.getFileName().toString(), ".tmp");
+                try {
+                    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 65536))) {
+                        out.writeInt(MAGIC);
+                        out.writeInt(VERSION);
+                        out.writeLong(Files.size(recording));
+                        out.writeLong(Files.getLastModifiedTime(recording).toMillis());
+                        out.writeInt(chunks.size());
+                        for (int i = 1; i <= chunks.size(); i++) {
+                            chunks.get(i).write(out, constantPools.get(i));
+                        }
+                    }
+                    Files.move(tmp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(tmp);
+                }
+            } catch (IOException e) {
+                log.debug("Unable to write the index {}", indexPath, e);
+            }
+        }
+    }
+
+    private final Chunk[] chunks;
+
+    private RecordingIndex(Chunk[] chunks) {
+        this.chunks = chunks;
+    }
+
+    // not cached, so the index can be turned on and off at runtime
+    static boolean isEnabled() {
+        return Boolean.getBoolean("io.jafar.parser.index");
+    }
+
+    static Path indexPath(Path recording) {
+        return recording.resolveSibling(recording.getFileName() + SUFFIX);
+    }
+
+    static Builder builder(Path recording) {
+        return new Builder(recording);
+    }
+
+    /**
+     * @param chunkIndex the chunk index (1-based)
+     * @return the indexed chunk data or {@literal null}
+     */
+    Chunk chunk(int chunkIndex) {
+        return chunkIndex > 0 && chunkIndex <= chunks.length ? chunks[chunkIndex - 1] : null;
+    }
+
+    /**
+     * Opens the index of the given recording.
+     * @param recording the recording path
+     * @return the index or {@literal null} if there is no valid index for the recording
+     */
+    static RecordingIndex open(Path recording) {
+        Path indexPath = indexPath(recording);
+        if (!Files.isRegularFile(indexPath)) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(indexPath.toFile(), "r"); FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            if (buffer.getLong() != Files.size(recording) || buffer.getLong() != Files.getLastModifiedTime(recording).toMillis()) {
+                log.debug("The index {} is stale", indexPath);
+                return null;
+            }
+            Chunk[] chunks = new Chunk[buffer.getInt()];
+            for (int i = 0; i < chunks.length; i++) {
+                long offset = buffer.getLong();
+                int size = buffer.getInt();
+                long startNanos = buffer.getLong();
+                long duration = buffer.getLong();
+                long metadataFingerprint = buffer.getLong();
+                int poolCount = buffer.getInt();
+                Long2ObjectMap<LongBuffer[]> pools = new Long2ObjectOpenHashMap<>(poolCount);
+                for (int j = 0; j < poolCount; j++) {
+                    long typeId = buffer.getLong();
+                    int count = buffer.getInt();
+                    LongBuffer ids = buffer.slice(buffer.position(), count * 8).asLongBuffer();
+                    LongBuffer offsets = buffer.slice(buffer.position() + count * 8, count * 8).asLongBuffer();
+                    buffer.position(buffer.position() + count * 16);
+                    pools.put(typeId, new LongBuffer[]{ids, offsets});
+                }
+                int typeCount = buffer.getInt();
+                Long2ObjectMap<IntBuffer> events = new Long2ObjectOpenHashMap<>(typeCount);
+                for (int j = 0; j < typeCount; j++) {
+                    long typeId = buffer.getLong();
+                    int count = buffer.getInt();
+                    events.put(typeId, buffer.slice(buffer.position(), count * 4).asIntBuffer());
+                    buffer.position(buffer.position() + count * 4);
+                }
+                int sampleCount = buffer.getInt();
+                int[] samples = new int[sampleCount];
+                long[] prefixMax = new long[sampleCount];
+                long[] suffixMin = new long[sampleCount];
+                for (int j = 0; j < sampleCount; j++) {
+                    samples[j] = buffer.getInt();
+                    prefixMax[j] = buffer.getLong();
+                    suffixMin[j] = buffer.getLong();
+                }
+                TimeIndex timeIndex = new TimeIndex(samples, prefixMax, suffixMin, buffer.getInt());
+                chunks[i] = new Chunk(offset, size, startNanos, duration, metadataFingerprint, pools, events, timeIndex);
+            }
+            return new RecordingIndex(chunks);
+        } catch (IOException | RuntimeException e) {
+            log.debug("Unable to read the index {}", indexPath, e);
+            return null;
+        }
+    }
+
+    /**
+     * The fingerprint of the chunk metadata - a checksum of the whole metadata event, so any change
+     * in the types, fields or annotations is detected.
+     * @param stream the chunk stream; its position is retained
+     * @param header the chunk header
+     */
+    static long fingerprint(RecordingStream stream, ChunkHeader header) {
+        long pos = stream.position();
+        stream.position(header.metaOffset);
+        int length = (int) stream.readVarint();
+        stream.position(header.metaOffset);
+        // checksum the metadata piecewise through the stream scratch buffer instead of copying it as a whole
+        byte[] buffer = stream.byteBuffer(CHECKSUM_BLOCK);
+        CRC32C crc = new CRC32C();
+        for (int remaining = length; remaining > 0; ) {
+            int len = Math.min(remaining, CHECKSUM_BLOCK);
+            stream.read(buffer, 0, len);
+            crc.update(buffer, 0, len);
+            remaining -= len;
+        }
+        stream.position(pos);
+        return ((long) length << 32) ^ crc.getValue();
+    }
+}
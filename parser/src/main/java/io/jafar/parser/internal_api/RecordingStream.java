@@ -1,5 +1,7 @@
 package io.jafar.parser.internal_api;
 
+import io.jafar.utils.CachedStringParser;
+
 import java.io.IOException;
 import java.nio.file.Path;
 
@@ -9,6 +11,11 @@ public final class RecordingStream implements AutoCloseable {
   private final ParserContext context;
   private long mark = -1;
 
+  // string decoding scratch space; kept per stream so the duplicated streams can be used concurrently
+  private static final int MAX_BUFFER_SIZE = 4096;
+  private byte[] byteBuffer;
+  private char[] charBuffer;
+
 
   RecordingStream(Path path) throws IOException {
     this(RecordingStreamReader.mapped(path), new ParserContext());
@@ -18,6 +25,16 @@ public final class RecordingStream implements AutoCloseable {
     return new RecordingStream(reader.slice(pos, len), context);
   }
 
+  /**
+   * Creates a new stream over the same data and sharing the same parser context.<br>
+   * The new stream has its own position, starting at {@literal 0}, so it can be used independently of this stream,
+   * eg. from a different thread.
+   * @return the duplicated stream
+   */
+  public RecordingStream duplicate() {
+    return new RecordingStream(reader.duplicate(), context);
+  }
+
   public RecordingStream(RecordingStreamReader reader, ParserContext context) {
     this.reader = reader;
     this.context = context;
@@ -46,6 +63,15 @@ public final class RecordingStream implements AutoCloseable {
     return reader.read();
   }
 
+  /**
+   * Reads the byte at the given position without moving the current position of the stream.
+   * @param position the absolute position
+   * @return the byte value
+   */
+  public byte get(long position) {
+    return reader.get(position);
+  }
+
   public short readShort() {
     return reader.readShort();
   }
@@ -93,6 +119,34 @@ public final class RecordingStream implements AutoCloseable {
     }
   }
 
+  public byte[] byteBuffer(int size) {
+    if (size > MAX_BUFFER_SIZE) {
+      return new byte[size];
+    }
+    if (byteBuffer == null || byteBuffer.length < size) {
+      byteBuffer = new byte[MAX_BUFFER_SIZE];
+    }
+    return byteBuffer;
+  }
+
+  public char[] charBuffer(int size) {
+    if (size > MAX_BUFFER_SIZE) {
+      return new char[size];
+    }
+    if (charBuffer == null || charBuffer.length < size) {
+      charBuffer = new char[MAX_BUFFER_SIZE];
+    }
+    return charBuffer;
+  }
+
+  public CachedStringParser.ByteArrayParser utf8Parser() {
+    return context.getUtf8Parser();
+  }
+
+  public CachedStringParser.CharArrayParser charParser() {
+    return context.getCharParser();
+  }
+
   @Override
   public void close() {
     try {
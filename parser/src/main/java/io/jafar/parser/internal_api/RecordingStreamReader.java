@@ -38,6 +38,11 @@ public abstract class RecordingStreamReader {
             return new MappedRecordingStreamReader(buffer.slice(pos, size), size, (int)(alignementOffset + pos) % 8);
         }
 
+        @Override
+        public RecordingStreamReader duplicate() {
+            return new MappedRecordingStreamReader(buffer.slice(0, length), length, alignementOffset);
+        }
+
         @Override
         public long length() {
             return length;
@@ -71,6 +76,11 @@ public abstract class RecordingStreamReader {
             return buffer.get();
         }
 
+        @Override
+        public byte get(long position) {
+            return buffer.get(position);
+        }
+
         @Override
         public void read(byte[] b, int off, int len) {
             remaining -= len;
@@ -264,12 +274,14 @@ public abstract class RecordingStreamReader {
 
     public abstract RecordingStreamReader slice();
     public abstract RecordingStreamReader slice(long pos, long size);
+    public abstract RecordingStreamReader duplicate();
     public abstract long length();
     public abstract long remaining();
     public abstract long position();
     public abstract void position(long newPosition);
     public abstract void skip(long n);
     public abstract byte read();
+    public abstract byte get(long position);
     public abstract void read(byte[] b, int off, int len);
     public abstract boolean readBoolean();
     public abstract short readShort();
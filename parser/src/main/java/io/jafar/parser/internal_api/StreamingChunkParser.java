@@ -2,6 +2,9 @@ package io.jafar.parser.internal_api;
 
 import io.jafar.parser.MutableConstantPools;
 import io.jafar.parser.MutableMetadataLookup;
+import io.jafar.parser.TypeFilter;
+import io.jafar.parser.internal_api.metadata.MetadataCache;
+import io.jafar.parser.internal_api.metadata.MetadataClass;
 import io.jafar.parser.internal_api.metadata.MetadataEvent;
 import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
@@ -13,8 +16,13 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 
 /**
@@ -29,17 +37,87 @@ public final class StreamingChunkParser implements AutoCloseable {
 
   private final Int2ObjectMap<MutableMetadataLookup> chunkMetadataLookup = new Int2ObjectOpenHashMap<>();
   private final Int2ObjectMap<MutableConstantPools> chunkConstantPools = new Int2ObjectOpenHashMap<>();
+  // built by the chunk tasks during the first full walk of each chunk
+  private final ConcurrentMap<Integer, TimeIndex> chunkTimeIndex = new ConcurrentHashMap<>();
 
-  private final ExecutorService executor = Executors.newFixedThreadPool(
-          Math.max(Runtime.getRuntime().availableProcessors() - 2, 1),
-          r -> {
-            Thread t = new Thread(r);
-            t.setDaemon(true);
-            return t;
-          });
+  private final ExecutorService executor;
+  // a shared executor is not shut down by this parser
+  private final boolean ownsExecutor;
 
   private boolean closed = false;
 
+  /**
+   * @return the minimal total size of the checkpoint events of a chunk for them to be indexed in parallel;
+   * set by {@code -Dio.jafar.parser.parallel_indexing_threshold=<bytes>}, 1 MiB by default.
+   * The property is not cached, so the parallel indexing can be tuned at runtime.
+   */
+  static long parallelIndexingThreshold() {
+    return Long.getLong("io.jafar.parser.parallel_indexing_threshold", 1024 * 1024);
+  }
+
+  public StreamingChunkParser() {
+    this(newChunkExecutor(), true);
+  }
+
+  /**
+   * @param executor the executor running the chunk parsing tasks; it may be shared by multiple parsers running
+   *                 concurrently and it is not shut down when this parser is closed
+   */
+  public StreamingChunkParser(ExecutorService executor) {
+    this(executor, false);
+  }
+
+  private StreamingChunkParser(ExecutorService executor, boolean ownsExecutor) {
+    this.executor = executor;
+    this.ownsExecutor = ownsExecutor;
+  }
+
+  /**
+   * @return a new executor suitable for running the chunk parsing tasks
+   */
+  public static ExecutorService newChunkExecutor() {
+    return Executors.newFixedThreadPool(
+            Math.max(Runtime.getRuntime().availableProcessors() - 2, 1),
+            r -> {
+              Thread t = new Thread(r);
+              t.setDaemon(true);
+              return t;
+            });
+  }
+
+  /**
+   * The time window of the events to parse, in epoch nanoseconds.
+   */
+  private record TimeWindow(long fromNanos, long toNanos) {
+    static final TimeWindow ALL = new TimeWindow(Long.MIN_VALUE, Long.MAX_VALUE);
+
+    boolean isBounded() {
+      return fromNanos != Long.MIN_VALUE || toNanos != Long.MAX_VALUE;
+    }
+
+    boolean overlaps(ChunkHeader header) {
+      return !isBounded() || (header.startNanos <= toNanos && header.startNanos + header.duration >= fromNanos);
+    }
+
+    long fromTick(ChunkHeader header) {
+      return fromNanos == Long.MIN_VALUE || fromNanos <= header.startNanos ? Long.MIN_VALUE : toTick(header, fromNanos) - 1;
+    }
+
+    long toTick(ChunkHeader header) {
+      return toNanos == Long.MAX_VALUE || toNanos >= header.startNanos + header.duration ? Long.MAX_VALUE : toTick(header, toNanos) + 1;
+    }
+
+    boolean contains(ChunkHeader header, long startTick) {
+      long nanos = header.startNanos + (long) ((startTick - header.startTicks) / (header.frequency / 1_000_000_000d));
+      return nanos >= fromNanos && nanos <= toNanos;
+    }
+
+    private static long toTick(ChunkHeader header, long nanos) {
+      // not exact - the bounds are widened by a tick and the events are checked against the exact window anyway
+      return header.startTicks + (long) ((nanos - header.startNanos) * (header.frequency / 1_000_000_000d));
+    }
+  }
+
   /**
    * Parse the given JFR recording stream.<br>
    * The parser will process the recording stream and call the provided listener in this order:
@@ -59,20 +137,59 @@ public final class StreamingChunkParser implements AutoCloseable {
    * @throws IOException
    */
   public void parse(Path path, ChunkParserListener listener) throws IOException {
-    if (closed) {
-      throw new IllegalStateException("Parser is closed");
-    }
-    try (RecordingStream stream = new RecordingStream(path)) {
-      parse(stream, listener, false);
-    }
+    parse(path, listener, false);
   }
 
   public void parse(Path path, ChunkParserListener listener, boolean forceConstantPools) throws IOException {
+    parse(path, listener, forceConstantPools, TimeWindow.ALL);
+  }
+
+  /**
+   * Parses only the events starting within the given time window.<br>
+   * The chunks outside of the window are skipped completely and the {@linkplain TimeIndex time index}, built during
+   * the first full pass over a chunk, is used to skip the parts of the chunk outside of the window.
+   * The events without the start time are not reported.
+   *
+   * @param path the JFR recording path
+   * @param listener the parser listener
+   * @param fromNanos the window start in epoch nanoseconds, inclusive
+   * @param toNanos the window end in epoch nanoseconds, inclusive
+   * @throws IOException
+   */
+  public void parse(Path path, ChunkParserListener listener, long fromNanos, long toNanos) throws IOException {
+    parse(path, listener, false, new TimeWindow(fromNanos, toNanos));
+  }
+
+  private void parse(Path path, ChunkParserListener listener, boolean forceConstantPools, TimeWindow window) throws IOException {
     if (closed) {
       throw new IllegalStateException("Parser is closed");
     }
+    RecordingIndex index = null;
+    RecordingIndex.Builder indexBuilder = null;
+    if (RecordingIndex.isEnabled()) {
+      index = RecordingIndex.open(path);
+      // the index can be built only by a full pass over the recording
+      if (index == null && !window.isBounded()) {
+        indexBuilder = RecordingIndex.builder(path);
+      } else if (index != null && listener.needsConstantPools() && observesCheckpoints(listener)) {
+        // the indexed constant pools are populated without reading the checkpoint events
+        log.debug("Not using the index for {}, the listener needs the checkpoint events", path);
+        index = null;
+      }
+    }
     try (RecordingStream stream = new RecordingStream(path)) {
-      parse(stream, listener, forceConstantPools);
+      parse(stream, listener, forceConstantPools, window, index, indexBuilder);
+    }
+    if (indexBuilder != null) {
+      indexBuilder.write();
+    }
+  }
+
+  private static boolean observesCheckpoints(ChunkParserListener listener) {
+    try {
+      return listener.getClass().getMethod("onCheckpoint", CheckpointEvent.class).getDeclaringClass() != ChunkParserListener.class;
+    } catch (NoSuchMethodException e) {
+      return true;
     }
   }
 
@@ -80,51 +197,133 @@ public final class StreamingChunkParser implements AutoCloseable {
   public void close() throws Exception {
     if (!closed) {
       closed = true;
-      executor.shutdown();
+      if (ownsExecutor) {
+        executor.shutdown();
+      }
       chunkConstantPools.clear();
       chunkMetadataLookup.clear();
+      chunkTimeIndex.clear();
     }
   }
 
-  private Future<Boolean> submitParsingTask(ChunkHeader chunkHeader, RecordingStream chunkStream, ChunkParserListener listener, boolean forceConstantPools, long remainder) {
+  private Future<Boolean> submitParsingTask(ChunkHeader chunkHeader, RecordingStream chunkStream, ChunkParserListener listener, boolean forceConstantPools, MetadataCache metadataCache, long remainder, TimeWindow window, RecordingIndex.Chunk indexedChunk, RecordingIndex.Builder indexBuilder) {
     return executor.submit(() -> {
       int chunkCounter = chunkHeader.order;
+      RecordingIndex.ChunkBuilder chunkIndex = indexBuilder != null ? indexBuilder.chunk(chunkHeader, chunkStream.getContext()) : null;
       try {
         if (!listener.onChunkStart(chunkCounter, chunkHeader, chunkStream.getContext())) {
           log.debug(
                   "'onChunkStart' returned false. Skipping metadata and events for chunk {}",
                   chunkCounter);
+          if (indexBuilder != null) {
+            indexBuilder.incomplete();
+          }
           listener.onChunkEnd(chunkCounter, true);
           return true;
         }
         // read metadata
-        if (!readMetadata(chunkStream, chunkHeader, listener, forceConstantPools)) {
+        MetadataEvent metadata = readMetadata(chunkStream, chunkHeader, listener, forceConstantPools, metadataCache);
+        if (metadata == null) {
           log.debug(
                   "'onMetadata' returned false. Skipping events for chunk {}", chunkCounter);
+          if (indexBuilder != null) {
+            indexBuilder.incomplete();
+          }
           listener.onChunkEnd(chunkCounter, true);
           return false;
         }
-        if (!readConstantPool(chunkStream, chunkHeader, listener)) {
-          log.debug(
-                  "'onCheckpoint' returned false. Skipping the rest of the chunk {}", chunkCounter);
-          listener.onChunkEnd(chunkCounter, true);
-          return false;
+        long metadataFingerprint = chunkIndex != null || indexedChunk != null ? RecordingIndex.fingerprint(chunkStream, chunkHeader) : 0;
+        if (chunkIndex != null) {
+          chunkIndex.onMetadata(metadataFingerprint);
+        }
+        RecordingIndex.Chunk indexed = indexedChunk != null && indexedChunk.matches(chunkHeader, metadataFingerprint) ? indexedChunk : null;
+        if (listener.needsConstantPools()) {
+          if (indexed != null) {
+            indexed.applyConstantPools(chunkStream);
+          } else if (!readConstantPool(chunkStream, chunkHeader, listener)) {
+            log.debug(
+                    "'onCheckpoint' returned false. Skipping the rest of the chunk {}", chunkCounter);
+            if (indexBuilder != null) {
+              indexBuilder.incomplete();
+            }
+            listener.onChunkEnd(chunkCounter, true);
+            return false;
+          }
+        } else if (indexBuilder != null) {
+          // the constant pools are not indexed
+          indexBuilder.incomplete();
+        }
+        boolean windowed = window.isBounded();
+        long fromTick = window.fromTick(chunkHeader);
+        long toTick = window.toTick(chunkHeader);
+        MetadataLookup metadataLookup = chunkStream.getContext().getMetadataLookup();
+        TimeIndex timeIndex = chunkTimeIndex.get(chunkCounter);
+        if (timeIndex == null && indexed != null) {
+          timeIndex = indexed.timeIndex;
         }
-        chunkStream.position(remainder);
-        while (chunkStream.position() < chunkHeader.size) {
+        long startPos = remainder;
+        long endPos = chunkHeader.size;
+        if (windowed && timeIndex != null) {
+          startPos = Math.max(startPos, timeIndex.seek(fromTick));
+          endPos = timeIndex.end(toTick);
+        }
+        if (indexed != null) {
+          // jump straight to the events of the interesting types
+          for (int eventStartPos : indexed.eventOffsets(listener, chunkStream.getContext())) {
+            if (eventStartPos < startPos || eventStartPos >= endPos) {
+              continue;
+            }
+            chunkStream.position(eventStartPos);
+            int eventSize = (int) chunkStream.readVarint();
+            long eventType = chunkStream.readVarint();
+            long currentPos = chunkStream.position();
+            if (windowed && !isInWindow(metadataLookup.getClass(eventType), chunkStream, currentPos, chunkHeader, window)) {
+              continue;
+            }
+            if (!listener.onEvent(eventType, eventStartPos, chunkStream, eventSize - (currentPos - eventStartPos))) {
+              listener.onChunkEnd(chunkCounter, true);
+              return false;
+            }
+          }
+          return listener.onChunkEnd(chunkCounter, false);
+        }
+        // the time index is built along the way during the first full walk over the chunk
+        TimeIndex.Builder timeIndexBuilder = timeIndex == null ? new TimeIndex.Builder() : null;
+        chunkStream.position(startPos);
+        while (chunkStream.position() < endPos) {
           long eventStartPos = chunkStream.position();
           chunkStream.mark(); // max 2 varints ahead
           int eventSize = (int) chunkStream.readVarint();
           if (eventSize > 0) {
             long eventType = chunkStream.readVarint();
             if (eventType > 1) { // skip metadata and checkpoint events
+              if (chunkIndex != null) {
+                chunkIndex.onEvent(eventType, eventStartPos);
+              }
               long currentPos = chunkStream.position();
-              if (!listener.onEvent(eventType, chunkStream, eventSize - (currentPos - eventStartPos))) {
+              boolean accepted = true;
+              if (timeIndexBuilder != null || windowed) {
+                MetadataClass clz = metadataLookup.getClass(eventType);
+                if (clz != null && clz.hasStartTime()) {
+                  long startTick = chunkStream.readVarint();
+                  chunkStream.position(currentPos);
+                  if (timeIndexBuilder != null) {
+                    timeIndexBuilder.add((int) eventStartPos, startTick);
+                  }
+                  accepted = !windowed || window.contains(chunkHeader, startTick);
+                } else {
+                  accepted = !windowed;
+                }
+              }
+              if (accepted && !listener.onEvent(eventType, eventStartPos, chunkStream, eventSize - (currentPos - eventStartPos))) {
                 log.debug(
                         "'onEvent({}, stream, {})' returned false. Skipping the rest of the chunk {}",
                         eventType,
                         eventSize - (currentPos - eventStartPos),
                         chunkCounter);
+                if (indexBuilder != null) {
+                  indexBuilder.incomplete();
+                }
                 listener.onChunkEnd(chunkCounter, true);
                 return false;
               }
@@ -133,6 +332,13 @@ public final class StreamingChunkParser implements AutoCloseable {
             chunkStream.position(eventStartPos + eventSize);
           }
         }
+        if (timeIndexBuilder != null) {
+          timeIndex = timeIndexBuilder.build(chunkHeader.size);
+          chunkTimeIndex.put(chunkCounter, timeIndex);
+          if (chunkIndex != null) {
+            chunkIndex.onTimeIndex(timeIndex);
+          }
+        }
         return listener.onChunkEnd(chunkCounter, false);
       } catch (IOException e) {
         throw new RuntimeException(e);
@@ -140,24 +346,33 @@ public final class StreamingChunkParser implements AutoCloseable {
     });
   }
 
-  private void parse(RecordingStream stream, ChunkParserListener listener, boolean forceConstantPools) throws IOException {
+  private void parse(RecordingStream stream, ChunkParserListener listener, boolean forceConstantPools, TimeWindow window, RecordingIndex index, RecordingIndex.Builder indexBuilder) throws IOException {
     if (stream.available() == 0) {
       return;
     }
     try {
       List<Future<Boolean>> results = new ArrayList<>();
+      // chunks with identical metadata share the parsed types and the bound deserializers
+      MetadataCache metadataCache = new MetadataCache();
       listener.onRecordingStart(stream.getContext());
       int chunkCounter = 1;
       while (stream.available() > 0) {
         ChunkHeader header = new ChunkHeader(stream, chunkCounter);
+        if (!window.overlaps(header)) {
+          stream.position(header.offset + header.size);
+          chunkCounter++;
+          continue;
+        }
         long remainder = (stream.position() - header.offset);
         MutableMetadataLookup metadataLookup = chunkMetadataLookup.computeIfAbsent(chunkCounter, k -> new MutableMetadataLookup());
         MutableConstantPools constantPools = chunkConstantPools.computeIfAbsent(chunkCounter, k -> new MutableConstantPools(metadataLookup));
 
-        RecordingStream chunkStream = stream.slice(header.offset, header.size, new ParserContext(stream.getContext().getTypeFilter(), chunkCounter, metadataLookup, constantPools, stream.getContext().getDeserializerCache()));
+        // the index must cover all the constant pools, not only those needed by this particular parse
+        TypeFilter typeFilter = indexBuilder != null ? null : stream.getContext().getTypeFilter();
+        RecordingStream chunkStream = stream.slice(header.offset, header.size, new ParserContext(typeFilter, chunkCounter, metadataLookup, constantPools, stream.getContext().getDeserializerCache(), stream.getContext().getConstantInterner()));
         stream.position(header.offset + header.size);
 
-        results.add(submitParsingTask(header, chunkStream, listener, forceConstantPools, remainder));
+        results.add(submitParsingTask(header, chunkStream, listener, forceConstantPools, metadataCache, remainder, window, index != null ? index.chunk(chunkCounter) : null, indexBuilder));
         chunkCounter++;
       }
       results.forEach(f -> {
@@ -176,15 +391,18 @@ public final class StreamingChunkParser implements AutoCloseable {
     }
   }
 
-  private boolean readMetadata(RecordingStream stream, ChunkHeader header, ChunkParserListener listener, boolean forceConstantPools) throws IOException {
+  /**
+   * @return the metadata event or {@literal null} if the listener rejected it
+   */
+  private MetadataEvent readMetadata(RecordingStream stream, ChunkHeader header, ChunkParserListener listener, boolean forceConstantPools, MetadataCache metadataCache) throws IOException {
     stream.mark();
     stream.position(header.metaOffset);
-    MetadataEvent m = new MetadataEvent(stream, forceConstantPools);
+    MetadataEvent m = new MetadataEvent(stream, forceConstantPools, metadataCache);
     if (!listener.onMetadata(m)) {
-      return false;
+      return null;
     }
     stream.reset();
-    return true;
+    return m;
   }
 
   private boolean readConstantPool(RecordingStream stream, ChunkHeader header, ChunkParserListener listener) throws IOException {
@@ -192,13 +410,14 @@ public final class StreamingChunkParser implements AutoCloseable {
   }
 
   private boolean readConstantPool(RecordingStream stream, int position, ChunkParserListener listener) throws IOException {
+    // only the checkpoint event headers are needed to walk the chain
+    List<Integer> positions = new ArrayList<>();
+    long length = 0;
     while (true) {
       stream.position(position);
       CheckpointEvent event = new CheckpointEvent(stream);
-      event.readConstantPools();
-      if (!listener.onCheckpoint(event)) {
-        return false;
-      }
+      positions.add(position);
+      length += event.size;
       int delta = event.nextOffsetDelta;
       if (delta != 0) {
         position += delta;
@@ -206,7 +425,56 @@ public final class StreamingChunkParser implements AutoCloseable {
         break;
       }
     }
+    List<CompletableFuture<List<CheckpointEvent.PoolSection>>> indexed = null;
+    if (positions.size() > 1 && length >= parallelIndexingThreshold() && !stream.getContext().getConstantPools().isReady()) {
+      // the checkpoint events are indexed concurrently, each through its own view of the chunk data;
+      // not using the chunk executor - the chunk tasks are blocked waiting for the results
+      indexed = new ArrayList<>(positions.size());
+      for (int pos : positions) {
+        RecordingStream view = stream.duplicate();
+        indexed.add(CompletableFuture.supplyAsync(() -> {
+          try {
+            view.position(pos);
+            return new CheckpointEvent(view).indexConstantPools();
+          } catch (IOException e) {
+            throw new CompletionException(e);
+          }
+        }, ForkJoinPool.commonPool()));
+      }
+    }
+    for (int i = 0; i < positions.size(); i++) {
+      stream.position(positions.get(i));
+      CheckpointEvent event = new CheckpointEvent(stream);
+      if (indexed != null) {
+        event.applyConstantPools(join(indexed.get(i)));
+      } else {
+        event.readConstantPools();
+      }
+      if (!listener.onCheckpoint(event)) {
+        return false;
+      }
+    }
     stream.getContext().getConstantPools().setReady();
     return true;
   }
+
+  private static boolean isInWindow(MetadataClass clz, RecordingStream stream, long payloadPos, ChunkHeader header, TimeWindow window) {
+    if (clz == null || !clz.hasStartTime()) {
+      return false;
+    }
+    long startTick = stream.readVarint();
+    stream.position(payloadPos);
+    return window.contains(header, startTick);
+  }
+
+  private static <T> T join(CompletableFuture<T> future) throws IOException {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof IOException ioe) {
+        throw ioe;
+      }
+      throw e;
+    }
+  }
 }
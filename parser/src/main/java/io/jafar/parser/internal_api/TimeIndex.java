@@ -0,0 +1,131 @@
+package io.jafar.parser.internal_api;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+/**
+ * Sparse index of the event start times in a chunk, allowing to jump close to the events of a time window.<br>
+ * Every {@code io.jafar.parser.time_index_stride}-th event (1024 by default) is sampled, recording its offset together
+ * with the maximum start time of all the preceding events and the minimum start time of all the following events.
+ * The events in a chunk are only roughly ordered by their start time, so the bounds, and not the sampled
+ * event start times, are what makes skipping the parts of the chunk outside of the window safe.<br>
+ * The events without the start time are not covered by the index.
+ */
+public final class TimeIndex {
+    private static final int STRIDE = Math.max(Integer.getInteger("io.jafar.parser.time_index_stride", 1024), 1);
+
+    private final int[] offsets;
+    // the maximum start tick of the events before offsets[i]
+    private final long[] prefixMax;
+    // the minimum start tick of the events at or after offsets[i]
+    private final long[] suffixMin;
+    private final int endOffset;
+
+    TimeIndex(int[] offsets, long[] prefixMax, long[] suffixMin, int endOffset) {
+        this.offsets = offsets;
+        this.prefixMax = prefixMax;
+        this.suffixMin = suffixMin;
+        this.endOffset = endOffset;
+    }
+
+    /**
+     * @param fromTick the window start, in ticks
+     * @return the offset of the first event which may start at or after the given tick or {@literal -1} if not known
+     */
+    int seek(long fromTick) {
+        // the last sample preceded only by earlier events; the prefix maximums are non-decreasing
+        int idx = firstIndex(prefixMax, fromTick, true) - 1;
+        return idx >= 0 ? offsets[idx] : -1;
+    }
+
+    /**
+     * @param toTick the window end, in ticks
+     * @return the offset after which all the events start later than the given tick
+     */
+    int end(long toTick) {
+        // the first sample followed only by later events; the suffix minimums are non-decreasing
+        int idx = firstIndex(suffixMin, toTick, false);
+        return idx < offsets.length ? offsets[idx] : endOffset;
+    }
+
+    /**
+     * @return the index of the first value greater than (or equal to, if inclusive) the key
+     */
+    private static int firstIndex(long[] values, long key, boolean inclusive) {
+        int lo = 0;
+        int hi = values.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] > key || (inclusive && values[mid] == key)) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    int[] offsets() {
+        return offsets;
+    }
+
+    long[] prefixMax() {
+        return prefixMax;
+    }
+
+    long[] suffixMin() {
+        return suffixMin;
+    }
+
+    int endOffset() {
+        return endOffset;
+    }
+
+    /**
+     * Collects the samples while the chunk events are walked in order.<br>
+     * Accessed only by the thread parsing the chunk.
+     */
+    static final class Builder {
+        private final int stride;
+        private final IntArrayList offsets = new IntArrayList();
+        private final LongArrayList prefixMax = new LongArrayList();
+        private final LongArrayList segmentMin = new LongArrayList();
+        private long runningMax = Long.MIN_VALUE;
+        private long runningMin = Long.MAX_VALUE;
+        private long count;
+
+        Builder() {
+            this(STRIDE);
+        }
+
+        Builder(int stride) {
+            this.stride = stride;
+        }
+
+        void add(int offset, long tick) {
+            if (count++ % stride == 0) {
+                if (!offsets.isEmpty()) {
+                    segmentMin.add(runningMin);
+                }
+                offsets.add(offset);
+                prefixMax.add(runningMax);
+                runningMin = Long.MAX_VALUE;
+            }
+            runningMax = Math.max(runningMax, tick);
+            runningMin = Math.min(runningMin, tick);
+        }
+
+        TimeIndex build(int endOffset) {
+            if (!offsets.isEmpty()) {
+                segmentMin.add(runningMin);
+            }
+            long[] suffixMin = new long[offsets.size()];
+            long min = Long.MAX_VALUE;
+            for (int i = suffixMin.length - 1; i >= 0; i--) {
+                min = Math.min(min, segmentMin.getLong(i));
+                suffixMin[i] = min;
+            }
+            return new TimeIndex(offsets.toIntArray(), prefixMax.toLongArray(), suffixMin, endOffset);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package io.jafar.parser.internal_api;
+
+import io.jafar.parser.ParsingUtils;
+import io.jafar.parser.api.JfrField;
+import io.jafar.parser.api.JfrIgnore;
+import io.jafar.parser.api.Utf8View;
+import io.jafar.parser.internal_api.metadata.MetadataClass;
+import io.jafar.parser.internal_api.metadata.MetadataField;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.RecordComponent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Metadata driven deserializer which does not require any bytecode generation.<br>
+ * The field layout is turned into a flat list of instructions, in the spirit of {@linkplain TypeSkipper}.
+ * The decoded values are exposed via a {@linkplain Proxy} implementing the target interfaces or passed
+ * to the canonical constructor of the target record.
+ * It is slower per event than the generated deserializer, but it is ready to use immediately.
+ */
+final class TypeInterpreter<T> extends Deserializer<T> {
+    static final class Instructions {
+        static final int SKIP = 0;
+        static final int BYTE = 1;
+        static final int BOOLEAN = 2;
+        static final int SHORT = 3;
+        static final int CHAR = 4;
+        static final int INT = 5;
+        static final int LONG = 6;
+        static final int FLOAT = 7;
+        static final int DOUBLE = 8;
+        static final int STRING = 9;
+        static final int OBJECT = 10;
+        static final int CP_ENTRY = 11;
+        static final int STRING_VIEW = 12;
+    }
+
+    private final Class<T> target;
+    private final Class<?>[] interfaces;
+    private final String typeName;
+    private final TypeSkipper skipper;
+    private final Constructor<T> recordConstructor;
+
+    // per-field instruction tables
+    private final int[] instructions;
+    private final boolean[] arrays;
+    private final int[] slots;
+    private final long[] typeIds;
+    private final TypeSkipper[] fieldSkippers;
+
+    // per-slot tables
+    private final Class<?>[] slotTypes;
+    private final Object[] slotDefaults;
+    private final boolean[] slotRefs;
+    private final long[] slotTypeIds;
+    private final Map<String, Integer> methodSlots = new HashMap<>();
+
+    @SuppressWarnings("unchecked")
+    TypeInterpreter(MetadataClass clz, List<Class<?>> targets, TypeSkipper skipper) {
+        this.target = (Class<T>) targets.getFirst();
+        this.interfaces = targets.toArray(Class<?>[]::new);
+        this.typeName = clz.getName();
+        this.skipper = skipper;
+
+        Map<String, Integer> fieldSlots;
+        if (target.isRecord()) {
+            RecordComponent[] components = target.getRecordComponents();
+            fieldSlots = CodeGenerator.recordComponentIndex(target);
+            slotTypes = Arrays.stream(components).map(RecordComponent::getType).toArray(Class<?>[]::new);
+            try {
+                recordConstructor = target.getDeclaredConstructor(slotTypes);
+                recordConstructor.setAccessible(true);
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            fieldSlots = new HashMap<>();
+            List<Class<?>> types = new ArrayList<>();
+            for (Method m : targets.stream().flatMap(t -> Arrays.stream(t.getMethods())).toList()) {
+                if (m.getParameterCount() != 0 || m.getAnnotation(JfrIgnore.class) != null || methodSlots.containsKey(m.getName())) {
+                    continue;
+                }
+                JfrField fieldAnnotation = m.getAnnotation(JfrField.class);
+                int slot = types.size();
+                types.add(m.getReturnType());
+                methodSlots.put(m.getName(), slot);
+                fieldSlots.put(fieldAnnotation != null ? fieldAnnotation.value() : m.getName(), slot);
+            }
+            slotTypes = types.toArray(Class<?>[]::new);
+            recordConstructor = null;
+        }
+        slotDefaults = new Object[slotTypes.length];
+        slotRefs = new boolean[slotTypes.length];
+        slotTypeIds = new long[slotTypes.length];
+        for (int i = 0; i < slotTypes.length; i++) {
+            slotDefaults[i] = defaultValue(slotTypes[i]);
+        }
+
+        List<MetadataField> fields = clz.getFields();
+        int fieldCount = fields.size();
+        instructions = new int[fieldCount];
+        arrays = new boolean[fieldCount];
+        slots = new int[fieldCount];
+        typeIds = new long[fieldCount];
+        fieldSkippers = new TypeSkipper[fieldCount];
+
+        for (int i = 0; i < fieldCount; i++) {
+            MetadataField fld = fields.get(i);
+            Integer slot = fieldSlots.get(fld.getName());
+            if (slot == null) {
+                instructions[i] = Instructions.SKIP;
+                fieldSkippers[i] = CodeGenerator.createSkipper(fld);
+                continue;
+            }
+            MetadataClass fldType = fld.getType();
+            while (fldType.isSimpleType()) {
+                fldType = fldType.getFields().getFirst().getType();
+            }
+            if (fld.hasConstantPool()) {
+                instructions[i] = Instructions.CP_ENTRY;
+                typeIds[i] = fld.getType().getId();
+            } else {
+                instructions[i] = switch (fldType.getName()) {
+                    case "byte" -> Instructions.BYTE;
+                    case "boolean" -> Instructions.BOOLEAN;
+                    case "short" -> Instructions.SHORT;
+                    case "char" -> Instructions.CHAR;
+                    case "int" -> Instructions.INT;
+                    case "long" -> Instructions.LONG;
+                    case "float" -> Instructions.FLOAT;
+                    case "double" -> Instructions.DOUBLE;
+                    case "java.lang.String" -> Instructions.STRING;
+                    default -> Instructions.OBJECT;
+                };
+                typeIds[i] = fldType.getId();
+            }
+            arrays[i] = fld.getDimension() > 0;
+            if (instructions[i] == Instructions.STRING && !arrays[i] && recordConstructor == null && slotTypes[slot] == Utf8View.class) {
+                instructions[i] = Instructions.STRING_VIEW;
+            }
+            slots[i] = slot;
+            slotRefs[slot] = fld.hasConstantPool();
+            slotTypeIds[slot] = typeIds[i];
+        }
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        return type.isPrimitive() && type != void.class ? Array.get(Array.newInstance(type, 1), 0) : null;
+    }
+
+    @Override
+    public void skip(RecordingStream stream) throws Exception {
+        skipper.skip(stream);
+    }
+
+    @Override
+    public T deserialize(RecordingStream stream) throws Exception {
+        ParserContext context = stream.getContext();
+        Object[] values = slotDefaults.clone();
+        for (int i = 0; i < instructions.length; i++) {
+            int instruction = instructions[i];
+            if (instruction == Instructions.SKIP) {
+                fieldSkippers[i].skip(stream);
+                continue;
+            }
+            if (arrays[i]) {
+                int cnt = (int) stream.readVarint();
+                if (instruction == Instructions.CP_ENTRY) {
+                    long[] refs = new long[cnt];
+                    for (int j = 0; j < cnt; j++) {
+                        refs[j] = stream.readVarint();
+                    }
+                    values[slots[i]] = refs;
+                } else {
+                    Object array = Array.newInstance(slotTypes[slots[i]].getComponentType(), cnt);
+                    for (int j = 0; j < cnt; j++) {
+                        Array.set(array, j, read(instruction, typeIds[i], stream, context));
+                    }
+                    values[slots[i]] = array;
+                }
+            } else {
+                values[slots[i]] = read(instruction, typeIds[i], stream, context);
+            }
+        }
+        if (recordConstructor != null) {
+            // records do not keep the parser context - the constant pool references are resolved right away
+            for (int i = 0; i < values.length; i++) {
+                if (slotRefs[i]) {
+                    Object resolved = resolve(i, values[i], context);
+                    // an unresolved reference can not be passed as a primitive component
+                    values[i] = resolved != null ? resolved : slotDefaults[i];
+                }
+            }
+            return recordConstructor.newInstance(values);
+        }
+        return target.cast(Proxy.newProxyInstance(target.getClassLoader(), interfaces, new Handler(context, values)));
+    }
+
+    private static Object read(int instruction, long typeId, RecordingStream stream, ParserContext context) throws Exception {
+        return switch (instruction) {
+            case Instructions.BYTE -> stream.read();
+            case Instructions.BOOLEAN -> stream.read() != 0;
+            case Instructions.SHORT -> (short) stream.readVarint();
+            case Instructions.CHAR -> (char) stream.readVarint();
+            case Instructions.INT -> (int) stream.readVarint();
+            case Instructions.LONG, Instructions.CP_ENTRY -> stream.readVarint();
+            case Instructions.FLOAT -> stream.readFloat();
+            case Instructions.DOUBLE -> stream.readDouble();
+            case Instructions.STRING -> ParsingUtils.readUTF8(stream);
+            case Instructions.STRING_VIEW -> ParsingUtils.readUTF8View(stream);
+            case Instructions.OBJECT -> context.getMetadataLookup().getClass(typeId).read(stream);
+            default -> throw new RuntimeException("Unexpected instruction: " + instruction);
+        };
+    }
+
+    private Object resolve(int slot, Object value, ParserContext context) {
+        if (value instanceof long[] refs) {
+            return GeneratedCodeSupport.resolveConstants(refs, context, slotTypeIds[slot], slotTypes[slot].getComponentType());
+        }
+        Object resolved = GeneratedCodeSupport.resolveConstant((Long) value, context, slotTypeIds[slot]);
+        return slotTypes[slot] == Utf8View.class && resolved instanceof String s ? Utf8View.of(s) : resolved;
+    }
+
+    private final class Handler implements InvocationHandler {
+        private final ParserContext context;
+        private final Object[] values;
+
+        Handler(ParserContext context, Object[] values) {
+            this.context = context;
+            this.values = values;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    default -> typeName + "@" + Integer.toHexString(System.identityHashCode(proxy));
+                };
+            }
+            Integer slot = methodSlots.get(method.getName());
+            if (slot == null) {
+                // mirror the generated deserializer - unmapped methods return the default value
+                return defaultValue(method.getReturnType());
+            }
+            return slotRefs[slot] ? resolve(slot, values[slot], context) : values[slot];
+        }
+    }
+}
@@ -9,7 +9,8 @@ import java.util.HashMap;
 import java.util.Map;
 
 public abstract class AbstractMetadataElement {
-    private final RecordingStream stream;
+    // the elements may be shared by several chunks, they must not retain the chunk stream
+    private final ParserContext context;
 
     final MutableMetadataLookup metadataLookup;
 
@@ -19,13 +20,13 @@ public abstract class AbstractMetadataElement {
     private final MetadataElementKind kind;
 
     AbstractMetadataElement(RecordingStream stream, MetadataElementKind kind) throws IOException {
-        this.stream = stream;
+        this.context = stream.getContext();
         this.kind = kind;
-        this.metadataLookup = (MutableMetadataLookup) stream.getContext().getMetadataLookup();
-        processAttributes();
+        this.metadataLookup = (MutableMetadataLookup) context.getMetadataLookup();
+        processAttributes(stream);
     }
 
-    protected final void readSubelements(MetadataEvent event) throws IOException {
+    protected final void readSubelements(RecordingStream stream, MetadataEvent event) throws IOException {
         // now inspect all the enclosed elements
         int elemCount = (int) stream.readVarint();
         for (int i = 0; i < elemCount; i++) {
@@ -39,7 +40,7 @@ public abstract class AbstractMetadataElement {
 
     protected void onAttribute(String key, String value) {}
 
-    protected final void processAttributes() throws IOException {
+    protected final void processAttributes(RecordingStream stream) throws IOException {
         int attrCount = (int) stream.readVarint();
         for (int i = 0; i < attrCount; i++) {
             int kv = (int) stream.readVarint();
@@ -77,6 +78,6 @@ public abstract class AbstractMetadataElement {
     }
 
     public ParserContext getContext() {
-        return stream.getContext();
+        return context;
     }
 }
@@ -18,7 +18,7 @@ public final class MetadataAnnotation extends AbstractMetadataElement {
     public String value;
     MetadataAnnotation(RecordingStream stream, MetadataEvent event) throws IOException {
         super(stream, MetadataElementKind.ANNOTATION);
-        readSubelements(event);
+        readSubelements(stream, event);
     }
 
     @Override
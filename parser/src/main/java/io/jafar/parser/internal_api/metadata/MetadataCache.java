@@ -0,0 +1,37 @@
+package io.jafar.parser.internal_api.metadata;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Recording-wide cache of the parsed chunk metadata.<br>
+ * The chunks of a long recording almost always carry the very same metadata. The entries are keyed
+ * by the metadata id and a checksum of the metadata content so the chunks with identical metadata
+ * can share the same {@linkplain MetadataClass} graph, together with the bound deserializers,
+ * instead of parsing the metadata over and over again.
+ */
+public final class MetadataCache {
+    record Key(long metadataId, int length, long checksum) {}
+
+    private final ConcurrentMap<Key, CompletableFuture<MetadataEvent>> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Claims the given key for parsing.
+     * @param key the metadata key
+     * @param pending the future to be completed by the caller once the metadata is parsed
+     * @return {@literal null} if the caller is the first one to claim the key and must parse the metadata,
+     *         otherwise the future of the metadata being parsed by some other chunk
+     */
+    CompletableFuture<MetadataEvent> claim(Key key, CompletableFuture<MetadataEvent> pending) {
+        return entries.putIfAbsent(key, pending);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+}
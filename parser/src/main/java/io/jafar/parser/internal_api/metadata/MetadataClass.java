@@ -5,9 +5,14 @@ import io.jafar.parser.internal_api.ParserContext;
 import io.jafar.parser.internal_api.RecordingStream;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -27,7 +32,9 @@ public final class MetadataClass extends AbstractMetadataElement {
     private String superType;
     private Boolean isPrimitive;
     private Boolean isSimpleType;
+    private Boolean hasStartTime;
     private String simpleTypeVal;
+    private String fingerprint;
 
     private final int associatedChunk;
 
@@ -38,7 +45,7 @@ public final class MetadataClass extends AbstractMetadataElement {
     MetadataClass(RecordingStream stream, MetadataEvent eventr) throws IOException {
         super(stream, MetadataElementKind.CLASS);
         this.associatedChunk = stream.getContext().getChunkIndex();
-        readSubelements(eventr);
+        readSubelements(stream, eventr);
         metadataLookup.addClass(getId(), this);
     }
 
@@ -82,6 +89,32 @@ public final class MetadataClass extends AbstractMetadataElement {
         return isSimpleType;
     }
 
+    /**
+     * @return {@literal true} if the serialized form starts with the 'startTime' ticks, as it is for all the JFR events
+     */
+    public boolean hasStartTime() {
+        if (hasStartTime == null) {
+            MetadataField first = fields != null && !fields.isEmpty() ? fields.getFirst() : null;
+            hasStartTime = first != null && first.getName().equals("startTime") && !first.hasConstantPool()
+                    && first.getDimension() <= 0 && first.getType().getName().equals("long");
+        }
+        return hasStartTime;
+    }
+
+    /**
+     * Resolves all the lazily computed values, including the ones of the fields.<br>
+     * Called once the whole metadata is read, so the instance can be safely shared by the concurrently parsed chunks.
+     */
+    void resolve() {
+        if (fields != null) {
+            fields.forEach(MetadataField::resolve);
+        }
+        isPrimitive();
+        isSimpleType();
+        hasStartTime();
+        hashCode();
+    }
+
     protected void onSubelement(int count, AbstractMetadataElement element) {
         if (element.getKind() == MetadataElementKind.SETTING) {
             if (settings == null) {
@@ -120,6 +153,45 @@ public final class MetadataClass extends AbstractMetadataElement {
         visitor.visitEnd(this);
     }
 
+    /**
+     * A stable fingerprint of the type structure.<br>
+     * It covers the type id, name, fields (with their type ids, constant pool flags and dimensions) and, recursively,
+     * all the types which are inlined in the serialized form. Two classes with the same fingerprint have the same binary layout.
+     * @return the hex encoded fingerprint
+     */
+    public String getFingerprint() {
+        if (fingerprint == null) {
+            StringBuilder sb = new StringBuilder();
+            describeLayout(this, sb, new HashSet<>());
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                fingerprint = HexFormat.of().formatHex(digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8)));
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return fingerprint;
+    }
+
+    private static void describeLayout(MetadataClass clz, StringBuilder sb, Set<Long> visited) {
+        if (!visited.add(clz.getId())) {
+            return;
+        }
+        sb.append(clz.getId()).append(':').append(clz.getName()).append(clz.isSimpleType() ? "(simple)" : "").append('{');
+        for (MetadataField fld : clz.getFields()) {
+            sb.append(fld.getName()).append(':').append(fld.getTypeId())
+                    .append(fld.hasConstantPool() ? "@cp" : "")
+                    .append('[').append(fld.getDimension()).append("];");
+        }
+        sb.append("}\n");
+        for (MetadataField fld : clz.getFields()) {
+            // constant pool references are stored as plain ids, only the inlined types are part of the layout
+            if (!fld.hasConstantPool() && !fld.getType().isPrimitive()) {
+                describeLayout(fld.getType(), sb, visited);
+            }
+        }
+    }
+
     public List<MetadataField> getFields() {
         return Collections.unmodifiableList(fields == null ? Collections.emptyList() : fields);
     }
@@ -15,7 +15,7 @@ public final class MetadataElement extends AbstractMetadataElement {
 
     MetadataElement(RecordingStream stream, MetadataEvent event) throws IOException {
         super(stream, MetadataElementKind.META);
-        readSubelements(event);
+        readSubelements(stream, event);
     }
 
     @Override
@@ -11,6 +11,8 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.CRC32C;
 
 /**
  * JFR Chunk metadata
@@ -18,6 +20,8 @@ import java.util.Objects;
  * <p>It contains the chunk specific type specifications
  */
 public final class MetadataEvent extends AbstractEvent {
+  private static final int CHECKSUM_BLOCK = 4096;
+
   private boolean hasHashCode = false;
   private int hashCode;
 
@@ -27,11 +31,24 @@ public final class MetadataEvent extends AbstractEvent {
   public final long metadataId;
   private final MetadataRoot root;
   private final List<MetadataClass> classes = new ArrayList<>(200);
+  private String[] strings;
 
   private final boolean forceConstantPools;
 
   public MetadataEvent(RecordingStream stream, boolean forceConstantPools) throws IOException {
+    this(stream, forceConstantPools, null);
+  }
+
+  /**
+   * Reads the chunk metadata, reusing the already parsed metadata with the same content if possible.
+   * @param stream the chunk stream positioned at the metadata event
+   * @param forceConstantPools force the constant pool usage for all fields
+   * @param cache the recording-wide metadata cache; may be {@literal null}
+   * @throws IOException
+   */
+  public MetadataEvent(RecordingStream stream, boolean forceConstantPools, MetadataCache cache) throws IOException {
     super(stream);
+    long eventStart = stream.position();
     size = (int) stream.readVarint();
     if (size == 0) {
       throw new IOException("Unexpected event size. Should be > 0");
@@ -45,8 +62,64 @@ public final class MetadataEvent extends AbstractEvent {
     metadataId = stream.readVarint();
     this.forceConstantPools = forceConstantPools;
 
-    readStringTable(stream);
-    root = (MetadataRoot) readElement(stream);
+    CompletableFuture<MetadataEvent> pending = null;
+    if (cache != null) {
+      // startTime and duration differ chunk to chunk, only the string table and the element tree are compared
+      MetadataCache.Key key = contentKey(stream, (int) (size - (stream.position() - eventStart)));
+      pending = new CompletableFuture<>();
+      CompletableFuture<MetadataEvent> claimed = cache.claim(key, pending);
+      // the chunks are parsed concurrently - wait for the chunk which is already parsing the same metadata
+      MetadataEvent shared = claimed != null ? claimed.join() : null;
+      if (shared != null && shared.forceConstantPools == forceConstantPools) {
+        root = shared.root;
+        strings = shared.strings;
+        classes.addAll(shared.classes);
+        // the chunk lookup must still be able to resolve the types and strings
+        MutableMetadataLookup lookup = (MutableMetadataLookup) stream.getContext().getMetadataLookup();
+        lookup.setStringtable(strings);
+        for (MetadataClass clz : classes) {
+          lookup.addClass(clz.getId(), clz);
+        }
+        return;
+      }
+      if (claimed != null) {
+        // not usable here, parse without publishing
+        pending = null;
+      }
+    }
+
+    try {
+      readStringTable(stream);
+      root = (MetadataRoot) readElement(stream);
+      // the lazily computed values must not be filled in concurrently by the chunks sharing this metadata
+      for (MetadataClass clz : classes) {
+        clz.resolve();
+      }
+    } catch (Throwable t) {
+      if (pending != null) {
+        // the waiting chunks will parse the metadata on their own
+        pending.complete(null);
+      }
+      throw t;
+    }
+    if (pending != null) {
+      pending.complete(this);
+    }
+  }
+
+  private MetadataCache.Key contentKey(RecordingStream stream, int length) {
+    long pos = stream.position();
+    // checksum the content piecewise through the stream scratch buffer instead of copying it as a whole
+    byte[] buffer = stream.byteBuffer(CHECKSUM_BLOCK);
+    CRC32C crc = new CRC32C();
+    for (int remaining = length; remaining > 0; ) {
+      int len = Math.min(remaining, CHECKSUM_BLOCK);
+      stream.read(buffer, 0, len);
+      crc.update(buffer, 0, len);
+      remaining -= len;
+    }
+    stream.position(pos);
+    return new MetadataCache.Key(metadataId, length, crc.getValue());
   }
 
   private void readStringTable(RecordingStream stream) throws IOException {
@@ -55,6 +128,7 @@ public final class MetadataEvent extends AbstractEvent {
     for (int stringIdx = 0; stringIdx < stringCnt; stringIdx++) {
       stringConstants[stringIdx] = ParsingUtils.readUTF8(stream);
     }
+    strings = stringConstants;
     ((MutableMetadataLookup)stream.getContext().getMetadataLookup()).setStringtable(stringConstants);
   }
 
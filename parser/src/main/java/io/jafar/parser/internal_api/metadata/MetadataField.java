@@ -22,7 +22,7 @@ public final class MetadataField extends AbstractMetadataElement {
 
     MetadataField(RecordingStream stream, MetadataEvent event, boolean forceConstantPools) throws IOException {
         super(stream, MetadataElementKind.FIELD);
-        readSubelements(event);
+        readSubelements(stream, event);
     }
 
     @Override
@@ -41,8 +41,7 @@ public final class MetadataField extends AbstractMetadataElement {
     }
 
     public MetadataClass getType() {
-        // all events from a single chunk, referencing a particular type will be procesed in a single thread
-        // therefore, we are not risiking data race here
+        // resolved eagerly by resolve() before the metadata can be shared by the other chunks
         if (type == null) {
             type = metadataLookup.getClass(getTypeId());
         }
@@ -70,6 +69,18 @@ public final class MetadataField extends AbstractMetadataElement {
         return dimension;
     }
 
+    /**
+     * Resolves all the lazily computed values.<br>
+     * Called once the whole metadata is read, so the instance can be safely shared by the concurrently parsed chunks.
+     */
+    void resolve() {
+        getTypeId();
+        hasConstantPool();
+        getDimension();
+        getType();
+        hashCode();
+    }
+
     @Override
     protected void onSubelement(int count, AbstractMetadataElement element) {
         if (element.getKind() == MetadataElementKind.ANNOTATION) {
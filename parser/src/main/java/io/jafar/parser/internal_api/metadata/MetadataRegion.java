@@ -15,7 +15,7 @@ public final class MetadataRegion extends AbstractMetadataElement {
 
     MetadataRegion(RecordingStream stream, MetadataEvent event) throws IOException {
         super(stream, MetadataElementKind.REGION);
-        readSubelements(event);
+        readSubelements(stream, event);
     }
 
     @Override
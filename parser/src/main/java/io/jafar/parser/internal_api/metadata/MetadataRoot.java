@@ -14,7 +14,7 @@ public final class MetadataRoot extends AbstractMetadataElement {
 
     MetadataRoot(RecordingStream stream, MetadataEvent event) throws IOException {
         super(stream, MetadataElementKind.ROOT);
-        readSubelements(event);
+        readSubelements(stream, event);
     }
 
     @Override
@@ -14,7 +14,7 @@ final class MetadataSetting extends AbstractMetadataElement {
 
     public MetadataSetting(RecordingStream stream, MetadataEvent event) throws IOException {
         super(stream, MetadataElementKind.SETTING);
-        readSubelements(event);
+        readSubelements(stream, event);
     }
 
     @Override
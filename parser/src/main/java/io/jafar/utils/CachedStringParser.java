@@ -1,48 +1,135 @@
 package io.jafar.utils;
 
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
+/**
+ * Deduplicating string decoders.<br>
+ * The recently decoded strings are kept in a small direct-mapped table, indexed by the hash of the raw data,
+ * its length and the charset. The raw data is compared with the cached string itself before it is reused, so a miss
+ * allocates only the new {@linkplain String} and a hash collision only costs that allocation. The strings with
+ * multi-byte characters can not be compared char by char, they are cached along with a copy of their raw data
+ * and compared byte by byte instead, so a hit never decodes the data. The same raw data yields
+ * the same {@linkplain String} instance as long as it has not been displaced from the table.<br>
+ * A slot holds just an immutable entry reference and every hit is verified against the raw data, so a parser can be
+ * shared by concurrent readers; at worst they displace each other's entries.
+ */
 @SuppressWarnings("UnstableApiUsage")
 public class CachedStringParser {
+    private static final int TABLE_SIZE = 512;
+    private static final int TABLE_MASK = TABLE_SIZE - 1;
+    // longer strings are rarely repeated, do not waste time hashing and comparing them
+    private static final int MAX_CACHED_LENGTH = 256;
+
     public static final class ByteArrayParser {
-        private byte[] previousData = new byte[4096];
-        private int previousLen = 0;
-        private String lastString = null;
+        /**
+         * The cached string with a copy of its raw data, kept only for the multi-byte values,
+         * which can not be compared with the raw data char by char.
+         */
+        private record Entry(String value, byte[] raw, Charset charset) {}
+
+        private final Entry[] entries = new Entry[TABLE_SIZE];
 
         public String parse(byte[] data, int len, Charset charset) {
-            if (lastString != null && previousLen == len && Arrays.equals(data, 0, len, previousData, 0, len)) {
-                return lastString;
+            if (len > MAX_CACHED_LENGTH) {
+                return new String(data, 0, len, charset);
+            }
+            int slot = slot(hash(data, len), len, charset);
+            Entry cached = entries[slot];
+            if (cached != null && matches(cached, data, len, charset)) {
+                return cached.value;
+            }
+            String value = new String(data, 0, len, charset);
+            boolean singleByte = charset == StandardCharsets.ISO_8859_1 || value.length() == len && isAscii(data, len);
+            entries[slot] = new Entry(value, singleByte ? null : Arrays.copyOf(data, len), charset);
+            return value;
+        }
+
+        private static boolean matches(Entry entry, byte[] data, int len, Charset charset) {
+            if (entry.raw != null) {
+                return entry.charset == charset && Arrays.equals(entry.raw, 0, entry.raw.length, data, 0, len);
             }
-            if (len > previousData.length) {
-                previousData = Arrays.copyOf(data, len);
-            } else {
-                System.arraycopy(data, 0, previousData, 0, len);
+            String value = entry.value;
+            if (value.length() != len) {
+                return false;
             }
-            previousLen = len;
-            lastString = new String(data, 0, len, charset);
-            return lastString;
+            boolean singleByte = charset == StandardCharsets.ISO_8859_1;
+            for (int i = 0; i < len; i++) {
+                byte b = data[i];
+                if (b < 0 && !singleByte) {
+                    // a multi-byte value would have been cached with its raw data
+                    return false;
+                }
+                if (value.charAt(i) != (char) (b & 0xff)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isAscii(byte[] data, int len) {
+            for (int i = 0; i < len; i++) {
+                if (data[i] < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int hash(byte[] data, int len) {
+            int h = 1;
+            for (int i = 0; i < len; i++) {
+                h = 31 * h + data[i];
+            }
+            return h;
         }
     }
 
     public static final class CharArrayParser {
-        private char[] previousData = new char[4096];
-        private int previousLen = 0;
-        private String lastString = null;
+        private final String[] strings = new String[TABLE_SIZE];
 
         public String parse(char[] data, int len) {
-            if (lastString != null && previousLen == len && Arrays.equals(data, 0, len, previousData, 0, len)) {
-                return lastString;
+            if (len > MAX_CACHED_LENGTH) {
+                return new String(data, 0, len);
+            }
+            int slot = slot(hash(data, len), len, null);
+            String cached = strings[slot];
+            if (cached != null && matches(cached, data, len)) {
+                return cached;
+            }
+            String value = new String(data, 0, len);
+            strings[slot] = value;
+            return value;
+        }
+
+        private static boolean matches(String value, char[] data, int len) {
+            if (value.length() != len) {
+                return false;
             }
-            if (len > previousData.length) {
-                previousData = Arrays.copyOf(data, len);
-            } else {
-                System.arraycopy(data, 0, previousData, 0, len);
+            for (int i = 0; i < len; i++) {
+                if (value.charAt(i) != data[i]) {
+                    return false;
+                }
             }
-            previousLen = len;
-            lastString = new String(data, 0, len);
-            return lastString;
+            return true;
+        }
+
+        private static int hash(char[] data, int len) {
+            int h = 1;
+            for (int i = 0; i < len; i++) {
+                h = 31 * h + data[i];
+            }
+            return h;
+        }
+    }
+
+    private static int slot(int hash, int len, Charset charset) {
+        int h = hash * 0x9E3779B9 + len;
+        if (charset != null) {
+            h += charset.hashCode();
         }
+        return (h ^ (h >>> 16)) & TABLE_MASK;
     }
 
     public static ByteArrayParser byteParser() {
@@ -42,6 +42,13 @@ public interface CustomByteBuffer {
 
     byte get();
 
+    /**
+     * Reads the byte at the given position, relative to the start of this buffer, without moving the current position.
+     * @param position the absolute position
+     * @return the byte value
+     */
+    byte get(long position);
+
     short getShort();
 
     int getInt();
@@ -121,6 +128,11 @@ public interface CustomByteBuffer {
 //            return delegate.get(position++);
         }
 
+        @Override
+        public byte get(long position) {
+            return delegate.get((int) position);
+        }
+
         @Override
         public short getShort() {
             return delegate.getShort();
@@ -113,7 +113,6 @@ public final class SplicedMappedByteBuffer implements CustomByteBuffer {
                 throw new BufferOverflowException();
             }
             offset = 0;
-            splices[index].position(offset);
         }
     }
 
@@ -137,6 +136,12 @@ public final class SplicedMappedByteBuffer implements CustomByteBuffer {
         return splices[index].get(offset++);
     }
 
+    @Override
+    public byte get(long position) {
+        long realPosition = sliceBase + position;
+        return splices[(int)(realPosition / spliceSize)].get((int)(realPosition % spliceSize));
+    }
+
     private final byte[] numArray = new byte[8];
 
     @Override
@@ -23,8 +23,22 @@ public final class TypeGenerator {
     private final String pkg;
     private final boolean overwrite;
     private final Predicate<String> eventTypeFilter;
+    private final boolean generateDeserializers;
 
     public TypeGenerator(Path jfr, Path output, String targetPackage, boolean overwrite, Predicate<String> eventTypeFilter) throws IOException{
+        this(jfr, output, targetPackage, overwrite, eventTypeFilter, false);
+    }
+
+    /**
+     * @param generateDeserializers if {@literal true} and the types are generated from a recording, each generated interface
+     *                              will be accompanied by a precompiled {@code <interface>Impl} deserializer class.
+     *                              The parser will use it instead of generating the bytecode at runtime as long as
+     *                              the chunk metadata matches the {@code JAFAR_FINGERPRINT} recorded in the class.
+     *                              The deserializers are {@linkplain io.jafar.parser.internal_api.Detachable detachable}
+     *                              like the generated ones; they are used only when the interface is the only handler type
+     *                              of the JFR type, ie. not for the types sharing a base layout.
+     */
+    public TypeGenerator(Path jfr, Path output, String targetPackage, boolean overwrite, Predicate<String> eventTypeFilter, boolean generateDeserializers) throws IOException{
         if (!Files.isDirectory(output) || !Files.exists(output)) {
             throw new IllegalArgumentException("Output directory does not exist: " + output);
         }
@@ -33,6 +47,7 @@ public final class TypeGenerator {
         this.output = output.resolve(targetPackage.replace('.', '/'));
         this.overwrite = overwrite;
         this.eventTypeFilter = eventTypeFilter;
+        this.generateDeserializers = generateDeserializers;
         Files.createDirectories(this.output);
     }
 
@@ -165,6 +180,12 @@ public final class TypeGenerator {
             if (overwrite || !Files.exists(classFile)) {
                 Files.writeString(classFile, generateClass(metadataClass), StandardOpenOption.CREATE_NEW);
             }
+            if (generateDeserializers) {
+                Path implFile = output.resolve(getClassName(metadataClass) + "Impl.java");
+                if (overwrite || !Files.exists(implFile)) {
+                    Files.writeString(implFile, generateDeserializer(metadataClass), StandardOpenOption.CREATE_NEW);
+                }
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -198,6 +219,148 @@ public final class TypeGenerator {
         return sb.toString();
     }
 
+    private String generateDeserializer(MetadataClass clazz) {
+        String className = getClassName(clazz);
+        StringBuilder fields = new StringBuilder();
+        StringBuilder reads = new StringBuilder();
+        StringBuilder accessors = new StringBuilder();
+        StringBuilder resolvers = new StringBuilder();
+        StringBuilder detaches = new StringBuilder();
+        boolean usesMetadata = false;
+        boolean usesStrings = false;
+        boolean usesConstantPool = false;
+        for (MetadataField field : clazz.getFields()) {
+            String fldName = sanitizeFieldName(field.getName());
+            boolean isArray = field.getDimension() > 0;
+            MetadataClass fldType = field.getType();
+            while (fldType.isSimpleType()) {
+                fldType = fldType.getFields().getFirst().getType();
+            }
+            String fldClassName = getClassName(fldType);
+            String fldJavaType = fldClassName + (isArray ? "[]" : "");
+            boolean isValue = !fldType.isPrimitive();
+
+            accessors.append("\t@Override\n");
+            accessors.append("\tpublic ").append(fldJavaType).append(' ').append(fldName).append("() {\n");
+            if (field.hasConstantPool()) {
+                // keep only the constant pool references, the values are resolved lazily until the instance is detached
+                usesConstantPool = true;
+                fields.append("\tprivate final long").append(isArray ? "[] " : " ").append(fldName).append("_ref;\n");
+                fields.append("\tprivate ").append(fldJavaType).append(' ').append(fldName).append("_val;\n");
+                if (isArray) {
+                    reads.append("\t\tint ").append(fldName).append("_len = (int) stream.readVarint();\n");
+                    reads.append("\t\tthis.").append(fldName).append("_ref = new long[").append(fldName).append("_len];\n");
+                    reads.append("\t\tfor (int i = 0; i < ").append(fldName).append("_len; i++) {\n");
+                    reads.append("\t\t\tthis.").append(fldName).append("_ref[i] = stream.readVarint();\n");
+                    reads.append("\t\t}\n");
+                } else {
+                    reads.append("\t\tthis.").append(fldName).append("_ref = stream.readVarint();\n");
+                }
+                accessors.append("\t\tParserContext context = parserContext;\n");
+                accessors.append("\t\treturn context != null ? ").append(fldName).append("_resolve(context) : ").append(fldName).append("_val;\n");
+
+                resolvers.append("\tprivate ").append(fldJavaType).append(' ').append(fldName).append("_resolve(ParserContext context) {\n");
+                resolvers.append("\t\tConstantPool cp = context.getConstantPools().getConstantPool(").append(field.getType().getId()).append("L);\n");
+                if (isArray) {
+                    resolvers.append("\t\t").append(fldJavaType).append(" values = new ").append(fldClassName).append('[').append(fldName).append("_ref.length];\n");
+                    resolvers.append("\t\tif (cp != null) {\n");
+                    resolvers.append("\t\t\tfor (int i = 0; i < values.length; i++) {\n");
+                    resolvers.append("\t\t\t\tvalues[i] = (").append(fldClassName).append(") cp.get(").append(fldName).append("_ref[i]);\n");
+                    resolvers.append("\t\t\t}\n");
+                    resolvers.append("\t\t}\n");
+                    resolvers.append("\t\treturn values;\n");
+                } else {
+                    resolvers.append("\t\treturn cp != null ? (").append(fldClassName).append(") cp.get(").append(fldName).append("_ref) : null;\n");
+                }
+                resolvers.append("\t}\n\n");
+
+                detaches.append("\t\tthis.").append(fldName).append("_val = ").append(fldName).append("_resolve(context);\n");
+                if (isValue) {
+                    detaches.append("\t\tDetachable.detachValue(").append(fldName).append("_val);\n");
+                }
+            } else {
+                fields.append("\tprivate final ").append(fldJavaType).append(' ').append(fldName).append(";\n");
+                String read = getReadExpression(fldType);
+                usesMetadata |= isValue;
+                usesStrings |= fldType.getName().equals("java.lang.String");
+                if (isArray) {
+                    reads.append("\t\tint ").append(fldName).append("_len = (int) stream.readVarint();\n");
+                    reads.append("\t\tthis.").append(fldName).append(" = new ").append(fldClassName).append('[').append(fldName).append("_len];\n");
+                    reads.append("\t\tfor (int i = 0; i < ").append(fldName).append("_len; i++) {\n");
+                    reads.append("\t\t\tthis.").append(fldName).append("[i] = ").append(read).append(";\n");
+                    reads.append("\t\t}\n");
+                } else {
+                    reads.append("\t\tthis.").append(fldName).append(" = ").append(read).append(";\n");
+                }
+                accessors.append("\t\treturn ").append(fldName).append(";\n");
+                if (isValue) {
+                    detaches.append("\t\tDetachable.detachValue(").append(fldName).append(");\n");
+                }
+            }
+            accessors.append("\t}\n\n");
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("package ").append(pkg).append(";\n");
+        sb.append("\n");
+        if (usesStrings) {
+            sb.append("import io.jafar.parser.ParsingUtils;\n");
+        }
+        if (usesConstantPool) {
+            sb.append("import io.jafar.parser.internal_api.ConstantPool;\n");
+        }
+        sb.append("import io.jafar.parser.internal_api.Detachable;\n");
+        if (usesMetadata) {
+            sb.append("import io.jafar.parser.internal_api.MetadataLookup;\n");
+        }
+        sb.append("import io.jafar.parser.internal_api.ParserContext;\n");
+        sb.append("import io.jafar.parser.internal_api.RecordingStream;\n");
+        sb.append("\n");
+        sb.append("import java.io.IOException;\n");
+        sb.append("\n");
+        sb.append("public final class ").append(className).append("Impl implements ").append(className).append(", Detachable {\n");
+        sb.append("\tpublic static final String JAFAR_FINGERPRINT = \"").append(clazz.getFingerprint()).append("\";\n\n");
+        sb.append("\tprivate ParserContext parserContext;\n");
+        sb.append(fields).append('\n');
+        sb.append("\tpublic ").append(className).append("Impl(RecordingStream stream) throws IOException {\n");
+        sb.append("\t\tthis.parserContext = stream.getContext();\n");
+        if (usesMetadata) {
+            sb.append("\t\tMetadataLookup metadata = parserContext.getMetadataLookup();\n");
+        }
+        sb.append(reads);
+        sb.append("\t}\n\n");
+        sb.append(accessors);
+        sb.append("\t@Override\n");
+        sb.append("\tpublic void detach() {\n");
+        sb.append("\t\tParserContext context = parserContext;\n");
+        sb.append("\t\tif (context == null) {\n");
+        sb.append("\t\t\treturn;\n");
+        sb.append("\t\t}\n");
+        sb.append("\t\t// cleared first, so the cyclic references terminate at this instance\n");
+        sb.append("\t\tparserContext = null;\n");
+        sb.append(detaches);
+        sb.append("\t}\n\n");
+        sb.append(resolvers);
+        sb.setLength(sb.length() - 1);
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private String getReadExpression(MetadataClass fldType) {
+        return switch (fldType.getName()) {
+            case "byte" -> "stream.read()";
+            case "boolean" -> "stream.read() != 0";
+            case "short" -> "(short) stream.readVarint()";
+            case "char" -> "(char) stream.readVarint()";
+            case "int" -> "(int) stream.readVarint()";
+            case "long" -> "stream.readVarint()";
+            case "float" -> "stream.readFloat()";
+            case "double" -> "stream.readDouble()";
+            case "java.lang.String" -> "ParsingUtils.readUTF8(stream)";
+            default -> "(" + getClassName(fldType) + ") metadata.getClass(" + fldType.getId() + "L).read(stream)";
+        };
+    }
+
     private String getClassName(MetadataClass clazz) {
         return (!clazz.isPrimitive() ? "JFR" : "") + clazz.getSimpleName();
     }
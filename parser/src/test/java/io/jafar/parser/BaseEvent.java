@@ -0,0 +1,8 @@
+package io.jafar.parser;
+
+import io.jafar.parser.api.JfrType;
+
+@JfrType("jdk.jfr.Event")
+public interface BaseEvent {
+    long startTime();
+}
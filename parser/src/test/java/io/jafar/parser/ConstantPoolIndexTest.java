@@ -0,0 +1,178 @@
+package io.jafar.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConstantPoolIndexTest {
+    @Test
+    void testDenseIds() {
+        ConstantPoolIndex index = new ConstantPoolIndex(16);
+        for (long id = 100; id < 200; id++) {
+            index.putOffset(id, offset(id));
+        }
+        // the offsets are readable before the compaction as well
+        assertOffsets(index, 100, 200);
+        index.compact();
+
+        assertTrue(index.isDense());
+        assertOffsets(index, 100, 200);
+        assertEquals(0, index.getOffset(99));
+        assertEquals(0, index.getOffset(200));
+        assertEquals(0, index.getOffset(Long.MIN_VALUE));
+        assertEquals(0, index.getOffset(Long.MAX_VALUE));
+        assertEquals(100, index.offsetTable()[0].length);
+    }
+
+    @Test
+    void testHalfUsedIds() {
+        // every other id is used - still dense
+        ConstantPoolIndex index = new ConstantPoolIndex(16);
+        for (long id = 0; id < 100; id += 2) {
+            index.putOffset(id, offset(id));
+        }
+        index.compact();
+
+        assertTrue(index.isDense());
+        for (long id = 0; id < 100; id++) {
+            assertEquals(id % 2 == 0 ? offset(id) : 0, index.getOffset(id));
+            assertEquals(id % 2 == 0, index.containsOffset(id));
+        }
+    }
+
+    @Test
+    void testSparseIds() {
+        ConstantPoolIndex index = new ConstantPoolIndex(16);
+        long[] ids = {1, 1_000, 1_000_000, 1L << 40};
+        for (long id : ids) {
+            index.putOffset(id, offset(id));
+        }
+        index.compact();
+
+        assertFalse(index.isDense());
+        for (long id : ids) {
+            assertEquals(offset(id), index.getOffset(id));
+        }
+        assertEquals(0, index.getOffset(2));
+        assertTable(ids, index);
+    }
+
+    @Test
+    void testNegativeIds() {
+        ConstantPoolIndex index = new ConstantPoolIndex(16);
+        for (long id = -50; id < 50; id++) {
+            index.putOffset(id, offset(id));
+        }
+        index.compact();
+
+        assertTrue(index.isDense());
+        assertOffsets(index, -50, 50);
+        assertEquals(0, index.getOffset(-51));
+    }
+
+    @Test
+    void testHugeIds() {
+        // the id range does not even fit a long
+        ConstantPoolIndex index = new ConstantPoolIndex(16);
+        long[] ids = {Long.MIN_VALUE, -1, 0, Long.MAX_VALUE};
+        for (long id : ids) {
+            index.putOffset(id, offset(id));
+        }
+        index.compact();
+
+        assertFalse(index.isDense());
+        for (long id : ids) {
+            assertEquals(offset(id), index.getOffset(id));
+        }
+        assertTable(ids, index);
+
+        // a dense range at the very end of the id space
+        ConstantPoolIndex tail = new ConstantPoolIndex(16);
+        for (long id = Long.MAX_VALUE - 9; id < Long.MAX_VALUE; id++) {
+            tail.putOffset(id, offset(id));
+        }
+        tail.putOffset(Long.MAX_VALUE, offset(Long.MAX_VALUE));
+        tail.compact();
+
+        assertTrue(tail.isDense());
+        assertOffsets(tail, Long.MAX_VALUE - 9, Long.MAX_VALUE);
+        assertEquals(offset(Long.MAX_VALUE), tail.getOffset(Long.MAX_VALUE));
+        assertEquals(0, tail.getOffset(Long.MAX_VALUE - 10));
+        assertEquals(0, tail.getOffset(Long.MIN_VALUE));
+    }
+
+    @Test
+    void testDenseToHashFallback() {
+        ConstantPoolIndex index = new ConstantPoolIndex(16);
+        for (long id = 1; id <= 10; id++) {
+            index.putOffset(id, offset(id));
+        }
+        index.compact();
+        assertTrue(index.isDense());
+        Object resolved = new Object();
+        assertNull(index.putEntryIfAbsent(5, resolved));
+
+        // a later checkpoint brings an id out of the dense range
+        index.putOffset(1_000_000, offset(1_000_000));
+        assertFalse(index.isDense());
+        assertOffsets(index, 1, 11);
+        assertEquals(offset(1_000_000), index.getOffset(1_000_000));
+        // the resolved entries survive the layout switch
+        assertSame(resolved, index.getEntry(5));
+
+        // the ids are too sparse now, the compaction keeps the hash layout
+        index.compact();
+        assertFalse(index.isDense());
+        assertOffsets(index, 1, 11);
+        assertSame(resolved, index.getEntry(5));
+        assertEquals(1, index.entryCount());
+
+        // filling the gap makes the index dense again
+        ConstantPoolIndex refill = new ConstantPoolIndex(16);
+        for (long id = 1; id <= 10; id++) {
+            refill.putOffset(id, offset(id));
+        }
+        refill.compact();
+        refill.putOffset(20, offset(20));
+        assertFalse(refill.isDense());
+        refill.compact();
+        assertTrue(refill.isDense());
+        assertOffsets(refill, 1, 11);
+        assertEquals(offset(20), refill.getOffset(20));
+        assertEquals(0, refill.getOffset(15));
+    }
+
+    private static long offset(long id) {
+        // odd, so never 0, which stands for an unknown id
+        return id * 31 | 1;
+    }
+
+    private static void assertOffsets(ConstantPoolIndex index, long from, long to) {
+        for (long id = from; id < to; id++) {
+            assertEquals(offset(id), index.getOffset(id), "id " + id);
+        }
+    }
+
+    private static void assertTable(long[] ids, ConstantPoolIndex index) {
+        long[][] table = index.offsetTable();
+        long[] expectedOffsets = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            expectedOffsets[i] = offset(ids[i]);
+        }
+        long[] offsets = new long[table[0].length];
+        for (int i = 0; i < table[0].length; i++) {
+            assertEquals(offset(table[0][i]), table[1][i]);
+            offsets[i] = table[1][i];
+        }
+        Arrays.sort(expectedOffsets);
+        Arrays.sort(offsets);
+        assertArrayEquals(expectedOffsets, offsets);
+    }
+}
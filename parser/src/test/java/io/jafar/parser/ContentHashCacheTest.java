@@ -0,0 +1,59 @@
+package io.jafar.parser;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ContentHashCacheTest {
+    @Test
+    void testUnbounded() {
+        ContentHashCache cache = new ContentHashCache(0);
+        for (long id = 0; id < 1000; id++) {
+            cache.putIfAbsent(id, hash(id));
+        }
+        assertEquals(1000, cache.size());
+        for (long id = 0; id < 1000; id++) {
+            assertEquals(hash(id), cache.get(id));
+        }
+    }
+
+    @Test
+    void testPutIfAbsent() {
+        ContentHashCache cache = new ContentHashCache(2);
+        cache.putIfAbsent(1, hash(1));
+        cache.putIfAbsent(1, hash(2));
+        assertEquals(hash(1), cache.get(1));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testClockEviction() {
+        ContentHashCache cache = new ContentHashCache(4);
+        for (long id = 0; id < 4; id++) {
+            cache.putIfAbsent(id, hash(id));
+        }
+        // the hash used in between gets a second chance
+        assertNotNull(cache.get(0));
+        cache.putIfAbsent(4, hash(4));
+
+        assertEquals(4, cache.size());
+        assertEquals(hash(0), cache.get(0));
+        assertNull(cache.get(1));
+        assertEquals(hash(4), cache.get(4));
+
+        // a hash used all the time is never evicted
+        for (long id = 5; id < 100; id++) {
+            assertNotNull(cache.get(0));
+            cache.putIfAbsent(id, hash(id));
+            assertEquals(4, cache.size());
+        }
+        assertEquals(hash(0), cache.get(0));
+        assertEquals(hash(99), cache.get(99));
+    }
+
+    private static ConstantInterner.ContentHash hash(long id) {
+        return new ConstantInterner.ContentHash(id, ~id);
+    }
+}
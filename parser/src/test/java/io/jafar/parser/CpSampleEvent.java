@@ -0,0 +1,20 @@
+package io.jafar.parser;
+
+import jdk.jfr.Event;
+import jdk.jfr.Name;
+
+/**
+ * A JDK event with the constant pool backed fields.
+ */
+@Name("jafar.CpSample")
+public class CpSampleEvent extends Event {
+    int value;
+    Thread owner;
+    Class<?> type;
+
+    public CpSampleEvent(int value, Thread owner, Class<?> type) {
+        this.value = value;
+        this.owner = owner;
+        this.type = type;
+    }
+}
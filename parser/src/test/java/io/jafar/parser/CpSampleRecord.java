@@ -0,0 +1,8 @@
+package io.jafar.parser;
+
+import io.jafar.parser.api.JfrField;
+import io.jafar.parser.api.JfrType;
+
+@JfrType("jafar.CpSample")
+public record CpSampleRecord(int value, ThreadRecord owner, @JfrField("type") long typeRef) {
+}
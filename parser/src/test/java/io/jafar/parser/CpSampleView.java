@@ -0,0 +1,8 @@
+package io.jafar.parser;
+
+import io.jafar.parser.api.JfrType;
+
+@JfrType("jafar.CpSample")
+public interface CpSampleView extends BaseEvent {
+    int value();
+}
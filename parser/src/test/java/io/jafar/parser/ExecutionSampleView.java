@@ -0,0 +1,9 @@
+package io.jafar.parser;
+
+import io.jafar.parser.api.JfrField;
+import io.jafar.parser.api.JfrType;
+
+@JfrType("jdk.ExecutionSample")
+public interface ExecutionSampleView {
+    @JfrField("sampledThread") ThreadView eventThread();
+}
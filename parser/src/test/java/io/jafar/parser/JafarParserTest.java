@@ -1,28 +1,56 @@
 package io.jafar.parser;
 
 import io.jafar.TestJfrRecorder;
+import io.jafar.parser.api.ConstantPoolStats;
+import io.jafar.parser.api.EventQuery;
+import io.jafar.parser.api.Filter;
 import io.jafar.parser.api.HandlerRegistration;
 import io.jafar.parser.api.JafarParser;
+import io.jafar.parser.api.JfrChunks;
+import io.jafar.parser.api.JfrRewriter;
+import io.jafar.parser.api.RecordingDiff;
+import io.jafar.parser.api.RecordingSummary;
+import io.jafar.parser.api.StackTraceAggregator;
+import io.jafar.parser.api.Utf8View;
 import io.jafar.parser.api.types.JFRStackFrame;
 import io.jafar.parser.api.types.JFRStackTrace;
+import io.jafar.parser.api.types.JFRThread;
+import io.jafar.parser.internal_api.CheckpointEvent;
+import io.jafar.parser.internal_api.ChunkParserListener;
+import io.jafar.parser.internal_api.StreamingChunkParser;
+import io.jafar.parser.internal_api.metadata.MetadataEvent;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.Test;
 import org.openjdk.jmc.flightrecorder.writer.api.Recording;
 import org.openjdk.jmc.flightrecorder.writer.api.Recordings;
 
 import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.net.URI;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class JafarParserTest {
@@ -57,11 +85,603 @@ public class JafarParserTest {
         assertEquals(1, eventCount.get());
     }
 
+    @Test
+    void testRecordParsing() throws Exception {
+        Path tmpFile = TestRecordings.write(rec -> {
+            rec.registerEventType(ParserEvent.class);
+            rec.writeEvent(new ParserEvent(10));
+        });
+
+        try (JafarParser parser = JafarParser.open(tmpFile.toString())) {
+            AtomicInteger eventCount = new AtomicInteger(0);
+            parser.handle(ParserEventRecord.class, (event, ctl) -> {
+                eventCount.incrementAndGet();
+                assertEquals(new ParserEventRecord(10), event);
+            });
+
+            parser.run();
+
+            assertEquals(1, eventCount.get());
+        }
+    }
+
+    @Test
+    void testConstantPoolRecordComponents() throws Exception {
+        Thread owner = Thread.currentThread();
+        Path recording = TestRecordings.record(() -> {
+            for (int i = 0; i < 3; i++) {
+                new CpSampleEvent(i, owner, String.class).commit();
+            }
+        }, CpSampleEvent.class);
+
+        try (JafarParser parser = JafarParser.open(recording.toString())) {
+            List<CpSampleRecord> events = Collections.synchronizedList(new ArrayList<>());
+            parser.handle(CpSampleRecord.class, (event, ctl) -> events.add(event));
+            parser.run();
+
+            assertEquals(3, events.size());
+            ThreadRecord thread = new ThreadRecord(owner.getName(), owner.threadId());
+            for (int i = 0; i < 3; i++) {
+                // no handler type is registered for 'java.lang.Class' so the primitive component gets the default value
+                assertEquals(new CpSampleRecord(i, thread, 0), events.get(i));
+            }
+        }
+    }
+
+    @Test
+    void testInheritedHandlerTypes() throws Exception {
+        Path tmpFile = TestRecordings.write(rec -> {
+            rec.registerEventType(ParserEvent.class);
+            rec.writeEvent(new ParserEvent(10));
+        });
+
+        try (JafarParser parser = JafarParser.open(tmpFile.toString())) {
+            AtomicInteger baseCount = new AtomicInteger(0);
+            AtomicInteger eventCount = new AtomicInteger(0);
+            parser.handle(BaseEvent.class, (event, ctl) -> {
+                baseCount.incrementAndGet();
+                assertInstanceOf(ParserEvent2.class, event);
+            });
+            parser.handle(ParserEvent2.class, (event, ctl) -> {
+                eventCount.incrementAndGet();
+                assertEquals(10, event.value());
+            });
+
+            parser.run();
+
+            assertEquals(1, baseCount.get());
+            assertEquals(1, eventCount.get());
+        }
+    }
+
+    @Test
+    void testInheritedHandlerLayout() throws Exception {
+        Path recording = TestRecordings.record(() -> {
+            for (int i = 0; i < 3; i++) {
+                new CpSampleEvent(i, Thread.currentThread(), String.class).commit();
+            }
+        }, CpSampleEvent.class);
+
+        try (JafarParser parser = JafarParser.open(recording.toString())) {
+            List<BaseEvent> baseEvents = Collections.synchronizedList(new ArrayList<>());
+            List<CpSampleView> events = Collections.synchronizedList(new ArrayList<>());
+            parser.handle(BaseEvent.class, (event, ctl) -> baseEvents.add(event));
+            parser.handle(CpSampleView.class, (event, ctl) -> events.add(event));
+
+            parser.run();
+
+            assertEquals(3, events.size());
+            assertEquals(events, baseEvents);
+            for (int i = 0; i < 3; i++) {
+                CpSampleView event = events.get(i);
+                assertEquals(i, event.value());
+                assertTrue(event.startTime() > 0);
+                // 'startTime' is read by the base layout shared by all the event types handled as BaseEvent
+                Class<?> layout = event.getClass().getSuperclass();
+                assertTrue(layout.getName().matches(".*\\.BaseEvent\\$Layout\\$[0-9a-f]{16}"), layout.getName());
+                // the layouts are defined by a loader of their own, so they can be collected with the handler types
+                assertNotEquals(JafarParser.class.getClassLoader(), layout.getClassLoader());
+                assertEquals(JafarParser.class.getClassLoader(), layout.getClassLoader().getParent());
+                assertEquals(layout.getClassLoader(), event.getClass().getClassLoader());
+            }
+        }
+    }
+
+    @Test
+    void testFilteredHandler() throws Exception {
+        Path tmpFile = TestRecordings.write(rec -> {
+            rec.registerEventType(ParserEvent.class);
+            rec.writeEvent(new ParserEvent(10));
+            rec.writeEvent(new ParserEvent(20));
+        });
+
+        try (JafarParser parser = JafarParser.open(tmpFile.toString())) {
+            AtomicInteger eventCount = new AtomicInteger(0);
+            AtomicInteger filteredCount = new AtomicInteger(0);
+            parser.handle(ParserEvent1.class, (event, ctl) -> eventCount.incrementAndGet());
+            parser.handle(ParserEvent1.class, Filter.field("value").gt(15), (event, ctl) -> {
+                filteredCount.incrementAndGet();
+                assertEquals(20, event.value());
+            });
+
+            parser.run();
+
+            assertEquals(2, eventCount.get());
+            assertEquals(1, filteredCount.get());
+        }
+    }
+
+    @Test
+    void testBatchHandler() throws Exception {
+        Path tmpFile = TestRecordings.write(rec -> {
+            rec.registerEventType(ParserEvent.class);
+            rec.writeEvent(new ParserEvent(10));
+            rec.writeEvent(new ParserEvent(20));
+            rec.writeEvent(new ParserEvent(30));
+        });
+
+        try (JafarParser parser = JafarParser.open(tmpFile.toString())) {
+            AtomicInteger batchCount = new AtomicInteger(0);
+            AtomicLong valueSum = new AtomicLong(0);
+            parser.handleBatch(ParserEvent1.class, 2, (batch, ctl) -> {
+                batchCount.incrementAndGet();
+                long[] values = batch.longs("value");
+                for (int i = 0; i < batch.size(); i++) {
+                    valueSum.addAndGet(values[i]);
+                }
+            });
+
+            parser.run();
+
+            assertEquals(2, batchCount.get());
+            assertEquals(60, valueSum.get());
+        }
+    }
+
+    @Test
+    void testCursorHandler() throws Exception {
+        Path tmpFile = TestRecordings.write(rec -> {
+            rec.registerEventType(ParserEvent.class);
+            rec.writeEvent(new ParserEvent(10));
+            rec.writeEvent(new ParserEvent(20));
+        });
+
+        try (JafarParser parser = JafarParser.open(tmpFile.toString())) {
+            AtomicInteger eventCount = new AtomicInteger(0);
+            AtomicLong valueSum = new AtomicLong(0);
+            parser.handleCursor("datadog.ParserEvent", (cursor, ctl) -> {
+                eventCount.incrementAndGet();
+                assertTrue(cursor.hasField("value"));
+                assertFalse(cursor.hasField("missing"));
+                valueSum.addAndGet(cursor.getLong("value"));
+            });
+
+            parser.run();
+
+            assertEquals(2, eventCount.get());
+            assertEquals(30, valueSum.get());
+        }
+    }
+
+    @Test
+    void testTypedAndCursorHandlers() throws Exception {
+        Path recording = TestRecordings.record(() -> {
+            for (int i = 0; i < 3; i++) {
+                new CpSampleEvent(i, Thread.currentThread(), String.class).commit();
+            }
+        }, CpSampleEvent.class);
+
+        try (JafarParser parser = JafarParser.open(recording.toString())) {
+            List<Integer> typedValues = Collections.synchronizedList(new ArrayList<>());
+            List<Long> cursorValues = Collections.synchronizedList(new ArrayList<>());
+            parser.handle(CpSampleView.class, (event, ctl) -> typedValues.add(event.value()));
+            // the cursor handler is dispatched after the typed handler has consumed the event
+            parser.handleCursor("jafar.CpSample", (cursor, ctl) -> cursorValues.add(cursor.getLong("value")));
+
+            parser.run();
+
+            assertEquals(List.of(0, 1, 2), typedValues);
+            assertEquals(List.of(0L, 1L, 2L), cursorValues);
+        }
+    }
+
+    @Test
+    void testRecordingSummary() throws Exception {
+        Path tmpFile = TestRecordings.write(rec -> {
+            rec.registerEventType(ParserEvent.class);
+            rec.writeEvent(new ParserEvent(10));
+            rec.writeEvent(new ParserEvent(20));
+            rec.writeEvent(new ParserEvent(30));
+        });
+
+        RecordingSummary summary = RecordingSummary.scan(tmpFile);
+        RecordingSummary.TypeSummary type = summary.getTypes().get("datadog.ParserEvent");
+        assertNotNull(type);
+        assertEquals(3, type.count());
+        assertTrue(type.bytes() > 0);
+        assertFalse(summary.getChunks().isEmpty());
+        assertTrue(summary.getEndNanos() >= summary.getStartNanos());
+    }
+
+    @Test
+    void testRetainedEventResolution() throws Exception {
+        Path recording = TestRecordings.testAp();
+
+        List<ExecutionSampleEvent> events = Collections.synchronizedList(new ArrayList<>());
+        try (JafarParser p = JafarParser.open(recording.toString())) {
+            p.handle(ExecutionSampleEvent.class, (event, ctl) -> {
+                if (events.size() < 1000) {
+                    events.add(event);
+                }
+            });
+            p.run();
+        }
+
+        assertFalse(events.isEmpty());
+        // the constant pool references are resolved concurrently, after the chunks were processed
+        assertTrue(events.parallelStream().allMatch(event -> event.eventThread() != null && event.stackTrace().frames().length > 0));
+    }
+
+    @Test
+    void testInternedConstants() throws Exception {
+        Path recording = TestRecordings.testAp();
+
+        Map<String, Set<JFRThread>> threads = new ConcurrentHashMap<>();
+        // the interning is opt-in
+        System.setProperty("io.jafar.parser.intern_constants", "true");
+        try (JafarParser p = JafarParser.open(recording.toString())) {
+            p.handle(ExecutionSampleEvent.class, (event, ctl) -> {
+                JFRThread thread = event.eventThread();
+                String key = thread.javaThreadId() + ":" + thread.javaName() + ":" + thread.osThreadId() + ":" + thread.osName();
+                threads.computeIfAbsent(key, k -> Collections.newSetFromMap(Collections.synchronizedMap(new IdentityHashMap<>()))).add(thread);
+            });
+            p.run();
+        } finally {
+            System.clearProperty("io.jafar.parser.intern_constants");
+        }
+
+        assertFalse(threads.isEmpty());
+        // the same thread resolves to the same instance in all the chunks
+        threads.values().forEach(instances -> assertEquals(1, instances.size()));
+        // the canonical instances are detached from their chunk and stay usable after the parser is closed
+        threads.forEach((key, instances) -> {
+            JFRThread thread = instances.iterator().next();
+            assertEquals(key, thread.javaThreadId() + ":" + thread.javaName() + ":" + thread.osThreadId() + ":" + thread.osName());
+        });
+    }
+
+    @Test
+    void testConstantPoolStats() throws Exception {
+        Path recording = TestRecordings.testAp();
+
+        try (JafarParser p = JafarParser.open(recording.toString())) {
+            AtomicLong eventCount = new AtomicLong(0);
+            p.handle(ExecutionSampleEvent.class, (event, ctl) -> {
+                assertNotNull(event.stackTrace());
+                eventCount.incrementAndGet();
+            });
+            p.run();
+
+            ConstantPoolStats stats = p.getConstantPoolStats().get("jdk.types.StackTrace");
+            assertNotNull(stats);
+            assertEquals(eventCount.get(), stats.hits() + stats.misses());
+            assertTrue(stats.cached() > 0);
+            assertEquals(0, stats.evictions());
+        }
+    }
+
+    @Test
+    void testStringViews() throws Exception {
+        Path recording = TestRecordings.testAp();
+
+        AtomicLong viewCount = new AtomicLong(0);
+        try (JafarParser p = JafarParser.open(recording.toString())) {
+            p.handle(ExecutionSampleView.class, (event, ctl) -> {
+                Utf8View name = event.eventThread().javaName();
+                if (name == null) {
+                    return;
+                }
+                String value = name.toString();
+                assertEquals(value.length(), name.length());
+                assertEquals(value.hashCode(), name.hashCode());
+                assertTrue(name.contentEquals(value));
+                assertTrue(name.startsWith(value.substring(0, Math.min(3, value.length()))));
+                assertFalse(name.startsWith(value + "_"));
+                viewCount.incrementAndGet();
+            });
+            p.run();
+        }
+        assertTrue(viewCount.get() > 0);
+    }
+
+    @Test
+    void testInlineStringViews() throws Exception {
+        List<String> values = Arrays.asList("main", "Zürich", "東京", "", null, "java.util.concurrent.ThreadPoolExecutor$Worker");
+        Path recording = TestRecordings.record(() -> {
+            for (String value : values) {
+                new StringSampleEvent(value).commit();
+            }
+        }, StringSampleEvent.class);
+
+        List<String> decoded = Collections.synchronizedList(new ArrayList<>());
+        try (JafarParser p = JafarParser.open(recording.toString())) {
+            p.handle(StringSampleView.class, (event, ctl) -> {
+                // the inline strings are read by the generated deserializer as views over the recording data
+                Utf8View text = event.text();
+                if (text == null) {
+                    decoded.add(null);
+                    return;
+                }
+                String value = text.toString();
+                assertEquals(value.length(), text.length());
+                assertEquals(value.hashCode(), text.hashCode());
+                assertEquals(Utf8View.of(value), text);
+                assertTrue(text.contentEquals(value));
+                decoded.add(value);
+            });
+            p.run();
+        }
+        assertEquals(values, decoded);
+    }
+
+    @Test
+    void testTimeWindow() throws Exception {
+        Path recording = TestRecordings.testAp();
+        RecordingSummary summary = RecordingSummary.scan(recording);
+
+        AtomicLong eventCount = new AtomicLong(0);
+        try (JafarParser p = JafarParser.open(recording.toString())) {
+            p.handle(ExecutionSampleEvent.class, (event, ctl) -> eventCount.incrementAndGet());
+            // the first windowed run walks the chunks fully, the second one uses the time index built by the first one
+            for (int i = 0; i < 2; i++) {
+                eventCount.set(0);
+                p.run(summary.getStartNanos(), summary.getEndNanos());
+                assertEquals(summary.getTypes().get("jdk.ExecutionSample").count(), eventCount.get());
+
+                eventCount.set(0);
+                p.run(summary.getEndNanos() + 1, Long.MAX_VALUE);
+                assertEquals(0, eventCount.get());
+            }
+        }
+    }
+
+    @Test
+    void testRewriter() throws Exception {
+        Path input = TestRecordings.testAp();
+
+        Path output = TestRecordings.tempFile();
+
+        JfrRewriter.Result result = JfrRewriter.rewrite(input, output, "jdk.ExecutionSample"::equals);
+        assertTrue(result.size() < Files.size(input));
+        assertEquals(Files.size(output), result.size());
+
+        RecordingSummary summary = RecordingSummary.scan(output);
+        assertEquals(Set.of("jdk.ExecutionSample"), summary.getTypes().keySet());
+        assertEquals(RecordingSummary.scan(input).getTypes().get("jdk.ExecutionSample").count(), result.events());
+        // the single checkpoint event of each chunk carries the type bits of all the replaced ones
+        assertEquals(checkpointTypes(input), checkpointTypes(output));
+
+        AtomicLong eventCount = new AtomicLong(0);
+        try (JafarParser p = JafarParser.open(output.toString())) {
+            p.handle(ExecutionSampleEvent.class, (event, ctl) -> {
+                // the referenced constant pool entries are kept
+                assertNotNull(event.eventThread());
+                assertTrue(event.stackTrace().frames().length > 0);
+                eventCount.incrementAndGet();
+            });
+            p.run();
+        }
+        assertEquals(result.events(), eventCount.get());
+    }
+
+    /**
+     * @return the union of the checkpoint event type bits per chunk
+     */
+    private static Map<Integer, Integer> checkpointTypes(Path recording) throws Exception {
+        Map<Integer, Integer> types = new ConcurrentHashMap<>();
+        try (StreamingChunkParser parser = new StreamingChunkParser()) {
+            parser.parse(recording, new ChunkParserListener() {
+                @Override
+                public boolean onMetadata(MetadataEvent metadata) {
+                    // the constant pools can be read only with the deserializers (skippers) bound
+                    metadata.getContext().bindDeserializers();
+                    return true;
+                }
+
+                @Override
+                public boolean onCheckpoint(CheckpointEvent checkpoint) {
+                    types.merge(checkpoint.getContext().getChunkIndex(), checkpoint.type, (a, b) -> a | b);
+                    return true;
+                }
+            });
+        }
+        return new TreeMap<>(types);
+    }
+
+    @Test
+    void testRewriterReadBack() throws Exception {
+        Path recorded = TestRecordings.record(() -> {
+            // the repeated mid-length strings are written to the string constant pool
+            for (int i = 0; i < 3; i++) {
+                for (String text : Arrays.asList("main", "Zürich", "東京", "", "java.util.concurrent.ThreadPoolExecutor$Worker")) {
+                    new StringSampleEvent(text).commit();
+                }
+            }
+        }, StringSampleEvent.class);
+        // the JDK reads the rewritten recording and sees the very same events
+        assertRewrittenEvents(recorded, "jafar.StringSample");
+        assertRewrittenEvents(TestRecordings.testAp(), "jdk.ExecutionSample");
+    }
+
+    @Test
+    void testSplitAndConcat() throws Exception {
+        Path input = TestRecordings.testAp();
+        Path dir = Files.createTempDirectory("split");
+
+        List<JfrChunks.Chunk> chunks = JfrChunks.list(input);
+        assertFalse(chunks.isEmpty());
+
+        List<Path> parts = JfrChunks.splitByCount(input, dir, 1);
+        assertEquals(chunks.size(), parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            assertEquals(chunks.get(i).size(), Files.size(parts.get(i)));
+            parts.get(i).toFile().deleteOnExit();
+        }
+
+        Path merged = dir.resolve("merged.jfr");
+        merged.toFile().deleteOnExit();
+        JfrChunks.concat(parts, merged);
+        assertEquals(-1, Files.mismatch(input, merged));
+    }
+
+    @Test
+    void testStackTraceAggregation() throws Exception {
+        Path recording = TestRecordings.testAp();
+
+        AtomicLong withStack = new AtomicLong(0);
+        try (JafarParser p = JafarParser.open(recording.toString())) {
+            p.handle(ExecutionSampleEvent.class, (event, ctl) -> {
+                if (event.stackTrace() != null) {
+                    withStack.incrementAndGet();
+                }
+            });
+            p.run();
+        }
+
+        StackTraceAggregator stacks = StackTraceAggregator.aggregate(recording, "jdk.ExecutionSample");
+        assertEquals(withStack.get(), stacks.getTotalWeight());
+        Map<String, Long> collapsed = stacks.toCollapsed();
+        assertEquals(stacks.getStackCount(), collapsed.size());
+        assertEquals(stacks.getTotalWeight(), collapsed.values().stream().mapToLong(Long::longValue).sum());
+
+        StringBuilder sb = new StringBuilder();
+        stacks.writeCollapsed(sb);
+        assertEquals(collapsed.size(), sb.toString().lines().count());
+
+        // the very same stacks as read by the JDK
+        assertEquals(collapsedStacks(recording, "jdk.ExecutionSample"), collapsed);
+    }
+
+    @Test
+    void testStackTraceAggregationFrames() throws Exception {
+        Path recording = TestRecordings.record(() -> {
+            for (int i = 0; i < 3; i++) {
+                commitStringSample("sample");
+            }
+        }, StringSampleEvent.class);
+
+        Map<String, Long> collapsed = StackTraceAggregator.aggregate(recording, "jafar.StringSample").toCollapsed();
+        assertEquals(1, collapsed.size());
+        String stack = collapsed.keySet().iterator().next();
+        assertEquals(Map.of(stack, 3L), collapsed);
+        // the root frame first, the top frame last
+        assertTrue(stack.contains(";io.jafar.parser.TestRecordings.record;"), stack);
+        assertTrue(stack.endsWith(";io.jafar.parser.JafarParserTest.commitStringSample"), stack);
+        assertEquals(collapsedStacks(recording, "jafar.StringSample"), collapsed);
+    }
+
+    @Test
+    void testEventQuery() throws Exception {
+        Path recording = TestRecordings.testAp();
+
+        Map<String, Long> perThread = new ConcurrentHashMap<>();
+        try (JafarParser p = JafarParser.open(recording.toString())) {
+            p.handle(ExecutionSampleEvent.class, (event, ctl) -> {
+                String name = event.eventThread() != null ? event.eventThread().javaName() : null;
+                perThread.merge(String.valueOf(name), 1L, Long::sum);
+            });
+            p.run();
+        }
+
+        List<EventQuery.Group> groups = EventQuery.from("jdk.ExecutionSample")
+                .groupBy(EventQuery.Key.field("sampledThread.javaName"))
+                .run(recording);
+        Map<String, Long> queried = new HashMap<>();
+        for (EventQuery.Group group : groups) {
+            assertEquals(1, group.key().size());
+            queried.put(String.valueOf(group.key().getFirst()), group.count());
+        }
+        assertEquals(perThread, queried);
+        for (int i = 1; i < groups.size(); i++) {
+            assertTrue(groups.get(i - 1).count() >= groups.get(i).count());
+        }
+
+        long total = perThread.values().stream().mapToLong(Long::longValue).sum();
+        List<EventQuery.Group> byFrame = EventQuery.from("jdk.ExecutionSample")
+                .groupBy(EventQuery.Key.topFrame())
+                .aggregate(EventQuery.Aggregate.min("startTime"), EventQuery.Aggregate.max("startTime"), EventQuery.Aggregate.sum("nonExistent"))
+                .run(recording);
+        assertEquals(total, byFrame.stream().mapToLong(EventQuery.Group::count).sum());
+        for (EventQuery.Group group : byFrame) {
+            assertTrue((Long) group.values().get(0) <= (Long) group.values().get(1));
+            assertNull(group.values().get(2));
+        }
+
+        // the very same stacks as read by the JDK
+        Map<String, Long> expectedStacks = collapsedStacks(recording, "jdk.ExecutionSample");
+        Map<String, Long> expectedFrames = new HashMap<>();
+        expectedStacks.forEach((stack, count) -> expectedFrames.merge(stack.substring(stack.lastIndexOf(';') + 1), count, Long::sum));
+        assertEquals(expectedFrames, groupCounts(byFrame));
+        assertEquals(expectedStacks, groupCounts(EventQuery.from("jdk.ExecutionSample").groupBy(EventQuery.Key.stackTrace()).run(recording)));
+    }
+
+    @Test
+    void testRecordingDiff() throws Exception {
+        Path recording = TestRecordings.testAp();
+
+        List<EventQuery.Group> groups = RecordingDiff.cpuStacks().run(recording);
+        List<RecordingDiff.Delta> deltas = RecordingDiff.compare(recording, recording, RecordingDiff.cpuStacks());
+        assertEquals(groups.size(), deltas.size());
+        double totalShare = 0;
+        for (RecordingDiff.Delta delta : deltas) {
+            assertEquals(0, delta.delta());
+            assertEquals(0, delta.shareDelta());
+            totalShare += delta.baselineShare();
+        }
+        assertEquals(1, totalShare, 0.000001);
+        assertEquals(groups.stream().mapToLong(EventQuery.Group::count).sum(), deltas.stream().mapToDouble(RecordingDiff.Delta::candidate).sum());
+    }
+
+    @Test
+    void testRecordingDiffOrder() throws Exception {
+        Path baseline = recordStringSamples(Map.of("a", 6, "b", 3, "c", 1));
+        Path candidate = recordStringSamples(Map.of("a", 2, "b", 1, "d", 7));
+
+        EventQuery query = EventQuery.from("jafar.StringSample").groupBy(EventQuery.Key.field("text"));
+        List<RecordingDiff.Delta> deltas = RecordingDiff.compare(baseline, candidate, query);
+        // the largest absolute share change first
+        assertEquals(List.of("d", "a", "b", "c"), deltas.stream().map(delta -> delta.key().getFirst()).toList());
+        double[][] expected = {
+                // baseline, candidate, baseline share, candidate share
+                {0, 7, 0, 0.7},
+                {6, 2, 0.6, 0.2},
+                {3, 1, 0.3, 0.1},
+                {1, 0, 0.1, 0}
+        };
+        for (int i = 0; i < expected.length; i++) {
+            RecordingDiff.Delta delta = deltas.get(i);
+            assertEquals(expected[i][0], delta.baseline());
+            assertEquals(expected[i][1], delta.candidate());
+            assertEquals(expected[i][2], delta.baselineShare(), 0.000001);
+            assertEquals(expected[i][3], delta.candidateShare(), 0.000001);
+            assertEquals(expected[i][3] - expected[i][2], delta.shareDelta(), 0.000001);
+        }
+
+        // both failures are reported
+        Path missing = baseline.resolveSibling(baseline.getFileName() + ".missing");
+        IOException failure = assertThrows(IOException.class, () -> RecordingDiff.compare(missing, missing, query));
+        assertEquals(1, failure.getSuppressed().length);
+
+        // a histogram weight is rejected before any recording is read
+        EventQuery histogram = query.aggregate(EventQuery.Aggregate.histogram("duration"));
+        assertThrows(IllegalArgumentException.class, () -> RecordingDiff.compare(missing, missing, histogram));
+    }
+
     @Test
     void testRealFile() throws Exception {
-        URI uri = JafarParserTest.class.getClassLoader().getResource("test-ap.jfr").toURI();
+        Path recording = TestRecordings.testAp();
 
-        try (JafarParser p = JafarParser.open(new File(uri).getAbsolutePath())) {
+        try (JafarParser p = JafarParser.open(recording.toString())) {
             AtomicLong eventCount = new AtomicLong(0);
             HandlerRegistration<ExecutionSampleEvent> h1 = p.handle(ExecutionSampleEvent.class, (event, ctl) -> {
                 assertNotNull(event.eventThread());
@@ -72,4 +692,76 @@ public class JafarParserTest {
             });
         }
     }
+
+    private static void assertRewrittenEvents(Path input, String eventType) throws Exception {
+        Path output = TestRecordings.tempFile();
+        JfrRewriter.Result result = JfrRewriter.rewrite(input, output, eventType::equals);
+        List<String> expected = readEvents(input, eventType);
+        assertFalse(expected.isEmpty());
+        assertEquals(expected.size(), result.events());
+        assertEquals(expected, readEvents(output, eventType));
+    }
+
+    private static List<String> readEvents(Path recording, String eventType) throws Exception {
+        List<String> events = new ArrayList<>();
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                RecordedEvent event = file.readEvent();
+                if (event.getEventType().getName().equals(eventType)) {
+                    // all the fields, including the resolved thread and stack trace
+                    events.add(event.toString());
+                }
+            }
+        }
+        return events;
+    }
+
+    /**
+     * @return the counts of the groups with a non-null single key
+     */
+    private static Map<String, Long> groupCounts(List<EventQuery.Group> groups) {
+        Map<String, Long> counts = new HashMap<>();
+        for (EventQuery.Group group : groups) {
+            if (group.key().getFirst() != null) {
+                counts.put((String) group.key().getFirst(), group.count());
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @param counts the number of the string samples to record, by the text
+     */
+    private static Path recordStringSamples(Map<String, Integer> counts) throws Exception {
+        return TestRecordings.record(() -> counts.forEach((text, count) -> {
+            for (int i = 0; i < count; i++) {
+                new StringSampleEvent(text).commit();
+            }
+        }), StringSampleEvent.class);
+    }
+
+    private static void commitStringSample(String text) {
+        new StringSampleEvent(text).commit();
+    }
+
+    /**
+     * @return the collapsed stacks of the given events, as read by {@linkplain RecordingFile}
+     */
+    private static Map<String, Long> collapsedStacks(Path recording, String eventType) throws Exception {
+        Map<String, Long> stacks = new HashMap<>();
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                RecordedEvent event = file.readEvent();
+                if (event.getEventType().getName().equals(eventType) && event.getStackTrace() != null) {
+                    List<String> frames = new ArrayList<>();
+                    for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+                        frames.add(frame.getMethod().getType().getName().replace('/', '.') + "." + frame.getMethod().getName());
+                    }
+                    Collections.reverse(frames);
+                    stacks.merge(String.join(";", frames), 1L, Long::sum);
+                }
+            }
+        }
+        return stacks;
+    }
 }
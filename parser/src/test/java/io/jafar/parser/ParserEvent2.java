@@ -0,0 +1,8 @@
+package io.jafar.parser;
+
+import io.jafar.parser.api.JfrType;
+
+@JfrType("datadog.ParserEvent")
+public interface ParserEvent2 extends BaseEvent {
+    int value();
+}
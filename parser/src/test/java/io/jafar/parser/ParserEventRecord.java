@@ -0,0 +1,7 @@
+package io.jafar.parser;
+
+import io.jafar.parser.api.JfrType;
+
+@JfrType("datadog.ParserEvent")
+public record ParserEventRecord(int value) {
+}
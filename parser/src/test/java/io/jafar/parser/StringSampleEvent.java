@@ -0,0 +1,16 @@
+package io.jafar.parser;
+
+import jdk.jfr.Event;
+import jdk.jfr.Name;
+
+/**
+ * A JDK event with an inline string field.
+ */
+@Name("jafar.StringSample")
+public class StringSampleEvent extends Event {
+    String text;
+
+    public StringSampleEvent(String text) {
+        this.text = text;
+    }
+}
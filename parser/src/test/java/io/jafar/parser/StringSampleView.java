@@ -0,0 +1,9 @@
+package io.jafar.parser;
+
+import io.jafar.parser.api.JfrType;
+import io.jafar.parser.api.Utf8View;
+
+@JfrType("jafar.StringSample")
+public interface StringSampleView {
+    Utf8View text();
+}
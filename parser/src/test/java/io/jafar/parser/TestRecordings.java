@@ -0,0 +1,78 @@
+package io.jafar.parser;
+
+import io.jafar.TestJfrRecorder;
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+import org.openjdk.jmc.flightrecorder.writer.api.Recordings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * The recordings used by the tests.
+ */
+public final class TestRecordings {
+    @FunctionalInterface
+    public interface Action {
+        void run() throws Exception;
+    }
+
+    private TestRecordings() {}
+
+    /**
+     * @return the async-profiler recording bundled with the tests
+     */
+    public static Path testAp() throws URISyntaxException {
+        return new File(TestRecordings.class.getClassLoader().getResource("test-ap.jfr").toURI()).toPath();
+    }
+
+    /**
+     * @return a new temporary file, deleted on exit
+     */
+    public static Path tempFile() throws IOException {
+        Path file = Files.createTempFile("recording", ".jfr");
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Writes a synthetic recording with the JMC writer.
+     * @param writer registers the types and writes the events
+     * @return the recording file
+     */
+    public static Path write(Consumer<TestJfrRecorder> writer) throws Exception {
+        ByteArrayOutputStream recordingStream = new ByteArrayOutputStream();
+        try (org.openjdk.jmc.flightrecorder.writer.api.Recording recording = Recordings.newRecording(recordingStream)) {
+            writer.accept(new TestJfrRecorder(recording));
+        }
+        Path file = tempFile();
+        Files.write(file, recordingStream.toByteArray());
+        return file;
+    }
+
+    /**
+     * Records the events committed by the given action with the JDK flight recorder.
+     * @param action commits the events
+     * @param eventTypes the event types to enable
+     * @return the recording file
+     */
+    @SafeVarargs
+    public static Path record(Action action, Class<? extends Event>... eventTypes) throws Exception {
+        Path file = tempFile();
+        try (Recording recording = new Recording()) {
+            for (Class<? extends Event> eventType : eventTypes) {
+                recording.enable(eventType).withoutThreshold();
+            }
+            recording.start();
+            action.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        return file;
+    }
+}
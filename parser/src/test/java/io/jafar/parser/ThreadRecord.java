@@ -0,0 +1,7 @@
+package io.jafar.parser;
+
+import io.jafar.parser.api.JfrType;
+
+@JfrType("java.lang.Thread")
+public record ThreadRecord(String javaName, long javaThreadId) {
+}
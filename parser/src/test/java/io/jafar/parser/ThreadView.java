@@ -0,0 +1,9 @@
+package io.jafar.parser;
+
+import io.jafar.parser.api.JfrType;
+import io.jafar.parser.api.Utf8View;
+
+@JfrType("java.lang.Thread")
+public interface ThreadView {
+    Utf8View javaName();
+}
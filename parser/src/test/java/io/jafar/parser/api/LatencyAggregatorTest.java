@@ -0,0 +1,103 @@
+package io.jafar.parser.api;
+
+import io.jafar.parser.TestRecordings;
+import jdk.jfr.Event;
+import jdk.jfr.Name;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LatencyAggregatorTest {
+    private static final String EVENT_TYPE = "jafar.LatencySample";
+    private static final String WORKER = "latency-worker";
+
+    @Name(EVENT_TYPE)
+    static class LatencySampleEvent extends Event {
+    }
+
+    @Test
+    void testRecording() throws Exception {
+        Path recording = TestRecordings.record(() -> {
+            Thread worker = new Thread(() -> emit(20, 50_000), WORKER);
+            worker.start();
+            emit(10, 10_000);
+            worker.join();
+        }, LatencySampleEvent.class);
+
+        Map<LatencyAggregator.Key, List<Long>> expected = durations(recording);
+        String main = Thread.currentThread().getName();
+        assertEquals(Set.of(new LatencyAggregator.Key(EVENT_TYPE, main), new LatencyAggregator.Key(EVENT_TYPE, WORKER)), expected.keySet());
+
+        // the types not present in the recording are ignored
+        Map<LatencyAggregator.Key, LogLinearHistogram> byThread = LatencyAggregator.aggregate(recording, Set.of(EVENT_TYPE, "jdk.ExecutionSample"), true);
+        assertEquals(expected.keySet(), byThread.keySet());
+        assertEquals(10, byThread.get(new LatencyAggregator.Key(EVENT_TYPE, main)).getCount());
+        assertEquals(20, byThread.get(new LatencyAggregator.Key(EVENT_TYPE, WORKER)).getCount());
+        for (LatencyAggregator.Key key : expected.keySet()) {
+            assertHistogram(expected.get(key), byThread.get(key));
+        }
+
+        List<Long> all = new ArrayList<>();
+        expected.values().forEach(all::addAll);
+        Map<LatencyAggregator.Key, LogLinearHistogram> byType = LatencyAggregator.aggregate(recording, Set.of(EVENT_TYPE), false);
+        assertEquals(Set.of(new LatencyAggregator.Key(EVENT_TYPE, null)), byType.keySet());
+        assertHistogram(all, byType.get(new LatencyAggregator.Key(EVENT_TYPE, null)));
+    }
+
+    /**
+     * Commits the events with the durations growing by the given step.
+     */
+    private static void emit(int count, long stepNanos) {
+        for (int i = 1; i <= count; i++) {
+            LatencySampleEvent event = new LatencySampleEvent();
+            event.begin();
+            long until = System.nanoTime() + i * stepNanos;
+            while (System.nanoTime() < until) {
+                Thread.onSpinWait();
+            }
+            event.commit();
+        }
+    }
+
+    /**
+     * @return the event durations, in nanoseconds, by the event thread as read by {@linkplain RecordingFile}
+     */
+    private static Map<LatencyAggregator.Key, List<Long>> durations(Path recording) throws Exception {
+        Map<LatencyAggregator.Key, List<Long>> durations = new HashMap<>();
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                RecordedEvent event = file.readEvent();
+                if (event.getEventType().getName().equals(EVENT_TYPE)) {
+                    LatencyAggregator.Key key = new LatencyAggregator.Key(EVENT_TYPE, event.getThread().getJavaName());
+                    durations.computeIfAbsent(key, k -> new ArrayList<>()).add(event.getDuration().toNanos());
+                }
+            }
+        }
+        return durations;
+    }
+
+    private static void assertHistogram(List<Long> durations, LogLinearHistogram histogram) {
+        long[] values = durations.stream().mapToLong(Long::longValue).sorted().toArray();
+        double maxError = 1d / (1 << (LogLinearHistogram.DEFAULT_PRECISION - 1));
+        assertEquals(values.length, histogram.getCount());
+        // the tick to nanosecond conversion may differ in rounding
+        assertEquals(values[0], histogram.getMin(), 1);
+        assertEquals(values[values.length - 1], histogram.getMax(), 1);
+        for (double percentile : new double[]{1, 50, 90, 99, 100}) {
+            long expected = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long actual = histogram.getValueAtPercentile(percentile);
+            assertTrue(actual >= expected - 1 && actual - expected <= expected * maxError + 1,
+                    "p" + percentile + ": " + actual + " vs " + expected);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package io.jafar.parser.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LogLinearHistogramTest {
+    @Test
+    void testSmallValuesAreExact() {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(100, histogram.getMax());
+        assertEquals(50.5, histogram.getMean());
+        assertEquals(50, histogram.getValueAtPercentile(50));
+        assertEquals(99, histogram.getValueAtPercentile(99));
+        assertEquals(100, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    void testRelativeErrorIsBounded() {
+        int precision = LogLinearHistogram.DEFAULT_PRECISION;
+        double maxError = 1d / (1 << (precision - 1));
+        LogLinearHistogram histogram = new LogLinearHistogram(precision);
+        Random random = new Random(42);
+        long[] values = new long[10_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 40);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double percentile : new double[]{1, 25, 50, 90, 99, 99.9}) {
+            long expected = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long actual = histogram.getValueAtPercentile(percentile);
+            assertTrue(actual >= expected && actual - expected <= expected * maxError,
+                    "p" + percentile + ": " + actual + " vs " + expected);
+        }
+    }
+
+    @Test
+    void testMerge() {
+        LogLinearHistogram first = new LogLinearHistogram();
+        LogLinearHistogram second = new LogLinearHistogram();
+        first.record(10);
+        second.record(1_000_000, 3);
+
+        first.merge(second);
+        assertEquals(4, first.getCount());
+        assertEquals(10, first.getMin());
+        assertEquals(1_000_000, first.getMax());
+        assertEquals(1_000_000, first.getValueAtPercentile(50));
+
+        assertThrows(IllegalArgumentException.class, () -> first.merge(new LogLinearHistogram(10)));
+    }
+}
@@ -0,0 +1,137 @@
+package io.jafar.parser.internal_api;
+
+import io.jafar.parser.BaseEvent;
+import io.jafar.parser.CpSampleEvent;
+import io.jafar.parser.CpSampleView;
+import io.jafar.parser.TestRecordings;
+import io.jafar.parser.api.JafarParser;
+import io.jafar.parser.internal_api.metadata.MetadataClass;
+import io.jafar.parser.internal_api.metadata.MetadataEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DeserializerClassCacheTest {
+    private static final FileTime OLD = FileTime.fromMillis(0);
+
+    private Path cacheDir;
+    private Path recording;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        cacheDir = Files.createTempDirectory("deserializers");
+        System.setProperty("io.jafar.parser.deserializer_cache", cacheDir.toString());
+        Thread owner = Thread.currentThread();
+        recording = TestRecordings.record(() -> {
+            for (int i = 0; i < 3; i++) {
+                new CpSampleEvent(i, owner, String.class).commit();
+            }
+        }, CpSampleEvent.class);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        System.clearProperty("io.jafar.parser.deserializer_cache");
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(cacheDir);
+    }
+
+    @Test
+    void testStoreAndLoad() throws Exception {
+        // the first run generates the deserializers and stores them
+        assertEquals(List.of(0, 1, 2), parseValues());
+        Map<String, FileTime> stored = cacheFiles();
+        assertFalse(stored.isEmpty());
+        for (String name : stored.keySet()) {
+            assertTrue(name.endsWith(".class"), name);
+        }
+        for (Path file : stored.keySet().stream().map(cacheDir::resolve).toList()) {
+            Files.setLastModifiedTime(file, OLD);
+        }
+
+        // the second run, with fresh parser contexts, finds all the deserializers under the same keys and does not store any
+        assertEquals(List.of(0, 1, 2), parseValues());
+        Map<String, FileTime> reused = cacheFiles();
+        assertEquals(stored.keySet(), reused.keySet());
+        for (FileTime time : reused.values()) {
+            assertEquals(OLD, time);
+        }
+    }
+
+    @Test
+    void testFormatVersion() throws Exception {
+        AtomicReference<MetadataClass> clz = new AtomicReference<>();
+        try (StreamingChunkParser parser = new StreamingChunkParser()) {
+            parser.parse(recording, new ChunkParserListener() {
+                @Override
+                public boolean onMetadata(MetadataEvent metadata) {
+                    clz.compareAndSet(null, metadata.getClasses().stream().filter(c -> c.getName().equals("jafar.CpSample")).findFirst().orElse(null));
+                    return false;
+                }
+            });
+        }
+        assertNotNull(clz.get());
+
+        List<Class<?>> targets = List.of(CpSampleView.class);
+        String key = DeserializerClassCache.key(clz.get(), targets, null);
+        assertEquals(key, DeserializerClassCache.key(clz.get(), targets, null));
+        // a bumped format version never hits the entries stored by the previous one
+        assertNotEquals(key, DeserializerClassCache.key(Integer.MAX_VALUE, clz.get(), targets, null));
+        // neither does a different base layout
+        assertNotEquals(key, DeserializerClassCache.key(clz.get(), targets, Object.class));
+    }
+
+    @Test
+    void testStoreFailure() throws Exception {
+        // the entry can not replace a directory, the temporary file must not be left behind
+        Files.createDirectory(cacheDir.resolve("blocked.class"));
+        Files.writeString(cacheDir.resolve("blocked.class").resolve("content"), "x");
+        DeserializerClassCache.store(cacheDir, "blocked", new byte[] {1, 2, 3});
+        assertEquals(Map.of("blocked.class", Files.getLastModifiedTime(cacheDir.resolve("blocked.class"))), cacheFiles());
+        Files.delete(cacheDir.resolve("blocked.class").resolve("content"));
+    }
+
+    private List<Integer> parseValues() throws Exception {
+        List<Integer> values = Collections.synchronizedList(new ArrayList<>());
+        try (JafarParser parser = JafarParser.open(recording.toString())) {
+            // the base layout name is a part of the key, so it must be stable as well
+            parser.handle(BaseEvent.class, (event, ctl) -> {});
+            parser.handle(CpSampleView.class, (event, ctl) -> values.add(event.value()));
+            parser.run();
+        }
+        Collections.sort(values);
+        return values;
+    }
+
+    private Map<String, FileTime> cacheFiles() throws IOException {
+        Map<String, FileTime> files = new TreeMap<>();
+        try (Stream<Path> list = Files.list(cacheDir)) {
+            for (Path file : list.toList()) {
+                files.put(file.getFileName().toString(), Files.getLastModifiedTime(file));
+            }
+        }
+        return files;
+    }
+}
@@ -0,0 +1,90 @@
+package io.jafar.parser.internal_api;
+
+import io.jafar.parser.MutableConstantPool;
+import io.jafar.parser.TestRecordings;
+import io.jafar.parser.internal_api.metadata.MetadataEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParallelIndexingTest {
+    @AfterEach
+    void tearDown() {
+        System.clearProperty("io.jafar.parser.parallel_indexing_threshold");
+    }
+
+    @Test
+    void testSameConstantPools() throws Exception {
+        Path recording = TestRecordings.testAp();
+
+        System.setProperty("io.jafar.parser.parallel_indexing_threshold", String.valueOf(Long.MAX_VALUE));
+        Map<Integer, AtomicInteger> checkpoints = new ConcurrentHashMap<>();
+        Map<Integer, Map<Long, List<String>>> sequential = constantPools(recording, checkpoints);
+
+        // any chunk with more than one checkpoint event is indexed in parallel
+        System.setProperty("io.jafar.parser.parallel_indexing_threshold", "0");
+        Map<Integer, Map<Long, List<String>>> parallel = constantPools(recording, new ConcurrentHashMap<>());
+
+        assertTrue(checkpoints.values().stream().anyMatch(count -> count.get() > 1), "no chunk is indexed in parallel");
+        assertFalse(sequential.isEmpty());
+        assertEquals(sequential, parallel);
+    }
+
+    /**
+     * @param checkpoints receives the number of the checkpoint events per chunk
+     * @return the constant pool entry ids and offsets by the type id, per chunk
+     */
+    private static Map<Integer, Map<Long, List<String>>> constantPools(Path recording, Map<Integer, AtomicInteger> checkpoints) throws Exception {
+        Map<Integer, ParserContext> contexts = new ConcurrentHashMap<>();
+        try (StreamingChunkParser parser = new StreamingChunkParser()) {
+            parser.parse(recording, new ChunkParserListener() {
+                @Override
+                public boolean onChunkStart(int chunkIndex, ChunkHeader header, ParserContext context) {
+                    contexts.put(chunkIndex, context);
+                    return true;
+                }
+
+                @Override
+                public boolean onMetadata(MetadataEvent metadata) {
+                    // the constant pools can be read only with the deserializers (skippers) bound
+                    metadata.getContext().bindDeserializers();
+                    return true;
+                }
+
+                @Override
+                public boolean onCheckpoint(CheckpointEvent checkpoint) {
+                    checkpoints.computeIfAbsent(checkpoint.getContext().getChunkIndex(), k -> new AtomicInteger()).incrementAndGet();
+                    return true;
+                }
+            });
+        }
+
+        Map<Integer, Map<Long, List<String>>> pools = new TreeMap<>();
+        contexts.forEach((chunkIndex, context) -> {
+            Map<Long, List<String>> chunkPools = new TreeMap<>();
+            context.getConstantPools().pools().forEach(pool -> {
+                long[][] table = ((MutableConstantPool) pool).offsetTable();
+                List<String> entries = new ArrayList<>();
+                for (int i = 0; i < table[0].length; i++) {
+                    entries.add(table[0][i] + "@" + table[1][i]);
+                }
+                Collections.sort(entries);
+                chunkPools.put(((MutableConstantPool) pool).getTypeId(), entries);
+            });
+            pools.put(chunkIndex, chunkPools);
+        });
+        return pools;
+    }
+}
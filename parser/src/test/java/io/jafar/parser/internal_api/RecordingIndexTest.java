@@ -0,0 +1,201 @@
+package io.jafar.parser.internal_api;
+
+import io.jafar.parser.CpSampleEvent;
+import io.jafar.parser.CpSampleRecord;
+import io.jafar.parser.TestRecordings;
+import io.jafar.parser.ThreadRecord;
+import io.jafar.parser.api.JafarParser;
+import io.jafar.parser.internal_api.metadata.MetadataEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RecordingIndexTest {
+    private static final int EVENT_COUNT = 3;
+
+    private final List<Path> files = new ArrayList<>();
+    private Path recording;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        System.setProperty("io.jafar.parser.index", "true");
+        Thread owner = Thread.currentThread();
+        recording = TestRecordings.record(() -> {
+            for (int i = 0; i < EVENT_COUNT; i++) {
+                new CpSampleEvent(i, owner, String.class).commit();
+            }
+        }, CpSampleEvent.class);
+        files.add(recording);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        System.clearProperty("io.jafar.parser.index");
+        for (Path file : files) {
+            Files.deleteIfExists(RecordingIndex.indexPath(file));
+        }
+    }
+
+    @Test
+    void testWriteAndRead() throws Exception {
+        // the first full parse writes the index
+        assertNull(RecordingIndex.open(recording));
+        assertEquals(EVENT_COUNT, countEvents(recording));
+        RecordingIndex index = RecordingIndex.open(recording);
+        assertNotNull(index);
+        assertNotNull(index.chunk(1));
+
+        // the indexed parse visits only the events of the needed types and populates the constant pools from the index
+        assertEquals(0, countEvents(recording));
+        assertEquals(expectedRecords(), parseRecords(recording));
+    }
+
+    @Test
+    void testCheckpointListener() throws Exception {
+        countEvents(recording);
+        assertNotNull(RecordingIndex.open(recording));
+
+        // the indexed constant pools would be populated without reading the checkpoint events
+        AtomicInteger checkpoints = new AtomicInteger();
+        AtomicInteger events = new AtomicInteger();
+        try (StreamingChunkParser parser = new StreamingChunkParser()) {
+            parser.parse(recording, new ChunkParserListener() {
+                @Override
+                public boolean onMetadata(MetadataEvent metadata) {
+                    // the constant pools can be read only with the deserializers (skippers) bound
+                    metadata.getContext().bindDeserializers();
+                    return true;
+                }
+
+                @Override
+                public boolean onCheckpoint(CheckpointEvent checkpoint) {
+                    checkpoints.incrementAndGet();
+                    return true;
+                }
+
+                @Override
+                public boolean isEventTypeNeeded(long typeId, ParserContext context) {
+                    return false;
+                }
+
+                @Override
+                public boolean onEvent(long typeId, RecordingStream stream, long payloadSize) {
+                    events.incrementAndGet();
+                    return true;
+                }
+            });
+        }
+        assertTrue(checkpoints.get() > 0);
+        assertEquals(EVENT_COUNT, events.get());
+    }
+
+    @Test
+    void testStaleIndex() throws Exception {
+        countEvents(recording);
+        assertNotNull(RecordingIndex.open(recording));
+
+        Files.setLastModifiedTime(recording, FileTime.fromMillis(Files.getLastModifiedTime(recording).toMillis() + 1000));
+        assertNull(RecordingIndex.open(recording));
+        // walks all the events and writes a fresh index
+        assertEquals(EVENT_COUNT, countEvents(recording));
+        assertNotNull(RecordingIndex.open(recording));
+        assertEquals(0, countEvents(recording));
+    }
+
+    @Test
+    void testMetadataMismatch() throws Exception {
+        countEvents(recording);
+
+        // the same size and timestamp and the same chunk layout, only a field is renamed in the metadata
+        byte[] data = Files.readAllBytes(recording);
+        assertTrue(replace(data, "owner", "ownex") > 0);
+        Path other = TestRecordings.tempFile();
+        files.add(other);
+        Files.write(other, data);
+        Files.copy(RecordingIndex.indexPath(recording), RecordingIndex.indexPath(other));
+        Files.setLastModifiedTime(other, Files.getLastModifiedTime(recording));
+        assertNotNull(RecordingIndex.open(other));
+
+        // the indexed chunk does not match, so all the events are walked
+        assertEquals(EVENT_COUNT, countEvents(other));
+    }
+
+    /**
+     * Counts the events visited by a listener which does not need any event type.<br>
+     * Without an index all the events are visited; with an index none of them is.
+     */
+    private static int countEvents(Path recording) throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        try (StreamingChunkParser parser = new StreamingChunkParser()) {
+            parser.parse(recording, new ChunkParserListener() {
+                @Override
+                public boolean onMetadata(MetadataEvent metadata) {
+                    // the constant pools can be read only with the deserializers (skippers) bound
+                    metadata.getContext().bindDeserializers();
+                    return true;
+                }
+
+                @Override
+                public boolean isEventTypeNeeded(long typeId, ParserContext context) {
+                    return false;
+                }
+
+                @Override
+                public boolean onEvent(long typeId, RecordingStream stream, long payloadSize) {
+                    count.incrementAndGet();
+                    return true;
+                }
+            });
+        }
+        return count.get();
+    }
+
+    private static List<CpSampleRecord> parseRecords(Path recording) throws Exception {
+        List<CpSampleRecord> events = Collections.synchronizedList(new ArrayList<>());
+        try (JafarParser parser = JafarParser.open(recording.toString())) {
+            parser.handle(CpSampleRecord.class, (event, ctl) -> events.add(event));
+            parser.run();
+        }
+        return events;
+    }
+
+    private static List<CpSampleRecord> expectedRecords() {
+        Thread owner = Thread.currentThread();
+        List<CpSampleRecord> expected = new ArrayList<>();
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            expected.add(new CpSampleRecord(i, new ThreadRecord(owner.getName(), owner.threadId()), 0));
+        }
+        return expected;
+    }
+
+    private static int replace(byte[] data, String from, String to) {
+        byte[] pattern = from.getBytes(StandardCharsets.UTF_8);
+        byte[] replacement = to.getBytes(StandardCharsets.UTF_8);
+        int count = 0;
+        for (int i = 0; i + pattern.length <= data.length; i++) {
+            boolean found = true;
+            for (int j = 0; j < pattern.length && found; j++) {
+                found = data[i + j] == pattern[j];
+            }
+            if (found) {
+                System.arraycopy(replacement, 0, data, i, replacement.length);
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,124 @@
+package io.jafar.parser.internal_api;
+
+import io.jafar.parser.CpSampleEvent;
+import io.jafar.parser.CpSampleRecord;
+import io.jafar.parser.CpSampleView;
+import io.jafar.parser.ExecutionSampleEvent;
+import io.jafar.parser.TestRecordings;
+import io.jafar.parser.ThreadRecord;
+import io.jafar.parser.api.JafarParser;
+import io.jafar.parser.api.types.JFRStackFrame;
+import io.jafar.parser.api.types.JFRStackTrace;
+import io.jafar.parser.api.types.JFRThread;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TieredDeserializerTest {
+    private static final int EVENT_COUNT = 20;
+    private static final int THRESHOLD = 5;
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty("io.jafar.parser.tier_threshold");
+    }
+
+    @Test
+    void testPromotionWithinChunk() throws Exception {
+        Thread owner = Thread.currentThread();
+        Path recording = TestRecordings.record(() -> {
+            for (int i = 0; i < EVENT_COUNT; i++) {
+                new CpSampleEvent(i, owner, String.class).commit();
+            }
+        }, CpSampleEvent.class);
+
+        setThreshold(THRESHOLD);
+        List<CpSampleView> views = Collections.synchronizedList(new ArrayList<>());
+        List<CpSampleRecord> records = Collections.synchronizedList(new ArrayList<>());
+        try (JafarParser parser = JafarParser.open(recording.toString())) {
+            parser.handle(CpSampleView.class, (event, ctl) -> views.add(event));
+            parser.run();
+        }
+        try (JafarParser parser = JafarParser.open(recording.toString())) {
+            parser.handle(CpSampleRecord.class, (event, ctl) -> records.add(event));
+            parser.run();
+        }
+
+        // a single chunk - the deserializer is promoted after the first THRESHOLD values, part-way through the chunk
+        assertEquals(EVENT_COUNT, views.size());
+        ThreadRecord thread = new ThreadRecord(owner.getName(), owner.threadId());
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            CpSampleView view = views.get(i);
+            assertEquals(i < THRESHOLD, Proxy.isProxyClass(view.getClass()), "event " + i);
+            assertEquals(i, view.value());
+            assertTrue(view.startTime() > 0);
+            // the interpreted record factory resolves the constant pool values like the generated one
+            assertEquals(new CpSampleRecord(i, thread, 0), records.get(i));
+        }
+    }
+
+    @Test
+    void testPromotionAcrossChunks() throws Exception {
+        Path recording = TestRecordings.testAp();
+        Map<String, Long> expected = describe(recording, new AtomicLong());
+
+        // the chunks are parsed concurrently and share the deserializers, so they race to cross the threshold
+        for (int threshold : new int[] {1, 50, Integer.MAX_VALUE}) {
+            setThreshold(threshold);
+            AtomicLong interpreted = new AtomicLong();
+            assertEquals(expected, describe(recording, interpreted), "threshold " + threshold);
+            long total = expected.values().stream().mapToLong(Long::longValue).sum();
+            assertEquals(Math.min(threshold, total), interpreted.get(), "threshold " + threshold);
+        }
+    }
+
+    private static void setThreshold(int threshold) {
+        System.setProperty("io.jafar.parser.tier_threshold", String.valueOf(threshold));
+    }
+
+    /**
+     * @param interpreted receives the number of the interpreted events
+     * @return the counts of the distinct events described by their start time, thread and stack trace
+     */
+    private static Map<String, Long> describe(Path recording, AtomicLong interpreted) throws Exception {
+        Map<String, Long> events = new HashMap<>();
+        try (JafarParser parser = JafarParser.open(recording.toString())) {
+            parser.handle(ExecutionSampleEvent.class, (event, ctl) -> {
+                if (Proxy.isProxyClass(event.getClass())) {
+                    interpreted.incrementAndGet();
+                }
+                String description = describe(event);
+                synchronized (events) {
+                    events.merge(description, 1L, Long::sum);
+                }
+            });
+            parser.run();
+        }
+        return events;
+    }
+
+    private static String describe(ExecutionSampleEvent event) {
+        StringBuilder sb = new StringBuilder().append(event.startTime());
+        JFRThread thread = event.eventThread();
+        sb.append(':').append(thread != null ? thread.javaName() + "/" + thread.javaThreadId() : null);
+        JFRStackTrace stackTrace = event.stackTrace();
+        if (stackTrace != null) {
+            sb.append(':').append(stackTrace.truncated());
+            for (JFRStackFrame frame : stackTrace.frames()) {
+                sb.append(',').append(frame.lineNumber()).append('@').append(frame.bytecodeIndex());
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,173 @@
+package io.jafar.parser.internal_api;
+
+import io.jafar.parser.TestRecordings;
+import io.jafar.parser.internal_api.metadata.MetadataClass;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TimeIndexTest {
+    @Test
+    void testBounds() {
+        // the events are 10 bytes apart, sampled at every 2nd event
+        long[] ticks = {5, 1, 8, 6, 9, 3, 12, 10};
+        TimeIndex index = build(ticks, 2);
+
+        assertArrayEquals(new int[] {0, 20, 40, 60}, index.offsets());
+        assertArrayEquals(new long[] {Long.MIN_VALUE, 5, 8, 9}, index.prefixMax());
+        // the segment minimums are 1, 6, 3 and 10; the tick 3 at offset 50 holds the minimum back for the second sample
+        assertArrayEquals(new long[] {1, 3, 3, 10}, index.suffixMin());
+
+        assertEquals(-1, index.seek(Long.MIN_VALUE));
+        assertEquals(0, index.seek(0));
+        assertEquals(0, index.seek(5));
+        assertEquals(20, index.seek(6));
+        assertEquals(20, index.seek(8));
+        assertEquals(40, index.seek(9));
+        assertEquals(60, index.seek(100));
+
+        assertEquals(0, index.end(0));
+        assertEquals(20, index.end(2));
+        assertEquals(60, index.end(4));
+        assertEquals(80, index.end(10));
+        assertEquals(80, index.end(100));
+    }
+
+    @Test
+    void testEmpty() {
+        TimeIndex index = new TimeIndex.Builder(2).build(80);
+        assertEquals(-1, index.seek(0));
+        assertEquals(80, index.end(0));
+    }
+
+    @Test
+    void testOutOfOrder() {
+        Random random = new Random(42);
+        long[] ticks = new long[1000];
+        for (int i = 0; i < ticks.length; i++) {
+            // roughly ordered with a bounded jitter
+            ticks[i] = i * 10L + random.nextInt(200);
+        }
+        TimeIndex index = build(ticks, 16);
+        for (int i = 0; i < 500; i++) {
+            long from = random.nextInt(10_200);
+            long to = from + random.nextInt(2_000);
+            int start = index.seek(from);
+            int end = index.end(to);
+            // no event of the window may be skipped
+            for (int j = 0; j < ticks.length; j++) {
+                if (ticks[j] >= from && ticks[j] <= to) {
+                    int offset = j * 10;
+                    assertTrue(offset >= start && offset < end, "event " + j + " at " + ticks[j] + " outside of [" + start + ", " + end + ") for [" + from + ", " + to + "]");
+                }
+            }
+        }
+    }
+
+    @Test
+    void testWindow() throws Exception {
+        Path recording = TestRecordings.testAp();
+        List<Long> all = new ArrayList<>();
+        Set<String> allEvents = collect(recording, Long.MIN_VALUE, Long.MAX_VALUE, all);
+        assertFalse(allEvents.isEmpty());
+
+        // the middle of the recording, the bounds placed into gaps between the events
+        Collections.sort(all);
+        long from = gap(all, all.size() / 3);
+        long to = gap(all, all.size() * 2 / 3);
+        Set<String> expected = new HashSet<>();
+        for (String event : allEvents) {
+            long nanos = Long.parseLong(event.substring(event.lastIndexOf(':') + 1));
+            if (nanos >= from && nanos <= to) {
+                expected.add(event);
+            }
+        }
+        assertFalse(expected.isEmpty());
+        assertTrue(expected.size() < allEvents.size());
+
+        try (StreamingChunkParser parser = new StreamingChunkParser()) {
+            // the first run walks the chunks fully and builds the time index, the second one seeks by the time index
+            for (int i = 0; i < 2; i++) {
+                assertEquals(expected, collect(parser, recording, from, to, null));
+            }
+        }
+    }
+
+    private static TimeIndex build(long[] ticks, int stride) {
+        TimeIndex.Builder builder = new TimeIndex.Builder(stride);
+        for (int i = 0; i < ticks.length; i++) {
+            builder.add(i * 10, ticks[i]);
+        }
+        return builder.build(ticks.length * 10);
+    }
+
+    /**
+     * @return the midpoint of the first gap of at least 2us between the sorted timestamps, starting at the given index
+     */
+    private static long gap(List<Long> sorted, int from) {
+        for (int i = from; i + 1 < sorted.size(); i++) {
+            if (sorted.get(i + 1) - sorted.get(i) >= 2_000) {
+                return (sorted.get(i) + sorted.get(i + 1)) / 2;
+            }
+        }
+        throw new AssertionError("no gap in the event timestamps");
+    }
+
+    private static Set<String> collect(Path recording, long fromNanos, long toNanos, List<Long> timestamps) throws Exception {
+        try (StreamingChunkParser parser = new StreamingChunkParser()) {
+            return collect(parser, recording, fromNanos, toNanos, timestamps);
+        }
+    }
+
+    /**
+     * Collects the events with the start time as {@code chunk:offset:startNanos}.
+     */
+    private static Set<String> collect(StreamingChunkParser parser, Path recording, long fromNanos, long toNanos, List<Long> timestamps) throws Exception {
+        Set<String> events = ConcurrentHashMap.newKeySet();
+        ConcurrentHashMap<Integer, ChunkHeader> headers = new ConcurrentHashMap<>();
+        parser.parse(recording, new ChunkParserListener() {
+            @Override
+            public boolean onChunkStart(int chunkIndex, ChunkHeader header, ParserContext context) {
+                headers.put(chunkIndex, header);
+                return true;
+            }
+
+            @Override
+            public boolean needsConstantPools() {
+                return false;
+            }
+
+            @Override
+            public boolean onEvent(long typeId, RecordingStream stream, long payloadSize) {
+                ParserContext context = stream.getContext();
+                MetadataClass clz = context.getMetadataLookup().getClass(typeId);
+                if (clz.hasStartTime()) {
+                    ChunkHeader header = headers.get(context.getChunkIndex());
+                    long position = stream.position();
+                    long startTick = stream.readVarint();
+                    long nanos = header.startNanos + (long) ((startTick - header.startTicks) / (header.frequency / 1_000_000_000d));
+                    events.add(context.getChunkIndex() + ":" + position + ":" + nanos);
+                    if (timestamps != null) {
+                        synchronized (timestamps) {
+                            timestamps.add(nanos);
+                        }
+                    }
+                }
+                return true;
+            }
+        }, fromNanos, toNanos);
+        return events;
+    }
+}
@@ -0,0 +1,71 @@
+package io.jafar.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class CachedStringParserTest {
+    @Test
+    public void testAlternatingStringsAreReused() {
+        CachedStringParser.ByteArrayParser parser = CachedStringParser.byteParser();
+        byte[] first = "main".getBytes(StandardCharsets.UTF_8);
+        byte[] second = "Reference Handler".getBytes(StandardCharsets.UTF_8);
+
+        String s1 = parser.parse(first, first.length, StandardCharsets.UTF_8);
+        String s2 = parser.parse(second, second.length, StandardCharsets.UTF_8);
+
+        assertSame(s1, parser.parse(first, first.length, StandardCharsets.UTF_8));
+        assertSame(s2, parser.parse(second, second.length, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testLengthAndCharsetAreRespected() {
+        CachedStringParser.ByteArrayParser parser = CachedStringParser.byteParser();
+        byte[] data = "abcdef".getBytes(StandardCharsets.UTF_8);
+        byte[] latin1 = {(byte) 0xE9};
+
+        assertEquals("abc", parser.parse(data, 3, StandardCharsets.UTF_8));
+        assertEquals("abcdef", parser.parse(data, 6, StandardCharsets.UTF_8));
+        assertEquals("é", parser.parse(latin1, 1, StandardCharsets.ISO_8859_1));
+        assertNotSame(parser.parse(latin1, 1, StandardCharsets.ISO_8859_1), parser.parse(latin1, 1, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testMultiByteStrings() {
+        CachedStringParser.ByteArrayParser parser = CachedStringParser.byteParser();
+        byte[] utf8 = "Zürich".getBytes(StandardCharsets.UTF_8);
+        byte[] other = "Zürick".getBytes(StandardCharsets.UTF_8);
+
+        String s1 = parser.parse(utf8, utf8.length, StandardCharsets.UTF_8);
+        assertEquals("Zürich", s1);
+        assertSame(s1, parser.parse(utf8, utf8.length, StandardCharsets.UTF_8));
+        assertEquals("Zürick", parser.parse(other, other.length, StandardCharsets.UTF_8));
+        // the hit is verified against a copy of the raw data, the reused buffer may hold anything else by now
+        byte[] buffer = Arrays.copyOf(utf8, utf8.length + 8);
+        String s2 = parser.parse(buffer, utf8.length, StandardCharsets.UTF_8);
+        assertEquals("Zürich", s2);
+        assertSame(s2, parser.parse(buffer, utf8.length, StandardCharsets.UTF_8));
+        buffer[utf8.length - 1] = 'k';
+        assertEquals("Zürick", parser.parse(buffer, utf8.length, StandardCharsets.UTF_8));
+        // the same bytes decoded as LATIN1 are a different string
+        assertEquals(new String(utf8, StandardCharsets.ISO_8859_1), parser.parse(utf8, utf8.length, StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void testCharArrays() {
+        CachedStringParser.CharArrayParser parser = CachedStringParser.charParser();
+        char[] first = "first".toCharArray();
+        char[] second = "second".toCharArray();
+
+        String s1 = parser.parse(first, first.length);
+        parser.parse(second, second.length);
+
+        assertSame(s1, parser.parse(first, first.length));
+        assertEquals("sec", parser.parse(second, 3));
+    }
+}
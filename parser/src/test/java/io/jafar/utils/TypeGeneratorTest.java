@@ -0,0 +1,130 @@
+package io.jafar.utils;
+
+import io.jafar.parser.CpSampleEvent;
+import io.jafar.parser.TestRecordings;
+import io.jafar.parser.api.JafarParser;
+import io.jafar.parser.internal_api.Detachable;
+import org.junit.jupiter.api.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TypeGeneratorTest {
+    private static final String PACKAGE = "gen";
+
+    @Test
+    void testPrecompiledDeserializers() throws Exception {
+        Thread owner = Thread.currentThread();
+        Path recording = TestRecordings.record(() -> {
+            for (int i = 0; i < 3; i++) {
+                new CpSampleEvent(i, owner, String.class).commit();
+            }
+        }, CpSampleEvent.class);
+
+        Path precompiled = Files.createTempDirectory("precompiled");
+        new TypeGenerator(recording, precompiled, PACKAGE, false, null, true).generate();
+
+        Path impl = precompiled.resolve(PACKAGE).resolve("JFRCpSampleImpl.java");
+        assertTrue(Files.exists(impl));
+        // there are no nested values read in place, the metadata lookup would be unused
+        assertFalse(Files.readString(impl).contains("MetadataLookup"));
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            expected.add(i + ":" + owner.getName() + ":" + owner.threadId() + ":" + PACKAGE + ".JFRClassImpl");
+        }
+        // the constant pool values are precompiled as well
+        List<String> values = new ArrayList<>();
+        for (Object event : parse(recording, compile(precompiled))) {
+            values.add(call(event, "value") + ":" + call(event, "owner", "javaName") + ":" + call(event, "owner", "javaThreadId") + ":" + call(event, "type").getClass().getName());
+        }
+        Collections.sort(values);
+        assertEquals(expected, values);
+    }
+
+    private static Object call(Object value, String... path) throws Exception {
+        for (String method : path) {
+            value = value.getClass().getMethod(method).invoke(value);
+        }
+        return value;
+    }
+
+    /**
+     * @return the events, checked to render the same through the handler interface before and after they are detached
+     */
+    private static List<Object> parse(Path recording, ClassLoader loader) throws Exception {
+        Class<?> type = loader.loadClass(PACKAGE + ".JFRCpSample");
+        List<Object> events = Collections.synchronizedList(new ArrayList<>());
+        try (JafarParser parser = JafarParser.open(recording.toString())) {
+            collect(parser, type, events);
+            parser.run();
+        }
+
+        for (Object event : events) {
+            assertEquals(PACKAGE + ".JFRCpSampleImpl", event.getClass().getName());
+            assertTrue(event instanceof Detachable);
+            String value = render(type, event, 3);
+            ((Detachable) event).detach();
+            assertEquals(value, render(type, event, 3));
+        }
+        return events;
+    }
+
+    private static <T> void collect(JafarParser parser, Class<T> type, List<Object> events) {
+        parser.handle(type, (event, ctl) -> events.add(event));
+    }
+
+    private static String render(Class<?> type, Object value, int depth) throws Exception {
+        if (value == null || type.isPrimitive() || type == String.class) {
+            return String.valueOf(value);
+        }
+        if (type.isArray()) {
+            StringBuilder sb = new StringBuilder("[");
+            for (Object element : (Object[]) value) {
+                sb.append(render(type.getComponentType(), element, depth)).append(',');
+            }
+            return sb.append(']').toString();
+        }
+        if (depth == 0) {
+            return "...";
+        }
+        StringBuilder sb = new StringBuilder("{");
+        Method[] methods = type.getMethods();
+        Arrays.sort(methods, Comparator.comparing(Method::getName));
+        for (Method m : methods) {
+            sb.append(m.getName()).append('=').append(render(m.getReturnType(), m.invoke(value), depth - 1)).append(';');
+        }
+        String rendered = sb.append('}').toString();
+        assertNotEquals("{}", rendered);
+        return rendered;
+    }
+
+    private static ClassLoader compile(Path sources) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Path classes = Files.createTempDirectory("classes");
+        List<String> args = new ArrayList<>(List.of("-nowarn", "-d", classes.toString(),
+                "-cp", Paths.get(JafarParser.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString()));
+        try (Stream<Path> files = Files.list(sources.resolve(PACKAGE))) {
+            files.map(Path::toString).forEach(args::add);
+        }
+        assertEquals(0, compiler.run(null, null, null, args.toArray(new String[0])));
+        return new URLClassLoader(new URL[] {classes.toUri().toURL()}, TypeGeneratorTest.class.getClassLoader());
+    }
+}